@@ -0,0 +1,50 @@
+package fc.azure.cosmos.bootstrap;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+
+/**
+ * Connection options shared by the command line of every tool.
+ */
+public final class ClientOptions {
+    //
+    public static final String CONNECTION_MODE = "connectionmode";
+    public static final String MAX_CONNECTIONS = "maxconnections";
+    public static final String MAX_REQUESTS = "maxrequests";
+    public static final String GATEWAY_POOL_SIZE = "gatewaypoolsize";
+    public static final String WARM_UP = "warmup";
+
+    private ClientOptions() {
+    }
+
+    public static Options addTo(final Options options) {
+        options.addOption(Option.builder().longOpt(CONNECTION_MODE).required(false).hasArg().desc("direct or gateway (default: direct)").build());
+        options.addOption(Option.builder().longOpt(MAX_CONNECTIONS).required(false).hasArg().desc("Direct connections per replica endpoint (default: 130)").build());
+        options.addOption(Option.builder().longOpt(MAX_REQUESTS).required(false).hasArg().desc("Concurrent requests per direct connection (default: 30)").build());
+        options.addOption(Option.builder().longOpt(GATEWAY_POOL_SIZE).required(false).hasArg().desc("Gateway connection pool size (default: 1000)").build());
+        options.addOption(Option.builder().longOpt(WARM_UP).required(false).desc("Open the connections to every partition of the containers before starting").build());
+        return options;
+    }
+
+    public static ClientSettings apply(final CommandLine commandLine, final ClientSettings settings) {
+        if (commandLine.hasOption(CONNECTION_MODE)) {
+            String mode = commandLine.getOptionValue(CONNECTION_MODE);
+            if (!ClientSettings.MODE_DIRECT.equalsIgnoreCase(mode) && !ClientSettings.MODE_GATEWAY.equalsIgnoreCase(mode)) {
+                throw new IllegalArgumentException("Unknown connection mode " + mode);
+            }
+            settings.setConnectionMode(mode);
+        }
+        if (commandLine.hasOption(MAX_CONNECTIONS)) {
+            settings.setMaxConnectionsPerEndpoint(Integer.parseInt(commandLine.getOptionValue(MAX_CONNECTIONS)));
+        }
+        if (commandLine.hasOption(MAX_REQUESTS)) {
+            settings.setMaxRequestsPerConnection(Integer.parseInt(commandLine.getOptionValue(MAX_REQUESTS)));
+        }
+        if (commandLine.hasOption(GATEWAY_POOL_SIZE)) {
+            settings.setGatewayMaxConnectionPoolSize(Integer.parseInt(commandLine.getOptionValue(GATEWAY_POOL_SIZE)));
+        }
+        settings.setWarmUp(commandLine.hasOption(WARM_UP));
+        return settings;
+    }
+}
@@ -0,0 +1,152 @@
+package fc.azure.cosmos.bootstrap;
+
+import com.azure.cosmos.ConsistencyLevel;
+
+/**
+ * Everything that makes two clients different. Tools asking for equal settings share one client.
+ * <p>
+ * The connection defaults are the ones of the SDK, so a tool only overrides what it was tuned for.
+ */
+public class ClientSettings {
+    //
+    public static final String MODE_DIRECT = "direct";
+    public static final String MODE_GATEWAY = "gateway";
+    //
+    private String endpoint;
+    private String key;
+    private String userAgentSuffix;
+    private ConsistencyLevel consistencyLevel;
+    private boolean contentResponseOnWriteEnabled = true;
+    //
+    private String connectionMode = MODE_DIRECT;
+    private int maxConnectionsPerEndpoint = 130;
+    private int maxRequestsPerConnection = 30;
+    private int gatewayMaxConnectionPoolSize = 1000;
+    // What the tool does with the client at startup, not part of the client itself
+    private boolean warmUp;
+
+    public ClientSettings() {
+    }
+
+    public ClientSettings(final String endpoint, final String key, final String userAgentSuffix) {
+        this.endpoint = endpoint;
+        this.key = key;
+        this.userAgentSuffix = userAgentSuffix;
+    }
+
+    /**
+     * The same connection settings for another account.
+     */
+    public ClientSettings forAccount(final String endpoint, final String key) {
+        ClientSettings settings = new ClientSettings(endpoint, key, userAgentSuffix);
+        settings.setConsistencyLevel(consistencyLevel);
+        settings.setContentResponseOnWriteEnabled(contentResponseOnWriteEnabled);
+        settings.setConnectionMode(connectionMode);
+        settings.setMaxConnectionsPerEndpoint(maxConnectionsPerEndpoint);
+        settings.setMaxRequestsPerConnection(maxRequestsPerConnection);
+        settings.setGatewayMaxConnectionPoolSize(gatewayMaxConnectionPoolSize);
+        settings.setWarmUp(warmUp);
+        return settings;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public String getUserAgentSuffix() {
+        return userAgentSuffix;
+    }
+
+    public void setUserAgentSuffix(String userAgentSuffix) {
+        this.userAgentSuffix = userAgentSuffix;
+    }
+
+    public ConsistencyLevel getConsistencyLevel() {
+        return consistencyLevel;
+    }
+
+    public void setConsistencyLevel(ConsistencyLevel consistencyLevel) {
+        this.consistencyLevel = consistencyLevel;
+    }
+
+    public boolean isContentResponseOnWriteEnabled() {
+        return contentResponseOnWriteEnabled;
+    }
+
+    public void setContentResponseOnWriteEnabled(boolean contentResponseOnWriteEnabled) {
+        this.contentResponseOnWriteEnabled = contentResponseOnWriteEnabled;
+    }
+
+    public String getConnectionMode() {
+        return connectionMode;
+    }
+
+    public void setConnectionMode(String connectionMode) {
+        this.connectionMode = connectionMode;
+    }
+
+    public boolean isDirectMode() {
+        return !MODE_GATEWAY.equalsIgnoreCase(connectionMode);
+    }
+
+    public int getMaxConnectionsPerEndpoint() {
+        return maxConnectionsPerEndpoint;
+    }
+
+    public void setMaxConnectionsPerEndpoint(int maxConnectionsPerEndpoint) {
+        this.maxConnectionsPerEndpoint = maxConnectionsPerEndpoint;
+    }
+
+    public int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    public void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+    }
+
+    public int getGatewayMaxConnectionPoolSize() {
+        return gatewayMaxConnectionPoolSize;
+    }
+
+    public void setGatewayMaxConnectionPoolSize(int gatewayMaxConnectionPoolSize) {
+        this.gatewayMaxConnectionPoolSize = gatewayMaxConnectionPoolSize;
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    /**
+     * Key of the client cache: every setting that goes into the builder.
+     */
+    String cacheKey() {
+        return endpoint + '|' + key + '|' + userAgentSuffix + '|' + consistencyLevel + '|'
+                + contentResponseOnWriteEnabled + '|' + (isDirectMode() ? MODE_DIRECT : MODE_GATEWAY) + '|'
+                + maxConnectionsPerEndpoint + '|' + maxRequestsPerConnection + '|' + gatewayMaxConnectionPoolSize;
+    }
+
+    @Override
+    public String toString() {
+        return (isDirectMode() ? MODE_DIRECT : MODE_GATEWAY)
+                + " mode, " + maxConnectionsPerEndpoint + " connections per endpoint, "
+                + maxRequestsPerConnection + " requests per connection, "
+                + gatewayMaxConnectionPoolSize + " gateway connections";
+    }
+}
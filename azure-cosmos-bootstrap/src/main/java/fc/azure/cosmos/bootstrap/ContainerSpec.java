@@ -0,0 +1,78 @@
+package fc.azure.cosmos.bootstrap;
+
+import com.azure.cosmos.models.ChangeFeedPolicy;
+import com.azure.cosmos.models.CosmosContainerProperties;
+
+/**
+ * A container a tool needs at startup: either created when missing, or required to exist already.
+ */
+public class ContainerSpec {
+    //
+    private final String id;
+    private final String partitionKeyPath;
+    private final boolean createIfNotExists;
+    private Integer defaultTimeToLiveInSeconds = -1;
+    private ChangeFeedPolicy changeFeedPolicy;
+
+    private ContainerSpec(final String id, final String partitionKeyPath, final boolean createIfNotExists) {
+        this.id = id;
+        this.partitionKeyPath = partitionKeyPath;
+        this.createIfNotExists = createIfNotExists;
+    }
+
+    /**
+     * The container, and its database, are created when missing.
+     */
+    public static ContainerSpec createIfNotExists(final String id, final String partitionKeyPath) {
+        return new ContainerSpec(id, partitionKeyPath, true);
+    }
+
+    /**
+     * Startup fails when the container does not exist.
+     */
+    public static ContainerSpec mustExist(final String id) {
+        return new ContainerSpec(id, null, false);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getPartitionKeyPath() {
+        return partitionKeyPath;
+    }
+
+    public boolean isCreateIfNotExists() {
+        return createIfNotExists;
+    }
+
+    public Integer getDefaultTimeToLiveInSeconds() {
+        return defaultTimeToLiveInSeconds;
+    }
+
+    public ContainerSpec setDefaultTimeToLiveInSeconds(Integer defaultTimeToLiveInSeconds) {
+        this.defaultTimeToLiveInSeconds = defaultTimeToLiveInSeconds;
+        return this;
+    }
+
+    public ChangeFeedPolicy getChangeFeedPolicy() {
+        return changeFeedPolicy;
+    }
+
+    /**
+     * Only applied when the container is created.
+     */
+    public ContainerSpec setChangeFeedPolicy(ChangeFeedPolicy changeFeedPolicy) {
+        this.changeFeedPolicy = changeFeedPolicy;
+        return this;
+    }
+
+    CosmosContainerProperties toProperties() {
+        CosmosContainerProperties properties = new CosmosContainerProperties(id, partitionKeyPath);
+        properties.setDefaultTimeToLiveInSeconds(defaultTimeToLiveInSeconds);
+        if (changeFeedPolicy != null) {
+            properties.setChangeFeedPolicy(changeFeedPolicy);
+        }
+        return properties;
+    }
+}
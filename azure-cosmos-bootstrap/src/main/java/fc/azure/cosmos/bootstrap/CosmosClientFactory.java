@@ -0,0 +1,116 @@
+package fc.azure.cosmos.bootstrap;
+
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosClientBuilder;
+import com.azure.cosmos.DirectConnectionConfig;
+import com.azure.cosmos.GatewayConnectionConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One client per distinct {@link ClientSettings} in the process, with its {@link MetadataCache}.
+ * <p>
+ * A client owns its connection pools, address caches and background threads, so building a second one for
+ * the same account only doubles the cold start. Tools get their client here and release it through
+ * {@link #close(CosmosAsyncClient)} rather than closing it themselves.
+ */
+public final class CosmosClientFactory {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(CosmosClientFactory.class);
+    //
+    private static final ConcurrentHashMap<String, CosmosAsyncClient> CLIENTS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<CosmosAsyncClient, MetadataCache> METADATA = new ConcurrentHashMap<>();
+
+    private CosmosClientFactory() {
+    }
+
+    public static CosmosAsyncClient getClient(final ClientSettings settings) {
+        return CLIENTS.computeIfAbsent(settings.cacheKey(), key -> {
+            LOGGER.info("Building a Cosmos client for {} in {}", settings.getEndpoint(), settings);
+            CosmosAsyncClient client = builder(settings).buildAsyncClient();
+            METADATA.put(client, new MetadataCache(client));
+            return client;
+        });
+    }
+
+    public static MetadataCache getMetadataCache(final CosmosAsyncClient client) {
+        MetadataCache cache = METADATA.get(client);
+        if (cache == null) {
+            throw new IllegalArgumentException("The client was not built by the factory");
+        }
+        return cache;
+    }
+
+    /**
+     * Open the direct connections to every replica of the containers and fill the address caches, all
+     * containers in parallel, so that the first real request does not pay for it.
+     * <p>
+     * Gateway mode has no connection to open; only the caches are filled. A container failing to warm up is
+     * logged and skipped, its first request then opens the connections as it would have without warm-up.
+     */
+    public static Mono<Void> warmUp(final Collection<CosmosAsyncContainer> containers) {
+        return Flux.fromIterable(containers)
+                .flatMap(container -> {
+                    long start = System.nanoTime();
+                    return container.openConnectionsAndInitCaches()
+                            .doOnSuccess(done -> LOGGER.info("Warmed up the connections to {} in {} ms",
+                                    container.getId(), (System.nanoTime() - start) / 1_000_000))
+                            .onErrorResume(e -> {
+                                LOGGER.warn("Failed to warm up the connections to " + container.getId(), e);
+                                return Mono.empty();
+                            });
+                })
+                .then();
+    }
+
+    public static CosmosClientBuilder builder(final ClientSettings settings) {
+        CosmosClientBuilder builder = new CosmosClientBuilder()
+                .endpoint(settings.getEndpoint())
+                .key(settings.getKey())
+                .contentResponseOnWriteEnabled(settings.isContentResponseOnWriteEnabled());
+        if (settings.getUserAgentSuffix() != null) {
+            builder.userAgentSuffix(settings.getUserAgentSuffix());
+        }
+        if (settings.getConsistencyLevel() != null) {
+            builder.consistencyLevel(settings.getConsistencyLevel());
+        }
+        // Direct mode still reads the metadata through the gateway, both pools are sized
+        GatewayConnectionConfig gatewayConfig = new GatewayConnectionConfig();
+        gatewayConfig.setMaxConnectionPoolSize(settings.getGatewayMaxConnectionPoolSize());
+        if (settings.isDirectMode()) {
+            DirectConnectionConfig directConfig = new DirectConnectionConfig();
+            directConfig.setMaxConnectionsPerEndpoint(settings.getMaxConnectionsPerEndpoint());
+            directConfig.setMaxRequestsPerConnection(settings.getMaxRequestsPerConnection());
+            builder.directMode(directConfig, gatewayConfig);
+        } else {
+            builder.gatewayMode(gatewayConfig);
+        }
+        return builder;
+    }
+
+    public static void close(final CosmosAsyncClient client) {
+        if (client == null) {
+            return;
+        }
+        for (Map.Entry<String, CosmosAsyncClient> entry : CLIENTS.entrySet()) {
+            if (entry.getValue() == client) {
+                CLIENTS.remove(entry.getKey(), client);
+            }
+        }
+        METADATA.remove(client);
+        client.close();
+    }
+
+    public static void closeAll() {
+        for (CosmosAsyncClient client : CLIENTS.values()) {
+            close(client);
+        }
+    }
+}
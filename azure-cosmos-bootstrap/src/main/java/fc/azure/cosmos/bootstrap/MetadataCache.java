@@ -0,0 +1,122 @@
+package fc.azure.cosmos.bootstrap;
+
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosAsyncDatabase;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosContainerProperties;
+import com.azure.cosmos.models.CosmosContainerRequestOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Control plane lookups of one client, each issued at most once.
+ * <p>
+ * A container is read first and its database is only touched when the container is missing, so an existing
+ * container costs a single read. Lookups are shared while in flight and cached once done, so the processor,
+ * its lease container and every sink resolving the same database at startup issue one call between them.
+ * Failed lookups are not cached.
+ */
+public class MetadataCache {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataCache.class);
+    //
+    private final CosmosAsyncClient client;
+    private final ConcurrentHashMap<String, Mono<CosmosAsyncDatabase>> databases = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Mono<CosmosContainerProperties>> containers = new ConcurrentHashMap<>();
+
+    MetadataCache(final CosmosAsyncClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Create the database when missing.
+     */
+    public Mono<CosmosAsyncDatabase> database(final String databaseId) {
+        return cached(databases, databaseId, () -> client.createDatabaseIfNotExists(databaseId)
+                .map(response -> {
+                    LOGGER.info("Checked database {}", databaseId);
+                    return client.getDatabase(databaseId);
+                }));
+    }
+
+    /**
+     * Read the container, creating it and its database when missing if the spec allows it.
+     *
+     * @return the properties of the container as stored by the service.
+     */
+    public Mono<CosmosContainerProperties> container(final String databaseId, final ContainerSpec spec) {
+        return cached(containers, databaseId + '/' + spec.getId(), () -> {
+            CosmosAsyncContainer container = client.getDatabase(databaseId).getContainer(spec.getId());
+            return container.read()
+                    .map(response -> response.getProperties())
+                    .onErrorResume(e -> {
+                        if (!isStatus(e, 404)) {
+                            return Mono.error(e);
+                        }
+                        if (!spec.isCreateIfNotExists()) {
+                            return Mono.error(new IllegalStateException(
+                                    "Container " + spec.getId() + " for database " + databaseId + " not found", e));
+                        }
+                        return create(databaseId, spec);
+                    })
+                    .doOnSuccess(properties -> LOGGER.info("Checked container {}/{}", databaseId, spec.getId()));
+        });
+    }
+
+    /**
+     * Resolve all the containers in parallel.
+     *
+     * @return the properties keyed by container id, in the order of the specs.
+     */
+    public Mono<Map<String, CosmosContainerProperties>> containers(final String databaseId,
+                                                                   final List<ContainerSpec> specs) {
+        return Flux.fromIterable(specs)
+                .flatMapSequential(spec -> container(databaseId, spec), Math.max(1, specs.size()))
+                .collectList()
+                .map(resolved -> {
+                    Map<String, CosmosContainerProperties> byId = new LinkedHashMap<>();
+                    for (int i = 0; i < specs.size(); i++) {
+                        byId.put(specs.get(i).getId(), resolved.get(i));
+                    }
+                    return byId;
+                });
+    }
+
+    /**
+     * Forget a container, e.g. after its properties were replaced.
+     */
+    public void invalidate(final String databaseId, final String containerId) {
+        containers.remove(databaseId + '/' + containerId);
+    }
+
+    private Mono<CosmosContainerProperties> create(final String databaseId, final ContainerSpec spec) {
+        LOGGER.info("Creating container {}/{}", databaseId, spec.getId());
+        return database(databaseId)
+                .flatMap(database -> database.createContainer(spec.toProperties(), new CosmosContainerRequestOptions())
+                        .map(response -> response.getProperties())
+                        // Another host created it in the meantime
+                        .onErrorResume(e -> isStatus(e, 409)
+                                ? database.getContainer(spec.getId()).read().map(response -> response.getProperties())
+                                : Mono.error(e)));
+    }
+
+    private static <T> Mono<T> cached(final ConcurrentHashMap<String, Mono<T>> cache, final String key,
+                                      final Supplier<Mono<T>> lookup) {
+        return cache.computeIfAbsent(key, k -> lookup.get()
+                .doOnError(e -> cache.remove(k))
+                .cache());
+    }
+
+    private static boolean isStatus(final Throwable e, final int statusCode) {
+        return e instanceof CosmosException && ((CosmosException) e).getStatusCode() == statusCode;
+    }
+}
@@ -0,0 +1,137 @@
+package fc.azure.cosmos.bootstrap;
+
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.PartitionKey;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.cli.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Measures the time a fresh client takes to serve its first point read, with and without warm-up.
+ * <p>
+ * Every iteration builds a new client twice: the cold one reads the container and goes straight to the point
+ * read, the warm one opens the connections to every partition first. The point read targets a missing id, a
+ * 404 is a successful round trip through the same connections as any other read.
+ */
+public class StartupBenchmark {
+    //
+    private static final String ENDPOINT = "endpoint";
+    private static final String KEY = "key";
+    private static final String DATABASE = "database";
+    private static final String CONTAINER = "container";
+    private static final String ITERATIONS = "iterations";
+
+    public static void main(String[] args) throws Exception {
+
+        /**
+         * Usage:
+         * --endpoint <cosmos account>
+         * --key <access key>
+         * --database <database name>
+         * --container <existing container name>
+         * --iterations <cold and warm clients built each, default 5>
+         * --connectionmode <direct|gateway>
+         * --maxconnections <direct connections per replica endpoint>
+         * --maxrequests <concurrent requests per direct connection>
+         * --gatewaypoolsize <gateway connection pool size>
+         */
+        Options commandLineOptions = new Options();
+        //
+        commandLineOptions.addOption(Option.builder().longOpt(ENDPOINT).required(true).hasArg().desc("Endpoint").build());
+        commandLineOptions.addOption(Option.builder().longOpt(KEY).required(true).hasArg().desc("Access key").build());
+        commandLineOptions.addOption(Option.builder().longOpt(DATABASE).required(true).hasArg().desc("Database name").build());
+        commandLineOptions.addOption(Option.builder().longOpt(CONTAINER).required(true).hasArg().desc("Existing container name").build());
+        commandLineOptions.addOption(Option.builder().longOpt(ITERATIONS).required(false).hasArg().desc("Cold and warm clients built each (default: 5)").build());
+        ClientOptions.addTo(commandLineOptions);
+        //
+        CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(commandLineOptions, args);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            new HelpFormatter().printHelp("Startup benchmark options ", commandLineOptions);
+            return;
+        }
+        ClientSettings settings = ClientOptions.apply(commandLine, new ClientSettings(
+                commandLine.getOptionValue(ENDPOINT),
+                commandLine.getOptionValue(KEY),
+                "StartupBenchmark"));
+        String database = commandLine.getOptionValue(DATABASE);
+        String container = commandLine.getOptionValue(CONTAINER);
+        int iterations = Integer.parseInt(commandLine.getOptionValue(ITERATIONS, "5"));
+        //
+        System.out.println("Startup benchmark of " + settings.getEndpoint() + " in " + settings);
+        System.out.println(String.format("%5s %6s %10s %10s %10s %10s %10s", "run", "mode", "client ms", "read ms",
+                "warmup ms", "first ms", "total ms"));
+        List<Long> coldFirst = new ArrayList<>();
+        List<Long> coldTotal = new ArrayList<>();
+        List<Long> warmFirst = new ArrayList<>();
+        List<Long> warmTotal = new ArrayList<>();
+        for (int run = 1; run <= iterations; run++) {
+            long[] cold = measure(settings, database, container, false);
+            print(run, "cold", cold);
+            coldFirst.add(cold[3]);
+            coldTotal.add(cold[4]);
+            long[] warm = measure(settings, database, container, true);
+            print(run, "warm", warm);
+            warmFirst.add(warm[3]);
+            warmTotal.add(warm[4]);
+        }
+        System.out.println(String.format("Median first point read: cold %d ms, warm %d ms", median(coldFirst), median(warmFirst)));
+        System.out.println(String.format("Median time to first point read: cold %d ms, warm %d ms", median(coldTotal), median(warmTotal)));
+    }
+
+    /**
+     * @return client build, container read, warm-up, first point read and total milliseconds.
+     */
+    private static long[] measure(final ClientSettings settings, final String database, final String containerId,
+                                  final boolean warmUp) {
+        long[] phases = new long[5];
+        long start = System.nanoTime();
+        // Not the cached client: every run starts from nothing
+        CosmosAsyncClient client = CosmosClientFactory.builder(settings).buildAsyncClient();
+        try {
+            long mark = System.nanoTime();
+            phases[0] = (mark - start) / 1_000_000;
+            CosmosAsyncContainer container = client.getDatabase(database).getContainer(containerId);
+            container.read().block();
+            phases[1] = (System.nanoTime() - mark) / 1_000_000;
+            mark = System.nanoTime();
+            if (warmUp) {
+                CosmosClientFactory.warmUp(Collections.singletonList(container)).block();
+                phases[2] = (System.nanoTime() - mark) / 1_000_000;
+                mark = System.nanoTime();
+            }
+            String id = UUID.randomUUID().toString();
+            try {
+                container.readItem(id, new PartitionKey(id), JsonNode.class).block();
+            } catch (CosmosException e) {
+                if (e.getStatusCode() != 404) {
+                    throw e;
+                }
+            }
+            phases[3] = (System.nanoTime() - mark) / 1_000_000;
+            phases[4] = (System.nanoTime() - start) / 1_000_000;
+            return phases;
+        } finally {
+            client.close();
+        }
+    }
+
+    private static void print(final int run, final String mode, final long[] phases) {
+        System.out.println(String.format("%5d %6s %10d %10d %10d %10d %10d", run, mode,
+                phases[0], phases[1], phases[2], phases[3], phases[4]));
+    }
+
+    private static long median(final List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.isEmpty() ? 0 : sorted.get(sorted.size() / 2);
+    }
+}
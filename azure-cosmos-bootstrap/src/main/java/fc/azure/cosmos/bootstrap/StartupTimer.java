@@ -0,0 +1,78 @@
+package fc.azure.cosmos.bootstrap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Milliseconds from the start of the JVM to each startup phase of a tool, and to its first successful operation.
+ * <p>
+ * The JVM start is the origin because a restarted consumer is not serving until its class loading, client,
+ * metadata lookups and connections are all done. Thread safe.
+ */
+public class StartupTimer {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupTimer.class);
+    //
+    private final String tool;
+    private final long originMs;
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final AtomicLong firstOperationMs = new AtomicLong(-1);
+
+    public StartupTimer(final String tool, final long originMs) {
+        this.tool = tool;
+        this.originMs = originMs;
+    }
+
+    public static StartupTimer sinceJvmStart(final String tool) {
+        return new StartupTimer(tool, ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    /**
+     * Record the end of a startup phase.
+     */
+    public synchronized long mark(final String phase) {
+        long elapsed = System.currentTimeMillis() - originMs;
+        phases.put(phase, elapsed);
+        return elapsed;
+    }
+
+    /**
+     * Record the first successful operation; later calls are ignored, so it can sit on the hot path.
+     */
+    public void firstOperation() {
+        if (firstOperationMs.get() >= 0) {
+            return;
+        }
+        long elapsed = System.currentTimeMillis() - originMs;
+        if (firstOperationMs.compareAndSet(-1, elapsed)) {
+            LOGGER.info("{} startup: {}", tool, this);
+            System.out.println(tool + " first successful operation " + elapsed + " ms after the JVM start (" + this + ")");
+        }
+    }
+
+    /**
+     * @return -1 until the first successful operation.
+     */
+    public long getTimeToFirstOperationMs() {
+        return firstOperationMs.get();
+    }
+
+    public synchronized Map<String, Long> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Long> phase : phases.entrySet()) {
+            out.append(phase.getKey()).append(' ').append(phase.getValue()).append(" ms, ");
+        }
+        long first = firstOperationMs.get();
+        return out.append("first operation ").append(first < 0 ? "pending" : first + " ms").toString();
+    }
+}
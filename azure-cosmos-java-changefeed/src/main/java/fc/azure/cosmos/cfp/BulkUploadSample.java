@@ -5,6 +5,9 @@ import com.azure.cosmos.CosmosAsyncContainer;
 import com.azure.cosmos.CosmosAsyncDatabase;
 import com.azure.cosmos.implementation.apachecommons.lang.RandomStringUtils;
 import com.azure.cosmos.models.*;
+import fc.azure.cosmos.bootstrap.ClientSettings;
+import fc.azure.cosmos.bootstrap.ContainerSpec;
+import fc.azure.cosmos.bootstrap.CosmosClientFactory;
 import org.apache.commons.cli.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import reactor.core.publisher.Mono;
@@ -43,9 +46,14 @@ public class BulkUploadSample {
     }
 
     public void initialize() throws Exception {
-        client = CosmosUtil.getCosmosClient(appConfig, "Execute_SP");
-        database = CosmosUtil.createDatabaseIfNotExists(appConfig, client);
-        container = CosmosUtil.createContainerIfNotExists(appConfig, client, database);
+        ClientSettings settings = new ClientSettings(appConfig.getEndpoint(), appConfig.getKey(), "Execute_SP");
+        settings.setConsistencyLevel(appConfig.getReadConsistencyLevel());
+        client = CosmosClientFactory.getClient(settings);
+        CosmosClientFactory.getMetadataCache(client)
+                .container(appConfig.getDatabase(), ContainerSpec.createIfNotExists(appConfig.getContainer(), "/partitionKey"))
+                .block();
+        database = client.getDatabase(appConfig.getDatabase());
+        container = database.getContainer(appConfig.getContainer());
     }
 
 
@@ -6,17 +6,63 @@ package fc.azure.cosmos.cfp;
 import com.azure.cosmos.*;
 import com.azure.cosmos.implementation.Utils;
 import com.azure.cosmos.models.*;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fc.azure.cosmos.bootstrap.ClientOptions;
+import fc.azure.cosmos.bootstrap.ClientSettings;
+import fc.azure.cosmos.bootstrap.ContainerSpec;
+import fc.azure.cosmos.bootstrap.CosmosClientFactory;
+import fc.azure.cosmos.bootstrap.StartupTimer;
+import fc.azure.cosmos.cfp.checkpoint.BatchingCheckpointStore;
+import fc.azure.cosmos.cfp.checkpoint.CheckpointStore;
+import fc.azure.cosmos.cfp.checkpoint.CosmosCheckpointStore;
+import fc.azure.cosmos.cfp.dedup.DeduplicatingHandler;
+import fc.azure.cosmos.cfp.dedup.IdempotencyCache;
+import fc.azure.cosmos.cfp.dlq.DeadLetterQueue;
+import fc.azure.cosmos.cfp.dlq.IsolatingHandler;
+import fc.azure.cosmos.cfp.handler.ChangeFeedHandler;
+import fc.azure.cosmos.cfp.handler.ConsoleRawHandler;
+import fc.azure.cosmos.cfp.handler.LoggingChangeFeedHandler;
+import fc.azure.cosmos.cfp.handler.PartitionedDispatcher;
+import fc.azure.cosmos.cfp.handler.RawForwardingHandler;
+import fc.azure.cosmos.cfp.lag.LagEstimator;
+import fc.azure.cosmos.cfp.lag.LeaseLag;
+import fc.azure.cosmos.cfp.lifecycle.LeaseEventListener;
+import fc.azure.cosmos.cfp.lifecycle.LeaseStateWatcher;
+import fc.azure.cosmos.cfp.metrics.ChangeFeedMetrics;
+import fc.azure.cosmos.cfp.metrics.MetricsHttpServer;
+import fc.azure.cosmos.cfp.pull.FeedRangePullEngine;
+import fc.azure.cosmos.cfp.sink.SinkFactory;
+import fc.azure.cosmos.cfp.sink.SinkHandler;
+import fc.azure.cosmos.cfp.tuning.AdaptiveProcessorTuner;
+import fc.azure.cosmos.cfp.tuning.FeedTuning;
+import fc.azure.cosmos.cfp.tuning.FeedTuningPolicy;
+import fc.azure.cosmos.cfp.view.AggregatingViewBuilder;
+import fc.azure.cosmos.cfp.view.CountSumAggregation;
+import fc.azure.cosmos.cfp.view.FieldProjection;
+import fc.azure.cosmos.cfp.view.MaterializedViewBuilder;
+import fc.azure.cosmos.cfp.window.Aggregation;
+import fc.azure.cosmos.cfp.window.FieldPath;
+import fc.azure.cosmos.cfp.window.WindowAggregatingHandler;
+import fc.azure.cosmos.cfp.window.WindowedAggregator;
 import org.apache.commons.cli.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class CFPApp {
     //
@@ -25,15 +71,78 @@ public class CFPApp {
     private CosmosAsyncDatabase database;
     private CosmosAsyncContainer container;
     private CosmosAsyncContainer leaseContainer;
+    private CosmosAsyncContainer viewContainer;
     private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
     //
     private String userAgentSuffix = "CosmosDBServiceCFP_FC";
     //
     private static final Logger LOGGER = LoggerFactory.getLogger(CFPApp.class);
+    private static final String BACKFILL_UNTIL_KEY = FeedRangePullEngine.BACKFILL_CHECKPOINT_PREFIX + "until";
+
+    //
+    private PartitionedDispatcher dispatcher;
+    private ChangeFeedMetrics metrics;
+    private MetricsHttpServer metricsServer;
+    private SinkHandler sinkHandler;
+    private IdempotencyCache idempotencyCache;
+    private DeadLetterQueue deadLetterQueue;
+    private IsolatingHandler isolatingHandler;
+    private WindowedAggregator windowAggregator;
+    private AdaptiveProcessorTuner tuner;
+    private volatile ChangeFeedProcessor changeFeedProcessor;
+    private volatile FeedRangePullEngine backfillEngine;
+    private LeaseStateWatcher leaseWatcher;
+    private LagEstimator lagEstimator;
+    private Instant startTime;
+    private final StartupTimer startupTimer = StartupTimer.sinceJvmStart("CFPApp");
+    //
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private boolean shuttingDown;
 
     //
     public void close() {
-        client.close();
+        if (leaseWatcher != null) {
+            leaseWatcher.close();
+        }
+        if (tuner != null) {
+            tuner.close();
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+        if (sinkHandler != null) {
+            sinkHandler.close();
+        }
+        if (deadLetterQueue != null) {
+            try {
+                deadLetterQueue.close();
+            } catch (IOException e) {
+                LOGGER.error("Failed to close the dead-letter queue", e);
+            }
+        }
+        if (windowAggregator != null) {
+            try {
+                windowAggregator.close();
+            } catch (IOException e) {
+                LOGGER.error("Failed to save the window snapshot", e);
+            }
+        }
+        if (idempotencyCache != null) {
+            try {
+                idempotencyCache.close();
+            } catch (IOException e) {
+                LOGGER.error("Failed to save the idempotency bloom filters", e);
+            }
+        }
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
+        if (metrics != null) {
+            metrics.close();
+        }
+        CosmosClientFactory.close(client);
+        closed.countDown();
     }
 
     //
@@ -52,7 +161,11 @@ public class CFPApp {
             p.populateConfig(cline);
             System.out.println("Start the ChangeFeed Processor ");
             try {
+                // SIGTERM/Ctrl+C hand the leases over cleanly, the main thread then closes the resources;
+                // registered first so a signal during the backfill stops it at a checkpoint as well
+                Runtime.getRuntime().addShutdownHook(new Thread(p::shutdown, "cfp-shutdown"));
                 p.initChangeFeedProcessor();
+                p.stopped.await();
             } catch (Exception e) {
                 LOGGER.error("ddd", e);
                 System.err.println(String.format("Cosmos getStarted failed with %s", e));
@@ -76,6 +189,44 @@ public class CFPApp {
          * --leasecontainer <lease container name>
          * --host <host to be used for change feed>
          * --prefix <prefix to be used for change feed>
+         * --lanes <number of handler worker lanes>
+         * --lanecapacity <batches queued per lane before the lease thread blocks>
+         * --metricsport <local port serving /metrics, disabled when absent>
+         * --metricsinterval <processor state sampling interval in seconds>
+         * --viewcontainer <materialized view container, documents are only logged when absent>
+         * --viewpartitionkey <source field used as the partition key of the view>
+         * --viewfields <comma separated source fields copied to the view, all when absent>
+         * --viewaggregate <json path>[:<json path>], count and sum per group instead of copying the fields
+         * --handlermode <tree|raw, raw forwards compact JSON bytes without pretty printing>
+         * --sinks <comma separated file:<dir>, log:<dir> or cosmos:<container> sinks>
+         * --polldelay <milliseconds between polls of a caught up lease>
+         * --maxitemcount <maximum documents per batch>
+         * --adaptive <tune poll delay and batch size from the observed load>
+         * --maxpolldelay <milliseconds idle leases back off to, with --adaptive>
+         * --adaptiverestart <rebuild the processor with the tuned settings, releasing the leases, with --adaptive>
+         * --shutdowntimeout <seconds to wait for in-flight batches on shutdown>
+         * --dedupcapacity <document versions remembered to drop replays, disabled when absent>
+         * --dedupbloomfile <file persisting bloom filters of the versions handled, with --dedupcapacity>
+         * --dedupbloominsertions <versions per bloom filter generation>
+         * --dlq <dead-letter queue directory, failing documents are isolated and dead-lettered when set>
+         * --dlqattempts <attempts per document before it is dead-lettered>
+         * --backfillfrom <ISO-8601 instant, replay the changes made since then before starting the processor>
+         * --backfilluntil <ISO-8601 instant where the processor takes over, now when absent>
+         * --parallelism <number of feed ranges replayed concurrently by the backfill>
+         * --lagwindows <consecutive growing samples before the lag of a lease is reported>
+         * --lagsmoothing <time constant in seconds of the smoothed lag rates>
+         * --windowagg <count, sum:<json path> or distinct:<json path>, aggregated over windows of the changes>
+         * --windowkey <json path of the grouping key, all the changes together when absent>
+         * --windowsize <window size in seconds>
+         * --windowslide <window slide in seconds, tumbling windows when absent>
+         * --windowlateness <seconds a change may arrive late and still be aggregated>
+         * --windowtopk <keys with the highest values reported per window, all when absent>
+         * --windowsnapshot <file the open windows are saved to and restored from>
+         * --connectionmode <direct|gateway>
+         * --maxconnections <direct connections per replica endpoint>
+         * --maxrequests <concurrent requests per direct connection>
+         * --gatewaypoolsize <gateway connection pool size>
+         * --warmup <open the connections to every partition of the containers before starting the processor>
          *
          * Examples
          * --endpoint <cosmos account> --database demo --container <container name> --key <access key>
@@ -93,6 +244,40 @@ public class CFPApp {
         commandLineOptions.addOption(Option.builder().longOpt(Constants.LEASE_CONTAINER).required(true).hasArg().desc("Lease container name").build());
         commandLineOptions.addOption(Option.builder().longOpt(Constants.HOST).required(true).hasArg().desc("Change feed host").build());
         commandLineOptions.addOption(Option.builder().longOpt(Constants.PREFIX).required(false).hasArg().desc("Change feed prefix").option("").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.LANES).required(false).hasArg().desc("Number of handler worker lanes (default: available processors)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.LANE_CAPACITY).required(false).hasArg().desc("Batches queued per lane before the lease thread blocks").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.METRICS_PORT).required(false).hasArg().desc("Local port serving /metrics (disabled when absent)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.METRICS_INTERVAL).required(false).hasArg().desc("Processor state sampling interval in seconds").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.VIEW_CONTAINER).required(false).hasArg().desc("Materialized view container").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.VIEW_PARTITION_KEY).required(false).hasArg().desc("Source field used as the partition key of the view").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.VIEW_FIELDS).required(false).hasArg().desc("Comma separated source fields copied to the view").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.VIEW_AGGREGATE).required(false).hasArg().desc("Group by path and optional summed path (<json path>[:<json path>]) of an aggregated view").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.HANDLER_MODE).required(false).hasArg().desc("Handler mode (tree/raw)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.SINKS).required(false).hasArg().desc("Comma separated sinks (file:<dir>, log:<dir>, cosmos:<container>)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.POLL_DELAY).required(false).hasArg().desc("Milliseconds between polls of a caught up lease (default: 5000)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.MAX_ITEM_COUNT).required(false).hasArg().desc("Maximum documents per batch (default: 100)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.ADAPTIVE).required(false).desc("Tune poll delay and batch size from the observed load").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.MAX_POLL_DELAY).required(false).hasArg().desc("Milliseconds idle leases back off to, with --adaptive").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.ADAPTIVE_RESTART).required(false).desc("Rebuild the processor with the tuned settings, releasing the leases, with --adaptive").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.SHUTDOWN_TIMEOUT).required(false).hasArg().desc("Seconds to wait for in-flight batches on shutdown (default: 30)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.DEDUP_CAPACITY).required(false).hasArg().desc("Document versions remembered to drop replays (disabled when absent)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.DEDUP_BLOOM_FILE).required(false).hasArg().desc("File persisting bloom filters of the versions handled").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.DEDUP_BLOOM_INSERTIONS).required(false).hasArg().desc("Versions per bloom filter generation (default: 1000000)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.DLQ).required(false).hasArg().desc("Dead-letter queue directory, failing documents are isolated and dead-lettered when set").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.DLQ_ATTEMPTS).required(false).hasArg().desc("Attempts per document before it is dead-lettered (default: 3)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.BACKFILL_FROM).required(false).hasArg().desc("Replay the changes made since this ISO-8601 instant before starting the processor").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.BACKFILL_UNTIL).required(false).hasArg().desc("ISO-8601 instant where the processor takes over from the backfill (default: now)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.PARALLELISM).required(false).hasArg().desc("Number of feed ranges replayed concurrently by the backfill").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.LAG_WINDOWS).required(false).hasArg().desc("Consecutive growing samples before the lag of a lease is reported (default: 5)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.LAG_SMOOTHING).required(false).hasArg().desc("Time constant in seconds of the smoothed lag rates (default: 30)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.WINDOW_AGGREGATION).required(false).hasArg().desc("Window aggregation (count, sum:<json path>, distinct:<json path>)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.WINDOW_KEY).required(false).hasArg().desc("JSON path of the grouping key of the windows").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.WINDOW_SIZE).required(false).hasArg().desc("Window size in seconds (default: 60)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.WINDOW_SLIDE).required(false).hasArg().desc("Window slide in seconds (default: the window size)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.WINDOW_LATENESS).required(false).hasArg().desc("Seconds a change may arrive late and still be aggregated (default: 5)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.WINDOW_TOP_K).required(false).hasArg().desc("Keys with the highest values reported per window").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.WINDOW_SNAPSHOT).required(false).hasArg().desc("File the open windows are saved to and restored from").build());
+        ClientOptions.addTo(commandLineOptions);
         //
         CommandLineParser parser = new DefaultParser();
         CommandLine commandLine = null;
@@ -116,7 +301,86 @@ public class CFPApp {
         config.setKey(commandLine.getOptionValue(Constants.KEY));
         config.setLeaseContainer(commandLine.getOptionValue(Constants.LEASE_CONTAINER));
         config.setHost(commandLine.getOptionValue(Constants.HOST));
-        config.setPrefix(commandLine.getOptionValue(Constants.PREFIX));
+        config.setPrefix(commandLine.getOptionValue(Constants.PREFIX, ""));
+        if (commandLine.hasOption(Constants.LANES)) {
+            config.setLanes(Integer.parseInt(commandLine.getOptionValue(Constants.LANES)));
+        }
+        if (commandLine.hasOption(Constants.LANE_CAPACITY)) {
+            config.setLaneCapacity(Integer.parseInt(commandLine.getOptionValue(Constants.LANE_CAPACITY)));
+        }
+        if (commandLine.hasOption(Constants.METRICS_PORT)) {
+            config.setMetricsPort(Integer.parseInt(commandLine.getOptionValue(Constants.METRICS_PORT)));
+        }
+        if (commandLine.hasOption(Constants.METRICS_INTERVAL)) {
+            config.setMetricsIntervalSec(Integer.parseInt(commandLine.getOptionValue(Constants.METRICS_INTERVAL)));
+        }
+        config.setViewContainer(commandLine.getOptionValue(Constants.VIEW_CONTAINER));
+        if (commandLine.hasOption(Constants.VIEW_PARTITION_KEY)) {
+            config.setViewPartitionKey(commandLine.getOptionValue(Constants.VIEW_PARTITION_KEY));
+        }
+        if (commandLine.hasOption(Constants.VIEW_FIELDS)) {
+            config.setViewFields(Arrays.asList(commandLine.getOptionValue(Constants.VIEW_FIELDS).split("\\s*,\\s*")));
+        }
+        config.setViewAggregate(commandLine.getOptionValue(Constants.VIEW_AGGREGATE));
+        if (commandLine.hasOption(Constants.HANDLER_MODE)) {
+            config.setHandlerMode(commandLine.getOptionValue(Constants.HANDLER_MODE));
+        }
+        config.setSinks(commandLine.getOptionValue(Constants.SINKS));
+        if (commandLine.hasOption(Constants.POLL_DELAY)) {
+            config.setPollDelayMs(Long.parseLong(commandLine.getOptionValue(Constants.POLL_DELAY)));
+        }
+        if (commandLine.hasOption(Constants.MAX_ITEM_COUNT)) {
+            config.setMaxItemCount(Integer.parseInt(commandLine.getOptionValue(Constants.MAX_ITEM_COUNT)));
+        }
+        config.setAdaptive(commandLine.hasOption(Constants.ADAPTIVE));
+        config.setAdaptiveRestart(commandLine.hasOption(Constants.ADAPTIVE_RESTART));
+        if (commandLine.hasOption(Constants.MAX_POLL_DELAY)) {
+            config.setMaxPollDelayMs(Long.parseLong(commandLine.getOptionValue(Constants.MAX_POLL_DELAY)));
+        }
+        if (commandLine.hasOption(Constants.SHUTDOWN_TIMEOUT)) {
+            config.setShutdownTimeoutSec(Integer.parseInt(commandLine.getOptionValue(Constants.SHUTDOWN_TIMEOUT)));
+        }
+        if (commandLine.hasOption(Constants.DEDUP_CAPACITY)) {
+            config.setDedupCapacity(Integer.parseInt(commandLine.getOptionValue(Constants.DEDUP_CAPACITY)));
+        }
+        config.setDedupBloomFile(commandLine.getOptionValue(Constants.DEDUP_BLOOM_FILE));
+        if (commandLine.hasOption(Constants.DEDUP_BLOOM_INSERTIONS)) {
+            config.setDedupBloomInsertions(Long.parseLong(commandLine.getOptionValue(Constants.DEDUP_BLOOM_INSERTIONS)));
+        }
+        config.setDlq(commandLine.getOptionValue(Constants.DLQ));
+        if (commandLine.hasOption(Constants.DLQ_ATTEMPTS)) {
+            config.setDlqAttempts(Integer.parseInt(commandLine.getOptionValue(Constants.DLQ_ATTEMPTS)));
+        }
+        if (commandLine.hasOption(Constants.BACKFILL_FROM)) {
+            config.setBackfillFrom(Instant.parse(commandLine.getOptionValue(Constants.BACKFILL_FROM)));
+        }
+        if (commandLine.hasOption(Constants.BACKFILL_UNTIL)) {
+            config.setBackfillUntil(Instant.parse(commandLine.getOptionValue(Constants.BACKFILL_UNTIL)));
+        }
+        if (commandLine.hasOption(Constants.PARALLELISM)) {
+            config.setParallelism(Integer.parseInt(commandLine.getOptionValue(Constants.PARALLELISM)));
+        }
+        if (commandLine.hasOption(Constants.LAG_WINDOWS)) {
+            config.setLagWindows(Integer.parseInt(commandLine.getOptionValue(Constants.LAG_WINDOWS)));
+        }
+        if (commandLine.hasOption(Constants.LAG_SMOOTHING)) {
+            config.setLagSmoothingSec(Integer.parseInt(commandLine.getOptionValue(Constants.LAG_SMOOTHING)));
+        }
+        config.setWindowAggregation(commandLine.getOptionValue(Constants.WINDOW_AGGREGATION));
+        config.setWindowKey(commandLine.getOptionValue(Constants.WINDOW_KEY));
+        if (commandLine.hasOption(Constants.WINDOW_SIZE)) {
+            config.setWindowSizeSec(Integer.parseInt(commandLine.getOptionValue(Constants.WINDOW_SIZE)));
+        }
+        if (commandLine.hasOption(Constants.WINDOW_SLIDE)) {
+            config.setWindowSlideSec(Integer.parseInt(commandLine.getOptionValue(Constants.WINDOW_SLIDE)));
+        }
+        if (commandLine.hasOption(Constants.WINDOW_LATENESS)) {
+            config.setWindowLatenessSec(Integer.parseInt(commandLine.getOptionValue(Constants.WINDOW_LATENESS)));
+        }
+        if (commandLine.hasOption(Constants.WINDOW_TOP_K)) {
+            config.setWindowTopK(Integer.parseInt(commandLine.getOptionValue(Constants.WINDOW_TOP_K)));
+        }
+        config.setWindowSnapshot(commandLine.getOptionValue(Constants.WINDOW_SNAPSHOT));
         //
         ConsistencyLevel consistencyLevel = ConsistencyLevel.SESSION;
         switch (commandLine.getOptionValue(Constants.CONSISTENCY_LEVEL)) {
@@ -141,6 +405,7 @@ public class CFPApp {
                 break;
         }
         config.setReadConsistencyLevel(consistencyLevel);
+        ClientOptions.apply(commandLine, config.getClientSettings());
         //
         return config;
     }
@@ -150,49 +415,367 @@ public class CFPApp {
         System.out.println("Using Azure Cosmos DB endpoint: " + config.getEndpoint());
         //  Create sync client
         client = getCosmosClient();
+        startupTimer.mark("client");
+        //
+        resolveContainers();
+        startupTimer.mark("containers");
+        if (config.getClientSettings().isWarmUp()) {
+            List<CosmosAsyncContainer> warmed = new ArrayList<>(Arrays.asList(container, leaseContainer));
+            if (viewContainer != null) {
+                warmed.add(viewContainer);
+            }
+            CosmosClientFactory.warmUp(warmed).block();
+            startupTimer.mark("warm-up");
+        }
+        if (config.getSinks() != null) {
+            sinkHandler = new SinkHandler(SinkFactory.create(config.getSinks(), database));
+        }
+        if (config.getDedupCapacity() > 0) {
+            idempotencyCache = config.getDedupBloomFile() == null
+                    ? new IdempotencyCache(config.getDedupCapacity())
+                    : new IdempotencyCache(config.getDedupCapacity(),
+                    Paths.get(config.getDedupBloomFile()),
+                    config.getDedupBloomInsertions(),
+                    1e-6);
+            idempotencyCache.startPeriodicSave(Duration.ofSeconds(60));
+        }
+        if (config.getWindowAggregation() != null) {
+            windowAggregator = createWindowAggregator();
+        }
+        if (config.getDlq() != null) {
+            deadLetterQueue = new DeadLetterQueue(Paths.get(config.getDlq()), config.getContainer());
+        }
         //
-        createDatabaseIfNotExists();
-        createContainerIfNotExists();
-        createLeaseContainerIfNotExists();
-        System.out.println("\n\n\n\nCreating materialized view...");
+        metrics = new ChangeFeedMetrics(config.getLanes());
+        metrics.registerMBean(config.getHost());
+        if (config.getMetricsPort() >= 0) {
+            metricsServer = new MetricsHttpServer(metrics, config.getMetricsPort());
+            metricsServer.start();
+            System.out.println("Serving metrics on http://localhost:" + metricsServer.getPort() + "/metrics");
+        }
         //
-        ChangeFeedProcessor changeFeedProcessorInstance = getChangeFeedProcessor();
-        changeFeedProcessorInstance
+        // Batches are handed to the worker lanes, the lease thread only waits for them to complete
+        dispatcher = new PartitionedDispatcher(createHandler(),
+                config.getLanes(),
+                config.getLaneCapacity(),
+                PartitionedDispatcher.DEFAULT_ORDERING_KEY,
+                metrics);
+        FeedTuning tuning = new FeedTuning(Duration.ofMillis(config.getPollDelayMs()), config.getMaxItemCount());
+        if (config.isAdaptive()) {
+            tuner = new AdaptiveProcessorTuner(FeedTuningPolicy.adaptive(config.getMaxItemCount(),
+                    Duration.ofMillis(config.getPollDelayMs()),
+                    Duration.ofMillis(config.getMaxPollDelayMs()),
+                    0),
+                    AdaptiveProcessorTuner.MIN_HYSTERESIS,
+                    Duration.ofMinutes(10),
+                    config.isAdaptiveRestart() ? this::restartChangeFeedProcessor : this::recommendTuning);
+            tuning = tuner.getApplied();
+            tuner.start(Duration.ofSeconds(60));
+        }
+        if (config.getBackfillFrom() != null) {
+            startTime = backfill();
+        }
+        //
+        synchronized (this) {
+            // Shut down during the backfill, the processor is not started
+            if (shuttingDown) {
+                return;
+            }
+            changeFeedProcessor = getChangeFeedProcessor(tuner != null ? tuner.getApplied() : tuning);
+        }
+        changeFeedProcessor
                 .start()
-                .subscribeOn(Schedulers.elastic())
+                .subscribeOn(Schedulers.boundedElastic())
                 .doOnSuccess(aVoid -> {
-                    System.out.println("Successfull");
-                    //pass
+                    startupTimer.mark("processor");
+                    System.out.println("ChangeFeed Processor started on host " + config.getHost());
+                })
+                .onErrorResume(error -> {
+                    LOGGER.error("The ChangeFeed Processor failed to start", error);
+                    stopped.countDown();
+                    return Mono.empty();
                 })
                 .subscribe();
-        //
-        int counter = 0;
-        boolean isRunning = true;
-        while (isRunning) {
-            List<ChangeFeedProcessorState> states = changeFeedProcessorInstance.getCurrentState().block();
-            System.out.println("states size " + states.size());
-            for (ChangeFeedProcessorState state : states) {
-                System.out.println("ContinuationToken " + state.getContinuationToken() +
-                        " LeaseToken " + state.getLeaseToken() +
-                        " HostName " + state.getHostName() +
-                        " EstimatedLag " + state.getEstimatedLag());
+        lagEstimator = new LagEstimator(Duration.ofSeconds(config.getLagSmoothingSec()),
+                config.getLagWindows(),
+                Collections.singletonList(alert -> System.out.println("Lag alert: " + alert)));
+        // The processor state is sampled in the background, for the lease events, the lease metrics and the lag
+        leaseWatcher = new LeaseStateWatcher(() -> changeFeedProcessor,
+                config.getHost(),
+                Collections.singletonList(new LeaseEventListener() {
+                    @Override
+                    public void onLeaseAcquired(final String leaseToken) {
+                        System.out.println("Lease " + leaseToken + " acquired by " + config.getHost());
+                    }
+
+                    @Override
+                    public void onLeaseReleased(final String leaseToken, final String newOwner) {
+                        System.out.println("Lease " + leaseToken + " released by " + config.getHost()
+                                + (newOwner == null ? "" : ", now owned by " + newOwner));
+                    }
+
+                    @Override
+                    public void onStateSampled(final List<ChangeFeedProcessorState> states) {
+                        metrics.sample(states);
+                        lagEstimator.update(states);
+                        printStatus(states);
+                    }
+                }));
+        leaseWatcher.start(Duration.ofSeconds(config.getMetricsIntervalSec()));
+    }
+
+    private void printStatus(final List<ChangeFeedProcessorState> states) {
+        int owned = 0;
+        long lag = 0;
+        for (ChangeFeedProcessorState state : states) {
+            if (config.getHost().equals(state.getHostName())) {
+                owned++;
+                lag += Math.max(0, state.getEstimatedLag());
             }
-            System.out.println("Sleeping now ");
-            Thread.sleep(1000 * 60);
-            counter++;
-            System.out.println("Awake ");
-            if (counter == 500) {
-                isRunning = false;
-                System.out.println("Exiting ");
+            LOGGER.debug("ContinuationToken " + state.getContinuationToken() +
+                    " LeaseToken " + state.getLeaseToken() +
+                    " HostName " + state.getHostName() +
+                    " EstimatedLag " + state.getEstimatedLag());
+        }
+        System.out.println("Leases owned " + owned + " of " + states.size() + ", estimated lag " + lag);
+        LeaseLag hostLag = lagEstimator.getHosts().get(config.getHost());
+        if (hostLag != null) {
+            System.out.println("Lag " + hostLag);
+        }
+        if (sinkHandler != null) {
+            sinkHandler.printStats();
+        }
+        if (tuner != null) {
+            System.out.println("Tuning " + tuner.getController());
+        }
+        if (idempotencyCache != null) {
+            System.out.println("Idempotency " + idempotencyCache);
+        }
+        if (isolatingHandler != null) {
+            System.out.println("Isolation " + isolatingHandler);
+        }
+        if (windowAggregator != null) {
+            System.out.println("Windows " + windowAggregator);
+        }
+    }
 
+    /**
+     * Replay the changes made since --backfillfrom through the dispatcher, then return the time the
+     * processor must start from. Backfill and processor split the feed at the first change made at or after
+     * that time, so nothing is missed or processed twice.
+     * <p>
+     * The start time of a processor only applies to leases it creates; when leases already exist for the
+     * prefix, the handoff happened in an earlier run and the processor simply resumes from its leases.
+     * Interrupted backfills resume from their checkpoints, kept in the lease container, with the target time
+     * they were started with.
+     */
+    private Instant backfill() throws Exception {
+        if (leasesExist()) {
+            System.out.println("Leases already exist for prefix '" + config.getPrefix() + "' and container "
+                    + config.getContainer() + ", the processor resumes from them and the backfill is skipped");
+            return null;
+        }
+        String checkpointPrefix = config.getPrefix() + config.getContainer() + ".cfp.";
+        try (CheckpointStore checkpointStore = new BatchingCheckpointStore(
+                new CosmosCheckpointStore(leaseContainer, checkpointPrefix),
+                config.getCheckpointPages(),
+                Duration.ofMillis(config.getCheckpointIntervalMs()))) {
+            // Change feed timestamps have a resolution of one second
+            String savedUntil = checkpointStore.load(BACKFILL_UNTIL_KEY);
+            Instant until = savedUntil != null
+                    ? Instant.parse(savedUntil)
+                    : config.getBackfillUntil() != null ? config.getBackfillUntil() : Instant.now();
+            until = Instant.ofEpochSecond(until.getEpochSecond());
+            checkpointStore.save(BACKFILL_UNTIL_KEY, until.toString());
+            checkpointStore.flush();
+            //
+            System.out.println("Backfilling the changes from " + config.getBackfillFrom() + " until " + until
+                    + " with " + config.getParallelism() + " workers");
+            long start = System.currentTimeMillis();
+            FeedRangePullEngine engine = new FeedRangePullEngine(container,
+                    checkpointStore,
+                    config.getParallelism(),
+                    config.getPageSize());
+            backfillEngine = engine;
+            try {
+                if (!isShuttingDown()) {
+                    engine.backfill(config.getBackfillFrom(), until, page -> dispatcher.accept(page.getDocuments()))
+                            .block();
+                }
+            } catch (RuntimeException e) {
+                // A page read while stopping is refused by the quiesced dispatcher and read again on the next start
+                if (!isShuttingDown()) {
+                    throw e;
+                }
+            } finally {
+                backfillEngine = null;
+            }
+            if (isShuttingDown()) {
+                System.out.println("Backfill stopped after " + engine.getDocuments()
+                        + " documents, it resumes from its checkpoints on the next start");
+                return null;
             }
+            System.out.println(String.format("Backfill finished: %d documents in %d pages, %.2f RU, %d ms",
+                    engine.getDocuments(),
+                    engine.getPages(),
+                    engine.getRequestCharge(),
+                    System.currentTimeMillis() - start));
+            return until;
         }
     }
-    public static int CHANGE_FEED_COUNTER = 0;
 
-    private ChangeFeedProcessor getChangeFeedProcessor() {
+    /**
+     * The processor names its leases {@code <prefix><account host>_<database rid>_<container rid>..<range>}, so
+     * the rids tell the leases of the monitored container from those of other processors sharing the lease
+     * container, even with an empty prefix.
+     */
+    private boolean leasesExist() {
+        String databaseRid = database.read().block().getProperties().getResourceId();
+        String containerRid = container.read().block().getProperties().getResourceId();
+        SqlQuerySpec query = new SqlQuerySpec(
+                "SELECT VALUE COUNT(1) FROM c WHERE STARTSWITH(c.id, @prefix) AND CONTAINS(c.id, @container)"
+                        + " AND IS_DEFINED(c.LeaseToken)",
+                new SqlParameter("@prefix", config.getPrefix()),
+                new SqlParameter("@container", "_" + databaseRid + "_" + containerRid + ".."));
+        Long count = leaseContainer.queryItems(query, new CosmosQueryRequestOptions(), Long.class)
+                .blockFirst();
+        return count != null && count > 0;
+    }
+
+    /**
+     * Graceful shutdown: refuse new batches, let the batches in flight complete and be checkpointed, then
+     * stop the processor so its leases are released right away instead of expiring, and the next owner
+     * resumes from the last checkpoint without replaying a burst of already processed changes.
+     */
+    private void shutdown() {
+        synchronized (this) {
+            if (shuttingDown) {
+                return;
+            }
+            shuttingDown = true;
+        }
+        System.out.println("Stopping the ChangeFeed Processor");
+        Duration timeout = Duration.ofSeconds(config.getShutdownTimeoutSec());
+        try {
+            if (leaseWatcher != null) {
+                leaseWatcher.close();
+            }
+            if (tuner != null) {
+                tuner.close();
+            }
+            // The backfill stops after the pages being read, before the dispatcher refuses new batches
+            FeedRangePullEngine engine = backfillEngine;
+            if (engine != null) {
+                engine.stop();
+            }
+            if (dispatcher != null && !dispatcher.quiesce(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                System.out.println("Batches still in flight after " + timeout.getSeconds() + "s, they will be redelivered");
+            }
+            synchronized (this) {
+                if (changeFeedProcessor != null) {
+                    changeFeedProcessor.stop().block(timeout);
+                }
+            }
+            System.out.println("ChangeFeed Processor stopped, leases released");
+        } catch (Exception e) {
+            LOGGER.error("Failed to stop the ChangeFeed Processor", e);
+        } finally {
+            stopped.countDown();
+        }
+        // Keep the JVM alive until the main thread closed the resources
+        try {
+            closed.await(timeout.getSeconds(), TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized boolean isShuttingDown() {
+        return shuttingDown;
+    }
+
+    /**
+     * Without {@code --adaptiverestart} the settings of a running processor are left as they are: rebuilding it
+     * releases every lease of the processor, so across the fleet the leases are rebalanced and the batches not
+     * yet checkpointed are delivered again. The settings only apply to a processor not started yet, after a
+     * backfill.
+     */
+    private void recommendTuning(final FeedTuning tuning) {
+        if (changeFeedProcessor != null) {
+            System.out.println("Recommended processor settings " + tuning
+                    + ", not applied without --adaptiverestart");
+        }
+    }
+
+    /**
+     * Replace the running processor with one built with new settings; the leases keep their continuation.
+     * <p>
+     * The processors are stopped and started outside the monitor, within the shutdown timeout, so a shutdown
+     * is never blocked behind a restart. When the new processor does not start, one is started again with the
+     * settings in use before; when that fails too the application stops.
+     */
+    private void restartChangeFeedProcessor(final FeedTuning tuning) {
+        ChangeFeedProcessor previous;
+        synchronized (this) {
+            // Not started yet, still backfilling: the processor is built with the applied tuning
+            if (shuttingDown || changeFeedProcessor == null) {
+                return;
+            }
+            previous = changeFeedProcessor;
+        }
+        Duration timeout = Duration.ofSeconds(config.getShutdownTimeoutSec());
+        System.out.println("Restarting the ChangeFeed Processor with " + tuning);
+        previous.stop().block(timeout);
+        ChangeFeedProcessor replacement;
+        try {
+            replacement = startChangeFeedProcessor(tuning, timeout);
+        } catch (RuntimeException e) {
+            LOGGER.error("The ChangeFeed Processor failed to restart with " + tuning + ", restoring "
+                    + tuner.getApplied(), e);
+            try {
+                replacement = startChangeFeedProcessor(tuner.getApplied(), timeout);
+            } catch (RuntimeException rollback) {
+                LOGGER.error("The ChangeFeed Processor failed to restart with " + tuner.getApplied(), rollback);
+                stopped.countDown();
+                throw e;
+            }
+            swapChangeFeedProcessor(replacement, timeout);
+            throw e;
+        }
+        swapChangeFeedProcessor(replacement, timeout);
+    }
+
+    private ChangeFeedProcessor startChangeFeedProcessor(final FeedTuning tuning, final Duration timeout) {
+        ChangeFeedProcessor processor = getChangeFeedProcessor(tuning);
+        try {
+            processor.start().block(timeout);
+        } catch (RuntimeException e) {
+            try {
+                processor.stop().block(timeout);
+            } catch (RuntimeException stop) {
+                e.addSuppressed(stop);
+            }
+            throw e;
+        }
+        return processor;
+    }
+
+    /**
+     * Make a started processor the current one, or stop it when a shutdown began while it was starting.
+     */
+    private void swapChangeFeedProcessor(final ChangeFeedProcessor replacement, final Duration timeout) {
+        synchronized (this) {
+            if (!shuttingDown) {
+                changeFeedProcessor = replacement;
+                return;
+            }
+        }
+        replacement.stop().block(timeout);
+    }
+
+    private ChangeFeedProcessor getChangeFeedProcessor(final FeedTuning tuning) {
         ChangeFeedProcessorOptions options = new ChangeFeedProcessorOptions();
-        //options.setFeedPollDelay(Duration.ofMinutes(1));
+        options.setFeedPollDelay(tuning.getPollDelay());
         /*
         Sets the maximum number of items to be returned in the enumeration operation.
         NOTE: There are some cases where the number of items returned from the Change Feed can be higher than
@@ -201,34 +784,34 @@ public class CFPApp {
         they share the same transaction and the same bookkeeping, so they will be returned together when read through
         the Change Feed.
          */
-//        options.setMaxItemCount(10);
+        options.setMaxItemCount(tuning.getMaxItemCount());
         //This option can be used when lease store is not initialized and it is ignored if a lease item exists
         // and has continuation token that is not null.
 //        options.setStartContinuation("31");
 //        options.setStartFromBeginning(true);
+        if (startTime != null) {
+            options.setStartTime(startTime);
+        }
+        if (config.getPrefix() != null && !config.getPrefix().isEmpty()) {
+            options.setLeasePrefix(config.getPrefix());
+        }
 
         String hostName = config.getHost();
         /*ChangeFeedPolicy
                 CosmosChangeFeedRequestOptions*/
-
         return new ChangeFeedProcessorBuilder()
                 .hostName(hostName)
                 .options(options)
                 .feedContainer(container)
                 .leaseContainer(leaseContainer)
                 .handleChanges((List<JsonNode> docs) -> {
-                    // Avoid doing any time consuming processing in this block as it might impact the next batch
                     System.out.println("\n----------\n----------New changes received " + new Date());
-                    //
-                    for (JsonNode document : docs) {
-                        try {
-                            CHANGE_FEED_COUNTER++;
-                            System.out.println("DOCUMENT RECEIVED: " + OBJECT_MAPPER.writerWithDefaultPrettyPrinter()
-                                    .writeValueAsString(document) + " MESSAGE_COUNT " + CHANGE_FEED_COUNTER);
-                        } catch (JsonProcessingException e) {
-                            LOGGER.error("JsonProcessingException ", e);
-                            e.printStackTrace();
-                        }
+                    // Returns once every lane finished its slice, the lease is checkpointed afterwards
+                    long start = System.nanoTime();
+                    dispatcher.accept(docs);
+                    startupTimer.firstOperation();
+                    if (tuner != null) {
+                        tuner.observe(docs.size(), System.nanoTime() - start);
                     }
                     System.out.println("Finished processing changes \n----------\n----------");
                 })
@@ -236,120 +819,93 @@ public class CFPApp {
     }
 
 
-    private CosmosAsyncClient getCosmosClient() {
-        //
-        //DirectConnectionConfig dconfig = new DirectConnectionConfig();
-        //dconfig.setMaxConnectionsPerEndpoint(10);
-        //dconfig.setMaxRequestsPerConnection(10);
-        //
-        return new CosmosClientBuilder()
-                .endpoint(config.getEndpoint())
-                .key(config.getKey())
-                .userAgentSuffix(userAgentSuffix)
-                .consistencyLevel(config.getReadConsistencyLevel())
-                .contentResponseOnWriteEnabled(true)
-                .buildAsyncClient();
+    private WindowedAggregator createWindowAggregator() throws IOException {
+        String[] spec = config.getWindowAggregation().split(":", 2);
+        Aggregation aggregation = Aggregation.valueOf(spec[0].trim().toUpperCase());
+        Duration size = Duration.ofSeconds(config.getWindowSizeSec());
+        WindowedAggregator aggregator = new WindowedAggregator(config.getWindowAggregation(),
+                config.getWindowKey() == null ? null : FieldPath.compile(config.getWindowKey()),
+                aggregation,
+                spec.length > 1 ? FieldPath.compile(spec[1].trim()) : null,
+                size,
+                config.getWindowSlideSec() > 0 ? Duration.ofSeconds(config.getWindowSlideSec()) : size,
+                Duration.ofSeconds(config.getWindowLatenessSec()),
+                config.getWindowTopK(),
+                result -> System.out.println("Window " + result));
+        if (config.getWindowSnapshot() != null) {
+            aggregator.restore(Paths.get(config.getWindowSnapshot()));
+        }
+        aggregator.start(Duration.ofSeconds(60));
+        return aggregator;
     }
 
-    private void createDatabaseIfNotExists() throws Exception {
-        System.out.println("Create database " + config.getDatabase() + " if not exists.");
-        //  Create database if not exists
-        client.createDatabaseIfNotExists(config.getDatabase()).block();
-        database = client.getDatabase(config.getDatabase());
-        //
-        System.out.println("Checking database " + database.getId() + " completed!\n");
+    private ChangeFeedHandler createHandler() {
+        ChangeFeedHandler handler = createDownstreamHandler();
+        if (windowAggregator != null) {
+            handler = new WindowAggregatingHandler(handler, windowAggregator);
+        }
+        if (deadLetterQueue != null) {
+            // A document failing after its retries is dead-lettered instead of failing its whole batch
+            isolatingHandler = new IsolatingHandler(handler, deadLetterQueue, config.getDlqAttempts(), 200, 0.5);
+            handler = isolatingHandler;
+        }
+        if (idempotencyCache != null) {
+            // Replayed versions are dropped before they reach the view or the sinks
+            return new DeduplicatingHandler(handler, idempotencyCache);
+        }
+        return handler;
     }
 
-    private void createContainerIfNotExists() throws Exception {
-        System.out.println("Create container " + config.getContainer() + " if not exists.");
-        //
-        CosmosAsyncDatabase databaseLink = client.getDatabase(config.getDatabase());
-        CosmosAsyncContainer collectionLink = databaseLink.getContainer(config.getContainer());
-        CosmosContainerResponse containerResponse = null;
-
-        try {
-            containerResponse = collectionLink.read().block();
-
-            if (containerResponse != null) {
-                //throw new IllegalArgumentException(String.format("Collection %s already exists in database %s.", collectionName, databaseName));
-                container = databaseLink.getContainer(config.getContainer());
-                return;
-            }
-        } catch (RuntimeException ex) {
-            if (ex instanceof CosmosException) {
-                CosmosException cosmosClientException = (CosmosException) ex;
-
-                if (cosmosClientException.getStatusCode() != 404) {
-                    throw ex;
-                }
-            } else {
-                throw ex;
-            }
+    private ChangeFeedHandler createDownstreamHandler() {
+        if (sinkHandler != null) {
+            return new RawForwardingHandler(sinkHandler);
         }
-        //
-        CosmosContainerProperties containerSettings = new CosmosContainerProperties(config.getContainer(),
-                "/partitionKey");
-        containerSettings.setDefaultTimeToLiveInSeconds(-1);
-        CosmosContainerRequestOptions requestOptions = new CosmosContainerRequestOptions();
-        //ThroughputProperties throughputProperties = ThroughputProperties.createManualThroughput(20000);
-        containerResponse = databaseLink.createContainer(containerSettings, requestOptions).block();
-        //
-        if (containerResponse == null) {
-            throw new RuntimeException(String.format("Failed to create collection %s in database %s.",
-                    config.getContainer(),
-                    config.getDatabase()));
+        if (viewContainer != null && config.getViewAggregate() != null) {
+            String[] spec = config.getViewAggregate().split(":", 2);
+            return new AggregatingViewBuilder(viewContainer, new CountSumAggregation(FieldPath.compile(spec[0].trim()),
+                    spec.length > 1 ? FieldPath.compile(spec[1].trim()) : null));
         }
-        //
-        container = databaseLink.getContainer(config.getContainer());
-        //
-        System.out.println("Checking container " + container.getId() + " completed!\n");
+        if (viewContainer != null) {
+            return new MaterializedViewBuilder(viewContainer,
+                    new FieldProjection(config.getViewPartitionKey(), config.getViewFields()));
+        }
+        if (Constants.HANDLER_MODE_RAW.equalsIgnoreCase(config.getHandlerMode())) {
+            return new RawForwardingHandler(new ConsoleRawHandler());
+        }
+        return new LoggingChangeFeedHandler();
     }
 
-    private void createLeaseContainerIfNotExists() throws Exception {
-        System.out.println("Create container " + config.getLeaseContainer() + " if not exists.");
-//
-        CosmosAsyncDatabase databaseLink = client.getDatabase(config.getDatabase());
-        CosmosAsyncContainer collectionLink = databaseLink.getContainer(config.getLeaseContainer());
-
-        CosmosContainerResponse containerResponse = null;
-
-        try {
-            containerResponse = collectionLink.read().block();
-
-            if (containerResponse != null) {
-                //
-                leaseContainer = databaseLink.getContainer(config.getLeaseContainer());
-                return;
-            }
-        } catch (RuntimeException ex) {
-            if (ex instanceof CosmosException) {
-                CosmosException cosmosClientException = (CosmosException) ex;
+    private CosmosAsyncClient getCosmosClient() {
+        ClientSettings settings = config.getClientSettings();
+        settings.setEndpoint(config.getEndpoint());
+        settings.setKey(config.getKey());
+        settings.setUserAgentSuffix(userAgentSuffix);
+        settings.setConsistencyLevel(config.getReadConsistencyLevel());
+        return CosmosClientFactory.getClient(settings);
+    }
 
-                if (cosmosClientException.getStatusCode() != 404) {
-                    throw ex;
-                }
-            } else {
-                throw ex;
-            }
+    /**
+     * Read the monitored, lease and view containers in parallel, creating the missing ones.
+     */
+    private void resolveContainers() {
+        List<ContainerSpec> specs = new ArrayList<>();
+        specs.add(ContainerSpec.createIfNotExists(config.getContainer(), "/partitionKey"));
+        specs.add(ContainerSpec.createIfNotExists(config.getLeaseContainer(), "/id"));
+        if (config.getViewContainer() != null) {
+            System.out.println("\n\n\n\nCreating materialized view...");
+            specs.add(ContainerSpec.createIfNotExists(config.getViewContainer(), "/partitionKey"));
         }
+        System.out.println("Create containers " + specs.stream().map(ContainerSpec::getId).collect(Collectors.toList())
+                + " if not exist.");
+        CosmosClientFactory.getMetadataCache(client).containers(config.getDatabase(), specs).block();
         //
-        CosmosContainerProperties containerSettings = new CosmosContainerProperties(
-                config.getLeaseContainer(),
-                "/id");
-        containerSettings.setDefaultTimeToLiveInSeconds(-1);
-        CosmosContainerRequestOptions requestOptions = new CosmosContainerRequestOptions();
-        //ThroughputProperties throughputProperties = ThroughputProperties.createManualThroughput(20000);
-        containerResponse = databaseLink.createContainer(containerSettings, requestOptions).block();
-        //
-        if (containerResponse == null) {
-            throw new RuntimeException(String.format("Failed to create collection %s in database %s.",
-                    config.getLeaseContainer(),
-                    config.getDatabase()));
+        database = client.getDatabase(config.getDatabase());
+        container = database.getContainer(config.getContainer());
+        leaseContainer = database.getContainer(config.getLeaseContainer());
+        if (config.getViewContainer() != null) {
+            viewContainer = database.getContainer(config.getViewContainer());
         }
-        //
-        leaseContainer = databaseLink.getContainer(config.getLeaseContainer());
-        //
-        System.out.println("Checking lease container " + container.getId() + " completed!\n");
+        System.out.println("Checking containers completed!\n");
     }
 
 }
@@ -6,17 +6,40 @@ package fc.azure.cosmos.cfp;
 import com.azure.cosmos.*;
 import com.azure.cosmos.implementation.Utils;
 import com.azure.cosmos.models.*;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import fc.azure.cosmos.bootstrap.ClientOptions;
+import fc.azure.cosmos.bootstrap.ClientSettings;
+import fc.azure.cosmos.bootstrap.ContainerSpec;
+import fc.azure.cosmos.bootstrap.CosmosClientFactory;
+import fc.azure.cosmos.bootstrap.StartupTimer;
+import fc.azure.cosmos.cfp.checkpoint.BatchingCheckpointStore;
+import fc.azure.cosmos.cfp.checkpoint.CheckpointStore;
+import fc.azure.cosmos.cfp.checkpoint.CosmosCheckpointStore;
+import fc.azure.cosmos.cfp.checkpoint.FileCheckpointStore;
+import fc.azure.cosmos.cfp.event.TombstoneIndex;
+import fc.azure.cosmos.cfp.event.TombstoneTrackingHandler;
+import fc.azure.cosmos.cfp.handler.ChangeFeedHandler;
+import fc.azure.cosmos.cfp.handler.RawForwardingHandler;
+import fc.azure.cosmos.cfp.pull.FeedRangePullEngine;
+import fc.azure.cosmos.cfp.pull.PageConsumer;
+import fc.azure.cosmos.cfp.sink.SinkFactory;
+import fc.azure.cosmos.cfp.sink.SinkHandler;
+import fc.azure.cosmos.cfp.tuning.AdaptiveFeedController;
+import fc.azure.cosmos.cfp.tuning.FeedTuningPolicy;
 import org.apache.commons.cli.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.time.Duration;
-import java.util.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 public class CFPullApp {
     //
@@ -25,6 +48,8 @@ public class CFPullApp {
     private CosmosAsyncDatabase database;
     private CosmosAsyncContainer container;
     private CosmosAsyncContainer leaseContainer;
+    private volatile FeedRangePullEngine engine;
+    private final StartupTimer startupTimer = StartupTimer.sinceJvmStart("CFPullApp");
     private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
     //
     private String userAgentSuffix = "CosmosDBServiceCFP_FC";
@@ -32,7 +57,7 @@ public class CFPullApp {
     private static final Logger LOGGER = LoggerFactory.getLogger(CFPullApp.class);
     //
     public void close() {
-        client.close();
+        CosmosClientFactory.close(client);
     }
 
     //
@@ -72,6 +97,30 @@ public class CFPullApp {
          * --container <container name>
          * --key <access key>
          * --consistencylevel SESSION
+         * --parallelism <number of feed ranges drained concurrently>
+         * --pagesize <maximum documents per page>
+         * --checkpointstore <file|cosmos>
+         * --checkpointfile <checkpoint log file, for the file store>
+         * --leasecontainer <lease container name, for the cosmos store>
+         * --checkpointpages <pages read before the checkpoints are flushed>
+         * --checkpointinterval <milliseconds before the checkpoints are flushed>
+         * --startfromnow <start ranges without a checkpoint from now instead of the beginning>
+         * --backfillfrom <ISO-8601 instant, replay the changes made since then>
+         * --backfilluntil <ISO-8601 instant, stop each range at the first change made at or after it>
+         * --sinks <comma separated file:<dir>, log:<dir> or cosmos:<container> sinks>
+         * --follow <keep polling the feed ranges once caught up, until stopped>
+         * --polldelay <milliseconds between polls of a caught up range, with --follow>
+         * --adaptive <tune the page size and poll delay of each range from the observed load>
+         * --maxpolldelay <milliseconds idle ranges back off to, with --adaptive>
+         * --maxpagecharge <request units per page above which pages are made smaller, with --adaptive>
+         * --fullfidelity <read every version and delete, with the operation type and previous image>
+         * --fullfidelityretention <minutes the container keeps versions and deletes, with --fullfidelity>
+         * --tombstones <deleted documents remembered to drop stale versions, with --fullfidelity>
+         * --connectionmode <direct|gateway>
+         * --maxconnections <direct connections per replica endpoint>
+         * --maxrequests <concurrent requests per direct connection>
+         * --gatewaypoolsize <gateway connection pool size>
+         * --warmup <open the connections to every partition of the container before reading>
          *
          * Examples
          * --endpoint <cosmos account> --database demo --container <container name> --key <access key>
@@ -85,6 +134,26 @@ public class CFPullApp {
         commandLineOptions.addOption(Option.builder().longOpt(Constants.CONTAINER).required(true).hasArg().desc("Container name").build());
         commandLineOptions.addOption(Option.builder().longOpt(Constants.KEY).required(true).hasArg().desc("Access key").build());
         commandLineOptions.addOption(Option.builder().longOpt(Constants.CONSISTENCY_LEVEL).required(false).hasArg().desc("Read consistency level (Eventual/CONSISTENT_PREFIX/SESSION/BOUNDED_STALENESS)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.PARALLELISM).required(false).hasArg().desc("Number of feed ranges drained concurrently").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.PAGE_SIZE).required(false).hasArg().desc("Maximum documents per page").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.CHECKPOINT_STORE).required(false).hasArg().desc("Checkpoint store (file/cosmos)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.CHECKPOINT_FILE).required(false).hasArg().desc("Checkpoint log file, for the file store").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.LEASE_CONTAINER).required(false).hasArg().desc("Lease container name, for the cosmos store").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.CHECKPOINT_PAGES).required(false).hasArg().desc("Pages read before the checkpoints are flushed").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.CHECKPOINT_INTERVAL).required(false).hasArg().desc("Milliseconds before the checkpoints are flushed").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.START_FROM_NOW).required(false).desc("Start feed ranges without a checkpoint from now").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.BACKFILL_FROM).required(false).hasArg().desc("Replay the changes made since this ISO-8601 instant").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.BACKFILL_UNTIL).required(false).hasArg().desc("Stop each range at the first change made at or after this ISO-8601 instant").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.SINKS).required(false).hasArg().desc("Comma separated sinks (file:<dir>, log:<dir>, cosmos:<container>)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.FOLLOW).required(false).desc("Keep polling the feed ranges once caught up, until stopped").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.POLL_DELAY).required(false).hasArg().desc("Milliseconds between polls of a caught up range (default: 5000)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.ADAPTIVE).required(false).desc("Tune the page size and poll delay of each range from the observed load").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.MAX_POLL_DELAY).required(false).hasArg().desc("Milliseconds idle ranges back off to, with --adaptive").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.MAX_PAGE_CHARGE).required(false).hasArg().desc("Request units per page above which pages are made smaller, with --adaptive").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.FULL_FIDELITY).required(false).desc("Read every version and delete, with the operation type and previous image").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.FULL_FIDELITY_RETENTION).required(false).hasArg().desc("Minutes the container keeps versions and deletes, with --fullfidelity (default: 10)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.TOMBSTONES).required(false).hasArg().desc("Deleted documents remembered to drop stale versions, with --fullfidelity (default: 1000000)").build());
+        ClientOptions.addTo(commandLineOptions);
         //
         CommandLineParser parser = new DefaultParser();
         CommandLine commandLine = null;
@@ -106,6 +175,51 @@ public class CFPullApp {
         config.setContainer(commandLine.getOptionValue(Constants.CONTAINER));
         config.setDatabase(commandLine.getOptionValue(Constants.DATABASE));
         config.setKey(commandLine.getOptionValue(Constants.KEY));
+        if (commandLine.hasOption(Constants.PARALLELISM)) {
+            config.setParallelism(Integer.parseInt(commandLine.getOptionValue(Constants.PARALLELISM)));
+        }
+        if (commandLine.hasOption(Constants.PAGE_SIZE)) {
+            config.setPageSize(Integer.parseInt(commandLine.getOptionValue(Constants.PAGE_SIZE)));
+        }
+        if (commandLine.hasOption(Constants.CHECKPOINT_STORE)) {
+            config.setCheckpointStore(commandLine.getOptionValue(Constants.CHECKPOINT_STORE));
+        }
+        if (commandLine.hasOption(Constants.CHECKPOINT_FILE)) {
+            config.setCheckpointFile(commandLine.getOptionValue(Constants.CHECKPOINT_FILE));
+        }
+        config.setLeaseContainer(commandLine.getOptionValue(Constants.LEASE_CONTAINER));
+        if (commandLine.hasOption(Constants.CHECKPOINT_PAGES)) {
+            config.setCheckpointPages(Integer.parseInt(commandLine.getOptionValue(Constants.CHECKPOINT_PAGES)));
+        }
+        if (commandLine.hasOption(Constants.CHECKPOINT_INTERVAL)) {
+            config.setCheckpointIntervalMs(Long.parseLong(commandLine.getOptionValue(Constants.CHECKPOINT_INTERVAL)));
+        }
+        config.setStartFromNow(commandLine.hasOption(Constants.START_FROM_NOW));
+        if (commandLine.hasOption(Constants.BACKFILL_FROM)) {
+            config.setBackfillFrom(Instant.parse(commandLine.getOptionValue(Constants.BACKFILL_FROM)));
+        }
+        if (commandLine.hasOption(Constants.BACKFILL_UNTIL)) {
+            config.setBackfillUntil(Instant.parse(commandLine.getOptionValue(Constants.BACKFILL_UNTIL)));
+        }
+        config.setSinks(commandLine.getOptionValue(Constants.SINKS));
+        config.setFollow(commandLine.hasOption(Constants.FOLLOW));
+        if (commandLine.hasOption(Constants.POLL_DELAY)) {
+            config.setPollDelayMs(Long.parseLong(commandLine.getOptionValue(Constants.POLL_DELAY)));
+        }
+        config.setAdaptive(commandLine.hasOption(Constants.ADAPTIVE));
+        if (commandLine.hasOption(Constants.MAX_POLL_DELAY)) {
+            config.setMaxPollDelayMs(Long.parseLong(commandLine.getOptionValue(Constants.MAX_POLL_DELAY)));
+        }
+        if (commandLine.hasOption(Constants.MAX_PAGE_CHARGE)) {
+            config.setMaxPageCharge(Double.parseDouble(commandLine.getOptionValue(Constants.MAX_PAGE_CHARGE)));
+        }
+        config.setFullFidelity(commandLine.hasOption(Constants.FULL_FIDELITY));
+        if (commandLine.hasOption(Constants.FULL_FIDELITY_RETENTION)) {
+            config.setFullFidelityRetentionMinutes(Integer.parseInt(commandLine.getOptionValue(Constants.FULL_FIDELITY_RETENTION)));
+        }
+        if (commandLine.hasOption(Constants.TOMBSTONES)) {
+            config.setTombstoneCapacity(Integer.parseInt(commandLine.getOptionValue(Constants.TOMBSTONES)));
+        }
         //
         ConsistencyLevel consistencyLevel = ConsistencyLevel.SESSION;
         switch (commandLine.getOptionValue(Constants.CONSISTENCY_LEVEL)) {
@@ -130,6 +244,7 @@ public class CFPullApp {
                 break;
         }
         config.setReadConsistencyLevel(consistencyLevel);
+        ClientOptions.apply(commandLine, config.getClientSettings());
         //
         return config;
     }
@@ -139,158 +254,182 @@ public class CFPullApp {
         System.out.println("Using Azure Cosmos DB endpoint: " + config.getEndpoint());
         //  Create sync client
         client = getCosmosClient();
+        startupTimer.mark("client");
         //
-        createDatabaseIfNotExists();
-        createContainerIfNotExists();
+        resolveContainers();
+        startupTimer.mark("containers");
+        if (config.getClientSettings().isWarmUp()) {
+            CosmosClientFactory.warmUp(leaseContainer == null
+                    ? Collections.singletonList(container)
+                    : Arrays.asList(container, leaseContainer)).block();
+            startupTimer.mark("warm-up");
+        }
         //
         System.out.println("Pull Model Started");
-        // Pull data from beginning for all full range of partitions
-        CosmosChangeFeedRequestOptions options1 = CosmosChangeFeedRequestOptions
-                .createForProcessingFromBeginning(FeedRange.forFullRange());
-        CosmosChangeFeedRequestOptions options = CosmosChangeFeedRequestOptions
-                .createForProcessingFromBeginning(FeedRange.forLogicalPartition(
-                        new PartitionKey("1")
-                ));
-        // Pull data from beginning for logical partition
-        CosmosChangeFeedRequestOptions options2 = CosmosChangeFeedRequestOptions
-                .createForProcessingFromNow(FeedRange.forFullRange());
-        Map<Integer, String> continuations = new HashMap<>();
-
-        List<ObjectNode> results = container
-                .queryChangeFeed(options, ObjectNode.class)
-                // NOTE - in real app you would need delaying persisting the
-                // continuation until you retrieve the next one
-                .handle((r) -> continuations.put(0, r.getContinuationToken()))
-                .collectList()
-                .block();
-
-        System.out.println(
-                String.format(
-                        "Continuation AFTER: %s, records retrieved: %d",
-                        new String(
-                                Base64.getUrlDecoder().decode(continuations.get(0)),
-                                StandardCharsets.UTF_8),
-                        results.size()));
-
+        // In follow mode Ctrl+C stops the ranges and waits for the last checkpoints to be flushed
+        CountDownLatch finished = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (engine != null) {
+                engine.stop();
+            }
+            try {
+                finished.await(config.getMaxPollDelayMs() + 30_000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        // Drain every feed range of the container, resuming each one from its checkpoint
+        try (CheckpointStore checkpointStore = createCheckpointStore()) {
+            FeedTuningPolicy tuningPolicy = config.isAdaptive()
+                    ? FeedTuningPolicy.adaptive(config.getPageSize(),
+                            Duration.ofMillis(config.getPollDelayMs()),
+                            Duration.ofMillis(config.getMaxPollDelayMs()),
+                            config.getMaxPageCharge())
+                    : FeedTuningPolicy.fixed(config.getPageSize(), Duration.ofMillis(config.getPollDelayMs()));
+            engine = new FeedRangePullEngine(container,
+                    checkpointStore,
+                    config.getParallelism(),
+                    tuningPolicy);
+            engine.setFullFidelity(config.isFullFidelity());
+            long start = System.currentTimeMillis();
+            SinkHandler sinkHandler = config.getSinks() == null
+                    ? null
+                    : new SinkHandler(SinkFactory.create(config.getSinks(), database));
+            ChangeFeedHandler forwarder = sinkHandler == null ? null : new RawForwardingHandler(sinkHandler);
+            // Deletes are remembered so that older versions read afterwards do not reach the sinks
+            TombstoneTrackingHandler tracker = null;
+            if (config.isFullFidelity()) {
+                tracker = new TombstoneTrackingHandler(forwarder == null ? docs -> { } : forwarder,
+                        new TombstoneIndex(config.getTombstoneCapacity()),
+                        "partitionKey");
+                forwarder = tracker;
+            }
+            final ChangeFeedHandler downstream = forwarder;
+            PageConsumer consumer = page -> {
+                System.out.println(String.format("Feed range %s: %d records retrieved at cost %.2f RU",
+                        page.getFeedRange(),
+                        page.getDocuments().size(),
+                        page.getRequestCharge()));
+                startupTimer.firstOperation();
+                // The page is only checkpointed once every sink flushed it
+                if (downstream != null && !page.getDocuments().isEmpty()) {
+                    downstream.handle(page.getDocuments());
+                }
+            };
+            FeedRangePullEngine.StartFrom startFrom = config.isStartFromNow()
+                    ? FeedRangePullEngine.StartFrom.NOW
+                    : FeedRangePullEngine.StartFrom.BEGINNING;
+            try {
+                if (config.getBackfillFrom() != null) {
+                    engine.backfill(config.getBackfillFrom(), config.getBackfillUntil(), consumer).block();
+                } else if (config.isFollow()) {
+                    engine.follow(startFrom, consumer).block();
+                } else {
+                    engine.drain(startFrom, consumer).block();
+                }
+            } finally {
+                if (sinkHandler != null) {
+                    sinkHandler.close();
+                }
+            }
+            //
+            System.out.println(String.format("Records retrieved: %d in %d pages, %.2f RU, %d ms",
+                    engine.getDocuments(),
+                    engine.getPages(),
+                    engine.getRequestCharge(),
+                    System.currentTimeMillis() - start));
+            if (tracker != null) {
+                System.out.println("Changes " + tracker);
+            }
+            if (config.isAdaptive()) {
+                for (Map.Entry<String, AdaptiveFeedController> range : engine.getControllers().entrySet()) {
+                    System.out.println("Feed range " + range.getKey() + ": " + range.getValue());
+                }
+            }
+        } finally {
+            finished.countDown();
+        }
         System.out.println("Pull Model Finished");
 
     }
 
-    private CosmosAsyncClient getCosmosClient() {
-        //
-        //DirectConnectionConfig dconfig = new DirectConnectionConfig();
-        //dconfig.setMaxConnectionsPerEndpoint(10);
-        //dconfig.setMaxRequestsPerConnection(10);
-        //
-        return new CosmosClientBuilder()
-                .endpoint(config.getEndpoint())
-                .key(config.getKey())
-                .userAgentSuffix(userAgentSuffix)
-                .consistencyLevel(config.getReadConsistencyLevel())
-                .contentResponseOnWriteEnabled(true)
-                .buildAsyncClient();
+    private CheckpointStore createCheckpointStore() throws Exception {
+        CheckpointStore checkpointStore;
+        if (Constants.CHECKPOINT_STORE_COSMOS.equalsIgnoreCase(config.getCheckpointStore())) {
+            if (config.getLeaseContainer() == null) {
+                throw new IllegalArgumentException("The cosmos checkpoint store requires --" + Constants.LEASE_CONTAINER);
+            }
+            checkpointStore = new CosmosCheckpointStore(leaseContainer,
+                    config.getPrefix() + config.getContainer() + ".pull.");
+        } else {
+            checkpointStore = new FileCheckpointStore(Paths.get(config.getCheckpointFile()));
+        }
+        // Checkpoints are written every N pages or T ms rather than on every page
+        return new BatchingCheckpointStore(checkpointStore,
+                config.getCheckpointPages(),
+                Duration.ofMillis(config.getCheckpointIntervalMs()));
     }
 
-    private void createDatabaseIfNotExists() throws Exception {
-        System.out.println("Create database " + config.getDatabase() + " if not exists.");
-        //  Create database if not exists
-        client.createDatabaseIfNotExists(config.getDatabase()).block();
-        database = client.getDatabase(config.getDatabase());
-        //
-        System.out.println("Checking database " + database.getId() + " completed!\n");
+    private CosmosAsyncClient getCosmosClient() {
+        ClientSettings settings = config.getClientSettings();
+        settings.setEndpoint(config.getEndpoint());
+        settings.setKey(config.getKey());
+        settings.setUserAgentSuffix(userAgentSuffix);
+        settings.setConsistencyLevel(config.getReadConsistencyLevel());
+        return CosmosClientFactory.getClient(settings);
     }
 
-    private void createContainerIfNotExists() throws Exception {
+    /**
+     * Read the container and, for the cosmos checkpoint store, the lease container in parallel, creating the
+     * missing ones.
+     */
+    private void resolveContainers() {
+        ContainerSpec containerSpec = ContainerSpec.createIfNotExists(config.getContainer(), "/partitionKey");
+        if (config.isFullFidelity()) {
+            containerSpec.setChangeFeedPolicy(fullFidelityPolicy());
+        }
+        List<ContainerSpec> specs = new ArrayList<>();
+        specs.add(containerSpec);
+        boolean cosmosCheckpoints = Constants.CHECKPOINT_STORE_COSMOS.equalsIgnoreCase(config.getCheckpointStore())
+                && config.getLeaseContainer() != null;
+        if (cosmosCheckpoints) {
+            specs.add(ContainerSpec.createIfNotExists(config.getLeaseContainer(), "/id"));
+        }
         System.out.println("Create container " + config.getContainer() + " if not exists.");
+        Map<String, CosmosContainerProperties> properties = CosmosClientFactory.getMetadataCache(client)
+                .containers(config.getDatabase(), specs)
+                .block();
         //
-        CosmosAsyncDatabase databaseLink = client.getDatabase(config.getDatabase());
-        CosmosAsyncContainer collectionLink = databaseLink.getContainer(config.getContainer());
-        CosmosContainerResponse containerResponse = null;
-
-        try {
-            containerResponse = collectionLink.read().block();
-
-            if (containerResponse != null) {
-                //throw new IllegalArgumentException(String.format("Collection %s already exists in database %s.", collectionName, databaseName));
-                container = databaseLink.getContainer(config.getContainer());
-                return;
-            }
-        } catch (RuntimeException ex) {
-            if (ex instanceof CosmosException) {
-                CosmosException cosmosClientException = (CosmosException) ex;
-
-                if (cosmosClientException.getStatusCode() != 404) {
-                    throw ex;
-                }
-            } else {
-                throw ex;
-            }
+        database = client.getDatabase(config.getDatabase());
+        container = database.getContainer(config.getContainer());
+        if (cosmosCheckpoints) {
+            leaseContainer = database.getContainer(config.getLeaseContainer());
         }
-        //
-        CosmosContainerProperties containerSettings = new CosmosContainerProperties(config.getContainer(),
-                "/partitionKey");
-        containerSettings.setDefaultTimeToLiveInSeconds(-1);
-        CosmosContainerRequestOptions requestOptions = new CosmosContainerRequestOptions();
-        //ThroughputProperties throughputProperties = ThroughputProperties.createManualThroughput(20000);
-        //containerSettings.setChangeFeedPolicy(policy);
-        containerResponse = databaseLink.createContainer(containerSettings, requestOptions).block();
-        //
-        if (containerResponse == null) {
-            throw new RuntimeException(String.format("Failed to create collection %s in database %s.",
-                    config.getContainer(),
-                    config.getDatabase()));
+        if (config.isFullFidelity()) {
+            enableFullFidelity(properties.get(config.getContainer()));
         }
         //
-        container = databaseLink.getContainer(config.getContainer());
-        //
         System.out.println("Checking container " + container.getId() + " completed!\n");
     }
 
-    private void createLeaseContainerIfNotExists() throws Exception {
-        System.out.println("Create container " + config.getLeaseContainer() + " if not exists.");
-//
-        CosmosAsyncDatabase databaseLink = client.getDatabase(config.getDatabase());
-        CosmosAsyncContainer collectionLink = databaseLink.getContainer(config.getLeaseContainer());
-
-        CosmosContainerResponse containerResponse = null;
-
-        try {
-            containerResponse = collectionLink.read().block();
-
-            if (containerResponse != null) {
-                //
-                leaseContainer = databaseLink.getContainer(config.getLeaseContainer());
-                return;
-            }
-        } catch (RuntimeException ex) {
-            if (ex instanceof CosmosException) {
-                CosmosException cosmosClientException = (CosmosException) ex;
+    private ChangeFeedPolicy fullFidelityPolicy() {
+        return ChangeFeedPolicy.createFullFidelityPolicy(Duration.ofMinutes(config.getFullFidelityRetentionMinutes()));
+    }
 
-                if (cosmosClientException.getStatusCode() != 404) {
-                    throw ex;
-                }
-            } else {
-                throw ex;
-            }
-        }
-        //
-        CosmosContainerProperties containerSettings = new CosmosContainerProperties(
-                config.getLeaseContainer(),
-                "/id");
-        containerSettings.setDefaultTimeToLiveInSeconds(-1);
-        CosmosContainerRequestOptions requestOptions = new CosmosContainerRequestOptions();
-        //ThroughputProperties throughputProperties = ThroughputProperties.createManualThroughput(20000);
-        containerResponse = databaseLink.createContainer(containerSettings, requestOptions).block();
-        //
-        if (containerResponse == null) {
-            throw new RuntimeException(String.format("Failed to create collection %s in database %s.",
-                    config.getLeaseContainer(),
-                    config.getDatabase()));
+    /**
+     * Versions and deletes are only kept from the time the policy is set, earlier ones are not readable.
+     */
+    private void enableFullFidelity(final CosmosContainerProperties properties) {
+        ChangeFeedPolicy policy = properties.getChangeFeedPolicy();
+        Duration retention = policy == null ? null : policy.getFullFidelityRetentionDuration();
+        if (retention != null && !retention.isZero()) {
+            return;
         }
-        //
-        leaseContainer = databaseLink.getContainer(config.getLeaseContainer());
-        //
-        System.out.println("Checking lease container " + container.getId() + " completed!\n");
+        System.out.println("Enabling the full fidelity change feed of " + config.getContainer()
+                + " with a retention of " + config.getFullFidelityRetentionMinutes() + " minutes");
+        properties.setChangeFeedPolicy(fullFidelityPolicy());
+        container.replace(properties).block();
+        CosmosClientFactory.getMetadataCache(client).invalidate(config.getDatabase(), config.getContainer());
     }
 
 }
@@ -1,6 +1,11 @@
 package fc.azure.cosmos.cfp;
 
 import com.azure.cosmos.ConsistencyLevel;
+import fc.azure.cosmos.bootstrap.ClientSettings;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Config {
 
@@ -12,6 +17,59 @@ public class Config {
     private String leaseContainer;
     private String host;
     private String prefix = "";
+    private int lanes = Runtime.getRuntime().availableProcessors();
+    private int laneCapacity = 16;
+    private int metricsPort = -1;
+    private int metricsIntervalSec = 10;
+    private int parallelism = 4;
+    private int pageSize = 1000;
+    private String checkpointFile = "cfpull-checkpoints.log";
+    private String checkpointStore = Constants.CHECKPOINT_STORE_FILE;
+    private int checkpointPages = 100;
+    private long checkpointIntervalMs = 5000;
+    private String viewContainer;
+    private String viewPartitionKey = "partitionKey";
+    private List<String> viewFields = new ArrayList<>();
+    private String viewAggregate;
+    private String handlerMode = Constants.HANDLER_MODE_TREE;
+    private boolean startFromNow;
+    private String sinks;
+    private long pollDelayMs = 5000;
+    private int maxItemCount = 100;
+    private boolean adaptive;
+    private boolean adaptiveRestart;
+    private long maxPollDelayMs = 60000;
+    private double maxPageCharge;
+    private boolean follow;
+    private int shutdownTimeoutSec = 30;
+    private Instant backfillFrom;
+    private Instant backfillUntil;
+    private int dedupCapacity;
+    private String dedupBloomFile;
+    private long dedupBloomInsertions = 1000000;
+    private String dlq;
+    private int dlqAttempts = 3;
+    private long lagIntervalMs = 1000;
+    private int lagWindows = 5;
+    private int lagSmoothingSec = 30;
+    private int hosts = 2;
+    private List<Integer> scalePlan = new ArrayList<>();
+    private int stepTimeSec = 60;
+    private int rebalanceTimeoutSec = 300;
+    private int leaseAcquireIntervalSec;
+    private long handlerDelayMs;
+    private boolean fullFidelity;
+    private int fullFidelityRetentionMinutes = 10;
+    private int tombstoneCapacity = 1000000;
+    private String windowAggregation;
+    private String windowKey;
+    private int windowSizeSec = 60;
+    private int windowSlideSec;
+    private int windowLatenessSec = 5;
+    private int windowTopK;
+    private String windowSnapshot;
+    //
+    private ClientSettings clientSettings = new ClientSettings();
 
     public String getDatabase() {
         return database;
@@ -76,4 +134,420 @@ public class Config {
     public void setPrefix(String prefix) {
         this.prefix = prefix;
     }
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    public void setLanes(int lanes) {
+        this.lanes = lanes;
+    }
+
+    public int getLaneCapacity() {
+        return laneCapacity;
+    }
+
+    public void setLaneCapacity(int laneCapacity) {
+        this.laneCapacity = laneCapacity;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    public int getMetricsIntervalSec() {
+        return metricsIntervalSec;
+    }
+
+    public void setMetricsIntervalSec(int metricsIntervalSec) {
+        this.metricsIntervalSec = metricsIntervalSec;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public void setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    public boolean isStartFromNow() {
+        return startFromNow;
+    }
+
+    public void setStartFromNow(boolean startFromNow) {
+        this.startFromNow = startFromNow;
+    }
+
+    public String getCheckpointStore() {
+        return checkpointStore;
+    }
+
+    public void setCheckpointStore(String checkpointStore) {
+        this.checkpointStore = checkpointStore;
+    }
+
+    public int getCheckpointPages() {
+        return checkpointPages;
+    }
+
+    public void setCheckpointPages(int checkpointPages) {
+        this.checkpointPages = checkpointPages;
+    }
+
+    public long getCheckpointIntervalMs() {
+        return checkpointIntervalMs;
+    }
+
+    public void setCheckpointIntervalMs(long checkpointIntervalMs) {
+        this.checkpointIntervalMs = checkpointIntervalMs;
+    }
+
+    public String getViewContainer() {
+        return viewContainer;
+    }
+
+    public void setViewContainer(String viewContainer) {
+        this.viewContainer = viewContainer;
+    }
+
+    public String getViewPartitionKey() {
+        return viewPartitionKey;
+    }
+
+    public void setViewPartitionKey(String viewPartitionKey) {
+        this.viewPartitionKey = viewPartitionKey;
+    }
+
+    public List<String> getViewFields() {
+        return viewFields;
+    }
+
+    public void setViewFields(List<String> viewFields) {
+        this.viewFields = viewFields;
+    }
+
+    public String getViewAggregate() {
+        return viewAggregate;
+    }
+
+    public void setViewAggregate(String viewAggregate) {
+        this.viewAggregate = viewAggregate;
+    }
+
+    public String getHandlerMode() {
+        return handlerMode;
+    }
+
+    public void setHandlerMode(String handlerMode) {
+        this.handlerMode = handlerMode;
+    }
+
+    public String getSinks() {
+        return sinks;
+    }
+
+    public void setSinks(String sinks) {
+        this.sinks = sinks;
+    }
+
+    public long getPollDelayMs() {
+        return pollDelayMs;
+    }
+
+    public void setPollDelayMs(long pollDelayMs) {
+        this.pollDelayMs = pollDelayMs;
+    }
+
+    public int getMaxItemCount() {
+        return maxItemCount;
+    }
+
+    public void setMaxItemCount(int maxItemCount) {
+        this.maxItemCount = maxItemCount;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public boolean isAdaptiveRestart() {
+        return adaptiveRestart;
+    }
+
+    public void setAdaptiveRestart(boolean adaptiveRestart) {
+        this.adaptiveRestart = adaptiveRestart;
+    }
+
+    public long getMaxPollDelayMs() {
+        return maxPollDelayMs;
+    }
+
+    public void setMaxPollDelayMs(long maxPollDelayMs) {
+        this.maxPollDelayMs = maxPollDelayMs;
+    }
+
+    public double getMaxPageCharge() {
+        return maxPageCharge;
+    }
+
+    public void setMaxPageCharge(double maxPageCharge) {
+        this.maxPageCharge = maxPageCharge;
+    }
+
+    public boolean isFollow() {
+        return follow;
+    }
+
+    public void setFollow(boolean follow) {
+        this.follow = follow;
+    }
+
+    public int getShutdownTimeoutSec() {
+        return shutdownTimeoutSec;
+    }
+
+    public void setShutdownTimeoutSec(int shutdownTimeoutSec) {
+        this.shutdownTimeoutSec = shutdownTimeoutSec;
+    }
+
+    public Instant getBackfillFrom() {
+        return backfillFrom;
+    }
+
+    public void setBackfillFrom(Instant backfillFrom) {
+        this.backfillFrom = backfillFrom;
+    }
+
+    public Instant getBackfillUntil() {
+        return backfillUntil;
+    }
+
+    public void setBackfillUntil(Instant backfillUntil) {
+        this.backfillUntil = backfillUntil;
+    }
+
+    public int getDedupCapacity() {
+        return dedupCapacity;
+    }
+
+    public void setDedupCapacity(int dedupCapacity) {
+        this.dedupCapacity = dedupCapacity;
+    }
+
+    public String getDedupBloomFile() {
+        return dedupBloomFile;
+    }
+
+    public void setDedupBloomFile(String dedupBloomFile) {
+        this.dedupBloomFile = dedupBloomFile;
+    }
+
+    public long getDedupBloomInsertions() {
+        return dedupBloomInsertions;
+    }
+
+    public void setDedupBloomInsertions(long dedupBloomInsertions) {
+        this.dedupBloomInsertions = dedupBloomInsertions;
+    }
+
+    public String getDlq() {
+        return dlq;
+    }
+
+    public void setDlq(String dlq) {
+        this.dlq = dlq;
+    }
+
+    public int getDlqAttempts() {
+        return dlqAttempts;
+    }
+
+    public void setDlqAttempts(int dlqAttempts) {
+        this.dlqAttempts = dlqAttempts;
+    }
+
+    public long getLagIntervalMs() {
+        return lagIntervalMs;
+    }
+
+    public void setLagIntervalMs(long lagIntervalMs) {
+        this.lagIntervalMs = lagIntervalMs;
+    }
+
+    public int getLagWindows() {
+        return lagWindows;
+    }
+
+    public void setLagWindows(int lagWindows) {
+        this.lagWindows = lagWindows;
+    }
+
+    public int getLagSmoothingSec() {
+        return lagSmoothingSec;
+    }
+
+    public void setLagSmoothingSec(int lagSmoothingSec) {
+        this.lagSmoothingSec = lagSmoothingSec;
+    }
+
+    public int getHosts() {
+        return hosts;
+    }
+
+    public void setHosts(int hosts) {
+        this.hosts = hosts;
+    }
+
+    public List<Integer> getScalePlan() {
+        return scalePlan;
+    }
+
+    public void setScalePlan(List<Integer> scalePlan) {
+        this.scalePlan = scalePlan;
+    }
+
+    public int getStepTimeSec() {
+        return stepTimeSec;
+    }
+
+    public void setStepTimeSec(int stepTimeSec) {
+        this.stepTimeSec = stepTimeSec;
+    }
+
+    public int getRebalanceTimeoutSec() {
+        return rebalanceTimeoutSec;
+    }
+
+    public void setRebalanceTimeoutSec(int rebalanceTimeoutSec) {
+        this.rebalanceTimeoutSec = rebalanceTimeoutSec;
+    }
+
+    public int getLeaseAcquireIntervalSec() {
+        return leaseAcquireIntervalSec;
+    }
+
+    public void setLeaseAcquireIntervalSec(int leaseAcquireIntervalSec) {
+        this.leaseAcquireIntervalSec = leaseAcquireIntervalSec;
+    }
+
+    public long getHandlerDelayMs() {
+        return handlerDelayMs;
+    }
+
+    public void setHandlerDelayMs(long handlerDelayMs) {
+        this.handlerDelayMs = handlerDelayMs;
+    }
+
+    public boolean isFullFidelity() {
+        return fullFidelity;
+    }
+
+    public void setFullFidelity(boolean fullFidelity) {
+        this.fullFidelity = fullFidelity;
+    }
+
+    public int getFullFidelityRetentionMinutes() {
+        return fullFidelityRetentionMinutes;
+    }
+
+    public void setFullFidelityRetentionMinutes(int fullFidelityRetentionMinutes) {
+        this.fullFidelityRetentionMinutes = fullFidelityRetentionMinutes;
+    }
+
+    public int getTombstoneCapacity() {
+        return tombstoneCapacity;
+    }
+
+    public void setTombstoneCapacity(int tombstoneCapacity) {
+        this.tombstoneCapacity = tombstoneCapacity;
+    }
+
+    public String getWindowAggregation() {
+        return windowAggregation;
+    }
+
+    public void setWindowAggregation(String windowAggregation) {
+        this.windowAggregation = windowAggregation;
+    }
+
+    public String getWindowKey() {
+        return windowKey;
+    }
+
+    public void setWindowKey(String windowKey) {
+        this.windowKey = windowKey;
+    }
+
+    public int getWindowSizeSec() {
+        return windowSizeSec;
+    }
+
+    public void setWindowSizeSec(int windowSizeSec) {
+        this.windowSizeSec = windowSizeSec;
+    }
+
+    public int getWindowSlideSec() {
+        return windowSlideSec;
+    }
+
+    public void setWindowSlideSec(int windowSlideSec) {
+        this.windowSlideSec = windowSlideSec;
+    }
+
+    public int getWindowLatenessSec() {
+        return windowLatenessSec;
+    }
+
+    public void setWindowLatenessSec(int windowLatenessSec) {
+        this.windowLatenessSec = windowLatenessSec;
+    }
+
+    public int getWindowTopK() {
+        return windowTopK;
+    }
+
+    public void setWindowTopK(int windowTopK) {
+        this.windowTopK = windowTopK;
+    }
+
+    public String getWindowSnapshot() {
+        return windowSnapshot;
+    }
+
+    public void setWindowSnapshot(String windowSnapshot) {
+        this.windowSnapshot = windowSnapshot;
+    }
+
+    public ClientSettings getClientSettings() {
+        return clientSettings;
+    }
+
+    public void setClientSettings(ClientSettings clientSettings) {
+        this.clientSettings = clientSettings;
+    }
 }
@@ -14,5 +14,60 @@ public interface Constants {
     String CONSISTENCY_LEVEL_EVENTUAL = "EVENTUAL";
     String HOST = "host";
     String PREFIX = "prefix";
+    String LANES = "lanes";
+    String LANE_CAPACITY = "lanecapacity";
+    String METRICS_PORT = "metricsport";
+    String METRICS_INTERVAL = "metricsinterval";
+    String PARALLELISM = "parallelism";
+    String PAGE_SIZE = "pagesize";
+    String CHECKPOINT_FILE = "checkpointfile";
+    String START_FROM_NOW = "startfromnow";
+    String CHECKPOINT_STORE = "checkpointstore";
+    String CHECKPOINT_STORE_FILE = "file";
+    String CHECKPOINT_STORE_COSMOS = "cosmos";
+    String CHECKPOINT_PAGES = "checkpointpages";
+    String CHECKPOINT_INTERVAL = "checkpointinterval";
+    String VIEW_CONTAINER = "viewcontainer";
+    String VIEW_PARTITION_KEY = "viewpartitionkey";
+    String VIEW_FIELDS = "viewfields";
+    String VIEW_AGGREGATE = "viewaggregate";
+    String HANDLER_MODE = "handlermode";
+    String HANDLER_MODE_TREE = "tree";
+    String HANDLER_MODE_RAW = "raw";
+    String SINKS = "sinks";
+    String POLL_DELAY = "polldelay";
+    String MAX_ITEM_COUNT = "maxitemcount";
+    String ADAPTIVE = "adaptive";
+    String MAX_POLL_DELAY = "maxpolldelay";
+    String ADAPTIVE_RESTART = "adaptiverestart";
+    String MAX_PAGE_CHARGE = "maxpagecharge";
+    String FOLLOW = "follow";
+    String SHUTDOWN_TIMEOUT = "shutdowntimeout";
+    String DEDUP_CAPACITY = "dedupcapacity";
+    String DEDUP_BLOOM_FILE = "dedupbloomfile";
+    String DEDUP_BLOOM_INSERTIONS = "dedupbloominsertions";
+    String DLQ = "dlq";
+    String DLQ_ATTEMPTS = "dlqattempts";
+    String BACKFILL_FROM = "backfillfrom";
+    String BACKFILL_UNTIL = "backfilluntil";
+    String LAG_INTERVAL = "laginterval";
+    String LAG_WINDOWS = "lagwindows";
+    String LAG_SMOOTHING = "lagsmoothing";
+    String HOSTS = "hosts";
+    String SCALE_PLAN = "scaleplan";
+    String STEP_TIME = "steptime";
+    String REBALANCE_TIMEOUT = "rebalancetimeout";
+    String LEASE_ACQUIRE_INTERVAL = "leaseacquireinterval";
+    String HANDLER_DELAY = "handlerdelay";
+    String FULL_FIDELITY = "fullfidelity";
+    String FULL_FIDELITY_RETENTION = "fullfidelityretention";
+    String TOMBSTONES = "tombstones";
+    String WINDOW_AGGREGATION = "windowagg";
+    String WINDOW_KEY = "windowkey";
+    String WINDOW_SIZE = "windowsize";
+    String WINDOW_SLIDE = "windowslide";
+    String WINDOW_LATENESS = "windowlateness";
+    String WINDOW_TOP_K = "windowtopk";
+    String WINDOW_SNAPSHOT = "windowsnapshot";
 
 }
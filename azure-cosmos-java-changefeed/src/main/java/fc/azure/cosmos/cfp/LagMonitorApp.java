@@ -0,0 +1,214 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package fc.azure.cosmos.cfp;
+
+import com.azure.cosmos.*;
+import com.azure.cosmos.models.ChangeFeedProcessorOptions;
+import com.azure.cosmos.models.ChangeFeedProcessorState;
+import com.fasterxml.jackson.databind.JsonNode;
+import fc.azure.cosmos.bootstrap.ClientSettings;
+import fc.azure.cosmos.bootstrap.CosmosClientFactory;
+import fc.azure.cosmos.cfp.lag.LagEstimator;
+import fc.azure.cosmos.cfp.lag.LeaseLag;
+import org.apache.commons.cli.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the lag of the change feed processors sharing a lease container, without processing anything.
+ * <p>
+ * The lease state is sampled every --laginterval milliseconds; drain rates and times to catch up are printed
+ * per host every --metricsinterval seconds, and an alert is printed as soon as the lag of a lease grew for
+ * --lagwindows samples in a row.
+ */
+public class LagMonitorApp {
+    //
+    private CosmosAsyncClient client;
+    private ChangeFeedProcessor processor;
+    private LagEstimator lagEstimator;
+    private ScheduledExecutorService sampler;
+    //
+    private String userAgentSuffix = "CosmosDBServiceCFP_FC";
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(LagMonitorApp.class);
+    //
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    //
+    public void close() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+        CosmosClientFactory.close(client);
+    }
+
+    //
+    private Config config;
+
+    public static void main(String[] args) {
+        LagMonitorApp p = new LagMonitorApp();
+        CommandLine cline = p.setupOptions(args);
+        if (cline != null) {
+            p.populateConfig(cline);
+            System.out.println("Start the lag monitor");
+            try {
+                p.startMonitor();
+                Runtime.getRuntime().addShutdownHook(new Thread(p.stopped::countDown, "lag-monitor-shutdown"));
+                p.stopped.await();
+            } catch (Exception e) {
+                LOGGER.error("Lag monitor failed", e);
+                System.err.println(String.format("Lag monitor failed with %s", e));
+            } finally {
+                System.out.println("Closing the client");
+                p.close();
+            }
+        }
+    }
+
+    private CommandLine setupOptions(String[] args) {
+
+        /**
+         * Usage:
+         * --endpoint <cosmos account>
+         * --database <database name>
+         * --container <monitored container name>
+         * --key <access key>
+         * --leasecontainer <lease container name of the processors>
+         * --prefix <lease prefix of the processors>
+         * --host <host name reported by the monitor, never owns a lease>
+         * --laginterval <milliseconds between lag samples>
+         * --lagwindows <consecutive growing samples before a lease is reported>
+         * --lagsmoothing <time constant in seconds of the smoothed rates>
+         * --metricsinterval <seconds between host summaries>
+         *
+         * Examples
+         * --endpoint <cosmos account> --database ChangeFeedDemo --container Patient --key <access key>
+         * --leasecontainer leases --laginterval 500 --lagwindows 10
+         */
+        //
+        Options commandLineOptions = new Options();
+        //
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.ENDPOINT).required(true).hasArg().desc("Endpoint").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.DATABASE).required(true).hasArg().desc("Database name").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.CONTAINER).required(true).hasArg().desc("Container name").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.KEY).required(true).hasArg().desc("Access key").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.LEASE_CONTAINER).required(true).hasArg().desc("Lease container name").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.PREFIX).required(false).hasArg().desc("Change feed prefix").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.HOST).required(false).hasArg().desc("Host name of the monitor (default: lag-monitor)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.LAG_INTERVAL).required(false).hasArg().desc("Milliseconds between lag samples (default: 1000)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.LAG_WINDOWS).required(false).hasArg().desc("Consecutive growing samples before a lease is reported (default: 5)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.LAG_SMOOTHING).required(false).hasArg().desc("Time constant in seconds of the smoothed rates (default: 30)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.METRICS_INTERVAL).required(false).hasArg().desc("Seconds between host summaries (default: 10)").build());
+        //
+        CommandLineParser parser = new DefaultParser();
+        CommandLine commandLine = null;
+        //
+        try {
+            commandLine = parser.parse(commandLineOptions, args);
+        } catch (ParseException | NumberFormatException e) {
+            System.out.println(e.getMessage());
+            new HelpFormatter().printHelp("Lag monitor options ", commandLineOptions);
+        }
+        //
+        return commandLine;
+    }
+
+    private Config populateConfig(final CommandLine commandLine) {
+        //
+        config = new Config();
+        config.setEndpoint(commandLine.getOptionValue(Constants.ENDPOINT));
+        config.setContainer(commandLine.getOptionValue(Constants.CONTAINER));
+        config.setDatabase(commandLine.getOptionValue(Constants.DATABASE));
+        config.setKey(commandLine.getOptionValue(Constants.KEY));
+        config.setLeaseContainer(commandLine.getOptionValue(Constants.LEASE_CONTAINER));
+        config.setPrefix(commandLine.getOptionValue(Constants.PREFIX, ""));
+        config.setHost(commandLine.getOptionValue(Constants.HOST, "lag-monitor"));
+        if (commandLine.hasOption(Constants.LAG_INTERVAL)) {
+            config.setLagIntervalMs(Long.parseLong(commandLine.getOptionValue(Constants.LAG_INTERVAL)));
+        }
+        if (commandLine.hasOption(Constants.LAG_WINDOWS)) {
+            config.setLagWindows(Integer.parseInt(commandLine.getOptionValue(Constants.LAG_WINDOWS)));
+        }
+        if (commandLine.hasOption(Constants.LAG_SMOOTHING)) {
+            config.setLagSmoothingSec(Integer.parseInt(commandLine.getOptionValue(Constants.LAG_SMOOTHING)));
+        }
+        if (commandLine.hasOption(Constants.METRICS_INTERVAL)) {
+            config.setMetricsIntervalSec(Integer.parseInt(commandLine.getOptionValue(Constants.METRICS_INTERVAL)));
+        }
+        config.setReadConsistencyLevel(ConsistencyLevel.SESSION);
+        //
+        return config;
+    }
+
+    private void startMonitor() {
+        System.out.println("Using Azure Cosmos DB endpoint: " + config.getEndpoint());
+        ClientSettings settings = new ClientSettings(config.getEndpoint(), config.getKey(), userAgentSuffix);
+        settings.setConsistencyLevel(config.getReadConsistencyLevel());
+        client = CosmosClientFactory.getClient(settings);
+        CosmosAsyncDatabase database = client.getDatabase(config.getDatabase());
+        //
+        // The processor is never started: it only reads the leases and the feed to estimate the lag
+        ChangeFeedProcessorOptions options = new ChangeFeedProcessorOptions();
+        if (!config.getPrefix().isEmpty()) {
+            options.setLeasePrefix(config.getPrefix());
+        }
+        processor = new ChangeFeedProcessorBuilder()
+                .hostName(config.getHost())
+                .options(options)
+                .feedContainer(database.getContainer(config.getContainer()))
+                .leaseContainer(database.getContainer(config.getLeaseContainer()))
+                .handleChanges((List<JsonNode> docs) -> {
+                })
+                .buildChangeFeedProcessor();
+        lagEstimator = new LagEstimator(Duration.ofSeconds(config.getLagSmoothingSec()),
+                config.getLagWindows(),
+                Collections.singletonList(alert -> System.out.println(Instant.now() + " ALERT " + alert)));
+        //
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lag-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // A sample slower than the interval delays the next one instead of piling up
+        sampler.scheduleWithFixedDelay(this::sample, 0, config.getLagIntervalMs(), TimeUnit.MILLISECONDS);
+        sampler.scheduleAtFixedRate(this::printSummary,
+                config.getMetricsIntervalSec(),
+                config.getMetricsIntervalSec(),
+                TimeUnit.SECONDS);
+        System.out.println("Sampling the lag of " + config.getContainer() + " every " + config.getLagIntervalMs() + " ms");
+    }
+
+    private void sample() {
+        try {
+            long sampled = System.nanoTime();
+            List<ChangeFeedProcessorState> states = processor.getCurrentState().block();
+            if (states != null) {
+                lagEstimator.update(states, sampled);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to sample the lease state", e);
+        }
+    }
+
+    private void printSummary() {
+        System.out.println("\n---------- " + Instant.now());
+        for (LeaseLag host : lagEstimator.getHosts().values()) {
+            System.out.println("Host " + host);
+        }
+        for (LeaseLag lease : lagEstimator.getLeases().values()) {
+            if (lease.getGrowingWindows() > 0) {
+                LOGGER.info("Lease {}", lease);
+            }
+        }
+    }
+}
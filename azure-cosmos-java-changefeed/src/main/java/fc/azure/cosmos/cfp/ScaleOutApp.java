@@ -0,0 +1,281 @@
+// Copyright (c) Microsoft Corporation. All rights reserved.
+// Licensed under the MIT License.
+
+package fc.azure.cosmos.cfp;
+
+import com.azure.cosmos.*;
+import com.azure.cosmos.models.ChangeFeedProcessorOptions;
+import com.fasterxml.jackson.databind.JsonNode;
+import fc.azure.cosmos.bootstrap.ClientSettings;
+import fc.azure.cosmos.bootstrap.ContainerSpec;
+import fc.azure.cosmos.bootstrap.CosmosClientFactory;
+import fc.azure.cosmos.cfp.scaleout.HostStats;
+import fc.azure.cosmos.cfp.scaleout.LeaseDistribution;
+import fc.azure.cosmos.cfp.scaleout.ProcessorFleet;
+import org.apache.commons.cli.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a fleet of change feed processors in one process against the same lease container, and measures
+ * for each fleet size of a scale plan how long the leases take to rebalance, how evenly they end up spread
+ * and the throughput of every host.
+ * <p>
+ * The fleet only handles the changes written by another application, for example the data loader.
+ */
+public class ScaleOutApp {
+    //
+    private CosmosAsyncClient client;
+    private CosmosAsyncContainer container;
+    private CosmosAsyncContainer leaseContainer;
+    private ProcessorFleet fleet;
+    //
+    private String userAgentSuffix = "CosmosDBServiceCFP_FC";
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScaleOutApp.class);
+
+    //
+    public void close() {
+        if (fleet != null) {
+            fleet.close();
+        }
+        CosmosClientFactory.close(client);
+    }
+
+    //
+    private Config config;
+
+    public static void main(String[] args) {
+        ScaleOutApp p = new ScaleOutApp();
+        CommandLine cline = p.setupOptions(args);
+        if (cline != null) {
+            p.populateConfig(cline);
+            System.out.println("Start the scale-out run");
+            try {
+                p.run();
+            } catch (Exception e) {
+                LOGGER.error("Scale-out run failed", e);
+                System.err.println(String.format("Scale-out run failed with %s", e));
+            } finally {
+                System.out.println("Stopping the hosts and closing the client");
+                p.close();
+            }
+        }
+    }
+
+    private CommandLine setupOptions(String[] args) {
+
+        /**
+         * Usage:
+         * --endpoint <cosmos account>
+         * --database <database name>
+         * --container <monitored container name>
+         * --key <access key>
+         * --leasecontainer <lease container name>
+         * --prefix <lease prefix, use a new one to start from fresh leases>
+         * --host <prefix of the host names>
+         * --hosts <hosts started first>
+         * --scaleplan <comma separated host counts the fleet is resized to, one step after the other>
+         * --steptime <seconds each fleet size runs once balanced>
+         * --rebalancetimeout <seconds to wait for the leases to balance after a resize>
+         * --leaseacquireinterval <seconds between lease acquisition attempts of a host>
+         * --polldelay <milliseconds between polls of a caught up lease>
+         * --maxitemcount <maximum documents per batch>
+         * --handlerdelay <milliseconds each batch takes, to simulate the downstream work>
+         * --metricsinterval <seconds between throughput reports>
+         *
+         * Examples
+         * --endpoint <cosmos account> --database ChangeFeedDemo --container Patient --key <access key>
+         * --leasecontainer leases --prefix scaleout1 --hosts 1 --scaleplan 2,4,8,3 --steptime 120
+         */
+        //
+        Options commandLineOptions = new Options();
+        //
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.ENDPOINT).required(true).hasArg().desc("Endpoint").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.DATABASE).required(true).hasArg().desc("Database name").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.CONTAINER).required(true).hasArg().desc("Container name").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.KEY).required(true).hasArg().desc("Access key").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.LEASE_CONTAINER).required(true).hasArg().desc("Lease container name").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.PREFIX).required(false).hasArg().desc("Change feed prefix").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.HOST).required(false).hasArg().desc("Prefix of the host names (default: scaleout)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.HOSTS).required(false).hasArg().desc("Hosts started first (default: 2)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.SCALE_PLAN).required(false).hasArg().desc("Comma separated host counts the fleet is resized to").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.STEP_TIME).required(false).hasArg().desc("Seconds each fleet size runs once balanced (default: 60)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.REBALANCE_TIMEOUT).required(false).hasArg().desc("Seconds to wait for the leases to balance after a resize (default: 300)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.LEASE_ACQUIRE_INTERVAL).required(false).hasArg().desc("Seconds between lease acquisition attempts of a host (default: SDK default)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.POLL_DELAY).required(false).hasArg().desc("Milliseconds between polls of a caught up lease (default: 5000)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.MAX_ITEM_COUNT).required(false).hasArg().desc("Maximum documents per batch (default: 100)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.HANDLER_DELAY).required(false).hasArg().desc("Milliseconds each batch takes, to simulate the downstream work").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.METRICS_INTERVAL).required(false).hasArg().desc("Seconds between throughput reports (default: 10)").build());
+        //
+        CommandLineParser parser = new DefaultParser();
+        CommandLine commandLine = null;
+        //
+        try {
+            commandLine = parser.parse(commandLineOptions, args);
+        } catch (ParseException | NumberFormatException e) {
+            System.out.println(e.getMessage());
+            new HelpFormatter().printHelp("Scale-out options ", commandLineOptions);
+        }
+        //
+        return commandLine;
+    }
+
+    private Config populateConfig(final CommandLine commandLine) {
+        //
+        config = new Config();
+        config.setEndpoint(commandLine.getOptionValue(Constants.ENDPOINT));
+        config.setContainer(commandLine.getOptionValue(Constants.CONTAINER));
+        config.setDatabase(commandLine.getOptionValue(Constants.DATABASE));
+        config.setKey(commandLine.getOptionValue(Constants.KEY));
+        config.setLeaseContainer(commandLine.getOptionValue(Constants.LEASE_CONTAINER));
+        config.setPrefix(commandLine.getOptionValue(Constants.PREFIX, ""));
+        config.setHost(commandLine.getOptionValue(Constants.HOST, "scaleout"));
+        if (commandLine.hasOption(Constants.HOSTS)) {
+            config.setHosts(Integer.parseInt(commandLine.getOptionValue(Constants.HOSTS)));
+        }
+        if (commandLine.hasOption(Constants.SCALE_PLAN)) {
+            List<Integer> plan = new ArrayList<>();
+            for (String step : commandLine.getOptionValue(Constants.SCALE_PLAN).split("\\s*,\\s*")) {
+                plan.add(Integer.parseInt(step));
+            }
+            config.setScalePlan(plan);
+        }
+        if (commandLine.hasOption(Constants.STEP_TIME)) {
+            config.setStepTimeSec(Integer.parseInt(commandLine.getOptionValue(Constants.STEP_TIME)));
+        }
+        if (commandLine.hasOption(Constants.REBALANCE_TIMEOUT)) {
+            config.setRebalanceTimeoutSec(Integer.parseInt(commandLine.getOptionValue(Constants.REBALANCE_TIMEOUT)));
+        }
+        if (commandLine.hasOption(Constants.LEASE_ACQUIRE_INTERVAL)) {
+            config.setLeaseAcquireIntervalSec(Integer.parseInt(commandLine.getOptionValue(Constants.LEASE_ACQUIRE_INTERVAL)));
+        }
+        if (commandLine.hasOption(Constants.POLL_DELAY)) {
+            config.setPollDelayMs(Long.parseLong(commandLine.getOptionValue(Constants.POLL_DELAY)));
+        }
+        if (commandLine.hasOption(Constants.MAX_ITEM_COUNT)) {
+            config.setMaxItemCount(Integer.parseInt(commandLine.getOptionValue(Constants.MAX_ITEM_COUNT)));
+        }
+        if (commandLine.hasOption(Constants.HANDLER_DELAY)) {
+            config.setHandlerDelayMs(Long.parseLong(commandLine.getOptionValue(Constants.HANDLER_DELAY)));
+        }
+        if (commandLine.hasOption(Constants.METRICS_INTERVAL)) {
+            config.setMetricsIntervalSec(Integer.parseInt(commandLine.getOptionValue(Constants.METRICS_INTERVAL)));
+        }
+        config.setReadConsistencyLevel(ConsistencyLevel.SESSION);
+        //
+        return config;
+    }
+
+    private void run() throws InterruptedException {
+        System.out.println("Using Azure Cosmos DB endpoint: " + config.getEndpoint());
+        ClientSettings settings = new ClientSettings(config.getEndpoint(), config.getKey(), userAgentSuffix);
+        settings.setConsistencyLevel(config.getReadConsistencyLevel());
+        client = CosmosClientFactory.getClient(settings);
+        CosmosClientFactory.getMetadataCache(client)
+                .container(config.getDatabase(), ContainerSpec.createIfNotExists(config.getLeaseContainer(), "/id"))
+                .block();
+        CosmosAsyncDatabase database = client.getDatabase(config.getDatabase());
+        container = database.getContainer(config.getContainer());
+        leaseContainer = database.getContainer(config.getLeaseContainer());
+        //
+        fleet = new ProcessorFleet(config.getHost(), this::createProcessor);
+        Runtime.getRuntime().addShutdownHook(new Thread(fleet::close, "scaleout-shutdown"));
+        List<Integer> plan = new ArrayList<>();
+        plan.add(config.getHosts());
+        plan.addAll(config.getScalePlan());
+        //
+        List<String> report = new ArrayList<>();
+        report.add(String.format("%6s %14s %8s %12s %12s %12s", "hosts", "rebalance ms", "skew", "docs/s", "min host/s", "max host/s"));
+        for (int step = 0; step < plan.size(); step++) {
+            int hostCount = plan.get(step);
+            System.out.println("\n---------- Step " + (step + 1) + ": resizing the fleet from " + fleet.size() + " to " + hostCount + " hosts");
+            fleet.resize(hostCount);
+            Duration rebalance = fleet.awaitBalanced(Duration.ofSeconds(config.getRebalanceTimeoutSec()), Duration.ofSeconds(1));
+            LeaseDistribution distribution = fleet.sample();
+            System.out.println(rebalance == null
+                    ? "Leases still not balanced after " + config.getRebalanceTimeoutSec() + " s"
+                    : "Leases balanced in " + rebalance.toMillis() + " ms");
+            //
+            // Throughput is only measured once the leases settled
+            double[] rates = measureThroughput();
+            report.add(String.format("%6d %14s %8.2f %12.1f %12.1f %12.1f",
+                    hostCount,
+                    rebalance == null ? "timeout" : String.valueOf(rebalance.toMillis()),
+                    distribution.skew(fleet.getHostNames()),
+                    rates[0],
+                    rates[1],
+                    rates[2]));
+        }
+        System.out.println("\n---------- Scale-out summary");
+        for (String line : report) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Report the throughput of every host during the step time, and return the total, the slowest and the
+     * fastest host rate over the whole step.
+     */
+    private double[] measureThroughput() throws InterruptedException {
+        List<HostStats> hosts = fleet.getStats();
+        long[] before = new long[hosts.size()];
+        for (int i = 0; i < hosts.size(); i++) {
+            before[i] = hosts.get(i).getDocuments();
+            hosts.get(i).throughput();
+        }
+        long start = System.nanoTime();
+        long end = start + Duration.ofSeconds(config.getStepTimeSec()).toNanos();
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.min(config.getMetricsIntervalSec() * 1000L, Math.max(1, (end - System.nanoTime()) / 1000000)));
+            StringBuilder line = new StringBuilder("Throughput");
+            for (HostStats host : hosts) {
+                line.append(String.format(" %s=%.1f/s", host.getHostName(), host.throughput()));
+            }
+            System.out.println(line);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double total = 0;
+        double min = hosts.isEmpty() ? 0 : Double.MAX_VALUE;
+        double max = 0;
+        for (int i = 0; i < hosts.size(); i++) {
+            double rate = (hosts.get(i).getDocuments() - before[i]) / seconds;
+            total += rate;
+            min = Math.min(min, rate);
+            max = Math.max(max, rate);
+        }
+        return new double[]{total, min, max};
+    }
+
+    private ChangeFeedProcessor createProcessor(final String hostName, final HostStats stats) {
+        ChangeFeedProcessorOptions options = new ChangeFeedProcessorOptions();
+        options.setFeedPollDelay(Duration.ofMillis(config.getPollDelayMs()));
+        options.setMaxItemCount(config.getMaxItemCount());
+        if (config.getLeaseAcquireIntervalSec() > 0) {
+            options.setLeaseAcquireInterval(Duration.ofSeconds(config.getLeaseAcquireIntervalSec()));
+        }
+        if (!config.getPrefix().isEmpty()) {
+            options.setLeasePrefix(config.getPrefix());
+        }
+        return new ChangeFeedProcessorBuilder()
+                .hostName(hostName)
+                .options(options)
+                .feedContainer(container)
+                .leaseContainer(leaseContainer)
+                .handleChanges((List<JsonNode> docs) -> {
+                    if (config.getHandlerDelayMs() > 0) {
+                        try {
+                            Thread.sleep(config.getHandlerDelayMs());
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    stats.record(docs.size());
+                })
+                .buildChangeFeedProcessor();
+    }
+}
@@ -0,0 +1,98 @@
+package fc.azure.cosmos.cfp.checkpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flushes the underlying store every {@code maxPendingSaves} checkpoints or every {@code maxDelay},
+ * whichever comes first, instead of on every page.
+ * <p>
+ * After a crash at most the unflushed pages are processed again.
+ */
+public class BatchingCheckpointStore implements CheckpointStore {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingCheckpointStore.class);
+    //
+    private final CheckpointStore delegate;
+    private final int maxPendingSaves;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService timer;
+    //
+    private int pendingSaves;
+    private long lastFlushNanos = System.nanoTime();
+
+    public BatchingCheckpointStore(final CheckpointStore delegate, final int maxPendingSaves,
+                                   final Duration maxDelay) {
+        this.delegate = delegate;
+        this.maxPendingSaves = maxPendingSaves;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                flushIfDue();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to flush the checkpoints, will retry", e);
+            }
+        }, maxDelay.toMillis(), maxDelay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String load(final String feedRange) throws IOException {
+        return delegate.load(feedRange);
+    }
+
+    @Override
+    public Map<String, String> loadAll() throws IOException {
+        return delegate.loadAll();
+    }
+
+    @Override
+    public synchronized void save(final String feedRange, final String continuation) throws IOException {
+        delegate.save(feedRange, continuation);
+        pendingSaves++;
+        if (pendingSaves >= maxPendingSaves) {
+            flush();
+        } else {
+            flushIfDue();
+        }
+    }
+
+    private synchronized void flushIfDue() throws IOException {
+        if (pendingSaves > 0 && System.nanoTime() - lastFlushNanos >= maxDelayNanos) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (pendingSaves == 0) {
+            return;
+        }
+        delegate.flush();
+        pendingSaves = 0;
+        lastFlushNanos = System.nanoTime();
+    }
+
+    @Override
+    public void close() throws IOException {
+        timer.shutdownNow();
+        synchronized (this) {
+            try {
+                flush();
+            } finally {
+                delegate.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package fc.azure.cosmos.cfp.checkpoint;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Stores the change feed continuation reached for each feed range, so a pull consumer can resume
+ * where it stopped.
+ */
+public interface CheckpointStore extends AutoCloseable {
+
+    /**
+     * @param feedRange the feed range key.
+     * @return the last saved continuation of the range, or null when the range was never checkpointed.
+     */
+    String load(String feedRange) throws IOException;
+
+    /**
+     * @return all the saved continuations, keyed by feed range.
+     */
+    Map<String, String> loadAll() throws IOException;
+
+    /**
+     * Record the continuation of a range. Implementations may buffer it until {@link #flush()}.
+     */
+    void save(String feedRange, String continuation) throws IOException;
+
+    /**
+     * Make every saved continuation durable.
+     */
+    void flush() throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,161 @@
+package fc.azure.cosmos.cfp.checkpoint;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.PartitionKey;
+import com.azure.cosmos.models.SqlParameter;
+import com.azure.cosmos.models.SqlQuerySpec;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checkpoint store kept in a Cosmos lease container (partitioned by {@code /id}).
+ * <p>
+ * Each feed range is one document whose id is the store prefix followed by the URL safe Base64 of the
+ * range. Saves are buffered and {@link #flush()} upserts the latest continuation of every pending range
+ * concurrently, so a flush costs one write per range regardless of how many pages were read.
+ */
+public class CosmosCheckpointStore implements CheckpointStore {
+    //
+    private static final int FLUSH_CONCURRENCY = 8;
+    //
+    private final CosmosAsyncContainer leaseContainer;
+    private final String idPrefix;
+    private final Map<String, String> pending = new LinkedHashMap<>();
+
+    public CosmosCheckpointStore(final CosmosAsyncContainer leaseContainer, final String idPrefix) {
+        this.leaseContainer = leaseContainer;
+        this.idPrefix = idPrefix;
+    }
+
+    @Override
+    public synchronized String load(final String feedRange) throws IOException {
+        if (pending.containsKey(feedRange)) {
+            return pending.get(feedRange);
+        }
+        String id = idOf(feedRange);
+        try {
+            CheckpointDocument document = leaseContainer
+                    .readItem(id, new PartitionKey(id), CheckpointDocument.class)
+                    .block()
+                    .getItem();
+            return document.getContinuation();
+        } catch (CosmosException e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            throw new IOException("Unable to read the checkpoint of " + feedRange, e);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, String> loadAll() throws IOException {
+        SqlQuerySpec query = new SqlQuerySpec("SELECT * FROM c WHERE STARTSWITH(c.id, @prefix)",
+                new SqlParameter("@prefix", idPrefix));
+        Map<String, String> all = new HashMap<>();
+        try {
+            List<CheckpointDocument> documents = leaseContainer
+                    .queryItems(query, new CosmosQueryRequestOptions(), CheckpointDocument.class)
+                    .collectList()
+                    .block();
+            for (CheckpointDocument document : documents) {
+                all.put(document.getFeedRange(), document.getContinuation());
+            }
+        } catch (CosmosException e) {
+            throw new IOException("Unable to read the checkpoints with prefix " + idPrefix, e);
+        }
+        all.putAll(pending);
+        return all;
+    }
+
+    @Override
+    public synchronized void save(final String feedRange, final String continuation) {
+        pending.put(feedRange, continuation);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<CheckpointDocument> documents = new ArrayList<>(pending.size());
+        for (Map.Entry<String, String> entry : pending.entrySet()) {
+            CheckpointDocument document = new CheckpointDocument();
+            document.setId(idOf(entry.getKey()));
+            document.setFeedRange(entry.getKey());
+            document.setContinuation(entry.getValue());
+            document.setUpdatedEpochMs(System.currentTimeMillis());
+            documents.add(document);
+        }
+        try {
+            Flux.fromIterable(documents)
+                    .flatMap(document -> leaseContainer.upsertItem(document,
+                            new PartitionKey(document.getId()),
+                            new CosmosItemRequestOptions()), FLUSH_CONCURRENCY)
+                    .blockLast();
+        } catch (CosmosException e) {
+            // Keep the pending continuations, the next flush writes them again
+            throw new IOException("Unable to write " + documents.size() + " checkpoints", e);
+        }
+        pending.clear();
+    }
+
+    private String idOf(final String feedRange) {
+        return idPrefix + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(feedRange.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    public static class CheckpointDocument {
+        private String id;
+        private String feedRange;
+        private String continuation;
+        private long updatedEpochMs;
+
+        public String getId() {
+            return id;
+        }
+
+        public void setId(String id) {
+            this.id = id;
+        }
+
+        public String getFeedRange() {
+            return feedRange;
+        }
+
+        public void setFeedRange(String feedRange) {
+            this.feedRange = feedRange;
+        }
+
+        public String getContinuation() {
+            return continuation;
+        }
+
+        public void setContinuation(String continuation) {
+            this.continuation = continuation;
+        }
+
+        public long getUpdatedEpochMs() {
+            return updatedEpochMs;
+        }
+
+        public void setUpdatedEpochMs(long updatedEpochMs) {
+            this.updatedEpochMs = updatedEpochMs;
+        }
+    }
+}
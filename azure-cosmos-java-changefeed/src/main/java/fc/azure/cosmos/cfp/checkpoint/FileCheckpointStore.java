@@ -0,0 +1,196 @@
+package fc.azure.cosmos.cfp.checkpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Local checkpoint store backed by an append-only log.
+ * <p>
+ * Each checkpoint is appended as a length prefixed, CRC protected record; the last record of a range
+ * wins. {@link #save(String, String)} only buffers the record, {@link #flush()} appends every buffered
+ * record with a single write and a single fsync, so the cost of durability is paid per flush rather than
+ * per page. When the log holds several times more records than ranges it is compacted into a fresh
+ * file that is atomically moved over the old one.
+ * <p>
+ * On open the log is replayed; a torn record left by a crash in the middle of a write is truncated.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileCheckpointStore.class);
+    //
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 1024;
+    private static final int COMPACTION_RATIO = 4;
+    //
+    private final Path file;
+    private final Map<String, String> continuations = new HashMap<>();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(4096);
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private FileChannel channel;
+    private long records;
+
+    public FileCheckpointStore(final Path file) throws IOException {
+        this.file = file;
+        long validLength = replay();
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > validLength) {
+            LOGGER.warn("Truncating a torn record at the end of " + file);
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+    }
+
+    private long replay() throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(file));
+        long validLength = 0;
+        CRC32 crc = new CRC32();
+        while (log.remaining() >= 8) {
+            int keyLength = log.getInt();
+            int valueLength = log.getInt();
+            if (keyLength < 0 || valueLength < 0 || log.remaining() < (long) keyLength + valueLength + 8) {
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            byte[] value = new byte[valueLength];
+            log.get(key).get(value);
+            crc.reset();
+            crc.update(key);
+            crc.update(value);
+            if (log.getLong() != crc.getValue()) {
+                break;
+            }
+            continuations.put(new String(key, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8));
+            records++;
+            validLength = log.position();
+        }
+        return validLength;
+    }
+
+    @Override
+    public synchronized String load(final String feedRange) {
+        return continuations.get(feedRange);
+    }
+
+    @Override
+    public synchronized Map<String, String> loadAll() {
+        return new HashMap<>(continuations);
+    }
+
+    @Override
+    public synchronized void save(final String feedRange, final String continuation) throws IOException {
+        continuations.put(feedRange, continuation);
+        writeRecord(pendingOut, feedRange, continuation);
+        records++;
+    }
+
+    private static void writeRecord(final DataOutputStream out, final String feedRange,
+                                    final String continuation) throws IOException {
+        byte[] key = feedRange.getBytes(StandardCharsets.UTF_8);
+        byte[] value = continuation.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(value);
+        out.writeInt(key.length);
+        out.writeInt(value.length);
+        out.write(key);
+        out.write(value);
+        out.writeLong(crc.getValue());
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (pending.size() == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        long start = channel.position();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            // Drop the part of the records that reached the file, the next flush writes them again from here;
+            // a torn record left in the middle of the log would hide every later one on replay
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException truncate) {
+                e.addSuppressed(truncate);
+            }
+            throw e;
+        }
+        pending.reset();
+        //
+        if (records > Math.max(MIN_RECORDS_BEFORE_COMPACTION, (long) COMPACTION_RATIO * continuations.size())) {
+            compact();
+        }
+    }
+
+    private void compact() throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream(4096);
+        DataOutputStream snapshotOut = new DataOutputStream(snapshot);
+        for (Map.Entry<String, String> entry : continuations.entrySet()) {
+            writeRecord(snapshotOut, entry.getKey(), entry.getValue());
+        }
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(snapshot.toByteArray());
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory();
+        } finally {
+            // Whether the compacted log replaced it or the move failed and the old log is still intact,
+            // later saves append to whatever the file now is
+            channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+        }
+        LOGGER.info("Compacted " + records + " checkpoint records into " + continuations.size());
+        records = continuations.size();
+    }
+
+    /**
+     * Make the rename durable: it lives in the directory, which is not forced with the file.
+     */
+    private void forceDirectory() {
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel entries = FileChannel.open(directory, StandardOpenOption.READ)) {
+            entries.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened on every platform, Windows among them
+            LOGGER.debug("Cannot force the directory " + directory + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
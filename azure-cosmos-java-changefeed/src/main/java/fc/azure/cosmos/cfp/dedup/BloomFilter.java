@@ -0,0 +1,105 @@
+package fc.azure.cosmos.cfp.dedup;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free bloom filter over 64 bit fingerprints.
+ * <p>
+ * The {@code k} bit positions are derived from the two halves of the fingerprint by double hashing, and
+ * bits are set with compare and set on an {@link AtomicLongArray}, so concurrent lanes never block each
+ * other.
+ */
+public class BloomFilter {
+    //
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+    private final LongAdder insertions = new LongAdder();
+
+    private BloomFilter(final long bitCount, final int hashCount) {
+        this.words = new AtomicLongArray((int) ((bitCount + 63) >>> 6));
+        this.bitCount = (long) words.length() << 6;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Size a filter for the expected number of insertions and false positive probability.
+     */
+    public static BloomFilter create(final long expectedInsertions, final double falsePositiveProbability) {
+        double ln2 = Math.log(2);
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (ln2 * ln2));
+        if (bits > (long) Integer.MAX_VALUE << 6) {
+            throw new IllegalArgumentException("Bloom filter too large for " + expectedInsertions + " insertions");
+        }
+        int hashes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * ln2));
+        return new BloomFilter(Math.max(64, bits), hashes);
+    }
+
+    public boolean mightContain(final long fingerprint) {
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = bitIndex(h1 + i * h2);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void put(final long fingerprint) {
+        int h1 = (int) fingerprint;
+        int h2 = (int) (fingerprint >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = bitIndex(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(word, current, current | mask));
+        }
+        insertions.increment();
+    }
+
+    private long bitIndex(final int combined) {
+        // Spread the 32 bit combination over the whole bit array
+        return ((combined & 0xFFFFFFFFL) * 0x9E3779B97F4A7C15L >>> 1) % bitCount;
+    }
+
+    public long getInsertions() {
+        return insertions.sum();
+    }
+
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    public void writeTo(final DataOutputStream out) throws IOException {
+        out.writeLong(bitCount);
+        out.writeInt(hashCount);
+        out.writeLong(insertions.sum());
+        for (int i = 0; i < words.length(); i++) {
+            out.writeLong(words.get(i));
+        }
+    }
+
+    public static BloomFilter readFrom(final DataInputStream in) throws IOException {
+        long bits = in.readLong();
+        int hashes = in.readInt();
+        long inserted = in.readLong();
+        BloomFilter filter = new BloomFilter(bits, hashes);
+        for (int i = 0; i < filter.words.length(); i++) {
+            filter.words.set(i, in.readLong());
+        }
+        filter.insertions.add(inserted);
+        return filter;
+    }
+}
@@ -0,0 +1,47 @@
+package fc.azure.cosmos.cfp.dedup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fc.azure.cosmos.cfp.handler.ChangeFeedHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drops the document versions that were already handled before they reach the delegate.
+ * <p>
+ * Versions are only recorded once the delegate returned, so a batch that fails is not mistaken for a
+ * duplicate when it is redelivered. The dispatcher hands all the changes of a partition key to the same
+ * lane, one slice at a time, so two copies of a version are never in flight together.
+ */
+public class DeduplicatingHandler implements ChangeFeedHandler {
+    //
+    private final ChangeFeedHandler delegate;
+    private final IdempotencyCache cache;
+
+    public DeduplicatingHandler(final ChangeFeedHandler delegate, final IdempotencyCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public void handle(final List<JsonNode> docs) throws Exception {
+        List<JsonNode> fresh = new ArrayList<>(docs.size());
+        long[] fingerprints = new long[docs.size()];
+        for (JsonNode doc : docs) {
+            long fingerprint = DocumentFingerprint.of(doc);
+            if (fingerprint == DocumentFingerprint.NONE || !cache.isDuplicate(fingerprint)) {
+                fingerprints[fresh.size()] = fingerprint;
+                fresh.add(doc);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+        delegate.handle(fresh);
+        for (int i = 0; i < fresh.size(); i++) {
+            if (fingerprints[i] != DocumentFingerprint.NONE) {
+                cache.record(fingerprints[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package fc.azure.cosmos.cfp.dedup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * 64 bit fingerprint of a document version.
+ * <p>
+ * A version is identified by the document id and its {@code _lsn}, or its {@code _etag} when the LSN is
+ * absent; both change on every write, so a replayed change has the same fingerprint while a new write of
+ * the same document does not. The key is hashed with FNV-1a and finalized with the MurmurHash3 mixer.
+ */
+public final class DocumentFingerprint {
+    //
+    public static final long NONE = 0;
+    //
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private DocumentFingerprint() {
+    }
+
+    /**
+     * @return the fingerprint, or {@link #NONE} when the document has no id or version.
+     */
+    public static long of(final JsonNode doc) {
+        JsonNode id = doc.get("id");
+        JsonNode version = doc.get("_lsn");
+        if (version == null || version.isNull()) {
+            version = doc.get("_etag");
+        }
+        if (id == null || id.isNull() || version == null || version.isNull()) {
+            return NONE;
+        }
+        long h = hash(FNV_OFFSET, id.asText());
+        h = (h ^ 0x1F) * FNV_PRIME;
+        h = hash(h, version.asText());
+        h = mix(h);
+        return h == NONE ? 1 : h;
+    }
+
+    /**
+     * @return a 64 bit key of the document identity, its id and partition key, never {@link #NONE}.
+     */
+    public static long key(final String id, final String partitionKey) {
+        long h = hash(FNV_OFFSET, id);
+        h = (h ^ 0x1F) * FNV_PRIME;
+        if (partitionKey != null) {
+            h = hash(h, partitionKey);
+        }
+        h = mix(h);
+        return h == NONE ? 1 : h;
+    }
+
+    private static long hash(long h, final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
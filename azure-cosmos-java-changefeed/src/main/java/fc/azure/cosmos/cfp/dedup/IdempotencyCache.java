@@ -0,0 +1,211 @@
+package fc.azure.cosmos.cfp.dedup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the document versions already delivered downstream.
+ * <p>
+ * Recent fingerprints are kept in striped {@link LongLruSet}s, an exact answer for the replays that follow
+ * a lease failover. Optionally, two generations of {@link BloomFilter} extend the memory beyond the LRU
+ * capacity and across restarts: they are saved to a file and reloaded on start. When the current generation
+ * reaches its expected insertions it becomes the previous one and a fresh generation starts, which bounds
+ * the false positive rate. A bloom filter hit may be a false positive, so with the filter enabled a new
+ * version is dropped with that probability; it is sized for 1 in a million by default.
+ */
+public class IdempotencyCache implements AutoCloseable {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(IdempotencyCache.class);
+    private static final int FILE_MAGIC = 0x43465044;
+    //
+    private final LongLruSet[] stripes;
+    private final Path bloomFile;
+    private final long bloomInsertions;
+    private final double bloomFalsePositiveProbability;
+    private volatile BloomFilter currentBloom;
+    private volatile BloomFilter previousBloom;
+    private ScheduledExecutorService saver;
+    //
+    private final LongAdder lruHits = new LongAdder();
+    private final LongAdder bloomHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Cache without a bloom filter.
+     */
+    public IdempotencyCache(final int capacity) {
+        this(capacity, null, 0, 0);
+    }
+
+    /**
+     * @param capacity                      fingerprints kept exactly, across all stripes.
+     * @param bloomFile                     file the bloom filters are persisted to, null to disable them.
+     * @param bloomInsertions               insertions per bloom filter generation.
+     * @param bloomFalsePositiveProbability false positive probability of a full generation.
+     */
+    public IdempotencyCache(final int capacity, final Path bloomFile, final long bloomInsertions,
+                            final double bloomFalsePositiveProbability) {
+        int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(64, capacity / 1024)));
+        this.stripes = new LongLruSet[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new LongLruSet(Math.max(1, capacity / stripeCount));
+        }
+        this.bloomFile = bloomFile;
+        this.bloomInsertions = bloomInsertions;
+        this.bloomFalsePositiveProbability = bloomFalsePositiveProbability;
+        if (bloomFile != null) {
+            load();
+        }
+    }
+
+    private void load() {
+        if (Files.exists(bloomFile)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(bloomFile)))) {
+                if (in.readInt() != FILE_MAGIC) {
+                    throw new IOException("Not a bloom filter file");
+                }
+                currentBloom = BloomFilter.readFrom(in);
+                previousBloom = in.readBoolean() ? BloomFilter.readFrom(in) : null;
+                LOGGER.info("Loaded the idempotency bloom filters from " + bloomFile);
+                return;
+            } catch (IOException e) {
+                LOGGER.warn("Ignoring the unreadable bloom filter file " + bloomFile, e);
+            }
+        }
+        currentBloom = BloomFilter.create(bloomInsertions, bloomFalsePositiveProbability);
+    }
+
+    private LongLruSet stripe(final long fingerprint) {
+        return stripes[(int) (fingerprint >>> 40) & (stripes.length - 1)];
+    }
+
+    /**
+     * @return true if the version was already recorded.
+     */
+    public boolean isDuplicate(final long fingerprint) {
+        LongLruSet stripe = stripe(fingerprint);
+        synchronized (stripe) {
+            if (stripe.touch(fingerprint)) {
+                lruHits.increment();
+                return true;
+            }
+        }
+        BloomFilter current = currentBloom;
+        BloomFilter previous = previousBloom;
+        if (current != null && (current.mightContain(fingerprint)
+                || (previous != null && previous.mightContain(fingerprint)))) {
+            bloomHits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Record a version once it was delivered downstream.
+     */
+    public void record(final long fingerprint) {
+        LongLruSet stripe = stripe(fingerprint);
+        synchronized (stripe) {
+            stripe.add(fingerprint);
+        }
+        BloomFilter current = currentBloom;
+        if (current != null) {
+            current.put(fingerprint);
+            if (current.getInsertions() >= bloomInsertions) {
+                rotate(current);
+            }
+        }
+    }
+
+    private synchronized void rotate(final BloomFilter full) {
+        if (currentBloom == full) {
+            previousBloom = full;
+            currentBloom = BloomFilter.create(bloomInsertions, bloomFalsePositiveProbability);
+        }
+    }
+
+    /**
+     * Write the bloom filters to their file, through a temporary file moved over the previous one.
+     */
+    public synchronized void save() throws IOException {
+        if (bloomFile == null) {
+            return;
+        }
+        Path temp = bloomFile.resolveSibling(bloomFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp),
+                1 << 16))) {
+            out.writeInt(FILE_MAGIC);
+            currentBloom.writeTo(out);
+            BloomFilter previous = previousBloom;
+            out.writeBoolean(previous != null);
+            if (previous != null) {
+                previous.writeTo(out);
+            }
+        }
+        Files.move(temp, bloomFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Save the bloom filters periodically on a background thread, so a crash loses little of them.
+     */
+    public synchronized void startPeriodicSave(final Duration interval) {
+        if (bloomFile == null || saver != null) {
+            return;
+        }
+        saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cfp-bloom-save");
+            thread.setDaemon(true);
+            return thread;
+        });
+        saver.scheduleWithFixedDelay(() -> {
+            try {
+                save();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to save the bloom filters to " + bloomFile, e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public long getLruHits() {
+        return lruHits.sum();
+    }
+
+    public long getBloomHits() {
+        return bloomHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "duplicates dropped " + (getLruHits() + getBloomHits())
+                + " (lru " + getLruHits() + ", bloom " + getBloomHits() + "), new " + getMisses();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (saver != null) {
+                saver.shutdownNow();
+            }
+        }
+        save();
+    }
+}
@@ -0,0 +1,173 @@
+package fc.azure.cosmos.cfp.dedup;
+
+import java.util.Arrays;
+
+/**
+ * Bounded set of {@code long} keys evicting the least recently used one, without boxing.
+ * <p>
+ * Entries live in parallel primitive arrays: the keys and a doubly linked recency list threaded through
+ * {@code prev}/{@code next} indexes. They are found through an open addressing table of entry indexes with
+ * linear probing and backward shift deletion, so the whole structure is a handful of arrays allocated
+ * once, with no per entry object for the garbage collector to trace. Not thread safe.
+ */
+public class LongLruSet {
+    //
+    private static final int NONE = -1;
+    //
+    private final int capacity;
+    private final long[] keys;
+    private final int[] prev;
+    private final int[] next;
+    // Entry index + 1, 0 marks a free slot
+    private final int[] table;
+    private final int mask;
+    //
+    private int size;
+    private int head = NONE;
+    private int tail = NONE;
+
+    public LongLruSet(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+    }
+
+    /**
+     * @return true if the key is present, which also makes it the most recently used.
+     */
+    public boolean touch(final long key) {
+        int entry = find(key);
+        if (entry == NONE) {
+            return false;
+        }
+        moveToHead(entry);
+        return true;
+    }
+
+    public boolean contains(final long key) {
+        return find(key) != NONE;
+    }
+
+    /**
+     * Add the key as the most recently used one, evicting the least recently used key when full.
+     *
+     * @return false if the key was already present.
+     */
+    public boolean add(final long key) {
+        int entry = find(key);
+        if (entry != NONE) {
+            moveToHead(entry);
+            return false;
+        }
+        if (size == capacity) {
+            entry = tail;
+            unlink(entry);
+            removeFromTable(keys[entry]);
+        } else {
+            entry = size++;
+        }
+        keys[entry] = key;
+        insertIntoTable(key, entry);
+        linkAtHead(entry);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+        head = NONE;
+        tail = NONE;
+    }
+
+    private int find(final long key) {
+        for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (entry == NONE) {
+                return NONE;
+            }
+            if (keys[entry] == key) {
+                return entry;
+            }
+        }
+    }
+
+    private void insertIntoTable(final long key, final int entry) {
+        int slot = slotOf(key);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private void removeFromTable(final long key) {
+        int slot = slotOf(key);
+        while (keys[table[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        // Backward shift: pull following entries of the probe run into the hole
+        int hole = slot;
+        for (int probe = (hole + 1) & mask; table[probe] != 0; probe = (probe + 1) & mask) {
+            int home = slotOf(keys[table[probe] - 1]);
+            boolean movable = hole <= probe ? (home <= hole || home > probe) : (home <= hole && home > probe);
+            if (movable) {
+                table[hole] = table[probe];
+                hole = probe;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private int slotOf(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void moveToHead(final int entry) {
+        if (entry != head) {
+            unlink(entry);
+            linkAtHead(entry);
+        }
+    }
+
+    private void linkAtHead(final int entry) {
+        prev[entry] = NONE;
+        next[entry] = head;
+        if (head != NONE) {
+            prev[head] = entry;
+        }
+        head = entry;
+        if (tail == NONE) {
+            tail = entry;
+        }
+    }
+
+    private void unlink(final int entry) {
+        int p = prev[entry];
+        int n = next[entry];
+        if (p != NONE) {
+            next[p] = n;
+        } else {
+            head = n;
+        }
+        if (n != NONE) {
+            prev[n] = p;
+        } else {
+            tail = p;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package fc.azure.cosmos.cfp.dlq;
+
+import com.azure.cosmos.implementation.Utils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fc.azure.cosmos.cfp.sink.SegmentLog;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local dead-letter store of the documents a handler could not process, backed by a {@link SegmentLog}.
+ * <p>
+ * Each record is a JSON envelope holding the document, the error, the number of attempts and the time of
+ * the failure. Records are flushed and forced to disk before {@link #add} returns, so a dead-lettered
+ * document is never lost once its lease is checkpointed.
+ */
+public class DeadLetterQueue implements AutoCloseable {
+    //
+    private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+    //
+    private final SegmentLog log;
+    private final String source;
+    private final LongAdder deadLetters = new LongAdder();
+
+    public DeadLetterQueue(final Path directory, final String source) throws IOException {
+        this.log = new SegmentLog(directory, SEGMENT_BYTES, true);
+        this.source = source;
+    }
+
+    /**
+     * @return the offset of the dead letter.
+     */
+    public long add(final JsonNode document, final Throwable error, final int attempts) throws IOException {
+        ObjectNode envelope = OBJECT_MAPPER.createObjectNode();
+        envelope.put("source", source);
+        envelope.put("failedAt", Instant.now().toString());
+        envelope.put("attempts", attempts);
+        envelope.put("error", String.valueOf(error));
+        envelope.put("stackTrace", stackTrace(error));
+        envelope.set("document", document);
+        byte[] payload = OBJECT_MAPPER.writeValueAsBytes(envelope);
+        long offset;
+        synchronized (log) {
+            offset = log.append(payload, 0, payload.length);
+            log.flush();
+        }
+        deadLetters.increment();
+        return offset;
+    }
+
+    private static String stackTrace(final Throwable error) {
+        StringWriter out = new StringWriter();
+        error.printStackTrace(new PrintWriter(out));
+        return out.toString();
+    }
+
+    public long getDeadLetters() {
+        return deadLetters.sum();
+    }
+
+    public Path getDirectory() {
+        return log.getDirectory();
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+}
@@ -0,0 +1,124 @@
+package fc.azure.cosmos.cfp.dlq;
+
+import com.azure.cosmos.CosmosAsyncClient;
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.implementation.Utils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fc.azure.cosmos.bootstrap.ClientSettings;
+import fc.azure.cosmos.bootstrap.CosmosClientFactory;
+import fc.azure.cosmos.cfp.Constants;
+import fc.azure.cosmos.cfp.sink.SegmentLog;
+import org.apache.commons.cli.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Inspect and replay a dead-letter queue.
+ * <p>
+ * {@code list} prints the dead letters. {@code replay} upserts the dead-lettered documents back into a
+ * container, usually the source container once the handler is fixed, so they flow through the change feed
+ * again. The next offset to replay is kept in {@code replayed.offset} in the queue directory, so an
+ * interrupted replay resumes and a completed one is not repeated.
+ * <p>
+ * Usage:
+ * list --dlq <directory> [--from <offset>]
+ * replay --dlq <directory> --endpoint <cosmos account> --key <access key> --database <database name>
+ * --container <container name> [--from <offset>]
+ */
+public class DeadLetterTool {
+    //
+    private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
+    private static final String OFFSET_FILE = "replayed.offset";
+    private static final String[] SYSTEM_PROPERTIES = {"_rid", "_self", "_etag", "_attachments", "_ts", "_lsn"};
+
+    public static void main(String[] args) throws Exception {
+        Options commandLineOptions = new Options();
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.DLQ).required(true).hasArg().desc("Dead-letter queue directory").build());
+        commandLineOptions.addOption(Option.builder().longOpt("from").required(false).hasArg().desc("First offset").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.ENDPOINT).required(false).hasArg().desc("Endpoint").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.KEY).required(false).hasArg().desc("Access key").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.DATABASE).required(false).hasArg().desc("Database name").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.CONTAINER).required(false).hasArg().desc("Container the documents are replayed to").build());
+        //
+        CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(commandLineOptions, args);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            new HelpFormatter().printHelp("DeadLetterTool list|replay", commandLineOptions);
+            return;
+        }
+        String command = commandLine.getArgs().length > 0 ? commandLine.getArgs()[0] : "list";
+        Path directory = Paths.get(commandLine.getOptionValue(Constants.DLQ));
+        switch (command) {
+            case "list":
+                list(directory, Long.parseLong(commandLine.getOptionValue("from", "0")));
+                break;
+            case "replay":
+                replay(directory, commandLine);
+                break;
+            default:
+                new HelpFormatter().printHelp("DeadLetterTool list|replay", commandLineOptions);
+        }
+    }
+
+    private static void list(final Path directory, final long fromOffset) throws Exception {
+        try (SegmentLog.Reader reader = SegmentLog.openReader(directory, fromOffset)) {
+            SegmentLog.Record record;
+            while ((record = reader.poll()) != null) {
+                JsonNode envelope = OBJECT_MAPPER.readTree(record.getPayload());
+                System.out.println(record.getOffset()
+                        + "\t" + envelope.path("failedAt").asText()
+                        + "\t" + envelope.path("document").path("id").asText()
+                        + "\t" + envelope.path("error").asText());
+            }
+        }
+    }
+
+    private static void replay(final Path directory, final CommandLine commandLine) throws Exception {
+        for (String option : new String[]{Constants.ENDPOINT, Constants.KEY, Constants.DATABASE, Constants.CONTAINER}) {
+            if (!commandLine.hasOption(option)) {
+                throw new IllegalArgumentException("replay requires --" + option);
+            }
+        }
+        Path offsetFile = directory.resolve(OFFSET_FILE);
+        long fromOffset = commandLine.hasOption("from")
+                ? Long.parseLong(commandLine.getOptionValue("from"))
+                : Files.exists(offsetFile) ? Long.parseLong(new String(Files.readAllBytes(offsetFile), StandardCharsets.UTF_8).trim()) : 0;
+        //
+        CosmosAsyncClient client = CosmosClientFactory.getClient(new ClientSettings(
+                commandLine.getOptionValue(Constants.ENDPOINT),
+                commandLine.getOptionValue(Constants.KEY),
+                null));
+        long replayed = 0;
+        try (SegmentLog.Reader reader = SegmentLog.openReader(directory, fromOffset)) {
+            CosmosAsyncContainer container = client.getDatabase(commandLine.getOptionValue(Constants.DATABASE))
+                    .getContainer(commandLine.getOptionValue(Constants.CONTAINER));
+            SegmentLog.Record record;
+            while ((record = reader.poll()) != null) {
+                ObjectNode document = (ObjectNode) OBJECT_MAPPER.readTree(record.getPayload()).get("document");
+                for (String property : SYSTEM_PROPERTIES) {
+                    document.remove(property);
+                }
+                container.upsertItem(document).block();
+                replayed++;
+                saveOffset(offsetFile, record.getOffset() + 1);
+            }
+        } finally {
+            CosmosClientFactory.close(client);
+        }
+        System.out.println("Replayed " + replayed + " dead letters from offset " + fromOffset);
+    }
+
+    private static void saveOffset(final Path offsetFile, final long offset) throws Exception {
+        Path temp = offsetFile.resolveSibling(OFFSET_FILE + ".tmp");
+        Files.write(temp, Long.toString(offset).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
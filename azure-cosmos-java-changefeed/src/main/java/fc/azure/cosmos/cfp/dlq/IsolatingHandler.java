@@ -0,0 +1,132 @@
+package fc.azure.cosmos.cfp.dlq;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fc.azure.cosmos.cfp.handler.ChangeFeedHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a poison document from stalling its partition.
+ * <p>
+ * Batches are handed to the delegate whole. When one fails, its documents are retried one at a time, each
+ * with up to {@code maxAttempts} attempts and an exponential backoff; documents that still fail are written
+ * to the {@link DeadLetterQueue} and the batch completes, so the lease moves on.
+ * <p>
+ * A failure of most of the batch points at the downstream system rather than at the documents. When more
+ * than {@code maxDeadLetterRatio} of a batch would be dead-lettered, nothing is dead-lettered and the error
+ * is rethrown, so the batch is redelivered once the downstream system recovers. The same happens when
+ * more than 20 documents fail in a row across batches.
+ */
+public class IsolatingHandler implements ChangeFeedHandler {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(IsolatingHandler.class);
+    private static final long MAX_BACKOFF_MILLIS = 5000;
+    private static final int MAX_CONSECUTIVE_FAILURES = 20;
+    //
+    private final ChangeFeedHandler delegate;
+    private final DeadLetterQueue deadLetterQueue;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final double maxDeadLetterRatio;
+    //
+    private final LongAdder isolatedBatches = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    public IsolatingHandler(final ChangeFeedHandler delegate, final DeadLetterQueue deadLetterQueue,
+                            final int maxAttempts, final long initialBackoffMillis,
+                            final double maxDeadLetterRatio) {
+        this.delegate = delegate;
+        this.deadLetterQueue = deadLetterQueue;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxDeadLetterRatio = maxDeadLetterRatio;
+    }
+
+    @Override
+    public void handle(final List<JsonNode> docs) throws Exception {
+        try {
+            delegate.handle(docs);
+            consecutiveFailures.set(0);
+        } catch (Exception e) {
+            if (docs.size() > 1) {
+                LOGGER.warn("Batch of " + docs.size() + " documents failed, retrying them one by one", e);
+            }
+            isolate(docs);
+        }
+    }
+
+    private void isolate(final List<JsonNode> docs) throws Exception {
+        isolatedBatches.increment();
+        int allowedDeadLetters = (int) Math.floor(docs.size() * maxDeadLetterRatio);
+        int failed = 0;
+        Exception[] errors = new Exception[docs.size()];
+        for (int i = 0; i < docs.size(); i++) {
+            errors[i] = attempt(docs.get(i));
+            if (errors[i] == null) {
+                consecutiveFailures.set(0);
+                continue;
+            }
+            failed++;
+            if (failed > Math.max(1, allowedDeadLetters)) {
+                LOGGER.error("More than " + Math.max(1, allowedDeadLetters) + " of " + docs.size()
+                        + " documents failed, retrying the batch instead of dead-lettering it");
+                throw errors[i];
+            }
+            if (consecutiveFailures.incrementAndGet() > MAX_CONSECUTIVE_FAILURES) {
+                // Small batches failing in a row, the downstream system is most likely down
+                LOGGER.error(MAX_CONSECUTIVE_FAILURES + " documents failed in a row, retrying the batch instead of dead-lettering it");
+                throw errors[i];
+            }
+        }
+        for (int i = 0; i < docs.size(); i++) {
+            if (errors[i] != null) {
+                long offset = deadLetterQueue.add(docs.get(i), errors[i], maxAttempts);
+                LOGGER.error("Document " + docs.get(i).path("id").asText() + " dead-lettered at offset " + offset,
+                        errors[i]);
+            }
+        }
+    }
+
+    private Exception attempt(final JsonNode doc) throws InterruptedException {
+        long backoff = initialBackoffMillis;
+        Exception last = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                delegate.handle(Collections.singletonList(doc));
+                return null;
+            } catch (Exception e) {
+                last = e;
+                if (attempt < maxAttempts) {
+                    retries.increment();
+                    Thread.sleep(backoff);
+                    backoff = Math.min(MAX_BACKOFF_MILLIS, backoff * 2);
+                }
+            }
+        }
+        return last;
+    }
+
+    public long getIsolatedBatches() {
+        return isolatedBatches.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getDeadLetters() {
+        return deadLetterQueue.getDeadLetters();
+    }
+
+    @Override
+    public String toString() {
+        return "isolated batches " + getIsolatedBatches() + ", retries " + getRetries()
+                + ", dead letters " + getDeadLetters();
+    }
+}
@@ -0,0 +1,128 @@
+package fc.azure.cosmos.cfp.event;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * One change of the feed, with its operation and the images of the document before and after it.
+ * <p>
+ * In full fidelity mode the feed returns envelopes with a {@code current} image, a {@code previous} image
+ * when the container keeps it, and {@code metadata} holding the operation type and LSN; deletes have no
+ * current image. Latest version documents are read as an {@link OperationType#UPSERT} of themselves, so
+ * both modes go through the same code.
+ */
+public class ChangeEvent {
+    //
+    private final OperationType operationType;
+    private final String id;
+    private final String partitionKey;
+    private final JsonNode current;
+    private final JsonNode previous;
+    private final long lsn;
+    private final boolean timeToLiveExpired;
+
+    public ChangeEvent(final OperationType operationType, final String id, final String partitionKey,
+                       final JsonNode current, final JsonNode previous, final long lsn,
+                       final boolean timeToLiveExpired) {
+        this.operationType = operationType;
+        this.id = id;
+        this.partitionKey = partitionKey;
+        this.current = current;
+        this.previous = previous;
+        this.lsn = lsn;
+        this.timeToLiveExpired = timeToLiveExpired;
+    }
+
+    /**
+     * @param item              a full fidelity envelope or a latest version document.
+     * @param partitionKeyField top level field holding the partition key of the documents.
+     */
+    public static ChangeEvent of(final JsonNode item, final String partitionKeyField) {
+        JsonNode metadata = item.get("metadata");
+        if (metadata == null || !metadata.isObject() || !(item.has("current") || item.has("previous"))) {
+            return new ChangeEvent(OperationType.UPSERT,
+                    text(item.get("id")),
+                    text(item.get(partitionKeyField)),
+                    item,
+                    null,
+                    item.path("_lsn").asLong(-1),
+                    false);
+        }
+        JsonNode current = image(item.get("current"));
+        JsonNode previous = image(item.get("previous"));
+        JsonNode identity = current != null ? current : previous != null ? previous : metadata;
+        String partitionKey = text(identity.get(partitionKeyField));
+        if (partitionKey == null) {
+            JsonNode metadataKey = metadata.get("partitionKey");
+            partitionKey = metadataKey != null && metadataKey.isObject()
+                    ? text(metadataKey.get(partitionKeyField))
+                    : text(metadataKey);
+        }
+        return new ChangeEvent(OperationType.parse(text(metadata.get("operationType"))),
+                text(identity.get("id")) != null ? text(identity.get("id")) : text(metadata.get("id")),
+                partitionKey,
+                current,
+                previous,
+                metadata.path("lsn").asLong(-1),
+                metadata.path("timeToLiveExpired").asBoolean(false));
+    }
+
+    private static JsonNode image(final JsonNode node) {
+        return node == null || !node.isObject() || node.size() == 0 ? null : node;
+    }
+
+    private static String text(final JsonNode node) {
+        return node == null || node.isNull() || node.isContainerNode() ? null : node.asText();
+    }
+
+    public OperationType getOperationType() {
+        return operationType;
+    }
+
+    public boolean isDelete() {
+        return operationType == OperationType.DELETE;
+    }
+
+    /**
+     * @return the document id, null if the change does not carry it.
+     */
+    public String getId() {
+        return id;
+    }
+
+    public String getPartitionKey() {
+        return partitionKey;
+    }
+
+    /**
+     * @return the document after the change, null for deletes.
+     */
+    public JsonNode getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return the document before the change, null when unknown.
+     */
+    public JsonNode getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return the LSN of the change, -1 when unknown.
+     */
+    public long getLsn() {
+        return lsn;
+    }
+
+    /**
+     * @return whether the delete was made by the time to live of the document.
+     */
+    public boolean isTimeToLiveExpired() {
+        return timeToLiveExpired;
+    }
+
+    @Override
+    public String toString() {
+        return operationType + " " + id + " (" + partitionKey + ") at " + lsn;
+    }
+}
@@ -0,0 +1,29 @@
+package fc.azure.cosmos.cfp.event;
+
+/**
+ * Kind of change carried by a {@link ChangeEvent}.
+ */
+public enum OperationType {
+    CREATE,
+    REPLACE,
+    DELETE,
+    /**
+     * A latest version document, which does not tell whether it was created or replaced.
+     */
+    UPSERT;
+
+    /**
+     * @param operationType the {@code operationType} of a full fidelity change, case insensitive.
+     * @return the operation, {@link #UPSERT} when unknown.
+     */
+    public static OperationType parse(final String operationType) {
+        if (operationType != null) {
+            for (OperationType type : values()) {
+                if (type.name().equalsIgnoreCase(operationType)) {
+                    return type;
+                }
+            }
+        }
+        return UPSERT;
+    }
+}
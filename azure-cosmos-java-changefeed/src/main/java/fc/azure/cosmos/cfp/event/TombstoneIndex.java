@@ -0,0 +1,160 @@
+package fc.azure.cosmos.cfp.event;
+
+/**
+ * Compact in-memory index of the documents deleted most recently, by their 64 bit identity key.
+ * <p>
+ * Each tombstone keeps the LSN of its delete, so a version read later can be told apart: one written
+ * before the delete is stale and must not resurrect the document downstream, while one written after it
+ * means the document was created again and removes the tombstone. Tombstones live in primitive arrays
+ * used as a ring in delete order, found through an open addressing table with linear probing; once
+ * {@code capacity} deletes were recorded the oldest tombstone is dropped. Thread safe.
+ */
+public class TombstoneIndex {
+    //
+    private static final int NONE = -1;
+    //
+    private final int capacity;
+    private final long[] keys;
+    private final long[] lsns;
+    private final boolean[] live;
+    // Entry index + 1, 0 marks a free slot
+    private final int[] table;
+    private final int mask;
+    //
+    private int next;
+    private int size;
+    private long evictions;
+
+    public TombstoneIndex(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.keys = new long[capacity];
+        this.lsns = new long[capacity];
+        this.live = new boolean[capacity];
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        this.table = new int[tableSize];
+        this.mask = tableSize - 1;
+    }
+
+    /**
+     * Record the delete of a document.
+     *
+     * @param lsn LSN of the delete, -1 when unknown.
+     */
+    public synchronized void delete(final long key, final long lsn) {
+        int entry = find(key);
+        if (entry != NONE) {
+            lsns[entry] = Math.max(lsns[entry], lsn);
+            return;
+        }
+        entry = next;
+        next = (next + 1) % capacity;
+        if (live[entry]) {
+            removeFromTable(keys[entry]);
+            size--;
+            evictions++;
+        }
+        keys[entry] = key;
+        lsns[entry] = lsn;
+        live[entry] = true;
+        insertIntoTable(key, entry);
+        size++;
+    }
+
+    /**
+     * Record a write of a document, which removes its tombstone unless the write is older than the delete.
+     *
+     * @param lsn LSN of the write, -1 when unknown.
+     * @return false if the write is older than the delete of the document and must be ignored.
+     */
+    public synchronized boolean write(final long key, final long lsn) {
+        int entry = find(key);
+        if (entry == NONE) {
+            return true;
+        }
+        if (lsn >= 0 && lsns[entry] >= 0 && lsn < lsns[entry]) {
+            return false;
+        }
+        removeFromTable(key);
+        live[entry] = false;
+        size--;
+        return true;
+    }
+
+    public synchronized boolean isDeleted(final long key) {
+        return find(key) != NONE;
+    }
+
+    /**
+     * @return the LSN of the delete of the document, -1 when it is not deleted or the LSN is unknown.
+     */
+    public synchronized long deletedAt(final long key) {
+        int entry = find(key);
+        return entry == NONE ? -1 : lsns[entry];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the tombstones dropped to make room for newer ones.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private int find(final long key) {
+        for (int slot = slotOf(key); ; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (entry == NONE) {
+                return NONE;
+            }
+            if (keys[entry] == key) {
+                return entry;
+            }
+        }
+    }
+
+    private void insertIntoTable(final long key, final int entry) {
+        int slot = slotOf(key);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private void removeFromTable(final long key) {
+        int slot = slotOf(key);
+        while (keys[table[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        // Backward shift: pull following entries of the probe run into the hole
+        int hole = slot;
+        for (int probe = (hole + 1) & mask; table[probe] != 0; probe = (probe + 1) & mask) {
+            int home = slotOf(keys[table[probe] - 1]);
+            boolean movable = hole <= probe ? (home <= hole || home > probe) : (home <= hole && home > probe);
+            if (movable) {
+                table[hole] = table[probe];
+                hole = probe;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private int slotOf(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("tombstones=%d/%d evicted=%d", size, capacity, evictions);
+    }
+}
@@ -0,0 +1,91 @@
+package fc.azure.cosmos.cfp.event;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fc.azure.cosmos.cfp.dedup.DocumentFingerprint;
+import fc.azure.cosmos.cfp.handler.ChangeFeedHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the deletes of the feed in a {@link TombstoneIndex} before handing the changes downstream.
+ * <p>
+ * Writes older than the delete of their document are dropped, so a version replayed after the delete, or
+ * read from another stream, never resurrects a deleted document in a downstream cache. Both full fidelity
+ * envelopes and latest version documents are accepted.
+ */
+public class TombstoneTrackingHandler implements ChangeFeedHandler {
+    //
+    private final ChangeFeedHandler delegate;
+    private final TombstoneIndex tombstones;
+    private final String partitionKeyField;
+    private final LongAdder[] operations = new LongAdder[OperationType.values().length];
+    private final LongAdder stale = new LongAdder();
+
+    public TombstoneTrackingHandler(final ChangeFeedHandler delegate, final TombstoneIndex tombstones,
+                                    final String partitionKeyField) {
+        this.delegate = delegate;
+        this.tombstones = tombstones;
+        this.partitionKeyField = partitionKeyField;
+        for (int i = 0; i < operations.length; i++) {
+            operations[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void handle(final List<JsonNode> docs) throws Exception {
+        List<JsonNode> kept = null;
+        for (int i = 0; i < docs.size(); i++) {
+            ChangeEvent event = ChangeEvent.of(docs.get(i), partitionKeyField);
+            operations[event.getOperationType().ordinal()].increment();
+            boolean keep = true;
+            if (event.getId() != null) {
+                long key = DocumentFingerprint.key(event.getId(), event.getPartitionKey());
+                if (event.isDelete()) {
+                    tombstones.delete(key, event.getLsn());
+                } else {
+                    keep = tombstones.write(key, event.getLsn());
+                }
+            }
+            if (!keep) {
+                stale.increment();
+                if (kept == null) {
+                    kept = new ArrayList<>(docs.subList(0, i));
+                }
+            } else if (kept != null) {
+                kept.add(docs.get(i));
+            }
+        }
+        List<JsonNode> forwarded = kept == null ? docs : kept;
+        if (!forwarded.isEmpty()) {
+            delegate.handle(forwarded);
+        }
+    }
+
+    /**
+     * @return whether the document was deleted, according to the deletes seen so far.
+     */
+    public boolean isDeleted(final String id, final String partitionKey) {
+        return tombstones.isDeleted(DocumentFingerprint.key(id, partitionKey));
+    }
+
+    public long getOperations(final OperationType type) {
+        return operations[type.ordinal()].sum();
+    }
+
+    public long getStale() {
+        return stale.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("creates=%d replaces=%d upserts=%d deletes=%d stale=%d %s",
+                getOperations(OperationType.CREATE),
+                getOperations(OperationType.REPLACE),
+                getOperations(OperationType.UPSERT),
+                getOperations(OperationType.DELETE),
+                getStale(),
+                tombstones);
+    }
+}
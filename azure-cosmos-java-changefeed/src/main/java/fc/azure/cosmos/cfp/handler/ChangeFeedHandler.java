@@ -0,0 +1,23 @@
+package fc.azure.cosmos.cfp.handler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/**
+ * Downstream stage that receives the documents of a change feed batch.
+ * <p>
+ * Implementations may be invoked concurrently from several worker threads, but every call for
+ * documents sharing an ordering key is made from the same thread, in change feed order.
+ */
+public interface ChangeFeedHandler {
+
+    /**
+     * Process a slice of a change feed batch. Throwing fails the whole batch, which is then
+     * redelivered by the processor without being checkpointed.
+     *
+     * @param docs documents of the batch, in change feed order.
+     * @throws Exception when the documents could not be processed.
+     */
+    void handle(List<JsonNode> docs) throws Exception;
+}
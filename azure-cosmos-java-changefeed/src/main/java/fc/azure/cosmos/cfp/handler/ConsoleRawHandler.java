@@ -0,0 +1,34 @@
+package fc.azure.cosmos.cfp.handler;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the raw batches to the console as newline delimited JSON, one write per batch.
+ */
+public class ConsoleRawHandler implements RawChangeFeedHandler {
+    //
+    private final PrintStream out;
+    private final AtomicLong changeFeedCounter = new AtomicLong();
+
+    public ConsoleRawHandler() {
+        this(System.out);
+    }
+
+    public ConsoleRawHandler(final PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void handle(final RawDocumentBatch batch) {
+        synchronized (out) {
+            out.write(batch.getBuffer(), 0, batch.getLength());
+            out.flush();
+        }
+        changeFeedCounter.addAndGet(batch.size());
+    }
+
+    public long getChangeFeedCount() {
+        return changeFeedCounter.get();
+    }
+}
@@ -0,0 +1,40 @@
+package fc.azure.cosmos.cfp.handler;
+
+import com.azure.cosmos.implementation.Utils;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Default handler, prints every received document to the console.
+ */
+public class LoggingChangeFeedHandler implements ChangeFeedHandler {
+    //
+    private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoggingChangeFeedHandler.class);
+    //
+    private final AtomicLong changeFeedCounter = new AtomicLong();
+
+    @Override
+    public void handle(List<JsonNode> docs) {
+        for (JsonNode document : docs) {
+            try {
+                long count = changeFeedCounter.incrementAndGet();
+                System.out.println("DOCUMENT RECEIVED: " + OBJECT_MAPPER.writerWithDefaultPrettyPrinter()
+                        .writeValueAsString(document) + " MESSAGE_COUNT " + count);
+            } catch (JsonProcessingException e) {
+                LOGGER.error("JsonProcessingException ", e);
+            }
+        }
+    }
+
+    public long getChangeFeedCount() {
+        return changeFeedCounter.get();
+    }
+}
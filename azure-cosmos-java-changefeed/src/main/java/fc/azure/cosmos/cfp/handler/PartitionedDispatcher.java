@@ -0,0 +1,289 @@
+package fc.azure.cosmos.cfp.handler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fc.azure.cosmos.cfp.metrics.ChangeFeedMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Hands change feed batches to a bounded pool of worker lanes.
+ * <p>
+ * Every document is routed to a lane by the hash of its ordering key (the partition key by default),
+ * so documents of the same logical partition are always handled by the same single thread, in change
+ * feed order, while different partitions and different leases are handled in parallel.
+ * Each lane has a bounded queue; when it is full the lease thread blocks, which throttles the polling
+ * of the change feed instead of buffering without limit.
+ * <p>
+ * {@link #accept(List)} returns only once all the slices of the batch have been handled, so the
+ * processor checkpoints the lease after the handler completed. If any slice fails the exception is
+ * rethrown and the batch is redelivered.
+ * <p>
+ * When a {@link ChangeFeedMetrics} is supplied, every slice is recorded against its lane and every
+ * batch against the totals.
+ * <p>
+ * {@link #quiesce(long, TimeUnit)} prepares a graceful shutdown: new batches are refused, so they are not
+ * checkpointed and the next owner of the lease reads them again, and the call waits for the batches in
+ * flight to complete and be checkpointed.
+ */
+public class PartitionedDispatcher implements Consumer<List<JsonNode>>, AutoCloseable {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedDispatcher.class);
+    //
+    public static final String DEFAULT_ORDERING_KEY = "partitionKey";
+    //
+    private final ChangeFeedHandler handler;
+    private final ThreadPoolExecutor[] lanes;
+    private final String orderingKey;
+    private final ChangeFeedMetrics metrics;
+    //
+    private final Object inFlightLock = new Object();
+    private int inFlight;
+    private volatile boolean quiescing;
+
+    public PartitionedDispatcher(final ChangeFeedHandler handler, final int laneCount, final int laneCapacity) {
+        this(handler, laneCount, laneCapacity, DEFAULT_ORDERING_KEY, null);
+    }
+
+    public PartitionedDispatcher(final ChangeFeedHandler handler, final int laneCount, final int laneCapacity,
+                                 final String orderingKey) {
+        this(handler, laneCount, laneCapacity, orderingKey, null);
+    }
+
+    public PartitionedDispatcher(final ChangeFeedHandler handler, final int laneCount, final int laneCapacity,
+                                 final String orderingKey, final ChangeFeedMetrics metrics) {
+        if (laneCount < 1 || laneCapacity < 1) {
+            throw new IllegalArgumentException("Lane count and capacity must be positive");
+        }
+        this.handler = handler;
+        this.orderingKey = orderingKey;
+        this.metrics = metrics;
+        this.lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            final String threadName = "cfp-lane-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(laneCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    (runnable, executor) -> {
+                        // Backpressure, park the submitting lease thread until the lane has room
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException("Dispatcher is closed");
+                        }
+                        try {
+                            executor.getQueue().put(runnable);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("Interrupted while waiting for a lane", e);
+                        }
+                        // Closed while parked, the lane thread may be gone and would never run the slice
+                        if (executor.isShutdown() && executor.remove(runnable)) {
+                            throw new RejectedExecutionException("Dispatcher is closed");
+                        }
+                    });
+        }
+    }
+
+    @Override
+    public void accept(final List<JsonNode> docs) {
+        if (docs == null || docs.isEmpty()) {
+            return;
+        }
+        synchronized (inFlightLock) {
+            if (quiescing) {
+                throw new IllegalStateException("Dispatcher is shutting down, the batch will be redelivered");
+            }
+            inFlight++;
+        }
+        try {
+            dispatch(docs);
+        } finally {
+            synchronized (inFlightLock) {
+                inFlight--;
+                inFlightLock.notifyAll();
+            }
+        }
+    }
+
+    private void dispatch(final List<JsonNode> docs) {
+        final long batchStart = System.nanoTime();
+        List<List<JsonNode>> slices = partition(docs);
+        int sliceCount = 0;
+        for (List<JsonNode> slice : slices) {
+            if (slice != null) {
+                sliceCount++;
+            }
+        }
+        //
+        final CountDownLatch completed = new CountDownLatch(sliceCount);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < slices.size(); i++) {
+            final List<JsonNode> slice = slices.get(i);
+            if (slice == null) {
+                continue;
+            }
+            Slice task = new Slice(i, slice, completed, failure);
+            try {
+                lanes[i].execute(task);
+            } catch (RejectedExecutionException e) {
+                task.abandon(e);
+            }
+        }
+        //
+        try {
+            completed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the batch to complete", e);
+        }
+        //
+        Throwable t = failure.get();
+        if (metrics != null) {
+            metrics.recordBatch(docs.size(), System.nanoTime() - batchStart, t != null);
+        }
+        if (t != null) {
+            LOGGER.error("Change feed batch of " + docs.size() + " documents failed, it will be retried", t);
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw new IllegalStateException("Change feed handler failed", t);
+        }
+    }
+
+    /**
+     * One lane's share of a batch; it counts the batch down once handled, or once abandoned when the
+     * dispatcher is closed before it ran, so the lease thread never waits for a slice that cannot run.
+     */
+    private final class Slice implements Runnable {
+        private final int lane;
+        private final List<JsonNode> docs;
+        private final CountDownLatch completed;
+        private final AtomicReference<Throwable> failure;
+
+        private Slice(final int lane, final List<JsonNode> docs, final CountDownLatch completed,
+                      final AtomicReference<Throwable> failure) {
+            this.lane = lane;
+            this.docs = docs;
+            this.completed = completed;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            long sliceStart = System.nanoTime();
+            boolean failed = false;
+            try {
+                handler.handle(docs);
+            } catch (Throwable t) {
+                failed = true;
+                failure.compareAndSet(null, t);
+            } finally {
+                if (metrics != null) {
+                    metrics.lane(lane).recordSlice(docs.size(), System.nanoTime() - sliceStart, failed);
+                }
+                completed.countDown();
+            }
+        }
+
+        private void abandon(final Throwable cause) {
+            failure.compareAndSet(null, cause);
+            completed.countDown();
+        }
+    }
+
+    private List<List<JsonNode>> partition(final List<JsonNode> docs) {
+        List<List<JsonNode>> slices = new ArrayList<>(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            slices.add(null);
+        }
+        for (JsonNode doc : docs) {
+            int lane = laneOf(doc);
+            List<JsonNode> slice = slices.get(lane);
+            if (slice == null) {
+                slice = new ArrayList<>();
+                slices.set(lane, slice);
+            }
+            slice.add(doc);
+        }
+        return slices;
+    }
+
+    private int laneOf(final JsonNode doc) {
+        if (lanes.length == 1) {
+            return 0;
+        }
+        JsonNode key = doc.get(orderingKey);
+        if (key == null || key.isNull()) {
+            key = doc.get("id");
+        }
+        int hash = key == null ? 0 : key.asText().hashCode();
+        return Math.floorMod(hash, lanes.length);
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    public int getQueuedBatches(final int lane) {
+        return lanes[lane].getQueue().size();
+    }
+
+    /**
+     * Refuse new batches and wait for the batches in flight to complete.
+     *
+     * @return true if no batch is in flight anymore, false if the timeout elapsed first.
+     */
+    public boolean quiesce(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (inFlightLock) {
+            quiescing = true;
+            while (inFlight > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(inFlightLock, remaining);
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor lane : lanes) {
+                if (!lane.awaitTermination(60, TimeUnit.SECONDS)) {
+                    abandon(lane.shutdownNow());
+                }
+            }
+        } catch (InterruptedException e) {
+            for (ThreadPoolExecutor lane : lanes) {
+                abandon(lane.shutdownNow());
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void abandon(final List<Runnable> dropped) {
+        for (Runnable runnable : dropped) {
+            if (runnable instanceof Slice) {
+                ((Slice) runnable).abandon(new RejectedExecutionException("Dispatcher is closed"));
+            }
+        }
+    }
+}
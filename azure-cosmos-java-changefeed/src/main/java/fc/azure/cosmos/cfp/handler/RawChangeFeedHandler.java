@@ -0,0 +1,13 @@
+package fc.azure.cosmos.cfp.handler;
+
+/**
+ * Downstream stage receiving change feed batches as raw JSON bytes instead of Jackson trees.
+ */
+public interface RawChangeFeedHandler {
+
+    /**
+     * @param batch encoded batch, only valid for the duration of the call.
+     * @throws Exception when the batch could not be processed.
+     */
+    void handle(RawDocumentBatch batch) throws Exception;
+}
@@ -0,0 +1,103 @@
+package fc.azure.cosmos.cfp.handler;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact UTF-8 JSON of a change feed document, as a slice of a shared batch buffer.
+ * <p>
+ * Fields are decoded lazily with a streaming parser that only walks the top level of the document, so
+ * reading a couple of fields never builds a tree. The slice is only valid for the duration of the
+ * handler call that received it; copy it with {@link #toByteArray()} to keep it.
+ */
+public class RawDocument {
+    //
+    private final JsonFactory jsonFactory;
+    private final byte[] buffer;
+    private final int offset;
+    private final int length;
+
+    RawDocument(final JsonFactory jsonFactory, final byte[] buffer, final int offset, final int length) {
+        this.jsonFactory = jsonFactory;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(buffer, offset, length);
+    }
+
+    public byte[] toByteArray() {
+        byte[] copy = new byte[length];
+        System.arraycopy(buffer, offset, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * @param name top level field name.
+     * @return the text of a scalar field, or null when the field is absent, null or not a scalar.
+     */
+    public String getString(final String name) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(buffer, offset, length)) {
+            if (!seek(parser, name) || !parser.currentToken().isScalarValue()
+                    || parser.currentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            return parser.getValueAsString();
+        }
+    }
+
+    /**
+     * @param name         top level field name.
+     * @param defaultValue value returned when the field is absent or not a number.
+     * @return the numeric value of the field.
+     */
+    public long getLong(final String name, final long defaultValue) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(buffer, offset, length)) {
+            if (!seek(parser, name) || !parser.currentToken().isNumeric()) {
+                return defaultValue;
+            }
+            return parser.getLongValue();
+        }
+    }
+
+    private static boolean seek(final JsonParser parser, final String name) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (name.equals(field)) {
+                return true;
+            }
+            if (value.isStructStart()) {
+                parser.skipChildren();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, offset, length, StandardCharsets.UTF_8);
+    }
+}
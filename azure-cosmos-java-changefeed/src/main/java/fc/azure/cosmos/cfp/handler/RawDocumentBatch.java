@@ -0,0 +1,59 @@
+package fc.azure.cosmos.cfp.handler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A change feed batch encoded once into a single buffer of newline delimited JSON.
+ * <p>
+ * Sinks that forward whole batches can write {@link #writeTo(OutputStream)} in one call; the documents
+ * are slices of the same buffer.
+ */
+public class RawDocumentBatch {
+    //
+    private final byte[] buffer;
+    private final int length;
+    private final List<RawDocument> documents;
+    private final List<JsonNode> sourceDocuments;
+
+    RawDocumentBatch(final byte[] buffer, final int length, final List<RawDocument> documents,
+                     final List<JsonNode> sourceDocuments) {
+        this.buffer = buffer;
+        this.length = length;
+        this.documents = documents;
+        this.sourceDocuments = sourceDocuments;
+    }
+
+    /**
+     * @return the buffer holding the batch, valid from 0 to {@link #getLength()}.
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public List<RawDocument> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return the trees the batch was encoded from, for sinks that need objects rather than bytes.
+     */
+    public List<JsonNode> getSourceDocuments() {
+        return sourceDocuments;
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    public void writeTo(final OutputStream out) throws IOException {
+        out.write(buffer, 0, length);
+    }
+}
@@ -0,0 +1,69 @@
+package fc.azure.cosmos.cfp.handler;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Serializes the documents of a batch with one streaming generator into one reusable buffer.
+ * <p>
+ * An encoder is not thread safe and the buffer is reused by the next {@link #encode(List)}, which is what
+ * keeps the steady state allocation to the document slices; use one encoder per thread.
+ */
+public class RawDocumentEncoder {
+    //
+    private static final SerializedString NEWLINE = new SerializedString("\n");
+    //
+    private final ObjectMapper objectMapper;
+    private final ReusableBuffer out = new ReusableBuffer(64 * 1024);
+
+    public RawDocumentEncoder(final ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public RawDocumentBatch encode(final List<JsonNode> docs) throws IOException {
+        out.reset();
+        int[] ends = new int[docs.size()];
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(NEWLINE);
+            for (int i = 0; i < docs.size(); i++) {
+                objectMapper.writeTree(generator, docs.get(i));
+                generator.flush();
+                ends[i] = out.size();
+            }
+        }
+        out.write('\n');
+        //
+        byte[] buffer = out.buffer();
+        List<RawDocument> documents = new ArrayList<>(docs.size());
+        int start = 0;
+        for (int end : ends) {
+            documents.add(new RawDocument(objectMapper.getFactory(), buffer, start, end - start));
+            // Skip the separator written before the next document
+            start = end + 1;
+        }
+        return new RawDocumentBatch(buffer, out.size(), documents, docs);
+    }
+
+    private static final class ReusableBuffer extends ByteArrayOutputStream {
+
+        ReusableBuffer(final int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        @Override
+        public void close() {
+            // Kept open, the buffer is reused by the next batch
+        }
+    }
+}
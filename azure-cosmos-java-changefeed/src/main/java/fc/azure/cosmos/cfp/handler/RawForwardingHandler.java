@@ -0,0 +1,29 @@
+package fc.azure.cosmos.cfp.handler;
+
+import com.azure.cosmos.implementation.Utils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.List;
+
+/**
+ * Adapts a {@link RawChangeFeedHandler} to the change feed processor: each slice is serialized once,
+ * compactly, into a per thread buffer and handed over as bytes.
+ */
+public class RawForwardingHandler implements ChangeFeedHandler {
+    //
+    private static final ObjectMapper OBJECT_MAPPER = Utils.getSimpleObjectMapper();
+    //
+    private final RawChangeFeedHandler delegate;
+    private final ThreadLocal<RawDocumentEncoder> encoders =
+            ThreadLocal.withInitial(() -> new RawDocumentEncoder(OBJECT_MAPPER));
+
+    public RawForwardingHandler(final RawChangeFeedHandler delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void handle(final List<JsonNode> docs) throws Exception {
+        delegate.handle(encoders.get().encode(docs));
+    }
+}
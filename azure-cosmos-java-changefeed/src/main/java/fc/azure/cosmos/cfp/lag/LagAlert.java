@@ -0,0 +1,65 @@
+package fc.azure.cosmos.cfp.lag;
+
+/**
+ * Raised when the lag of a lease keeps growing, and again when it stops.
+ */
+public class LagAlert {
+    //
+    public enum Type {
+        GROWING,
+        RECOVERED
+    }
+    //
+    private final Type type;
+    private final String leaseToken;
+    private final String hostName;
+    private final long lag;
+    private final int windows;
+    private final double drainRate;
+
+    public LagAlert(final Type type, final String leaseToken, final String hostName, final long lag,
+                    final int windows, final double drainRate) {
+        this.type = type;
+        this.leaseToken = leaseToken;
+        this.hostName = hostName;
+        this.lag = lag;
+        this.windows = windows;
+        this.drainRate = drainRate;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getLeaseToken() {
+        return leaseToken;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public long getLag() {
+        return lag;
+    }
+
+    /**
+     * @return the number of consecutive windows the lag grew in.
+     */
+    public int getWindows() {
+        return windows;
+    }
+
+    public double getDrainRate() {
+        return drainRate;
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.GROWING
+                ? String.format("Lag of lease %s on host %s grew for %d windows, now %d documents, draining at %.1f/s",
+                leaseToken, hostName, windows, lag, drainRate)
+                : String.format("Lag of lease %s on host %s stopped growing, now %d documents",
+                leaseToken, hostName, lag);
+    }
+}
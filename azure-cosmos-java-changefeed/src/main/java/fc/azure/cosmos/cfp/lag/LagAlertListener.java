@@ -0,0 +1,9 @@
+package fc.azure.cosmos.cfp.lag;
+
+/**
+ * Receives the alerts of a {@link LagEstimator}.
+ */
+public interface LagAlertListener {
+
+    void onAlert(LagAlert alert);
+}
@@ -0,0 +1,148 @@
+package fc.azure.cosmos.cfp.lag;
+
+import com.azure.cosmos.models.ChangeFeedProcessorState;
+import fc.azure.cosmos.cfp.metrics.ChangeFeedMetrics;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Turns samples of the processor state into lag trends.
+ * <p>
+ * For every lease the drain rate (how fast the estimated lag shrinks) and the processing rate (how fast
+ * the checkpoint LSN moves) are smoothed with an exponential moving average whose weight follows the time
+ * between samples, so irregular sampling does not bias the estimate. The lag of a lease that grows for
+ * {@code alertWindows} consecutive samples raises a {@link LagAlert.Type#GROWING} alert, and a
+ * {@link LagAlert.Type#RECOVERED} one the first time it does not grow anymore.
+ */
+public class LagEstimator {
+    //
+    private final double smoothingSeconds;
+    private final int alertWindows;
+    private final List<LagAlertListener> listeners;
+    private final Map<String, LeaseState> leases = new HashMap<>();
+
+    /**
+     * @param smoothing    time constant of the moving averages.
+     * @param alertWindows consecutive growing samples before an alert.
+     * @param listeners    alert listeners.
+     */
+    public LagEstimator(final Duration smoothing, final int alertWindows, final List<LagAlertListener> listeners) {
+        this.smoothingSeconds = smoothing.toMillis() / 1000.0;
+        this.alertWindows = alertWindows;
+        this.listeners = listeners;
+    }
+
+    public void update(final List<ChangeFeedProcessorState> states) {
+        update(states, System.nanoTime());
+    }
+
+    public synchronized void update(final List<ChangeFeedProcessorState> states, final long sampleNanos) {
+        List<LagAlert> alerts = new ArrayList<>();
+        for (ChangeFeedProcessorState state : states) {
+            LeaseState lease = leases.computeIfAbsent(state.getLeaseToken(), LeaseState::new);
+            LagAlert alert = lease.update(state.getHostName(),
+                    Math.max(0, state.getEstimatedLag()),
+                    ChangeFeedMetrics.parseLsn(state.getContinuationToken()),
+                    sampleNanos);
+            if (alert != null) {
+                alerts.add(alert);
+            }
+        }
+        for (LagAlert alert : alerts) {
+            for (LagAlertListener listener : listeners) {
+                listener.onAlert(alert);
+            }
+        }
+    }
+
+    /**
+     * @return the estimates of every lease, by lease token.
+     */
+    public synchronized Map<String, LeaseLag> getLeases() {
+        Map<String, LeaseLag> snapshot = new TreeMap<>();
+        for (LeaseState lease : leases.values()) {
+            snapshot.put(lease.leaseToken, lease.snapshot());
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return the estimates summed over the leases of every host, by host name.
+     */
+    public synchronized Map<String, LeaseLag> getHosts() {
+        Map<String, long[]> lags = new TreeMap<>();
+        Map<String, double[]> rates = new HashMap<>();
+        for (LeaseState lease : leases.values()) {
+            String host = lease.hostName == null ? "<unowned>" : lease.hostName;
+            long[] lag = lags.computeIfAbsent(host, key -> new long[2]);
+            lag[0] += lease.lag;
+            lag[1] = Math.max(lag[1], lease.growingWindows);
+            double[] rate = rates.computeIfAbsent(host, key -> new double[2]);
+            rate[0] += lease.drainRate;
+            rate[1] += lease.processingRate;
+        }
+        Map<String, LeaseLag> snapshot = new TreeMap<>();
+        for (Map.Entry<String, long[]> host : lags.entrySet()) {
+            double[] rate = rates.get(host.getKey());
+            snapshot.put(host.getKey(), new LeaseLag(host.getKey(), host.getKey(), host.getValue()[0], rate[0], rate[1],
+                    (int) host.getValue()[1]));
+        }
+        return snapshot;
+    }
+
+    private class LeaseState {
+        //
+        private final String leaseToken;
+        private String hostName;
+        private long lag = -1;
+        private long lsn = -1;
+        private long sampleNanos;
+        private double drainRate;
+        private double processingRate;
+        private int growingWindows;
+        private boolean alerting;
+
+        LeaseState(final String leaseToken) {
+            this.leaseToken = leaseToken;
+        }
+
+        LagAlert update(final String hostName, final long lag, final long lsn, final long sampleNanos) {
+            LagAlert alert = null;
+            if (this.lag >= 0 && sampleNanos > this.sampleNanos) {
+                double seconds = (sampleNanos - this.sampleNanos) / 1e9;
+                double weight = 1 - Math.exp(-seconds / smoothingSeconds);
+                drainRate += weight * ((this.lag - lag) / seconds - drainRate);
+                if (this.lsn >= 0 && lsn >= this.lsn) {
+                    processingRate += weight * ((lsn - this.lsn) / seconds - processingRate);
+                }
+                if (lag > this.lag) {
+                    growingWindows++;
+                    if (growingWindows >= alertWindows && !alerting) {
+                        alerting = true;
+                        alert = new LagAlert(LagAlert.Type.GROWING, leaseToken, hostName, lag, growingWindows, drainRate);
+                    }
+                } else if (lag < this.lag || lag == 0) {
+                    growingWindows = 0;
+                    if (alerting) {
+                        alerting = false;
+                        alert = new LagAlert(LagAlert.Type.RECOVERED, leaseToken, hostName, lag, 0, drainRate);
+                    }
+                }
+            }
+            this.hostName = hostName;
+            this.lag = lag;
+            this.lsn = lsn;
+            this.sampleNanos = sampleNanos;
+            return alert;
+        }
+
+        LeaseLag snapshot() {
+            return new LeaseLag(leaseToken, hostName, Math.max(0, lag), drainRate, processingRate, growingWindows);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package fc.azure.cosmos.cfp.lag;
+
+import java.time.Duration;
+
+/**
+ * Smoothed lag estimates of one lease, or the sum of the leases of one host.
+ * <p>
+ * The drain rate is the smoothed rate at which the lag shrinks, in documents per second; it is negative
+ * while the lag grows. The processing rate is the smoothed progress of the checkpoint, in LSNs per second.
+ */
+public class LeaseLag {
+    //
+    private final String key;
+    private final String hostName;
+    private final long lag;
+    private final double drainRate;
+    private final double processingRate;
+    private final int growingWindows;
+
+    public LeaseLag(final String key, final String hostName, final long lag, final double drainRate,
+                    final double processingRate, final int growingWindows) {
+        this.key = key;
+        this.hostName = hostName;
+        this.lag = lag;
+        this.drainRate = drainRate;
+        this.processingRate = processingRate;
+        this.growingWindows = growingWindows;
+    }
+
+    /**
+     * @return the lease token, or the host name for a host total.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public long getLag() {
+        return lag;
+    }
+
+    public double getDrainRate() {
+        return drainRate;
+    }
+
+    public double getProcessingRate() {
+        return processingRate;
+    }
+
+    public int getGrowingWindows() {
+        return growingWindows;
+    }
+
+    /**
+     * @return the time to catch up at the current drain rate, null if the lag is not shrinking.
+     */
+    public Duration getTimeToCatchUp() {
+        if (lag <= 0) {
+            return Duration.ZERO;
+        }
+        if (drainRate <= 0) {
+            return null;
+        }
+        return Duration.ofMillis((long) (lag / drainRate * 1000));
+    }
+
+    @Override
+    public String toString() {
+        Duration catchUp = getTimeToCatchUp();
+        return String.format("%s host=%s lag=%d drain=%.1f/s processing=%.1f lsn/s catch-up=%s",
+                key, hostName, lag, drainRate, processingRate,
+                catchUp == null ? "never" : catchUp.getSeconds() + "s");
+    }
+}
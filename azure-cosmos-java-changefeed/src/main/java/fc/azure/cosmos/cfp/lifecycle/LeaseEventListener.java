@@ -0,0 +1,29 @@
+package fc.azure.cosmos.cfp.lifecycle;
+
+import com.azure.cosmos.models.ChangeFeedProcessorState;
+
+import java.util.List;
+
+/**
+ * Callbacks of a {@link LeaseStateWatcher} when leases move between hosts.
+ */
+public interface LeaseEventListener {
+
+    /**
+     * This host started processing the lease.
+     */
+    void onLeaseAcquired(String leaseToken);
+
+    /**
+     * This host stopped processing the lease.
+     *
+     * @param newOwner the host now holding the lease, null when it is not owned yet.
+     */
+    void onLeaseReleased(String leaseToken, String newOwner);
+
+    /**
+     * Every sample of the processor state, after the lease events it produced.
+     */
+    default void onStateSampled(List<ChangeFeedProcessorState> states) {
+    }
+}
@@ -0,0 +1,101 @@
+package fc.azure.cosmos.cfp.lifecycle;
+
+import com.azure.cosmos.ChangeFeedProcessor;
+import com.azure.cosmos.models.ChangeFeedProcessorState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Turns the processor state into lease ownership events.
+ * <p>
+ * The processor does not publish rebalancing events, so its state is sampled on a scheduled thread with a
+ * non blocking {@code getCurrentState()} subscription, and the leases owned by this host are compared with
+ * the previous sample. A sample still in flight when the next one is due is skipped rather than queued.
+ */
+public class LeaseStateWatcher implements AutoCloseable {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(LeaseStateWatcher.class);
+    //
+    private final Supplier<ChangeFeedProcessor> processor;
+    private final String hostName;
+    private final List<LeaseEventListener> listeners;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean sampling = new AtomicBoolean();
+    //
+    private Set<String> ownedLeases = new HashSet<>();
+
+    public LeaseStateWatcher(final Supplier<ChangeFeedProcessor> processor, final String hostName,
+                             final List<LeaseEventListener> listeners) {
+        this.processor = processor;
+        this.hostName = hostName;
+        this.listeners = listeners;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cfp-lease-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start(final Duration interval) {
+        scheduler.scheduleWithFixedDelay(this::sample, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void sample() {
+        if (!sampling.compareAndSet(false, true)) {
+            return;
+        }
+        processor.get().getCurrentState()
+                .publishOn(Schedulers.fromExecutorService(scheduler))
+                .doFinally(signal -> sampling.set(false))
+                .subscribe(this::update,
+                        error -> LOGGER.warn("Unable to read the change feed processor state", error));
+    }
+
+    // Runs on the scheduler thread only
+    private void update(final List<ChangeFeedProcessorState> states) {
+        Set<String> owned = new HashSet<>();
+        Map<String, String> owners = new HashMap<>();
+        for (ChangeFeedProcessorState state : states) {
+            owners.put(state.getLeaseToken(), state.getHostName());
+            if (hostName.equals(state.getHostName())) {
+                owned.add(state.getLeaseToken());
+            }
+        }
+        for (String leaseToken : owned) {
+            if (!ownedLeases.contains(leaseToken)) {
+                for (LeaseEventListener listener : listeners) {
+                    listener.onLeaseAcquired(leaseToken);
+                }
+            }
+        }
+        for (String leaseToken : ownedLeases) {
+            if (!owned.contains(leaseToken)) {
+                for (LeaseEventListener listener : listeners) {
+                    listener.onLeaseReleased(leaseToken, owners.get(leaseToken));
+                }
+            }
+        }
+        ownedLeases = owned;
+        for (LeaseEventListener listener : listeners) {
+            listener.onStateSampled(states);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,252 @@
+package fc.azure.cosmos.cfp.metrics;
+
+import com.azure.cosmos.models.ChangeFeedProcessorState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Instrumentation of a change feed processor host.
+ * <p>
+ * Handler side counters are recorded by the dispatcher with {@link LongAdder}s and lock-free histograms,
+ * so recording never contends between lanes. Lease gauges (estimated lag, owner, checkpoint LSN) are
+ * refreshed by {@link #sample(List)} with the processor state the host samples on a background thread,
+ * without blocking the lease threads.
+ */
+public class ChangeFeedMetrics implements ChangeFeedMetricsMXBean, AutoCloseable {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeFeedMetrics.class);
+    //
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+    private final LaneMetrics[] lanes;
+    private final ConcurrentMap<String, LeaseMetrics> leases = new ConcurrentHashMap<>();
+    //
+    private ObjectName objectName;
+
+    public ChangeFeedMetrics(final int laneCount) {
+        lanes = new LaneMetrics[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new LaneMetrics();
+        }
+    }
+
+    public LaneMetrics lane(final int lane) {
+        return lanes[lane];
+    }
+
+    public void recordBatch(final int documentCount, final long elapsedNanos, final boolean failed) {
+        documents.add(documentCount);
+        batches.increment();
+        if (failed) {
+            failedBatches.increment();
+        }
+        batchLatency.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void sample(final List<ChangeFeedProcessorState> states) {
+        long now = System.nanoTime();
+        for (ChangeFeedProcessorState state : states) {
+            leases.computeIfAbsent(state.getLeaseToken(), LeaseMetrics::new)
+                    .update(state.getHostName(),
+                            state.getEstimatedLag(),
+                            parseLsn(state.getContinuationToken()),
+                            now);
+        }
+    }
+
+    /**
+     * Register this instance with the platform MBean server.
+     */
+    public synchronized void registerMBean(final String hostName) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        objectName = new ObjectName("fc.azure.cosmos.cfp:type=ChangeFeedMetrics,host=" + ObjectName.quote(hostName));
+        server.registerMBean(this, objectName);
+    }
+
+    public Map<String, LeaseMetrics> getLeases() {
+        return new TreeMap<>(leases);
+    }
+
+    /**
+     * @return the metrics in the Prometheus text exposition format.
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        type(out, "cfp_documents_total", "counter").append("cfp_documents_total ").append(getDocuments()).append('\n');
+        type(out, "cfp_batches_total", "counter").append("cfp_batches_total ").append(getBatches()).append('\n');
+        type(out, "cfp_failed_batches_total", "counter").append("cfp_failed_batches_total ").append(getFailedBatches()).append('\n');
+        type(out, "cfp_batch_latency_seconds", "summary");
+        quantiles(out, "cfp_batch_latency_seconds", "", batchLatency);
+        //
+        type(out, "cfp_lane_documents_total", "counter");
+        for (int i = 0; i < lanes.length; i++) {
+            out.append("cfp_lane_documents_total{lane=\"").append(i).append("\"} ").append(lanes[i].getDocuments()).append('\n');
+        }
+        type(out, "cfp_lane_failures_total", "counter");
+        for (int i = 0; i < lanes.length; i++) {
+            out.append("cfp_lane_failures_total{lane=\"").append(i).append("\"} ").append(lanes[i].getFailures()).append('\n');
+        }
+        type(out, "cfp_lane_handler_latency_seconds", "summary");
+        for (int i = 0; i < lanes.length; i++) {
+            quantiles(out, "cfp_lane_handler_latency_seconds", "lane=\"" + i + "\",", lanes[i].getHandlerLatency());
+        }
+        //
+        type(out, "cfp_lease_estimated_lag", "gauge");
+        for (LeaseMetrics lease : getLeases().values()) {
+            out.append("cfp_lease_estimated_lag{lease=\"").append(lease.getLeaseToken())
+                    .append("\",host=\"").append(lease.getHostName()).append("\"} ")
+                    .append(lease.getEstimatedLag()).append('\n');
+        }
+        type(out, "cfp_lease_checkpoint_lsn", "gauge");
+        for (LeaseMetrics lease : getLeases().values()) {
+            out.append("cfp_lease_checkpoint_lsn{lease=\"").append(lease.getLeaseToken()).append("\"} ")
+                    .append(lease.getCheckpointLsn()).append('\n');
+        }
+        type(out, "cfp_lease_lsn_per_second", "gauge");
+        for (LeaseMetrics lease : getLeases().values()) {
+            out.append("cfp_lease_lsn_per_second{lease=\"").append(lease.getLeaseToken()).append("\"} ")
+                    .append(lease.getLsnPerSecond()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static StringBuilder type(final StringBuilder out, final String name, final String type) {
+        return out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void quantiles(final StringBuilder out, final String name, final String labels,
+                                  final LatencyHistogram histogram) {
+        for (double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            out.append(name).append("{").append(labels).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getValueAtPercentile(quantile * 100) / 1e6).append('\n');
+        }
+        String suffix = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        out.append(name).append("_count").append(suffix).append(' ').append(histogram.getCount()).append('\n');
+        out.append(name).append("_sum").append(suffix).append(' ')
+                .append(histogram.getMeanMicros() * histogram.getCount() / 1e6).append('\n');
+    }
+
+    public static long parseLsn(final String continuationToken) {
+        if (continuationToken == null) {
+            return -1;
+        }
+        long lsn = 0;
+        boolean found = false;
+        for (int i = 0; i < continuationToken.length(); i++) {
+            char c = continuationToken.charAt(i);
+            if (c >= '0' && c <= '9') {
+                lsn = lsn * 10 + (c - '0');
+                found = true;
+            } else if (found) {
+                break;
+            }
+        }
+        return found ? lsn : -1;
+    }
+
+    @Override
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    @Override
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    @Override
+    public long getFailedBatches() {
+        return failedBatches.sum();
+    }
+
+    @Override
+    public double getBatchLatencyMeanMillis() {
+        return batchLatency.getMeanMicros() / 1000.0;
+    }
+
+    @Override
+    public double getBatchLatencyP50Millis() {
+        return batchLatency.getValueAtPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getBatchLatencyP99Millis() {
+        return batchLatency.getValueAtPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getBatchLatencyMaxMillis() {
+        return batchLatency.getMaxMicros() / 1000.0;
+    }
+
+    @Override
+    public long getTotalEstimatedLag() {
+        long total = 0;
+        for (LeaseMetrics lease : leases.values()) {
+            total += lease.getEstimatedLag();
+        }
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getEstimatedLagPerLease() {
+        Map<String, Long> lag = new TreeMap<>();
+        for (LeaseMetrics lease : leases.values()) {
+            lag.put(lease.getLeaseToken(), lease.getEstimatedLag());
+        }
+        return lag;
+    }
+
+    @Override
+    public Map<String, String> getHostPerLease() {
+        Map<String, String> hosts = new TreeMap<>();
+        for (LeaseMetrics lease : leases.values()) {
+            hosts.put(lease.getLeaseToken(), String.valueOf(lease.getHostName()));
+        }
+        return hosts;
+    }
+
+    @Override
+    public Map<String, Long> getDocumentsPerLane() {
+        Map<String, Long> perLane = new TreeMap<>();
+        for (int i = 0; i < lanes.length; i++) {
+            perLane.put(String.valueOf(i), lanes[i].getDocuments());
+        }
+        return perLane;
+    }
+
+    @Override
+    public Map<String, Double> getHandlerLatencyP99MillisPerLane() {
+        Map<String, Double> perLane = new TreeMap<>();
+        for (int i = 0; i < lanes.length; i++) {
+            perLane.put(String.valueOf(i), lanes[i].getHandlerLatency().getValueAtPercentile(99) / 1000.0);
+        }
+        return perLane;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                LOGGER.warn("Unable to unregister " + objectName, e);
+            }
+            objectName = null;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package fc.azure.cosmos.cfp.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ChangeFeedMetrics}.
+ */
+public interface ChangeFeedMetricsMXBean {
+
+    long getDocuments();
+
+    long getBatches();
+
+    long getFailedBatches();
+
+    double getBatchLatencyMeanMillis();
+
+    double getBatchLatencyP50Millis();
+
+    double getBatchLatencyP99Millis();
+
+    double getBatchLatencyMaxMillis();
+
+    long getTotalEstimatedLag();
+
+    Map<String, Long> getEstimatedLagPerLease();
+
+    Map<String, String> getHostPerLease();
+
+    Map<String, Long> getDocumentsPerLane();
+
+    Map<String, Double> getHandlerLatencyP99MillisPerLane();
+}
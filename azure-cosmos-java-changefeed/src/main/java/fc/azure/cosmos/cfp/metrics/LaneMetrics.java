@@ -0,0 +1,40 @@
+package fc.azure.cosmos.cfp.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a dispatcher worker lane, i.e. of the set of partition keys hashed to it.
+ */
+public class LaneMetrics {
+    //
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyHistogram handlerLatency = new LatencyHistogram();
+
+    public void recordSlice(final int documentCount, final long elapsedNanos, final boolean failed) {
+        documents.add(documentCount);
+        batches.increment();
+        if (failed) {
+            failures.increment();
+        }
+        handlerLatency.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public LatencyHistogram getHandlerLatency() {
+        return handlerLatency;
+    }
+}
@@ -0,0 +1,96 @@
+package fc.azure.cosmos.cfp.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the spirit of HdrHistogram.
+ * <p>
+ * Values are tracked in microseconds. Every power of two is split in 16 linear sub-buckets, which
+ * bounds the relative error of a reported percentile to about 6% over the whole range of a long,
+ * with a fixed footprint of 960 counters.
+ */
+public class LatencyHistogram {
+    //
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF;
+    //
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public void record(final long duration, final TimeUnit unit) {
+        recordMicros(unit.toMicros(duration));
+    }
+
+    public void recordMicros(final long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        totalMicros.add(value);
+        maxMicros.accumulate(value);
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    public double getMeanMicros() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double) totalMicros.sum() / count;
+    }
+
+    /**
+     * @param percentile percentile in the range [0, 100].
+     * @return the highest value equivalent to the requested percentile, in microseconds.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(100.0, percentile) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (magnitude - (SUB_BUCKET_BITS - 1)));
+        return SUB_BUCKET_COUNT + (magnitude - SUB_BUCKET_BITS) * SUB_BUCKET_HALF + (subBucket - SUB_BUCKET_HALF);
+    }
+
+    static long highestEquivalentValue(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int offset = index - SUB_BUCKET_COUNT;
+        int magnitude = offset / SUB_BUCKET_HALF + SUB_BUCKET_BITS;
+        long subBucket = offset % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        int shift = magnitude - (SUB_BUCKET_BITS - 1);
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,53 @@
+package fc.azure.cosmos.cfp.metrics;
+
+/**
+ * Gauges of a single lease, refreshed from the processor state sampling.
+ * <p>
+ * The continuation of a lease is the LSN it has been checkpointed at, its progress over time is the
+ * write rate the lease is draining.
+ */
+public class LeaseMetrics {
+    //
+    private final String leaseToken;
+    //
+    private volatile String hostName;
+    private volatile long estimatedLag;
+    private volatile long checkpointLsn = -1;
+    private volatile double lsnPerSecond;
+    private volatile long lastSampleNanos;
+
+    public LeaseMetrics(final String leaseToken) {
+        this.leaseToken = leaseToken;
+    }
+
+    synchronized void update(final String hostName, final long estimatedLag, final long checkpointLsn,
+                             final long sampleNanos) {
+        if (this.checkpointLsn >= 0 && checkpointLsn >= this.checkpointLsn && sampleNanos > lastSampleNanos) {
+            lsnPerSecond = (checkpointLsn - this.checkpointLsn) * 1e9 / (sampleNanos - lastSampleNanos);
+        }
+        this.hostName = hostName;
+        this.estimatedLag = estimatedLag;
+        this.checkpointLsn = checkpointLsn;
+        this.lastSampleNanos = sampleNanos;
+    }
+
+    public String getLeaseToken() {
+        return leaseToken;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public long getEstimatedLag() {
+        return estimatedLag;
+    }
+
+    public long getCheckpointLsn() {
+        return checkpointLsn;
+    }
+
+    public double getLsnPerSecond() {
+        return lsnPerSecond;
+    }
+}
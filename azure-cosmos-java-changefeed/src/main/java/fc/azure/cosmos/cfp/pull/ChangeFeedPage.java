@@ -0,0 +1,40 @@
+package fc.azure.cosmos.cfp.pull;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+/**
+ * A page of changes read from one feed range.
+ */
+public class ChangeFeedPage {
+    //
+    private final String feedRange;
+    private final List<JsonNode> documents;
+    private final String continuation;
+    private final double requestCharge;
+
+    public ChangeFeedPage(final String feedRange, final List<JsonNode> documents, final String continuation,
+                          final double requestCharge) {
+        this.feedRange = feedRange;
+        this.documents = documents;
+        this.continuation = continuation;
+        this.requestCharge = requestCharge;
+    }
+
+    public String getFeedRange() {
+        return feedRange;
+    }
+
+    public List<JsonNode> getDocuments() {
+        return documents;
+    }
+
+    public String getContinuation() {
+        return continuation;
+    }
+
+    public double getRequestCharge() {
+        return requestCharge;
+    }
+}
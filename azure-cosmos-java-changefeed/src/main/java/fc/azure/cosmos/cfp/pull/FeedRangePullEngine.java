@@ -0,0 +1,312 @@
+package fc.azure.cosmos.cfp.pull;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosChangeFeedRequestOptions;
+import com.azure.cosmos.models.FeedRange;
+import com.azure.cosmos.models.FeedResponse;
+import com.fasterxml.jackson.databind.JsonNode;
+import fc.azure.cosmos.cfp.checkpoint.CheckpointStore;
+import fc.azure.cosmos.cfp.tuning.AdaptiveFeedController;
+import fc.azure.cosmos.cfp.tuning.FeedTuningPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Pull model change feed reader that drains every feed range of a container concurrently.
+ * <p>
+ * The container is split with {@code getFeedRanges()} (one range per physical partition) and up to
+ * {@code parallelism} ranges are read at the same time. Pages are streamed to the {@link PageConsumer}
+ * as they arrive, so memory use is bounded by the page size and the parallelism rather than by the
+ * size of the feed. The continuation of each range is saved in the {@link CheckpointStore} after its
+ * page was consumed, and a range with a saved continuation resumes from it.
+ * <p>
+ * Each range reads its pages one request at a time with the page size of its own
+ * {@link AdaptiveFeedController}, so hot ranges move to large pages while idle ranges, when followed,
+ * back off their polling.
+ * <p>
+ * {@link #backfill(Instant, Instant, PageConsumer)} replays a time window: ranges start at a point in time
+ * and stop at the first change made at or after the target time, in change feed order. A processor
+ * started at that same target time reads exactly the remaining changes, so the two hand off without gap
+ * or overlap.
+ * <p>
+ * In full fidelity mode the ranges return every version and delete as envelopes carrying the operation
+ * type and previous image. The service only keeps them for the retention of the container change feed
+ * policy, so ranges without a checkpoint start from now and time windows cannot be replayed.
+ */
+public class FeedRangePullEngine {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(FeedRangePullEngine.class);
+    //
+    public enum StartFrom {
+        BEGINNING,
+        NOW
+    }
+    //
+    public static final String BACKFILL_CHECKPOINT_PREFIX = "backfill.";
+    //
+    private final CosmosAsyncContainer container;
+    private final CheckpointStore checkpointStore;
+    private final int parallelism;
+    private final FeedTuningPolicy tuningPolicy;
+    private final ConcurrentMap<String, AdaptiveFeedController> controllers = new ConcurrentHashMap<>();
+    private volatile boolean stopped;
+    private boolean fullFidelity;
+    //
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private final DoubleAdder requestCharge = new DoubleAdder();
+
+    public FeedRangePullEngine(final CosmosAsyncContainer container, final CheckpointStore checkpointStore,
+                               final int parallelism, final int pageSize) {
+        this(container, checkpointStore, parallelism, FeedTuningPolicy.fixed(pageSize, Duration.ofSeconds(5)));
+    }
+
+    public FeedRangePullEngine(final CosmosAsyncContainer container, final CheckpointStore checkpointStore,
+                               final int parallelism, final FeedTuningPolicy tuningPolicy) {
+        this.container = container;
+        this.checkpointStore = checkpointStore;
+        this.parallelism = parallelism;
+        this.tuningPolicy = tuningPolicy;
+    }
+
+    /**
+     * Read every version and delete instead of the latest version of the documents. The container must
+     * have a full fidelity change feed policy.
+     */
+    public void setFullFidelity(final boolean fullFidelity) {
+        this.fullFidelity = fullFidelity;
+    }
+
+    public boolean isFullFidelity() {
+        return fullFidelity;
+    }
+
+    /**
+     * Drain all the feed ranges until each of them is caught up with the current end of the feed.
+     *
+     * @param startFrom where ranges without a saved continuation start.
+     * @param consumer  page consumer.
+     * @return completes when every range is drained.
+     */
+    public Mono<Void> drain(final StartFrom startFrom, final PageConsumer consumer) {
+        return read(range -> startOptions(range, startFrom), "", Long.MAX_VALUE, consumer, false, parallelism);
+    }
+
+    /**
+     * Replay the changes made from {@code from} until {@code until}. Both are truncated to the second, the
+     * resolution of the change feed timestamps. Checkpoints are kept apart from the ones of
+     * {@link #drain}, so an interrupted backfill resumes where it stopped.
+     *
+     * @param from     first change time replayed.
+     * @param until    time of the first change not replayed, null to replay up to the current end of the feed.
+     * @param consumer page consumer.
+     * @return completes when every range reached {@code until} or the end of the feed.
+     */
+    public Mono<Void> backfill(final Instant from, final Instant until, final PageConsumer consumer) {
+        if (fullFidelity) {
+            return Mono.error(new IllegalStateException("A full fidelity change feed cannot be read from a point in time"));
+        }
+        final Instant start = Instant.ofEpochSecond(from.getEpochSecond());
+        return read(range -> CosmosChangeFeedRequestOptions.createForProcessingFromPointInTime(start, range),
+                BACKFILL_CHECKPOINT_PREFIX,
+                until == null ? Long.MAX_VALUE : until.getEpochSecond(),
+                consumer,
+                false,
+                parallelism);
+    }
+
+    /**
+     * Keep reading all the feed ranges, polling each of them with its own delay once it is caught up,
+     * until {@link #stop()} is called. Every range is followed concurrently.
+     *
+     * @param startFrom where ranges without a saved continuation start.
+     * @param consumer  page consumer.
+     * @return completes once stopped.
+     */
+    public Mono<Void> follow(final StartFrom startFrom, final PageConsumer consumer) {
+        return read(range -> startOptions(range, startFrom), "", Long.MAX_VALUE, consumer, true, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Make {@link #follow} complete after the pages in flight.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    private Mono<Void> read(final Function<FeedRange, CosmosChangeFeedRequestOptions> start,
+                            final String checkpointPrefix, final long untilEpochSecond,
+                            final PageConsumer consumer, final boolean follow, final int concurrency) {
+        return container.getFeedRanges()
+                .flatMapMany(Flux::fromIterable)
+                .flatMap(range -> readRange(range, start, checkpointPrefix, untilEpochSecond, consumer, follow),
+                        concurrency)
+                .then(Mono.fromCallable(() -> {
+                    checkpointStore.flush();
+                    return true;
+                }))
+                .then();
+    }
+
+    private Mono<Long> readRange(final FeedRange range,
+                                 final Function<FeedRange, CosmosChangeFeedRequestOptions> start,
+                                 final String checkpointPrefix, final long untilEpochSecond,
+                                 final PageConsumer consumer, final boolean follow) {
+        return Mono.defer(() -> {
+            final String rangeKey = range.toString();
+            final String checkpointKey = checkpointPrefix + rangeKey;
+            final RangeCursor cursor;
+            try {
+                String continuation = checkpointStore.load(checkpointKey);
+                if (continuation != null) {
+                    LOGGER.info("Resuming feed range " + rangeKey + " from its checkpoint");
+                }
+                cursor = new RangeCursor(rangeKey, checkpointKey, untilEpochSecond,
+                        withMode(continuation != null
+                                ? CosmosChangeFeedRequestOptions.createForProcessingFromContinuation(continuation)
+                                : start.apply(range)),
+                        controllers.computeIfAbsent(rangeKey, key -> new AdaptiveFeedController(tuningPolicy)));
+            } catch (IOException e) {
+                return Mono.error(e);
+            }
+            //
+            return Mono.defer(() -> readPage(cursor, consumer, follow))
+                    .repeat(() -> !cursor.done && !stopped)
+                    .reduce(0L, Long::sum)
+                    .doOnSuccess(count -> LOGGER.info("Feed range " + rangeKey + (follow ? " stopped, " : " drained, ")
+                            + count + " documents, " + cursor.controller));
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Long> readPage(final RangeCursor cursor, final PageConsumer consumer, final boolean follow) {
+        final int maxItemCount = cursor.controller.getMaxItemCount();
+        CosmosChangeFeedRequestOptions options = cursor.continuation == null
+                ? cursor.initialOptions
+                : withMode(CosmosChangeFeedRequestOptions.createForProcessingFromContinuation(cursor.continuation));
+        options.setMaxItemCount(maxItemCount);
+        //
+        return container.queryChangeFeed(options, JsonNode.class)
+                .byPage(maxItemCount)
+                .next()
+                // Handed off the I/O threads to the consumer
+                .publishOn(Schedulers.boundedElastic())
+                .map(page -> {
+                    long start = System.nanoTime();
+                    long count;
+                    try {
+                        count = consume(cursor, page, consumer);
+                    } catch (Exception e) {
+                        throw new IllegalStateException("Failed to consume a page of feed range " + cursor.rangeKey, e);
+                    }
+                    cursor.controller.observe((int) count, System.nanoTime() - start, page.getRequestCharge());
+                    cursor.continuation = page.getContinuationToken();
+                    if ((count == 0 && !follow) || cursor.reachedUntil) {
+                        cursor.done = true;
+                    }
+                    return count;
+                })
+                .defaultIfEmpty(0L)
+                // A range that is not backlogged waits for its poll delay before the next request
+                .delayUntil(count -> follow && count < maxItemCount && !stopped
+                        ? Mono.delay(cursor.controller.getPollDelay())
+                        : Mono.empty());
+    }
+
+    private CosmosChangeFeedRequestOptions startOptions(final FeedRange range, final StartFrom startFrom) {
+        if (startFrom == StartFrom.BEGINNING && fullFidelity) {
+            LOGGER.warn("A full fidelity change feed cannot be read from the beginning, feed range " + range
+                    + " starts from now");
+        }
+        return startFrom == StartFrom.NOW || fullFidelity
+                ? CosmosChangeFeedRequestOptions.createForProcessingFromNow(range)
+                : CosmosChangeFeedRequestOptions.createForProcessingFromBeginning(range);
+    }
+
+    private CosmosChangeFeedRequestOptions withMode(final CosmosChangeFeedRequestOptions options) {
+        return fullFidelity ? options.fullFidelity() : options;
+    }
+
+    private long consume(final RangeCursor cursor, final FeedResponse<JsonNode> response,
+                         final PageConsumer consumer) throws Exception {
+        List<JsonNode> results = response.getResults();
+        if (cursor.untilEpochSecond != Long.MAX_VALUE) {
+            // Keep the changes before the first one at or after the target time, the rest belongs to the processor
+            for (int i = 0; i < results.size(); i++) {
+                JsonNode ts = results.get(i).get("_ts");
+                if (ts != null && ts.asLong() >= cursor.untilEpochSecond) {
+                    results = results.subList(0, i);
+                    cursor.reachedUntil = true;
+                    break;
+                }
+            }
+        }
+        int count = results.size();
+        if (count > 0) {
+            consumer.accept(new ChangeFeedPage(cursor.rangeKey,
+                    results,
+                    response.getContinuationToken(),
+                    response.getRequestCharge()));
+        }
+        checkpointStore.save(cursor.checkpointKey, response.getContinuationToken());
+        //
+        documents.add(count);
+        pages.increment();
+        requestCharge.add(response.getRequestCharge());
+        return count;
+    }
+
+    /**
+     * @return the tuning state of every range read so far, by range.
+     */
+    public Map<String, AdaptiveFeedController> getControllers() {
+        return new TreeMap<>(controllers);
+    }
+
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    public long getPages() {
+        return pages.sum();
+    }
+
+    public double getRequestCharge() {
+        return requestCharge.sum();
+    }
+
+    private static class RangeCursor {
+        //
+        private final String rangeKey;
+        private final String checkpointKey;
+        private final long untilEpochSecond;
+        private final CosmosChangeFeedRequestOptions initialOptions;
+        private final AdaptiveFeedController controller;
+        private String continuation;
+        private boolean done;
+        private boolean reachedUntil;
+
+        RangeCursor(final String rangeKey, final String checkpointKey, final long untilEpochSecond,
+                    final CosmosChangeFeedRequestOptions initialOptions, final AdaptiveFeedController controller) {
+            this.rangeKey = rangeKey;
+            this.checkpointKey = checkpointKey;
+            this.untilEpochSecond = untilEpochSecond;
+            this.initialOptions = initialOptions;
+            this.controller = controller;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package fc.azure.cosmos.cfp.pull;
+
+/**
+ * Receives the pages drained by {@link FeedRangePullEngine}.
+ * <p>
+ * Pages of the same feed range are delivered one at a time and in order; pages of different ranges
+ * are delivered concurrently.
+ */
+public interface PageConsumer {
+
+    /**
+     * @param page the page to process. The continuation of the page is checkpointed once this returns.
+     * @throws Exception to stop draining the range without checkpointing the page.
+     */
+    void accept(ChangeFeedPage page) throws Exception;
+}
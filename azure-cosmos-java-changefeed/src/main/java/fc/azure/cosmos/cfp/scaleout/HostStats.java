@@ -0,0 +1,50 @@
+package fc.azure.cosmos.cfp.scaleout;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Documents handled by one host of a {@link ProcessorFleet}.
+ */
+public class HostStats {
+    //
+    private final String hostName;
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    //
+    private long reportedDocuments;
+    private long reportedNanos = System.nanoTime();
+
+    public HostStats(final String hostName) {
+        this.hostName = hostName;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public void record(final int documentCount) {
+        documents.add(documentCount);
+        batches.increment();
+    }
+
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * @return the documents per second handled since the previous call.
+     */
+    public synchronized double throughput() {
+        long now = System.nanoTime();
+        long total = documents.sum();
+        double seconds = (now - reportedNanos) / 1e9;
+        double rate = seconds > 0 ? (total - reportedDocuments) / seconds : 0;
+        reportedDocuments = total;
+        reportedNanos = now;
+        return rate;
+    }
+}
@@ -0,0 +1,82 @@
+package fc.azure.cosmos.cfp.scaleout;
+
+import com.azure.cosmos.models.ChangeFeedProcessorState;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * How the leases of a lease container are spread over the hosts at one point in time.
+ */
+public class LeaseDistribution {
+    //
+    private final Map<String, Integer> leasesByHost = new TreeMap<>();
+    private final int leases;
+    private int unowned;
+
+    public LeaseDistribution(final List<ChangeFeedProcessorState> states) {
+        for (ChangeFeedProcessorState state : states) {
+            if (state.getHostName() == null || state.getHostName().isEmpty()) {
+                unowned++;
+            } else {
+                leasesByHost.merge(state.getHostName(), 1, Integer::sum);
+            }
+        }
+        leases = states.size();
+    }
+
+    public int getLeases() {
+        return leases;
+    }
+
+    public int getUnowned() {
+        return unowned;
+    }
+
+    public int getLeases(final String hostName) {
+        Integer owned = leasesByHost.get(hostName);
+        return owned == null ? 0 : owned;
+    }
+
+    /**
+     * The leases are balanced over the given hosts when they own all of them, each one either the floor or
+     * the ceiling of their fair share. Leases left to hosts that are gone count as unbalanced.
+     */
+    public boolean isBalancedOver(final Collection<String> hostNames) {
+        if (hostNames.isEmpty() || leases == 0) {
+            return false;
+        }
+        int fair = leases / hostNames.size();
+        int ceiling = leases % hostNames.size() == 0 ? fair : fair + 1;
+        int owned = 0;
+        for (String hostName : hostNames) {
+            int count = getLeases(hostName);
+            if (count < fair || count > ceiling) {
+                return false;
+            }
+            owned += count;
+        }
+        return owned == leases;
+    }
+
+    /**
+     * @return the leases of the busiest host divided by the fair share, 1.0 when perfectly balanced.
+     */
+    public double skew(final Collection<String> hostNames) {
+        if (hostNames.isEmpty() || leases == 0) {
+            return 0;
+        }
+        int max = 0;
+        for (String hostName : hostNames) {
+            max = Math.max(max, getLeases(hostName));
+        }
+        return max / ((double) leases / hostNames.size());
+    }
+
+    @Override
+    public String toString() {
+        return leasesByHost + (unowned > 0 ? " unowned=" + unowned : "") + " of " + leases;
+    }
+}
@@ -0,0 +1,15 @@
+package fc.azure.cosmos.cfp.scaleout;
+
+import com.azure.cosmos.ChangeFeedProcessor;
+
+/**
+ * Builds the processors of a {@link ProcessorFleet}.
+ */
+public interface ProcessorFactory {
+
+    /**
+     * @param hostName the host name of the processor, unique in the fleet.
+     * @param stats    to be fed with every batch the processor handles.
+     */
+    ChangeFeedProcessor create(String hostName, HostStats stats);
+}
@@ -0,0 +1,150 @@
+package fc.azure.cosmos.cfp.scaleout;
+
+import com.azure.cosmos.ChangeFeedProcessor;
+import com.azure.cosmos.models.ChangeFeedProcessorState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs several change feed processors in one process, sharing a lease container the way separate hosts
+ * would, to observe how the leases are spread and rebalanced when hosts join or leave.
+ * <p>
+ * The lease distribution is read through an extra processor built by the same factory that is never started,
+ * so observing does not take part in the lease balancing.
+ */
+public class ProcessorFleet implements AutoCloseable {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessorFleet.class);
+    //
+    private final String hostPrefix;
+    private final ProcessorFactory factory;
+    private final ChangeFeedProcessor observer;
+    private final Map<String, Host> hosts = new LinkedHashMap<>();
+    //
+    private int nextHost;
+    private long changedNanos = System.nanoTime();
+
+    public ProcessorFleet(final String hostPrefix, final ProcessorFactory factory) {
+        this.hostPrefix = hostPrefix;
+        this.factory = factory;
+        this.observer = factory.create(hostPrefix + "-observer", new HostStats(hostPrefix + "-observer"));
+    }
+
+    /**
+     * Start a new host, and return its name once it started.
+     */
+    public synchronized String addHost() {
+        String hostName = hostPrefix + "-" + nextHost++;
+        HostStats stats = new HostStats(hostName);
+        ChangeFeedProcessor processor = factory.create(hostName, stats);
+        processor.start().block();
+        hosts.put(hostName, new Host(processor, stats));
+        changedNanos = System.nanoTime();
+        LOGGER.info("Host {} joined, {} hosts running", hostName, hosts.size());
+        return hostName;
+    }
+
+    /**
+     * Stop the most recently started host, and return its name once it stopped.
+     */
+    public synchronized String removeHost() {
+        if (hosts.isEmpty()) {
+            return null;
+        }
+        String hostName = new ArrayList<>(hosts.keySet()).get(hosts.size() - 1);
+        hosts.remove(hostName).processor.stop().block();
+        changedNanos = System.nanoTime();
+        LOGGER.info("Host {} left, {} hosts running", hostName, hosts.size());
+        return hostName;
+    }
+
+    /**
+     * Start or stop hosts until the given number is running.
+     */
+    public void resize(final int hostCount) {
+        while (size() < hostCount) {
+            addHost();
+        }
+        while (size() > hostCount) {
+            removeHost();
+        }
+    }
+
+    public synchronized int size() {
+        return hosts.size();
+    }
+
+    public synchronized List<String> getHostNames() {
+        return new ArrayList<>(hosts.keySet());
+    }
+
+    public synchronized List<HostStats> getStats() {
+        List<HostStats> stats = new ArrayList<>();
+        for (Host host : hosts.values()) {
+            stats.add(host.stats);
+        }
+        return stats;
+    }
+
+    public LeaseDistribution sample() {
+        List<ChangeFeedProcessorState> states = observer.getCurrentState().block();
+        return new LeaseDistribution(states == null ? new ArrayList<>() : states);
+    }
+
+    /**
+     * Wait until the leases are balanced over the running hosts.
+     *
+     * @return the time from the last host joining or leaving until the leases were balanced, null when they
+     * were still not balanced after the timeout.
+     */
+    public Duration awaitBalanced(final Duration timeout, final Duration interval) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        String previous = null;
+        while (true) {
+            LeaseDistribution distribution = sample();
+            long sampled = System.nanoTime();
+            if (!distribution.toString().equals(previous)) {
+                previous = distribution.toString();
+                System.out.println("Leases " + distribution);
+            }
+            synchronized (this) {
+                if (distribution.isBalancedOver(hosts.keySet())) {
+                    return Duration.ofNanos(sampled - changedNanos);
+                }
+            }
+            if (sampled >= deadline) {
+                return null;
+            }
+            Thread.sleep(interval.toMillis());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Map.Entry<String, Host> host : hosts.entrySet()) {
+            try {
+                host.getValue().processor.stop().block();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Failed to stop host " + host.getKey(), e);
+            }
+        }
+        hosts.clear();
+    }
+
+    private static class Host {
+        //
+        private final ChangeFeedProcessor processor;
+        private final HostStats stats;
+
+        Host(final ChangeFeedProcessor processor, final HostStats stats) {
+            this.processor = processor;
+            this.stats = stats;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package fc.azure.cosmos.cfp.sink;
+
+import fc.azure.cosmos.cfp.handler.RawDocumentBatch;
+
+import java.io.IOException;
+
+/**
+ * Destination of the change feed documents.
+ * <p>
+ * Sinks buffer what they receive in {@link #write(RawDocumentBatch)} and make it durable in
+ * {@link #flush()}; the batch must not be referenced once {@code write} returns. Implementations are
+ * called concurrently from the dispatcher lanes and must be thread safe.
+ */
+public interface ChangeFeedSink extends AutoCloseable {
+
+    String getName();
+
+    void write(RawDocumentBatch batch) throws IOException;
+
+    void flush() throws IOException;
+
+    SinkStats getStats();
+
+    @Override
+    void close() throws IOException;
+}
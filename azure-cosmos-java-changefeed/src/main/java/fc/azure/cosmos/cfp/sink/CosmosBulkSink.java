@@ -0,0 +1,148 @@
+package fc.azure.cosmos.cfp.sink;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosBulkOperationResponse;
+import com.azure.cosmos.models.CosmosBulkOperations;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.CosmosItemOperationType;
+import com.azure.cosmos.models.PartitionKey;
+import com.fasterxml.jackson.databind.JsonNode;
+import fc.azure.cosmos.cfp.event.ChangeEvent;
+import fc.azure.cosmos.cfp.handler.RawDocumentBatch;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Copies the documents to another Cosmos container with bulk upserts.
+ * <p>
+ * Writes only queue operations; {@link #flush()} runs them with {@code executeBulkOperations} and fails
+ * with an {@link IOException} if any of them did not succeed.
+ * <p>
+ * One flush also sends the operations other lanes queued since the previous one; when it fails, every lane
+ * whose operations it held fails its own flush, see {@link FlushGenerations}.
+ * <p>
+ * Full fidelity deletes are applied as deletes, a document already missing counting as deleted; other
+ * changes upsert their current image.
+ */
+public class CosmosBulkSink implements ChangeFeedSink {
+    //
+    private final CosmosAsyncContainer container;
+    private final String partitionKeyField;
+    private final SinkStats stats = new SinkStats();
+    private final DoubleAdder requestCharge = new DoubleAdder();
+    //
+    private List<CosmosItemOperation> pending = new ArrayList<>();
+    private long pendingBytes;
+    private final FlushGenerations generations = new FlushGenerations();
+
+    public CosmosBulkSink(final CosmosAsyncContainer container, final String partitionKeyField) {
+        this.container = container;
+        this.partitionKeyField = partitionKeyField;
+    }
+
+    @Override
+    public String getName() {
+        return "cosmos:" + container.getId();
+    }
+
+    @Override
+    public synchronized void write(final RawDocumentBatch batch) {
+        for (JsonNode doc : batch.getSourceDocuments()) {
+            ChangeEvent event = ChangeEvent.of(doc, partitionKeyField);
+            PartitionKey partitionKey = event.getPartitionKey() == null
+                    ? PartitionKey.NONE
+                    : new PartitionKey(event.getPartitionKey());
+            if (!event.isDelete()) {
+                pending.add(CosmosBulkOperations.getUpsertItemOperation(event.getCurrent(), partitionKey));
+            } else if (event.getId() != null) {
+                pending.add(CosmosBulkOperations.getDeleteItemOperation(event.getId(), partitionKey));
+            }
+        }
+        pendingBytes += batch.getLength();
+        generations.written();
+    }
+
+    // Holding the lock for the whole flush means no caller returns from flush while operations it
+    // queued are still in flight under another caller's flush
+    @Override
+    public synchronized void flush() throws IOException {
+        IOException failure = null;
+        if (generations.mustFlush() && !pending.isEmpty()) {
+            long sealed = generations.seal();
+            failure = flushPending();
+            if (failure != null) {
+                generations.fail(sealed, failure);
+            }
+        }
+        generations.complete(failure);
+    }
+
+    /**
+     * @return the failure of the writes, null when they all succeeded.
+     */
+    private IOException flushPending() {
+        List<CosmosItemOperation> operations = pending;
+        long bytes = pendingBytes;
+        pending = new ArrayList<>();
+        pendingBytes = 0;
+        //
+        long start = System.nanoTime();
+        List<CosmosBulkOperationResponse<Object>> failures = new ArrayList<>();
+        try {
+            container.<Object>executeBulkOperations(Flux.fromIterable(operations))
+                    .doOnNext(response -> {
+                        if (response.getResponse() != null) {
+                            requestCharge.add(response.getResponse().getRequestCharge());
+                        }
+                        if (!isApplied(response)) {
+                            synchronized (failures) {
+                                failures.add(response);
+                            }
+                        }
+                    })
+                    .blockLast();
+        } catch (RuntimeException e) {
+            return new IOException("Writes to " + container.getId() + " failed", e);
+        } finally {
+            stats.recordFlush(System.nanoTime() - start);
+        }
+        //
+        if (!failures.isEmpty()) {
+            CosmosBulkOperationResponse<Object> first = failures.get(0);
+            String reason = first.getException() != null
+                    ? first.getException().getMessage()
+                    : "status " + (first.getResponse() == null ? "unknown" : first.getResponse().getStatusCode());
+            return new IOException(failures.size() + " of " + operations.size()
+                    + " writes to " + container.getId() + " failed, first failure: " + reason, first.getException());
+        }
+        stats.recordWrite(operations.size(), bytes);
+        return null;
+    }
+
+    private static boolean isApplied(final CosmosBulkOperationResponse<Object> response) {
+        if (response.getException() != null || response.getResponse() == null) {
+            return false;
+        }
+        return response.getResponse().isSuccessStatusCode()
+                || (response.getResponse().getStatusCode() == 404
+                && response.getOperation().getOperationType() == CosmosItemOperationType.DELETE);
+    }
+
+    @Override
+    public SinkStats getStats() {
+        return stats;
+    }
+
+    public double getRequestCharge() {
+        return requestCharge.sum();
+    }
+
+    @Override
+    public void close() {
+        // The container belongs to the application client
+    }
+}
@@ -0,0 +1,103 @@
+package fc.azure.cosmos.cfp.sink;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks which callers of a shared sink wrote into which flush, so a failed flush fails all of them.
+ * <p>
+ * The dispatcher lanes write and then flush each batch on their own thread, and one flush sends everything
+ * written since the previous one, including what other lanes wrote. What is written between two flushes forms a
+ * generation. A lane whose generation was flushed by another lane returns from its own flush with the outcome
+ * of that flush, instead of finding nothing to flush and reporting success. Not thread safe: used under the
+ * lock of the sink.
+ */
+final class FlushGenerations {
+    //
+    private long generation;
+    private final ThreadLocal<Long> writtenIn = new ThreadLocal<>();
+    // Lanes of each generation still to return from their flush, and the failure of the generations that failed
+    private final Map<Long, Integer> writers = new HashMap<>();
+    private final Map<Long, IOException> failures = new HashMap<>();
+
+    /**
+     * The calling lane wrote into the current generation.
+     */
+    void written() {
+        Long previous = writtenIn.get();
+        if (previous != null && previous == generation) {
+            return;
+        }
+        if (previous != null) {
+            // Its last write failed before it flushed
+            release(previous);
+        }
+        writtenIn.set(generation);
+        writers.merge(generation, 1, Integer::sum);
+    }
+
+    /**
+     * @return true unless another lane already flushed what the calling lane wrote.
+     */
+    boolean mustFlush() {
+        Long mine = writtenIn.get();
+        return mine == null || mine == generation;
+    }
+
+    /**
+     * Start a new generation.
+     *
+     * @return the generation being flushed.
+     */
+    long seal() {
+        return generation++;
+    }
+
+    /**
+     * Record the failure of a sealed generation for the lanes that wrote into it.
+     */
+    void fail(final long sealed, final IOException failure) {
+        if (writers.containsKey(sealed)) {
+            failures.put(sealed, failure);
+        }
+    }
+
+    /**
+     * End the flush of the calling lane.
+     *
+     * @param failure failure of the flush this lane ran, null when it ran none or it succeeded.
+     * @throws IOException when the flush of the generation the lane wrote into failed, whoever ran it.
+     */
+    void complete(final IOException failure) throws IOException {
+        Long mine = writtenIn.get();
+        if (mine == null) {
+            // Not a writer, as on close: only its own flush can fail it
+            if (failure != null) {
+                throw failure;
+            }
+            return;
+        }
+        writtenIn.remove();
+        IOException generationFailure = failures.get(mine);
+        release(mine);
+        if (generationFailure == null) {
+            return;
+        }
+        if (generationFailure == failure) {
+            throw failure;
+        }
+        throw new IOException("The flush holding this batch failed: " + generationFailure.getMessage(),
+                generationFailure);
+    }
+
+    private void release(final long written) {
+        Integer remaining = writers.get(written);
+        if (remaining == null || remaining <= 1) {
+            writers.remove(written);
+            failures.remove(written);
+        } else {
+            writers.put(written, remaining - 1);
+        }
+    }
+}
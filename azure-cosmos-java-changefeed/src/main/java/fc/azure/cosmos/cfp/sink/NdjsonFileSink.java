@@ -0,0 +1,181 @@
+package fc.azure.cosmos.cfp.sink;
+
+import fc.azure.cosmos.cfp.handler.RawDocumentBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes the documents to rolling newline delimited JSON files.
+ * <p>
+ * Batches are copied into a large direct buffer and written to the {@link FileChannel} when it fills up
+ * or on {@link #flush()}, so the channel sees a few large writes rather than one per document, and
+ * {@link #flush()} forces the file to disk once per batch. A new
+ * file is started at a batch boundary once the current one reaches {@code maxFileBytes}.
+ * <p>
+ * A failed write drops everything written since the last successful flush: the buffer is discarded, the file is
+ * truncated back to what was flushed and a new file is started, so the redelivered batches start clean. Every
+ * lane whose batch was dropped fails its flush, see {@link FlushGenerations}.
+ */
+public class NdjsonFileSink implements ChangeFeedSink {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(NdjsonFileSink.class);
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    //
+    private final Path directory;
+    private final String prefix;
+    private final long maxFileBytes;
+    private final ByteBuffer buffer;
+    private final SinkStats stats = new SinkStats();
+    //
+    private final FlushGenerations generations = new FlushGenerations();
+    //
+    private FileChannel channel;
+    private long fileBytes;
+    // Bytes of the current file that were flushed, and so belong to checkpointed batches
+    private long flushedBytes;
+    private int fileSequence;
+
+    public NdjsonFileSink(final Path directory, final String prefix, final long maxFileBytes,
+                          final int bufferBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.prefix = prefix;
+        this.maxFileBytes = maxFileBytes;
+        this.buffer = ByteBuffer.allocateDirect(bufferBytes);
+        roll();
+    }
+
+    @Override
+    public String getName() {
+        return "file:" + directory;
+    }
+
+    @Override
+    public synchronized void write(final RawDocumentBatch batch) throws IOException {
+        generations.written();
+        if (channel == null) {
+            roll();
+        } else if (fileBytes > 0 && fileBytes + buffer.position() + batch.getLength() > maxFileBytes) {
+            try {
+                roll();
+            } catch (IOException e) {
+                throw discard(e);
+            }
+        }
+        byte[] bytes = batch.getBuffer();
+        int offset = 0;
+        int remaining = batch.getLength();
+        while (remaining > 0) {
+            if (!buffer.hasRemaining()) {
+                try {
+                    drain();
+                } catch (IOException e) {
+                    throw discard(e);
+                }
+            }
+            int chunk = Math.min(remaining, buffer.remaining());
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            remaining -= chunk;
+        }
+        stats.recordWrite(batch.size(), batch.getLength());
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        IOException failure = null;
+        if (generations.mustFlush() && channel != null) {
+            long start = System.nanoTime();
+            try {
+                drain();
+                // The lease is checkpointed once this returns, so the documents must be on disk, not in the page cache
+                channel.force(false);
+                flushedBytes = fileBytes;
+                generations.seal();
+            } catch (IOException e) {
+                failure = discard(e);
+            }
+            stats.recordFlush(System.nanoTime() - start);
+        }
+        generations.complete(failure);
+    }
+
+    /**
+     * Drop what was written since the last flush and fail the lanes that wrote it.
+     *
+     * @return the failure, to throw.
+     */
+    private IOException discard(final IOException failure) {
+        generations.fail(generations.seal(), failure);
+        buffer.clear();
+        FileChannel failed = channel;
+        channel = null;
+        try {
+            failed.truncate(flushedBytes);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+        try {
+            failed.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+        try {
+            roll();
+        } catch (IOException e) {
+            // Retried by the next write
+            failure.addSuppressed(e);
+        }
+        LOGGER.warn("Discarded the unflushed documents after a failed write: " + failure.getMessage());
+        return failure;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            fileBytes += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void roll() throws IOException {
+        if (channel != null) {
+            drain();
+            channel.force(false);
+            channel.close();
+        }
+        Path file = directory.resolve(String.format("%s-%s-%05d.ndjson",
+                prefix, LocalDateTime.now().format(FILE_TIMESTAMP), fileSequence++));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        fileBytes = channel.size();
+        flushedBytes = fileBytes;
+        LOGGER.info("Writing change feed documents to " + file);
+    }
+
+    @Override
+    public SinkStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            drain();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
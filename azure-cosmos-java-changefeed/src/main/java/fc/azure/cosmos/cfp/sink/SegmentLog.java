@@ -0,0 +1,308 @@
+package fc.azure.cosmos.cfp.sink;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Local append-only log split in segment files, in the style of a Kafka partition.
+ * <p>
+ * Every record gets the next offset and is stored as {@code [offset:long][length:int][crc32:int][payload]}.
+ * Segments are named after the offset of their first record and a new one is started once the current
+ * one reaches {@code maxSegmentBytes}. Appends are staged in a direct buffer and written on
+ * {@link #flush()}; readers, in this process or another one, tail the segments with {@link Reader} and only
+ * ever see complete records.
+ */
+public class SegmentLog implements AutoCloseable {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentLog.class);
+    //
+    static final int HEADER_BYTES = 16;
+    private static final String SEGMENT_SUFFIX = ".log";
+    //
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final boolean fsync;
+    private final ByteBuffer writeBuffer;
+    private final CRC32 crc = new CRC32();
+    //
+    private FileChannel channel;
+    private long segmentBytes;
+    private long nextOffset;
+
+    public SegmentLog(final Path directory, final long maxSegmentBytes, final boolean fsync) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.fsync = fsync;
+        this.writeBuffer = ByteBuffer.allocateDirect(1024 * 1024);
+        //
+        List<Long> segments = segments(directory);
+        if (segments.isEmpty()) {
+            openSegment(0);
+        } else {
+            recover(segments.get(segments.size() - 1));
+        }
+    }
+
+    private void recover(final long baseOffset) throws IOException {
+        Path file = segmentPath(directory, baseOffset);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        nextOffset = baseOffset;
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (true) {
+            header.clear();
+            if (channel.read(header, position) < HEADER_BYTES) {
+                break;
+            }
+            header.flip();
+            long offset = header.getLong();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length < 0 || position + HEADER_BYTES + length > channel.size()) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            channel.read(payload, position + HEADER_BYTES);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            position += HEADER_BYTES + length;
+            nextOffset = offset + 1;
+        }
+        if (channel.size() > position) {
+            LOGGER.warn("Truncating a torn record at the end of " + file);
+            channel.truncate(position);
+        }
+        channel.position(position);
+        segmentBytes = position;
+    }
+
+    private void openSegment(final long baseOffset) throws IOException {
+        channel = FileChannel.open(segmentPath(directory, baseOffset), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        segmentBytes = 0;
+        nextOffset = baseOffset;
+    }
+
+    /**
+     * @return the offset assigned to the record.
+     */
+    public synchronized long append(final byte[] bytes, final int offset, final int length) throws IOException {
+        int recordBytes = HEADER_BYTES + length;
+        if (segmentBytes > 0 && segmentBytes + recordBytes > maxSegmentBytes) {
+            roll();
+        }
+        crc.reset();
+        crc.update(bytes, offset, length);
+        if (recordBytes > writeBuffer.remaining()) {
+            drain();
+        }
+        long recordOffset = nextOffset++;
+        if (recordBytes > writeBuffer.capacity()) {
+            ByteBuffer record = ByteBuffer.allocate(recordBytes);
+            record.putLong(recordOffset).putInt(length).putInt((int) crc.getValue()).put(bytes, offset, length);
+            record.flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } else {
+            writeBuffer.putLong(recordOffset).putInt(length).putInt((int) crc.getValue()).put(bytes, offset, length);
+        }
+        segmentBytes += recordBytes;
+        return recordOffset;
+    }
+
+    public synchronized void flush() throws IOException {
+        drain();
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    private void drain() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    private void roll() throws IOException {
+        drain();
+        channel.force(false);
+        channel.close();
+        openSegment(nextOffset);
+    }
+
+    public synchronized long getNextOffset() {
+        return nextOffset;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            drain();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    static Path segmentPath(final Path directory, final long baseOffset) {
+        return directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+    }
+
+    static List<Long> segments(final Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Open a reader positioned on the first record at or after {@code fromOffset}.
+     */
+    public static Reader openReader(final Path directory, final long fromOffset) throws IOException {
+        return new Reader(directory, fromOffset);
+    }
+
+    public static class Record {
+        private final long offset;
+        private final byte[] payload;
+
+        Record(final long offset, final byte[] payload) {
+            this.offset = offset;
+            this.payload = payload;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    /**
+     * Sequential reader of a segment log. {@link #poll()} returns null at the end of the log and can be
+     * called again later to pick up newly flushed records.
+     */
+    public static class Reader implements AutoCloseable {
+        //
+        private final Path directory;
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        private final CRC32 crc = new CRC32();
+        private FileChannel channel;
+        private long baseOffset;
+        private long position;
+
+        Reader(final Path directory, final long fromOffset) throws IOException {
+            this.directory = directory;
+            List<Long> segments = segments(directory);
+            long base = segments.isEmpty() ? 0 : segments.get(0);
+            for (Long segment : segments) {
+                if (segment <= fromOffset) {
+                    base = segment;
+                }
+            }
+            open(base);
+            // Skip the records of the segment preceding the requested offset
+            while (true) {
+                long mark = position;
+                Record record = poll();
+                if (record == null) {
+                    break;
+                }
+                if (record.getOffset() >= fromOffset) {
+                    position = mark;
+                    break;
+                }
+            }
+        }
+
+        private void open(final long base) throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+            Path file = segmentPath(directory, base);
+            channel = Files.exists(file) ? FileChannel.open(file, StandardOpenOption.READ) : null;
+            baseOffset = base;
+            position = 0;
+        }
+
+        public Record poll() throws IOException {
+            while (true) {
+                if (channel == null) {
+                    List<Long> segments = segments(directory);
+                    if (segments.isEmpty()) {
+                        return null;
+                    }
+                    open(segments.get(0));
+                }
+                header.clear();
+                if (channel.read(header, position) == HEADER_BYTES) {
+                    header.flip();
+                    long offset = header.getLong();
+                    int length = header.getInt();
+                    int checksum = header.getInt();
+                    if (position + HEADER_BYTES + length <= channel.size()) {
+                        byte[] payload = new byte[length];
+                        channel.read(ByteBuffer.wrap(payload), position + HEADER_BYTES);
+                        crc.reset();
+                        crc.update(payload, 0, length);
+                        if ((int) crc.getValue() != checksum) {
+                            // Record still being written
+                            return null;
+                        }
+                        position += HEADER_BYTES + length;
+                        return new Record(offset, payload);
+                    }
+                    return null;
+                }
+                // End of this segment, move on only once the writer rolled to a newer one
+                Long next = null;
+                for (Long segment : segments(directory)) {
+                    if (segment > baseOffset) {
+                        next = segment;
+                        break;
+                    }
+                }
+                if (next == null || position < channel.size()) {
+                    return null;
+                }
+                open(next);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
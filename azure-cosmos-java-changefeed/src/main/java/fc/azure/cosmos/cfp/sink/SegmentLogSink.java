@@ -0,0 +1,54 @@
+package fc.azure.cosmos.cfp.sink;
+
+import fc.azure.cosmos.cfp.handler.RawDocument;
+import fc.azure.cosmos.cfp.handler.RawDocumentBatch;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Appends every document as one record of a local {@link SegmentLog} that consumers can tail with
+ * {@link SegmentLog.Reader}, or with {@link SegmentLogTail} from the command line. The log is forced to
+ * disk on every flush, before the lease is checkpointed.
+ */
+public class SegmentLogSink implements ChangeFeedSink {
+    //
+    private final SegmentLog log;
+    private final SinkStats stats = new SinkStats();
+
+    public SegmentLogSink(final Path directory, final long maxSegmentBytes) throws IOException {
+        this.log = new SegmentLog(directory, maxSegmentBytes, true);
+    }
+
+    @Override
+    public String getName() {
+        return "log:" + log.getDirectory();
+    }
+
+    @Override
+    public void write(final RawDocumentBatch batch) throws IOException {
+        synchronized (log) {
+            for (RawDocument document : batch.getDocuments()) {
+                log.append(document.getBuffer(), document.getOffset(), document.getLength());
+            }
+        }
+        stats.recordWrite(batch.size(), batch.getLength() + (long) batch.size() * SegmentLog.HEADER_BYTES);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        long start = System.nanoTime();
+        log.flush();
+        stats.recordFlush(System.nanoTime() - start);
+    }
+
+    @Override
+    public SinkStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+}
@@ -0,0 +1,36 @@
+package fc.azure.cosmos.cfp.sink;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Console consumer of a segment log written by {@link SegmentLogSink}.
+ * <p>
+ * Usage: {@code SegmentLogTail <log directory> [from offset]}
+ */
+public class SegmentLogTail {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: SegmentLogTail <log directory> [from offset]");
+            return;
+        }
+        Path directory = Paths.get(args[0]);
+        long fromOffset = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        PrintStream out = System.out;
+        try (SegmentLog.Reader reader = SegmentLog.openReader(directory, fromOffset)) {
+            while (true) {
+                SegmentLog.Record record = reader.poll();
+                if (record == null) {
+                    Thread.sleep(500);
+                    continue;
+                }
+                out.print(record.getOffset());
+                out.print('\t');
+                out.write(record.getPayload());
+                out.println();
+            }
+        }
+    }
+}
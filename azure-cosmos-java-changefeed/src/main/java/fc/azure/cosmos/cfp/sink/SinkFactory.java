@@ -0,0 +1,59 @@
+package fc.azure.cosmos.cfp.sink;
+
+import com.azure.cosmos.CosmosAsyncDatabase;
+import com.azure.cosmos.models.CosmosContainerProperties;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds sinks from a comma separated list of {@code type:target} entries:
+ * <ul>
+ *     <li>{@code file:<directory>} rolling NDJSON files</li>
+ *     <li>{@code log:<directory>} local segment log</li>
+ *     <li>{@code cosmos:<container>} bulk copy to a container of the same database, partitioned on
+ *     {@code /partitionKey}</li>
+ * </ul>
+ */
+public final class SinkFactory {
+    //
+    public static final long DEFAULT_FILE_BYTES = 256L * 1024 * 1024;
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int FILE_BUFFER_BYTES = 4 * 1024 * 1024;
+
+    private SinkFactory() {
+    }
+
+    public static List<ChangeFeedSink> create(final String spec, final CosmosAsyncDatabase database)
+            throws IOException {
+        List<ChangeFeedSink> sinks = new ArrayList<>();
+        for (String entry : spec.split("\\s*,\\s*")) {
+            int separator = entry.indexOf(':');
+            if (separator <= 0 || separator == entry.length() - 1) {
+                throw new IllegalArgumentException("Invalid sink " + entry + ", expected <type>:<target>");
+            }
+            String type = entry.substring(0, separator);
+            String target = entry.substring(separator + 1);
+            switch (type) {
+                case "file":
+                    sinks.add(new NdjsonFileSink(Paths.get(target), "changefeed", DEFAULT_FILE_BYTES,
+                            FILE_BUFFER_BYTES));
+                    break;
+                case "log":
+                    sinks.add(new SegmentLogSink(Paths.get(target), DEFAULT_SEGMENT_BYTES));
+                    break;
+                case "cosmos":
+                    CosmosContainerProperties containerSettings = new CosmosContainerProperties(target,
+                            "/partitionKey");
+                    database.createContainerIfNotExists(containerSettings).block();
+                    sinks.add(new CosmosBulkSink(database.getContainer(target), "partitionKey"));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown sink type " + type);
+            }
+        }
+        return sinks;
+    }
+}
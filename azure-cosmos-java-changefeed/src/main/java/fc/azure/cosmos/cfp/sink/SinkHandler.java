@@ -0,0 +1,60 @@
+package fc.azure.cosmos.cfp.sink;
+
+import fc.azure.cosmos.cfp.handler.RawChangeFeedHandler;
+import fc.azure.cosmos.cfp.handler.RawDocumentBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Fans every batch out to a set of sinks.
+ * <p>
+ * The batch is written to all sinks and then every sink is flushed before returning, so the lease is
+ * only checkpointed once the batch is durable everywhere. A failing sink fails the batch and it is
+ * delivered again, which makes the sinks at least once.
+ */
+public class SinkHandler implements RawChangeFeedHandler, AutoCloseable {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(SinkHandler.class);
+    //
+    private final List<ChangeFeedSink> sinks;
+
+    public SinkHandler(final List<ChangeFeedSink> sinks) {
+        this.sinks = sinks;
+    }
+
+    @Override
+    public void handle(final RawDocumentBatch batch) throws IOException {
+        for (ChangeFeedSink sink : sinks) {
+            sink.write(batch);
+        }
+        for (ChangeFeedSink sink : sinks) {
+            sink.flush();
+        }
+    }
+
+    public List<ChangeFeedSink> getSinks() {
+        return sinks;
+    }
+
+    public void printStats() {
+        for (ChangeFeedSink sink : sinks) {
+            System.out.println("Sink " + sink.getName() + " " + sink.getStats());
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ChangeFeedSink sink : sinks) {
+            try {
+                sink.flush();
+                sink.close();
+            } catch (IOException e) {
+                LOGGER.error("Failed to close sink " + sink.getName(), e);
+            }
+            System.out.println("Closed sink " + sink.getName() + " " + sink.getStats());
+        }
+    }
+}
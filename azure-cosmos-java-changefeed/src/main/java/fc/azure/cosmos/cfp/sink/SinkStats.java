@@ -0,0 +1,62 @@
+package fc.azure.cosmos.cfp.sink;
+
+import fc.azure.cosmos.cfp.metrics.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput and flush latency of a sink.
+ */
+public class SinkStats {
+    //
+    private final long startNanos = System.nanoTime();
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+
+    public void recordWrite(final int documentCount, final long byteCount) {
+        documents.add(documentCount);
+        bytes.add(byteCount);
+    }
+
+    public void recordFlush(final long elapsedNanos) {
+        flushes.increment();
+        flushLatency.record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    public LatencyHistogram getFlushLatency() {
+        return flushLatency;
+    }
+
+    public double getDocumentsPerSecond() {
+        return documents.sum() * 1e9 / Math.max(1, System.nanoTime() - startNanos);
+    }
+
+    public double getBytesPerSecond() {
+        return bytes.sum() * 1e9 / Math.max(1, System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("documents=%d (%.1f/s), bytes=%d (%.2f MB/s), flushes=%d, flush p50=%.2f ms p99=%.2f ms",
+                getDocuments(), getDocumentsPerSecond(),
+                getBytes(), getBytesPerSecond() / (1024 * 1024),
+                getFlushes(),
+                flushLatency.getValueAtPercentile(50) / 1000.0,
+                flushLatency.getValueAtPercentile(99) / 1000.0);
+    }
+}
@@ -0,0 +1,113 @@
+package fc.azure.cosmos.cfp.tuning;
+
+import java.time.Duration;
+
+/**
+ * Adjusts the poll delay and page size of one change feed from what its pages look like.
+ * <p>
+ * After every page the controller looks at how full it was, how long the handler took and what it cost:
+ * <ul>
+ *     <li>an empty page doubles the poll delay, up to the maximum, so idle feeds stop burning RUs on polls;</li>
+ *     <li>a full page means there is a backlog, the feed is read again without delay and, as long as the
+ *     handler keeps up, with pages twice as large;</li>
+ *     <li>a partially filled page halves the poll delay back towards the minimum;</li>
+ *     <li>a handler slower than the target, or a page costing more than the charge limit, shrinks the
+ *     pages by a quarter.</li>
+ * </ul>
+ * Growth is multiplicative in both directions, which settles within a few pages, while the exponentially
+ * weighted averages keep a single outlier from swinging the settings.
+ */
+public class AdaptiveFeedController {
+    //
+    private static final double FULL_PAGE = 0.9;
+    private static final double SMOOTHING = 0.3;
+    //
+    private final FeedTuningPolicy policy;
+    //
+    private long pollDelayMillis;
+    private int maxItemCount;
+    private double fillRatio;
+    private double handlerMillis;
+    private double pageCharge;
+    private long pages;
+    private long emptyPages;
+
+    public AdaptiveFeedController(final FeedTuningPolicy policy) {
+        this.policy = policy;
+        this.pollDelayMillis = policy.getMinPollDelay().toMillis();
+        this.maxItemCount = policy.getInitialItemCount();
+    }
+
+    /**
+     * Record a page read with the current settings.
+     *
+     * @param documents     documents in the page.
+     * @param handlerNanos  time spent handling the page.
+     * @param requestCharge request units charged for the page, 0 when unknown.
+     */
+    public synchronized void observe(final int documents, final long handlerNanos, final double requestCharge) {
+        pages++;
+        if (documents == 0) {
+            emptyPages++;
+            fillRatio = (1 - SMOOTHING) * fillRatio;
+            pollDelayMillis = Math.min(policy.getMaxPollDelay().toMillis(), Math.max(1, pollDelayMillis * 2));
+            return;
+        }
+        double fill = Math.min(1.0, documents / (double) maxItemCount);
+        fillRatio = SMOOTHING * fill + (1 - SMOOTHING) * fillRatio;
+        handlerMillis = SMOOTHING * (handlerNanos / 1e6) + (1 - SMOOTHING) * handlerMillis;
+        if (requestCharge > 0) {
+            pageCharge = SMOOTHING * requestCharge + (1 - SMOOTHING) * pageCharge;
+        }
+        //
+        boolean handlerBehind = handlerMillis > policy.getTargetHandlerLatency().toMillis();
+        boolean pageTooExpensive = policy.getMaxPageCharge() > 0 && pageCharge > policy.getMaxPageCharge();
+        if (handlerBehind || pageTooExpensive) {
+            maxItemCount = Math.max(policy.getMinItemCount(), maxItemCount * 3 / 4);
+        } else if (fill >= FULL_PAGE) {
+            maxItemCount = (int) Math.min(policy.getMaxItemCount(), maxItemCount * 2L);
+        }
+        if (fill >= FULL_PAGE) {
+            pollDelayMillis = policy.getMinPollDelay().toMillis();
+        } else {
+            pollDelayMillis = Math.max(policy.getMinPollDelay().toMillis(), pollDelayMillis / 2);
+        }
+    }
+
+    /**
+     * Record a period without any page, for feeds whose empty polls are not visible to the caller.
+     */
+    public void observeIdle() {
+        observe(0, 0, 0);
+    }
+
+    public synchronized FeedTuning getTuning() {
+        return new FeedTuning(Duration.ofMillis(pollDelayMillis), maxItemCount);
+    }
+
+    public synchronized int getMaxItemCount() {
+        return maxItemCount;
+    }
+
+    public synchronized Duration getPollDelay() {
+        return Duration.ofMillis(pollDelayMillis);
+    }
+
+    public synchronized double getFillRatio() {
+        return fillRatio;
+    }
+
+    public synchronized long getPages() {
+        return pages;
+    }
+
+    public synchronized long getEmptyPages() {
+        return emptyPages;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s, fill=%.2f, handler=%.1fms, charge=%.2fRU, pages=%d (%d empty)",
+                getTuning(), fillRatio, handlerMillis, pageCharge, pages, emptyPages);
+    }
+}
@@ -0,0 +1,111 @@
+package fc.azure.cosmos.cfp.tuning;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Adaptive tuning of a push model change feed processor.
+ * <p>
+ * {@code ChangeFeedProcessorOptions} apply to every lease of a processor and are fixed once it is built,
+ * so the batches of all leases feed a single {@link AdaptiveFeedController}. The processor never calls the
+ * handler for empty polls, so an evaluation period without any batch counts as an idle poll. When the
+ * recommendation drifts from the applied settings by at least {@code hysteresis}, the new settings are
+ * handed to {@code apply}, which may rebuild the processor; leases keep their continuation across the
+ * restart, but are released and batches not yet checkpointed are delivered again. Restarts are kept rare:
+ * the hysteresis is at least {@value #MIN_HYSTERESIS}, so the poll delay of an idle feed, which doubles
+ * at every idle period, is only applied every few periods, and at most one restart happens per
+ * {@code cooldown}. When {@code apply} throws, the settings are not considered applied.
+ */
+public class AdaptiveProcessorTuner implements AutoCloseable {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveProcessorTuner.class);
+    //
+    public static final double MIN_HYSTERESIS = 4.0;
+    //
+    private final AdaptiveFeedController controller;
+    private final double hysteresis;
+    private final long cooldownNanos;
+    private final Consumer<FeedTuning> apply;
+    private final AtomicLong batchesSinceEvaluation = new AtomicLong();
+    private final ScheduledExecutorService evaluator;
+    //
+    private volatile FeedTuning applied;
+    private long appliedAtNanos = System.nanoTime();
+
+    /**
+     * @param hysteresis ratio between the recommended and applied settings that triggers a restart, raised
+     *                   to {@value #MIN_HYSTERESIS}.
+     * @param cooldown   shortest time between two restarts, and between the start and the first one.
+     */
+    public AdaptiveProcessorTuner(final FeedTuningPolicy policy, final double hysteresis, final Duration cooldown,
+                                  final Consumer<FeedTuning> apply) {
+        this.controller = new AdaptiveFeedController(policy);
+        this.hysteresis = Math.max(MIN_HYSTERESIS, hysteresis);
+        this.cooldownNanos = cooldown.toNanos();
+        this.apply = apply;
+        this.applied = controller.getTuning();
+        this.evaluator = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cfp-tuner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the settings to build the processor with.
+     */
+    public FeedTuning getApplied() {
+        return applied;
+    }
+
+    public AdaptiveFeedController getController() {
+        return controller;
+    }
+
+    /**
+     * Record a batch delivered to the handler.
+     */
+    public void observe(final int documents, final long handlerNanos) {
+        batchesSinceEvaluation.incrementAndGet();
+        controller.observe(documents, handlerNanos, 0);
+    }
+
+    public void start(final Duration evaluationInterval) {
+        evaluator.scheduleWithFixedDelay(this::evaluate,
+                evaluationInterval.toMillis(),
+                evaluationInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void evaluate() {
+        try {
+            if (batchesSinceEvaluation.getAndSet(0) == 0) {
+                controller.observeIdle();
+            }
+            FeedTuning recommended = controller.getTuning();
+            if (recommended.differsFrom(applied, hysteresis)
+                    && System.nanoTime() - appliedAtNanos >= cooldownNanos) {
+                LOGGER.info("Retuning the change feed processor from " + applied + " to " + recommended
+                        + " (" + controller + ")");
+                // A failed attempt also waits for the cooldown before the next one
+                appliedAtNanos = System.nanoTime();
+                apply.accept(recommended);
+                applied = recommended;
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to retune the change feed processor", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        evaluator.shutdownNow();
+    }
+}
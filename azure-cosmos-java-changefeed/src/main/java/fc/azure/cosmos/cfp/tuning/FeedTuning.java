@@ -0,0 +1,42 @@
+package fc.azure.cosmos.cfp.tuning;
+
+import java.time.Duration;
+
+/**
+ * Poll delay and page size recommended by an {@link AdaptiveFeedController}.
+ */
+public class FeedTuning {
+    //
+    private final Duration pollDelay;
+    private final int maxItemCount;
+
+    public FeedTuning(final Duration pollDelay, final int maxItemCount) {
+        this.pollDelay = pollDelay;
+        this.maxItemCount = maxItemCount;
+    }
+
+    public Duration getPollDelay() {
+        return pollDelay;
+    }
+
+    public int getMaxItemCount() {
+        return maxItemCount;
+    }
+
+    /**
+     * @return true when either setting differs from {@code other} by at least {@code factor}.
+     */
+    public boolean differsFrom(final FeedTuning other, final double factor) {
+        return ratio(maxItemCount, other.maxItemCount) >= factor
+                || ratio(Math.max(1, pollDelay.toMillis()), Math.max(1, other.pollDelay.toMillis())) >= factor;
+    }
+
+    private static double ratio(final double a, final double b) {
+        return a > b ? a / b : b / a;
+    }
+
+    @Override
+    public String toString() {
+        return "pollDelay=" + pollDelay.toMillis() + "ms, maxItemCount=" + maxItemCount;
+    }
+}
@@ -0,0 +1,93 @@
+package fc.azure.cosmos.cfp.tuning;
+
+import java.time.Duration;
+
+/**
+ * Bounds and targets of an {@link AdaptiveFeedController}.
+ * <p>
+ * A policy whose minimum and maximum are equal, see {@link #fixed(int, Duration)}, keeps the feed
+ * settings constant.
+ */
+public class FeedTuningPolicy {
+    //
+    private final int initialItemCount;
+    private final int minItemCount;
+    private final int maxItemCount;
+    private final Duration minPollDelay;
+    private final Duration maxPollDelay;
+    private final Duration targetHandlerLatency;
+    private final double maxPageCharge;
+
+    /**
+     * @param initialItemCount     page size used until the first observation.
+     * @param minItemCount         smallest page size.
+     * @param maxItemCount         largest page size.
+     * @param minPollDelay         poll delay of busy feeds.
+     * @param maxPollDelay         poll delay idle feeds back off to.
+     * @param targetHandlerLatency handler time per page above which pages are made smaller.
+     * @param maxPageCharge        request units per page above which pages are made smaller, 0 for no limit.
+     */
+    public FeedTuningPolicy(final int initialItemCount, final int minItemCount, final int maxItemCount,
+                            final Duration minPollDelay, final Duration maxPollDelay,
+                            final Duration targetHandlerLatency, final double maxPageCharge) {
+        if (minItemCount < 1 || minItemCount > maxItemCount) {
+            throw new IllegalArgumentException("Invalid item count bounds " + minItemCount + ".." + maxItemCount);
+        }
+        if (minPollDelay.compareTo(maxPollDelay) > 0) {
+            throw new IllegalArgumentException("Invalid poll delay bounds " + minPollDelay + ".." + maxPollDelay);
+        }
+        this.initialItemCount = Math.max(minItemCount, Math.min(maxItemCount, initialItemCount));
+        this.minItemCount = minItemCount;
+        this.maxItemCount = maxItemCount;
+        this.minPollDelay = minPollDelay;
+        this.maxPollDelay = maxPollDelay;
+        this.targetHandlerLatency = targetHandlerLatency;
+        this.maxPageCharge = maxPageCharge;
+    }
+
+    public static FeedTuningPolicy fixed(final int itemCount, final Duration pollDelay) {
+        return new FeedTuningPolicy(itemCount, itemCount, itemCount, pollDelay, pollDelay, Duration.ofDays(1), 0);
+    }
+
+    /**
+     * Adaptive policy starting from the given settings, with page sizes between 10 and 10000 items and
+     * idle feeds backing off to {@code maxPollDelay}.
+     */
+    public static FeedTuningPolicy adaptive(final int initialItemCount, final Duration minPollDelay,
+                                            final Duration maxPollDelay, final double maxPageCharge) {
+        return new FeedTuningPolicy(initialItemCount, 10, 10_000, minPollDelay, maxPollDelay,
+                Duration.ofSeconds(1), maxPageCharge);
+    }
+
+    public int getInitialItemCount() {
+        return initialItemCount;
+    }
+
+    public int getMinItemCount() {
+        return minItemCount;
+    }
+
+    public int getMaxItemCount() {
+        return maxItemCount;
+    }
+
+    public Duration getMinPollDelay() {
+        return minPollDelay;
+    }
+
+    public Duration getMaxPollDelay() {
+        return maxPollDelay;
+    }
+
+    public Duration getTargetHandlerLatency() {
+        return targetHandlerLatency;
+    }
+
+    public double getMaxPageCharge() {
+        return maxPageCharge;
+    }
+
+    public boolean isFixed() {
+        return minItemCount == maxItemCount && minPollDelay.equals(maxPollDelay);
+    }
+}
@@ -0,0 +1,129 @@
+package fc.azure.cosmos.cfp.view;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
+import com.azure.cosmos.models.CosmosItemResponse;
+import com.azure.cosmos.models.PartitionKey;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fc.azure.cosmos.cfp.event.ChangeEvent;
+import fc.azure.cosmos.cfp.handler.ChangeFeedHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Change feed handler maintaining an aggregated view, where one view document summarizes many source documents.
+ * <p>
+ * The changes of a batch are grouped by view document; each view document is read, the changes are applied by
+ * the {@link ViewAggregation}, and the result is written back with a replace conditioned on the etag that was
+ * read, or a create when there was no document. A write that loses to another host (412 on the replace, 409 on
+ * the create) is retried from a fresh read. The view documents of a batch are updated concurrently; the handler
+ * returns once all of them are written, so the source lease is only checkpointed after the view was updated.
+ */
+public class AggregatingViewBuilder implements ChangeFeedHandler {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(AggregatingViewBuilder.class);
+    //
+    private static final int CONCURRENCY = 16;
+    private static final int MAX_ATTEMPTS = 10;
+    // Aggregations only read ids, images and LSNs, the source partition key is not needed
+    private static final String SOURCE_PARTITION_KEY = "partitionKey";
+    //
+    private final CosmosAsyncContainer viewContainer;
+    private final ViewAggregation aggregation;
+    //
+    private final LongAdder sourceDocuments = new LongAdder();
+    private final LongAdder viewWrites = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final DoubleAdder requestCharge = new DoubleAdder();
+
+    public AggregatingViewBuilder(final CosmosAsyncContainer viewContainer, final ViewAggregation aggregation) {
+        this.viewContainer = viewContainer;
+        this.aggregation = aggregation;
+    }
+
+    @Override
+    public void handle(final List<JsonNode> docs) {
+        sourceDocuments.add(docs.size());
+        Map<String, List<ChangeEvent>> byKey = new LinkedHashMap<>();
+        for (JsonNode doc : docs) {
+            ChangeEvent change = ChangeEvent.of(doc, SOURCE_PARTITION_KEY);
+            String key = aggregation.key(change);
+            if (key != null) {
+                byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(change);
+            }
+        }
+        if (byKey.isEmpty()) {
+            return;
+        }
+        Flux.fromIterable(byKey.entrySet())
+                .flatMap(entry -> update(entry.getKey(), entry.getValue(), 1), CONCURRENCY)
+                .blockLast();
+        LOGGER.debug("Aggregated " + docs.size() + " changes into " + byKey.size() + " view documents");
+    }
+
+    private Mono<Boolean> update(final String key, final List<ChangeEvent> changes, final int attempt) {
+        PartitionKey partitionKey = new PartitionKey(key);
+        return viewContainer.readItem(key, partitionKey, ObjectNode.class)
+                .map(response -> {
+                    requestCharge.add(response.getRequestCharge());
+                    return response;
+                })
+                .onErrorResume(CosmosException.class, e -> e.getStatusCode() == 404 ? Mono.empty() : Mono.error(e))
+                .map(response -> write(key, partitionKey, response, changes))
+                .switchIfEmpty(Mono.fromSupplier(() -> write(key, partitionKey, null, changes)))
+                .flatMap(write -> write)
+                .onErrorResume(CosmosException.class, e -> {
+                    if ((e.getStatusCode() == 412 || e.getStatusCode() == 409) && attempt < MAX_ATTEMPTS) {
+                        // Another host updated the document since it was read
+                        conflicts.increment();
+                        return update(key, changes, attempt + 1);
+                    }
+                    return Mono.error(new IllegalStateException("View document " + key + " not updated after "
+                            + attempt + " attempts", e));
+                });
+    }
+
+    private Mono<Boolean> write(final String key, final PartitionKey partitionKey,
+                                final CosmosItemResponse<ObjectNode> stored, final List<ChangeEvent> changes) {
+        ObjectNode view = aggregation.apply(key, stored == null ? null : stored.getItem(), changes);
+        if (view == null) {
+            return Mono.just(false);
+        }
+        Mono<CosmosItemResponse<ObjectNode>> written = stored == null
+                ? viewContainer.createItem(view)
+                : viewContainer.replaceItem(view, key, partitionKey,
+                new CosmosItemRequestOptions().setIfMatchETag(stored.getETag()));
+        return written.map(response -> {
+            requestCharge.add(response.getRequestCharge());
+            viewWrites.increment();
+            return true;
+        });
+    }
+
+    public long getSourceDocuments() {
+        return sourceDocuments.sum();
+    }
+
+    public long getViewWrites() {
+        return viewWrites.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public double getRequestCharge() {
+        return requestCharge.sum();
+    }
+}
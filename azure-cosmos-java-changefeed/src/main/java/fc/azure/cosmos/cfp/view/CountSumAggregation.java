@@ -0,0 +1,90 @@
+package fc.azure.cosmos.cfp.view;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fc.azure.cosmos.cfp.event.ChangeEvent;
+import fc.azure.cosmos.cfp.window.FieldPath;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Count, and optionally sum of a numeric field, of the source documents per value of a group by field.
+ * <p>
+ * The view document of a group keeps the contribution of every source document, its summed value and the
+ * LSN of the change it came from, under {@code contributions}. A change older than the stored contribution
+ * is skipped and an update replaces the contribution instead of adding to it, so redelivered batches and
+ * retried writes are idempotent; {@code count} and {@code sum} are recomputed from the contributions.
+ * <p>
+ * Deletes are only seen in full fidelity mode with previous images, and a document moving to another group
+ * is only added to its new group: its contribution to the old one stays until it is deleted. The view
+ * document grows with the size of its group.
+ */
+public class CountSumAggregation implements ViewAggregation {
+    //
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    //
+    private final FieldPath groupBy;
+    private final FieldPath summed;
+
+    /**
+     * @param groupBy path of the grouping field.
+     * @param summed  path of the summed field, null to only count.
+     */
+    public CountSumAggregation(final FieldPath groupBy, final FieldPath summed) {
+        this.groupBy = groupBy;
+        this.summed = summed;
+    }
+
+    @Override
+    public String key(final ChangeEvent change) {
+        JsonNode image = change.getCurrent() != null ? change.getCurrent() : change.getPrevious();
+        return image == null || change.getId() == null ? null : groupBy.text(image);
+    }
+
+    @Override
+    public ObjectNode apply(final String key, final ObjectNode current, final List<ChangeEvent> changes) {
+        ObjectNode view = current != null ? current : MAPPER.createObjectNode().put("id", key).put("partitionKey", key);
+        ObjectNode contributions = view.has("contributions")
+                ? (ObjectNode) view.get("contributions")
+                : view.putObject("contributions");
+        boolean changed = current == null;
+        for (ChangeEvent change : changes) {
+            JsonNode contribution = contributions.get(change.getId());
+            if (contribution != null && change.getLsn() >= 0 && contribution.path("lsn").asLong(-1) >= change.getLsn()) {
+                // Already applied
+                continue;
+            }
+            if (change.isDelete()) {
+                changed |= contributions.remove(change.getId()) != null;
+                continue;
+            }
+            ObjectNode entry = MAPPER.createObjectNode().put("lsn", change.getLsn());
+            if (summed != null) {
+                JsonNode value = summed.resolve(change.getCurrent());
+                entry.put("value", value != null && value.isNumber() ? value.asDouble() : 0);
+            }
+            contributions.set(change.getId(), entry);
+            changed = true;
+        }
+        if (!changed) {
+            return null;
+        }
+        double sum = 0;
+        for (Iterator<Map.Entry<String, JsonNode>> entries = contributions.fields(); entries.hasNext(); ) {
+            sum += entries.next().getValue().path("value").asDouble(0);
+        }
+        view.put("count", contributions.size());
+        if (summed != null) {
+            view.put("sum", sum);
+        }
+        return view;
+    }
+
+    @Override
+    public String toString() {
+        return "count" + (summed != null ? " and sum of " + summed : "") + " by " + groupBy;
+    }
+}
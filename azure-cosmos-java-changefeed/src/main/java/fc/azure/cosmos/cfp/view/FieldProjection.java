@@ -0,0 +1,56 @@
+package fc.azure.cosmos.cfp.view;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.List;
+
+/**
+ * Projection re-keying the source documents on another field and keeping a subset of their fields.
+ * <p>
+ * The view document keeps the source id, uses the value of {@code partitionKeyField} as its partition key,
+ * and copies the listed fields (all the non system fields when the list is empty).
+ */
+public class FieldProjection implements ViewProjection {
+    //
+    private final String partitionKeyField;
+    private final List<String> fields;
+
+    public FieldProjection(final String partitionKeyField, final List<String> fields) {
+        this.partitionKeyField = partitionKeyField;
+        this.fields = fields;
+    }
+
+    @Override
+    public ObjectNode project(final JsonNode source) {
+        JsonNode id = source.get("id");
+        JsonNode key = source.get(partitionKeyField);
+        if (id == null || key == null || key.isNull()) {
+            return null;
+        }
+        //
+        ObjectNode view = JsonNodeFactory.instance.objectNode();
+        view.put("id", id.asText());
+        view.put("partitionKey", key.asText());
+        if (fields.isEmpty()) {
+            source.fields().forEachRemaining(field -> {
+                if (!field.getKey().startsWith("_") && !view.has(field.getKey())) {
+                    view.set(field.getKey(), field.getValue());
+                }
+            });
+        } else {
+            for (String field : fields) {
+                JsonNode value = source.get(field);
+                if (value != null) {
+                    view.set(field, value);
+                }
+            }
+        }
+        JsonNode timestamp = source.get("_ts");
+        if (timestamp != null) {
+            view.set("sourceTs", timestamp);
+        }
+        return view;
+    }
+}
@@ -0,0 +1,111 @@
+package fc.azure.cosmos.cfp.view;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.models.CosmosBulkOperationResponse;
+import com.azure.cosmos.models.CosmosBulkOperations;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.PartitionKey;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fc.azure.cosmos.cfp.handler.ChangeFeedHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Change feed handler maintaining a materialized view in a destination container.
+ * <p>
+ * Every batch is projected, coalesced so that several changes to the same view document become a
+ * single write, grouped by target partition key so bulk micro batches are dense, and upserted with
+ * {@code executeBulkOperations}. The handler returns once every write succeeded, so the source lease is
+ * only checkpointed after the view was updated; any failed write fails the batch, which is redelivered.
+ */
+public class MaterializedViewBuilder implements ChangeFeedHandler {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(MaterializedViewBuilder.class);
+    //
+    private final CosmosAsyncContainer viewContainer;
+    private final ViewProjection projection;
+    //
+    private final LongAdder sourceDocuments = new LongAdder();
+    private final LongAdder viewWrites = new LongAdder();
+    private final DoubleAdder requestCharge = new DoubleAdder();
+
+    public MaterializedViewBuilder(final CosmosAsyncContainer viewContainer, final ViewProjection projection) {
+        this.viewContainer = viewContainer;
+        this.projection = projection;
+    }
+
+    @Override
+    public void handle(final List<JsonNode> docs) {
+        sourceDocuments.add(docs.size());
+        // Coalesce per target partition key and id, keeping the change feed order of first appearance
+        Map<String, Map<String, ObjectNode>> byPartitionKey = new LinkedHashMap<>();
+        for (JsonNode doc : docs) {
+            ObjectNode view = projection.project(doc);
+            if (view == null) {
+                continue;
+            }
+            Map<String, ObjectNode> partition = byPartitionKey.computeIfAbsent(view.get("partitionKey").asText(),
+                    key -> new LinkedHashMap<>());
+            partition.merge(view.get("id").asText(), view, projection::merge);
+        }
+        if (byPartitionKey.isEmpty()) {
+            return;
+        }
+        //
+        List<CosmosItemOperation> operations = new ArrayList<>();
+        for (Map.Entry<String, Map<String, ObjectNode>> partition : byPartitionKey.entrySet()) {
+            PartitionKey partitionKey = new PartitionKey(partition.getKey());
+            for (ObjectNode view : partition.getValue().values()) {
+                operations.add(CosmosBulkOperations.getUpsertItemOperation(view, partitionKey));
+            }
+        }
+        //
+        List<CosmosBulkOperationResponse<Object>> failures = new ArrayList<>();
+        viewContainer.<Object>executeBulkOperations(Flux.fromIterable(operations))
+                .doOnNext(response -> {
+                    if (response.getResponse() != null) {
+                        requestCharge.add(response.getResponse().getRequestCharge());
+                    }
+                    if (response.getException() != null
+                            || response.getResponse() == null
+                            || !response.getResponse().isSuccessStatusCode()) {
+                        synchronized (failures) {
+                            failures.add(response);
+                        }
+                    }
+                })
+                .blockLast();
+        //
+        viewWrites.add(operations.size() - failures.size());
+        if (!failures.isEmpty()) {
+            CosmosBulkOperationResponse<Object> first = failures.get(0);
+            String reason = first.getException() != null
+                    ? first.getException().getMessage()
+                    : "status " + (first.getResponse() == null ? "unknown" : first.getResponse().getStatusCode());
+            throw new IllegalStateException(failures.size() + " of " + operations.size()
+                    + " view writes failed, first failure: " + reason, first.getException());
+        }
+        LOGGER.debug("Materialized " + docs.size() + " changes into " + operations.size() + " view writes");
+    }
+
+    public long getSourceDocuments() {
+        return sourceDocuments.sum();
+    }
+
+    public long getViewWrites() {
+        return viewWrites.sum();
+    }
+
+    public double getRequestCharge() {
+        return requestCharge.sum();
+    }
+}
@@ -0,0 +1,33 @@
+package fc.azure.cosmos.cfp.view;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import fc.azure.cosmos.cfp.event.ChangeEvent;
+
+import java.util.List;
+
+/**
+ * Folds changes of the source into view documents that aggregate many source documents.
+ * <p>
+ * Unlike a {@link ViewProjection}, the new view document depends on the stored one, so it is computed from
+ * the document read from the view container and written back only if nobody changed it in between.
+ */
+public interface ViewAggregation {
+
+    /**
+     * @param change change of a source document.
+     * @return the id of the view document the change goes to, also used as its partition key, or null when
+     * the change does not belong to the view.
+     */
+    String key(ChangeEvent change);
+
+    /**
+     * Apply changes to a view document. Called again with the same changes when the write lost a race or the
+     * batch is redelivered, so applying a change twice must leave the document as applying it once.
+     *
+     * @param key     id of the view document.
+     * @param current stored view document, null when there is none yet; may be modified.
+     * @param changes changes of the key, in change feed order.
+     * @return the document to write, carrying {@code id} and {@code partitionKey}, or null when nothing changed.
+     */
+    ObjectNode apply(String key, ObjectNode current, List<ChangeEvent> changes);
+}
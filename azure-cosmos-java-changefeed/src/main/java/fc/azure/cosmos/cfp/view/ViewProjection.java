@@ -0,0 +1,29 @@
+package fc.azure.cosmos.cfp.view;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Maps a source document to its materialized view document.
+ */
+public interface ViewProjection {
+
+    /**
+     * @param source changed source document.
+     * @return the view document, which must carry {@code id} and {@code partitionKey}, or null when the
+     * document does not belong to the view.
+     */
+    ObjectNode project(JsonNode source);
+
+    /**
+     * Combine two view documents with the same id and partition key produced within one batch.
+     * The default keeps the latest one.
+     *
+     * @param previous view document produced earlier in the batch.
+     * @param latest   view document produced by a later change.
+     * @return the document to write.
+     */
+    default ObjectNode merge(final ObjectNode previous, final ObjectNode latest) {
+        return latest;
+    }
+}
@@ -0,0 +1,19 @@
+package fc.azure.cosmos.cfp.window;
+
+/**
+ * Function computed per key and window by a {@link WindowedAggregator}.
+ */
+public enum Aggregation {
+    /**
+     * Number of changes.
+     */
+    COUNT,
+    /**
+     * Sum of a numeric value, missing and non numeric values are skipped.
+     */
+    SUM,
+    /**
+     * Approximate number of distinct values, with a HyperLogLog sketch.
+     */
+    DISTINCT
+}
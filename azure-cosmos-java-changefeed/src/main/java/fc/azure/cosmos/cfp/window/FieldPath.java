@@ -0,0 +1,55 @@
+package fc.azure.cosmos.cfp.window;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Compiled path to a value inside a JSON document.
+ * <p>
+ * Paths are written either as a JSON pointer ({@code /address/0/city}) or with dots and brackets
+ * ({@code address[0].city}); both are compiled once into a {@link JsonPointer}.
+ */
+public class FieldPath {
+    //
+    private final String path;
+    private final JsonPointer pointer;
+
+    private FieldPath(final String path, final JsonPointer pointer) {
+        this.path = path;
+        this.pointer = pointer;
+    }
+
+    public static FieldPath compile(final String path) {
+        if (path.startsWith("/")) {
+            return new FieldPath(path, JsonPointer.compile(path));
+        }
+        StringBuilder pointer = new StringBuilder();
+        for (String segment : path.replace("[", ".").replace("]", "").split("\\.")) {
+            if (!segment.isEmpty()) {
+                pointer.append('/').append(segment.replace("~", "~0").replace("/", "~1"));
+            }
+        }
+        return new FieldPath(path, JsonPointer.compile(pointer.toString()));
+    }
+
+    /**
+     * @return the value at the path, null when it is missing or null.
+     */
+    public JsonNode resolve(final JsonNode doc) {
+        JsonNode value = doc.at(pointer);
+        return value.isMissingNode() || value.isNull() ? null : value;
+    }
+
+    /**
+     * @return the text of the value at the path, null when it is missing, null or not a scalar.
+     */
+    public String text(final JsonNode doc) {
+        JsonNode value = resolve(doc);
+        return value == null || value.isContainerNode() ? null : value.asText();
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -0,0 +1,167 @@
+package fc.azure.cosmos.cfp.window;
+
+import fc.azure.cosmos.cfp.dedup.DocumentFingerprint;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Aggregation state of every key for one pane of time, in primitive arrays.
+ * <p>
+ * Entries are appended to parallel arrays (key hash, key, count, sum and an optional HyperLogLog sketch)
+ * and found through an open addressing table of entry indexes with linear probing; arrays double when full,
+ * and nothing is boxed per change. Not thread safe.
+ */
+class PaneTable {
+    //
+    private final int precision;
+    private long[] hashes;
+    private String[] keys;
+    private long[] counts;
+    private double[] sums;
+    private byte[][] sketches;
+    // Entry index + 1, 0 marks a free slot
+    private int[] table;
+    private int mask;
+    private int size;
+
+    /**
+     * @param precision precision of the distinct value sketches, 0 to keep none.
+     */
+    PaneTable(final int precision) {
+        this.precision = precision;
+        allocate(16);
+    }
+
+    private void allocate(final int capacity) {
+        hashes = hashes == null ? new long[capacity] : Arrays.copyOf(hashes, capacity);
+        keys = keys == null ? new String[capacity] : Arrays.copyOf(keys, capacity);
+        counts = counts == null ? new long[capacity] : Arrays.copyOf(counts, capacity);
+        sums = sums == null ? new double[capacity] : Arrays.copyOf(sums, capacity);
+        if (precision > 0) {
+            sketches = sketches == null ? new byte[capacity][] : Arrays.copyOf(sketches, capacity);
+        }
+        table = new int[capacity * 2];
+        mask = table.length - 1;
+        for (int entry = 0; entry < size; entry++) {
+            insertIntoTable(hashes[entry], entry);
+        }
+    }
+
+    /**
+     * @param value      numeric value of the change, NaN when it has none.
+     * @param valueHash  hash of the value counted as distinct, {@link DocumentFingerprint#NONE} when none.
+     */
+    void add(final String key, final double value, final long valueHash) {
+        int entry = entry(key);
+        counts[entry]++;
+        if (!Double.isNaN(value)) {
+            sums[entry] += value;
+        }
+        if (precision > 0 && valueHash != DocumentFingerprint.NONE) {
+            HyperLogLog.add(sketch(entry), valueHash);
+        }
+    }
+
+    void merge(final PaneTable other) {
+        for (int i = 0; i < other.size; i++) {
+            int entry = entry(other.keys[i]);
+            counts[entry] += other.counts[i];
+            sums[entry] += other.sums[i];
+            if (precision > 0 && other.sketches[i] != null) {
+                HyperLogLog.merge(sketch(entry), other.sketches[i]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    String key(final int entry) {
+        return keys[entry];
+    }
+
+    long count(final int entry) {
+        return counts[entry];
+    }
+
+    double sum(final int entry) {
+        return sums[entry];
+    }
+
+    long distinct(final int entry) {
+        return precision == 0 || sketches[entry] == null ? 0 : HyperLogLog.estimate(sketches[entry]);
+    }
+
+    private byte[] sketch(final int entry) {
+        if (sketches[entry] == null) {
+            sketches[entry] = HyperLogLog.create(precision);
+        }
+        return sketches[entry];
+    }
+
+    private int entry(final String key) {
+        long hash = DocumentFingerprint.key(key, null);
+        for (int slot = slotOf(hash); ; slot = (slot + 1) & mask) {
+            int entry = table[slot] - 1;
+            if (entry < 0) {
+                break;
+            }
+            if (hashes[entry] == hash && keys[entry].equals(key)) {
+                return entry;
+            }
+        }
+        if (size == hashes.length) {
+            allocate(size * 2);
+        }
+        int entry = size++;
+        hashes[entry] = hash;
+        keys[entry] = key;
+        insertIntoTable(hash, entry);
+        return entry;
+    }
+
+    private void insertIntoTable(final long hash, final int entry) {
+        int slot = slotOf(hash);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private int slotOf(final long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    void writeTo(final DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int entry = 0; entry < size; entry++) {
+            out.writeUTF(keys[entry]);
+            out.writeLong(counts[entry]);
+            out.writeDouble(sums[entry]);
+            if (precision > 0) {
+                out.writeBoolean(sketches[entry] != null);
+                if (sketches[entry] != null) {
+                    out.write(sketches[entry]);
+                }
+            }
+        }
+    }
+
+    static PaneTable readFrom(final DataInput in, final int precision) throws IOException {
+        PaneTable pane = new PaneTable(precision);
+        int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            int entry = pane.entry(in.readUTF());
+            pane.counts[entry] = in.readLong();
+            pane.sums[entry] = in.readDouble();
+            if (precision > 0 && in.readBoolean()) {
+                in.readFully(pane.sketch(entry));
+            }
+        }
+        return pane;
+    }
+}
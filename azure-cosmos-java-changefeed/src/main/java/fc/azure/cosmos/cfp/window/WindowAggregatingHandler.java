@@ -0,0 +1,28 @@
+package fc.azure.cosmos.cfp.window;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fc.azure.cosmos.cfp.handler.ChangeFeedHandler;
+
+import java.util.List;
+
+/**
+ * Feeds the changes to a {@link WindowedAggregator} on their way to the downstream handler, so analytics
+ * are computed from the change feed instead of queries against the container.
+ */
+public class WindowAggregatingHandler implements ChangeFeedHandler {
+    //
+    private final ChangeFeedHandler delegate;
+    private final WindowedAggregator aggregator;
+
+    public WindowAggregatingHandler(final ChangeFeedHandler delegate, final WindowedAggregator aggregator) {
+        this.delegate = delegate;
+        this.aggregator = aggregator;
+    }
+
+    // Aggregated after the delegate succeeded, a failed batch is redelivered and must not be counted twice
+    @Override
+    public void handle(final List<JsonNode> docs) throws Exception {
+        delegate.handle(docs);
+        aggregator.accept(docs);
+    }
+}
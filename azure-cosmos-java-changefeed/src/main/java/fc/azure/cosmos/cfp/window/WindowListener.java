@@ -0,0 +1,9 @@
+package fc.azure.cosmos.cfp.window;
+
+/**
+ * Receives the windows of a {@link WindowedAggregator} as they close.
+ */
+public interface WindowListener {
+
+    void onWindow(WindowResult result);
+}
@@ -0,0 +1,107 @@
+package fc.azure.cosmos.cfp.window;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Aggregated values of a closed window, by key.
+ */
+public class WindowResult {
+    //
+    private final String name;
+    private final Instant start;
+    private final Instant end;
+    private final Aggregation aggregation;
+    private final List<Entry> entries;
+
+    public WindowResult(final String name, final Instant start, final Instant end, final Aggregation aggregation,
+                        final List<Entry> entries) {
+        this.name = name;
+        this.start = start;
+        this.end = end;
+        this.aggregation = aggregation;
+        this.entries = entries;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Instant getStart() {
+        return start;
+    }
+
+    /**
+     * @return the end of the window, exclusive.
+     */
+    public Instant getEnd() {
+        return end;
+    }
+
+    public Aggregation getAggregation() {
+        return aggregation;
+    }
+
+    /**
+     * @return the keys of the window, by decreasing value when limited to the top ones.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public ObjectNode toJson() {
+        ObjectNode json = JsonNodeFactory.instance.objectNode();
+        json.put("name", name);
+        json.put("start", start.toString());
+        json.put("end", end.toString());
+        json.put("aggregation", aggregation.name().toLowerCase());
+        ArrayNode values = json.putArray("values");
+        for (Entry entry : entries) {
+            values.addObject()
+                    .put("key", entry.getKey())
+                    .put("value", entry.getValue())
+                    .put("count", entry.getCount());
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return toJson().toString();
+    }
+
+    public static class Entry {
+        //
+        private final String key;
+        private final double value;
+        private final long count;
+
+        public Entry(final String key, final double value, final long count) {
+            this.key = key;
+            this.value = value;
+            this.count = count;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the count, sum or distinct estimate of the key, following the aggregation.
+         */
+        public double getValue() {
+            return value;
+        }
+
+        /**
+         * @return the number of changes of the key in the window.
+         */
+        public long getCount() {
+            return count;
+        }
+    }
+}
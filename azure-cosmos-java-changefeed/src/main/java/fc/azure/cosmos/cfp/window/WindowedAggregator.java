@@ -0,0 +1,381 @@
+package fc.azure.cosmos.cfp.window;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import fc.azure.cosmos.cfp.dedup.DocumentFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keyed tumbling or sliding window aggregation over the change feed.
+ * <p>
+ * Changes are placed in time by their {@code _ts}. Time is cut in panes as long as the window slide, and a
+ * window of {@code size} is the merge of the {@code size / slide} panes it covers, so a change is aggregated
+ * once whatever the overlap of the windows; a tumbling window is a single pane. Each pane keeps the state of
+ * its keys in a {@link PaneTable}. A window closes once the watermark, the latest change time minus the
+ * allowed lateness, passed its end; changes arriving for panes whose windows all closed are counted as late
+ * and dropped. When the feed is idle the watermark follows the wall clock, so the last window still closes.
+ * <p>
+ * The open panes can be saved to a snapshot file and restored on start. Changes handled between the last
+ * snapshot and a crash are replayed from the lease checkpoints, so after a crash they may be counted twice.
+ */
+public class WindowedAggregator implements AutoCloseable {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(WindowedAggregator.class);
+    private static final int FILE_MAGIC = 0x43465057;
+    private static final String NO_KEY = "*";
+    //
+    private final String name;
+    private final FieldPath keyPath;
+    private final Aggregation aggregation;
+    private final FieldPath valuePath;
+    private final long paneMillis;
+    private final int panesPerWindow;
+    private final long latenessMillis;
+    private final int topK;
+    private final int precision;
+    private final WindowListener listener;
+    private final TreeMap<Long, PaneTable> panes = new TreeMap<>();
+    //
+    private long maxEventMillis = Long.MIN_VALUE;
+    private long lastEventNanos;
+    private long nextWindowEnd = Long.MIN_VALUE;
+    private long changes;
+    private long lateChanges;
+    private long windows;
+    //
+    private ScheduledExecutorService ticker;
+    private Path snapshotFile;
+
+    /**
+     * @param name        name of the aggregation, in the results and the snapshot.
+     * @param keyPath     path of the grouping key, null to aggregate all the changes together.
+     * @param aggregation function computed per key.
+     * @param valuePath   path of the summed or distinct value, unused for counts.
+     * @param size        window size.
+     * @param slide       window slide, equal to the size for tumbling windows; must divide the size.
+     * @param lateness    how late a change may arrive after newer ones and still be aggregated.
+     * @param topK        number of keys with the highest values reported per window, 0 for all.
+     * @param listener    receives the closed windows.
+     */
+    public WindowedAggregator(final String name, final FieldPath keyPath, final Aggregation aggregation,
+                              final FieldPath valuePath, final Duration size, final Duration slide,
+                              final Duration lateness, final int topK, final WindowListener listener) {
+        if (slide.isZero() || slide.isNegative() || size.toMillis() % slide.toMillis() != 0) {
+            throw new IllegalArgumentException("The window slide must be positive and divide the window size");
+        }
+        if (aggregation != Aggregation.COUNT && valuePath == null) {
+            throw new IllegalArgumentException("A " + aggregation + " aggregation needs a value path");
+        }
+        this.name = name;
+        this.keyPath = keyPath;
+        this.aggregation = aggregation;
+        this.valuePath = valuePath;
+        this.paneMillis = slide.toMillis();
+        this.panesPerWindow = (int) (size.toMillis() / slide.toMillis());
+        this.latenessMillis = lateness.toMillis();
+        this.topK = topK;
+        this.precision = aggregation == Aggregation.DISTINCT ? HyperLogLog.DEFAULT_PRECISION : 0;
+        this.listener = listener;
+    }
+
+    public synchronized void accept(final List<JsonNode> docs) {
+        for (JsonNode doc : docs) {
+            JsonNode ts = doc.get("_ts");
+            long eventMillis = ts != null && ts.isNumber() ? ts.asLong() * 1000 : System.currentTimeMillis();
+            long pane = Math.floorDiv(eventMillis, paneMillis);
+            changes++;
+            if (nextWindowEnd != Long.MIN_VALUE && pane + panesPerWindow < nextWindowEnd) {
+                lateChanges++;
+                continue;
+            }
+            String key = keyPath == null ? NO_KEY : keyPath.text(doc);
+            double value = Double.NaN;
+            long valueHash = DocumentFingerprint.NONE;
+            if (aggregation == Aggregation.SUM) {
+                JsonNode number = valuePath.resolve(doc);
+                value = number != null && number.isNumber() ? number.asDouble() : Double.NaN;
+            } else if (aggregation == Aggregation.DISTINCT) {
+                String distinct = valuePath.text(doc);
+                valueHash = distinct == null ? DocumentFingerprint.NONE : DocumentFingerprint.key(distinct, null);
+            }
+            PaneTable table = panes.get(pane);
+            if (table == null) {
+                table = new PaneTable(precision);
+                panes.put(pane, table);
+            }
+            table.add(key == null ? "null" : key, value, valueHash);
+            maxEventMillis = Math.max(maxEventMillis, eventMillis);
+        }
+        lastEventNanos = System.nanoTime();
+        if (maxEventMillis != Long.MIN_VALUE) {
+            advance(maxEventMillis - latenessMillis);
+        }
+    }
+
+    /**
+     * Close the windows ending at or before the watermark.
+     */
+    public synchronized void advance(final long watermarkMillis) {
+        if (panes.isEmpty()) {
+            return;
+        }
+        if (nextWindowEnd == Long.MIN_VALUE) {
+            nextWindowEnd = panes.firstKey() + 1;
+        }
+        long watermarkPane = Math.floorDiv(watermarkMillis, paneMillis);
+        while (nextWindowEnd <= watermarkPane && !panes.isEmpty()) {
+            SortedMap<Long, PaneTable> covered = panes.subMap(nextWindowEnd - panesPerWindow, nextWindowEnd);
+            if (covered.isEmpty()) {
+                // Skip the windows of a gap in the feed at once
+                Long next = panes.ceilingKey(nextWindowEnd);
+                nextWindowEnd = next == null ? watermarkPane + 1 : next + 1;
+                continue;
+            }
+            emit(nextWindowEnd, covered);
+            nextWindowEnd++;
+            panes.headMap(nextWindowEnd - panesPerWindow).clear();
+        }
+    }
+
+    /**
+     * Let the watermark follow the wall clock once no change arrived for the allowed lateness.
+     */
+    public synchronized void tick() {
+        if (maxEventMillis == Long.MIN_VALUE) {
+            return;
+        }
+        long idleMillis = (System.nanoTime() - lastEventNanos) / 1000000;
+        if (idleMillis >= latenessMillis) {
+            advance(maxEventMillis + idleMillis - latenessMillis);
+        }
+    }
+
+    private void emit(final long windowEnd, final SortedMap<Long, PaneTable> covered) {
+        PaneTable window;
+        if (covered.size() == 1) {
+            window = covered.values().iterator().next();
+        } else {
+            window = new PaneTable(precision);
+            for (PaneTable pane : covered.values()) {
+                window.merge(pane);
+            }
+        }
+        List<WindowResult.Entry> entries = new ArrayList<>();
+        for (int entry : select(window)) {
+            entries.add(new WindowResult.Entry(window.key(entry), value(window, entry), window.count(entry)));
+        }
+        windows++;
+        listener.onWindow(new WindowResult(name,
+                Instant.ofEpochMilli((windowEnd - panesPerWindow) * paneMillis),
+                Instant.ofEpochMilli(windowEnd * paneMillis),
+                aggregation,
+                entries));
+    }
+
+    private double value(final PaneTable window, final int entry) {
+        switch (aggregation) {
+            case SUM:
+                return window.sum(entry);
+            case DISTINCT:
+                return window.distinct(entry);
+            default:
+                return window.count(entry);
+        }
+    }
+
+    /**
+     * @return the entries of the window, the top K by decreasing value when limited.
+     */
+    private int[] select(final PaneTable window) {
+        int size = window.size();
+        if (topK <= 0 || size <= topK) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) {
+                all[i] = i;
+            }
+            return topK <= 0 ? all : sortByValue(window, all, size);
+        }
+        // Min-heap of the K highest values seen so far
+        int[] heap = new int[topK];
+        double[] values = new double[topK];
+        int count = 0;
+        for (int entry = 0; entry < size; entry++) {
+            double value = value(window, entry);
+            if (count < topK) {
+                heap[count] = entry;
+                values[count] = value;
+                for (int child = count++; child > 0 && values[child] < values[(child - 1) / 2]; child = (child - 1) / 2) {
+                    swap(heap, values, child, (child - 1) / 2);
+                }
+            } else if (value > values[0]) {
+                heap[0] = entry;
+                values[0] = value;
+                for (int parent = 0; ; ) {
+                    int smallest = parent;
+                    int left = parent * 2 + 1;
+                    if (left < count && values[left] < values[smallest]) {
+                        smallest = left;
+                    }
+                    if (left + 1 < count && values[left + 1] < values[smallest]) {
+                        smallest = left + 1;
+                    }
+                    if (smallest == parent) {
+                        break;
+                    }
+                    swap(heap, values, parent, smallest);
+                    parent = smallest;
+                }
+            }
+        }
+        return sortByValue(window, heap, count);
+    }
+
+    private int[] sortByValue(final PaneTable window, final int[] entries, final int count) {
+        // Few entries, an insertion sort by decreasing value is enough
+        for (int i = 1; i < count; i++) {
+            int entry = entries[i];
+            double value = value(window, entry);
+            int j = i - 1;
+            while (j >= 0 && value(window, entries[j]) < value) {
+                entries[j + 1] = entries[j];
+                j--;
+            }
+            entries[j + 1] = entry;
+        }
+        return count == entries.length ? entries : Arrays.copyOf(entries, count);
+    }
+
+    private static void swap(final int[] heap, final double[] values, final int a, final int b) {
+        int entry = heap[a];
+        heap[a] = heap[b];
+        heap[b] = entry;
+        double value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+    }
+
+    /**
+     * Restore the open panes saved by {@link #save()}, unless the file belongs to another aggregation.
+     *
+     * @return whether the snapshot was restored.
+     */
+    public synchronized boolean restore(final Path file) throws IOException {
+        snapshotFile = file;
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException(file + " is not a window snapshot");
+            }
+            if (!name.equals(in.readUTF()) || in.readInt() != aggregation.ordinal()
+                    || in.readLong() != paneMillis || in.readInt() != panesPerWindow) {
+                LOGGER.warn("The window snapshot " + file + " was taken with other settings, it is ignored");
+                return false;
+            }
+            maxEventMillis = in.readLong();
+            nextWindowEnd = in.readLong();
+            changes = in.readLong();
+            lateChanges = in.readLong();
+            windows = in.readLong();
+            int paneCount = in.readInt();
+            panes.clear();
+            for (int i = 0; i < paneCount; i++) {
+                long pane = in.readLong();
+                panes.put(pane, PaneTable.readFrom(in, precision));
+            }
+            lastEventNanos = System.nanoTime();
+        }
+        LOGGER.info("Restored " + panes.size() + " window panes from " + file);
+        return true;
+    }
+
+    /**
+     * Write the open panes to the snapshot file, through a temporary file moved over the previous one.
+     */
+    public synchronized void save() throws IOException {
+        if (snapshotFile == null) {
+            return;
+        }
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp),
+                1 << 16))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeUTF(name);
+            out.writeInt(aggregation.ordinal());
+            out.writeLong(paneMillis);
+            out.writeInt(panesPerWindow);
+            out.writeLong(maxEventMillis);
+            out.writeLong(nextWindowEnd);
+            out.writeLong(changes);
+            out.writeLong(lateChanges);
+            out.writeLong(windows);
+            out.writeInt(panes.size());
+            for (Map.Entry<Long, PaneTable> pane : panes.entrySet()) {
+                out.writeLong(pane.getKey());
+                pane.getValue().writeTo(out);
+            }
+        }
+        Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Tick the watermark every second and save the snapshot, when a file was given to {@link #restore}, at
+     * the given interval.
+     */
+    public synchronized void start(final Duration snapshotInterval) {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cfp-window-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::tick, 1, 1, TimeUnit.SECONDS);
+        ticker.scheduleWithFixedDelay(() -> {
+            try {
+                save();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to save the window snapshot " + snapshotFile, e);
+            }
+        }, snapshotInterval.toMillis(), snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (ticker != null) {
+                ticker.shutdownNow();
+                ticker = null;
+            }
+        }
+        save();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s changes=%d late=%d windows=%d open panes=%d",
+                name, changes, lateChanges, windows, panes.size());
+    }
+}
@@ -0,0 +1,128 @@
+package fc.azure.cosmos.cfp.checkpoint;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FileCheckpointStoreTest {
+    //
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("checkpoints");
+        file = directory.resolve("checkpoints.log");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void replaysTheLastContinuationOfEachRange() throws IOException {
+        try (FileCheckpointStore store = new FileCheckpointStore(file)) {
+            store.save("range-1", "c1");
+            store.save("range-2", "c2");
+            store.flush();
+            store.save("range-1", "c3");
+        }
+        try (FileCheckpointStore store = new FileCheckpointStore(file)) {
+            assertEquals("c3", store.load("range-1"));
+            assertEquals("c2", store.load("range-2"));
+            assertNull(store.load("range-3"));
+            assertEquals(2, store.loadAll().size());
+        }
+    }
+
+    @Test
+    public void savesAreNotDurableBeforeFlush() throws IOException {
+        try (FileCheckpointStore store = new FileCheckpointStore(file)) {
+            store.save("range-1", "c1");
+            store.flush();
+            store.save("range-1", "c2");
+            // A crash now loses the buffered record, not the flushed one
+            try (FileCheckpointStore recovered = new FileCheckpointStore(file)) {
+                assertEquals("c1", recovered.load("range-1"));
+            }
+        }
+    }
+
+    @Test
+    public void truncatesATornRecordAndKeepsAppending() throws IOException {
+        try (FileCheckpointStore store = new FileCheckpointStore(file)) {
+            store.save("range-1", "c1");
+        }
+        long validLength = Files.size(file);
+        // A crash in the middle of a write: the lengths of the next record made it, its bytes did not
+        append(ByteBuffer.allocate(10).putInt(7).putInt(40).put((byte) 'r').put((byte) 'a'));
+        //
+        try (FileCheckpointStore store = new FileCheckpointStore(file)) {
+            assertEquals("c1", store.load("range-1"));
+            assertEquals(validLength, Files.size(file));
+            store.save("range-2", "c2");
+        }
+        try (FileCheckpointStore store = new FileCheckpointStore(file)) {
+            assertEquals("c1", store.load("range-1"));
+            assertEquals("c2", store.load("range-2"));
+        }
+    }
+
+    @Test
+    public void dropsARecordWithABadChecksum() throws IOException {
+        try (FileCheckpointStore store = new FileCheckpointStore(file)) {
+            store.save("range-1", "c1");
+            store.flush();
+            store.save("range-1", "c2");
+        }
+        // Corrupt the last byte of the value of the second record
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'x'}), size - 9);
+        }
+        try (FileCheckpointStore store = new FileCheckpointStore(file)) {
+            assertEquals("c1", store.load("range-1"));
+            assertEquals(size / 2, Files.size(file));
+        }
+    }
+
+    @Test
+    public void compactsARepetitiveLog() throws IOException {
+        try (FileCheckpointStore store = new FileCheckpointStore(file)) {
+            for (int i = 0; i < 2000; i++) {
+                store.save("range-" + (i % 2), "c" + i);
+            }
+            store.flush();
+            assertTrue("log of " + Files.size(file) + " bytes", Files.size(file) < 100);
+            store.save("range-0", "last");
+        }
+        assertTrue(Files.notExists(directory.resolve("checkpoints.log.compact")));
+        try (FileCheckpointStore store = new FileCheckpointStore(file)) {
+            assertEquals("last", store.load("range-0"));
+            assertEquals("c1999", store.load("range-1"));
+        }
+    }
+
+    private void append(final ByteBuffer bytes) throws IOException {
+        bytes.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package fc.azure.cosmos.cfp.dedup;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BloomFilterTest {
+
+    @Test
+    public void neverMissesAnInsertedFingerprint() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        Random random = new Random(1);
+        long[] fingerprints = new long[10_000];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = random.nextLong();
+            filter.put(fingerprints[i]);
+        }
+        for (long fingerprint : fingerprints) {
+            assertTrue(filter.mightContain(fingerprint));
+        }
+        assertEquals(10_000, filter.getInsertions());
+    }
+
+    @Test
+    public void staysNearTheFalsePositiveProbability() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        Random random = new Random(2);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(random.nextLong());
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain(random.nextLong())) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives + " false positives in 100000", falsePositives < 2_000);
+    }
+
+    @Test
+    public void roundTripsThroughItsSerializedForm() throws IOException {
+        BloomFilter filter = BloomFilter.create(1_000, 0.01);
+        for (long fingerprint = 0; fingerprint < 1_000; fingerprint++) {
+            filter.put(fingerprint * 0x9E3779B97F4A7C15L);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            filter.writeTo(out);
+        }
+        BloomFilter copy = BloomFilter.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        //
+        assertEquals(filter.getBitCount(), copy.getBitCount());
+        assertEquals(filter.getInsertions(), copy.getInsertions());
+        Random random = new Random(3);
+        for (int i = 0; i < 10_000; i++) {
+            long fingerprint = i < 1_000 ? i * 0x9E3779B97F4A7C15L : random.nextLong();
+            assertEquals(filter.mightContain(fingerprint), copy.mightContain(fingerprint));
+        }
+    }
+
+    @Test
+    public void concurrentPutsLoseNoBits() throws InterruptedException {
+        final BloomFilter filter = BloomFilter.create(40_000, 0.01);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final long base = t * 10_000L;
+            threads.add(new Thread(() -> {
+                for (long i = base; i < base + 10_000; i++) {
+                    filter.put(i * 0x9E3779B97F4A7C15L);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (long i = 0; i < 40_000; i++) {
+            assertTrue("fingerprint " + i, filter.mightContain(i * 0x9E3779B97F4A7C15L));
+        }
+        assertEquals(40_000, filter.getInsertions());
+    }
+}
@@ -0,0 +1,92 @@
+package fc.azure.cosmos.cfp.dedup;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongLruSetTest {
+
+    @Test
+    public void evictsTheLeastRecentlyUsedKey() {
+        LongLruSet set = new LongLruSet(3);
+        assertTrue(set.add(1));
+        assertTrue(set.add(2));
+        assertTrue(set.add(3));
+        assertFalse(set.add(1));
+        assertTrue(set.touch(2));
+        assertTrue(set.add(4));
+        //
+        assertFalse(set.contains(3));
+        assertTrue(set.contains(1));
+        assertTrue(set.contains(2));
+        assertTrue(set.contains(4));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    public void containsDoesNotRefreshAKey() {
+        LongLruSet set = new LongLruSet(2);
+        set.add(1);
+        set.add(2);
+        assertTrue(set.contains(1));
+        set.add(3);
+        assertFalse(set.contains(1));
+        assertFalse(set.touch(1));
+    }
+
+    @Test
+    public void clearEmptiesTheSet() {
+        LongLruSet set = new LongLruSet(4);
+        for (long key = 0; key < 10; key++) {
+            set.add(key);
+        }
+        set.clear();
+        assertEquals(0, set.size());
+        for (long key = 0; key < 10; key++) {
+            assertFalse(set.contains(key));
+        }
+        assertTrue(set.add(5));
+        assertTrue(set.contains(5));
+    }
+
+    /**
+     * Evictions delete from the middle of probe runs; a wrong backward shift either loses a key still in the
+     * set or leaves an evicted one reachable, which a reference LRU exposes.
+     */
+    @Test
+    public void matchesAReferenceLruUnderChurn() {
+        for (int capacity : new int[]{1, 2, 7, 64}) {
+            LongLruSet set = new LongLruSet(capacity);
+            Map<Long, Boolean> reference = new LinkedHashMap<>(16, 0.75f, true);
+            Random random = new Random(capacity);
+            for (int i = 0; i < 50_000; i++) {
+                // Few distinct keys, with multiples of a power of two to crowd the same slots
+                long key = random.nextBoolean() ? random.nextInt(capacity * 3) : (long) random.nextInt(8) << 40;
+                if (random.nextInt(4) == 0) {
+                    assertEquals(reference.get(key) != null, set.touch(key));
+                } else {
+                    assertEquals(reference.put(key, Boolean.TRUE) == null, set.add(key));
+                    if (reference.size() > capacity) {
+                        Iterator<Long> eldest = reference.keySet().iterator();
+                        eldest.next();
+                        eldest.remove();
+                    }
+                }
+                assertEquals(reference.size(), set.size());
+            }
+            for (long key = 0; key < capacity * 3; key++) {
+                assertEquals("key " + key, reference.containsKey(key), set.contains(key));
+            }
+            for (long key = 0; key < 8; key++) {
+                assertEquals("key " + (key << 40), reference.containsKey(key << 40), set.contains(key << 40));
+            }
+        }
+    }
+}
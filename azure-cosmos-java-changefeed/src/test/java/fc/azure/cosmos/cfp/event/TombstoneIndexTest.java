@@ -0,0 +1,105 @@
+package fc.azure.cosmos.cfp.event;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TombstoneIndexTest {
+
+    @Test
+    public void ignoresAWriteOlderThanTheDelete() {
+        TombstoneIndex index = new TombstoneIndex(4);
+        index.delete(1, 100);
+        assertFalse(index.write(1, 99));
+        assertTrue(index.isDeleted(1));
+        assertEquals(100, index.deletedAt(1));
+        // Created again after the delete
+        assertTrue(index.write(1, 101));
+        assertFalse(index.isDeleted(1));
+        assertEquals(-1, index.deletedAt(1));
+    }
+
+    @Test
+    public void anUnknownLsnNeverMakesAWriteStale() {
+        TombstoneIndex index = new TombstoneIndex(4);
+        index.delete(1, -1);
+        assertTrue(index.write(1, 5));
+        index.delete(2, 10);
+        assertTrue(index.write(2, -1));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void dropsTheOldestTombstoneWhenFull() {
+        TombstoneIndex index = new TombstoneIndex(2);
+        index.delete(1, 1);
+        index.delete(2, 2);
+        index.delete(3, 3);
+        assertFalse(index.isDeleted(1));
+        assertTrue(index.isDeleted(2));
+        assertTrue(index.isDeleted(3));
+        assertEquals(1, index.getEvictions());
+        assertEquals(2, index.size());
+    }
+
+    /**
+     * Writes and evictions delete from the middle of probe runs; a wrong backward shift either loses a
+     * tombstone still held or leaves a dropped one reachable, which a reference model of the ring exposes.
+     */
+    @Test
+    public void matchesAReferenceRingUnderChurn() {
+        for (int capacity : new int[]{1, 3, 16, 100}) {
+            TombstoneIndex index = new TombstoneIndex(capacity);
+            Map<Long, Long> deleted = new HashMap<>();
+            Map<Long, Integer> slots = new HashMap<>();
+            Long[] ring = new Long[capacity];
+            int next = 0;
+            long evictions = 0;
+            Random random = new Random(capacity);
+            for (int i = 0; i < 50_000; i++) {
+                // Few distinct keys, with multiples of a power of two to crowd the same slots
+                long key = random.nextBoolean() ? random.nextInt(capacity * 3) : (long) random.nextInt(8) << 40;
+                long lsn = random.nextInt(1000);
+                if (random.nextBoolean()) {
+                    index.delete(key, lsn);
+                    Long previous = deleted.get(key);
+                    if (previous != null) {
+                        deleted.put(key, Math.max(previous, lsn));
+                        continue;
+                    }
+                    if (ring[next] != null) {
+                        deleted.remove(ring[next]);
+                        slots.remove(ring[next]);
+                        evictions++;
+                    }
+                    ring[next] = key;
+                    slots.put(key, next);
+                    deleted.put(key, lsn);
+                    next = (next + 1) % capacity;
+                } else {
+                    Long deletedAt = deleted.get(key);
+                    boolean stale = deletedAt != null && lsn < deletedAt;
+                    assertEquals(!stale, index.write(key, lsn));
+                    if (deletedAt != null && !stale) {
+                        deleted.remove(key);
+                        ring[slots.remove(key)] = null;
+                    }
+                }
+                assertEquals(deleted.size(), index.size());
+            }
+            assertEquals(evictions, index.getEvictions());
+            for (long key = 0; key < capacity * 3; key++) {
+                assertEquals("key " + key, deleted.containsKey(key), index.isDeleted(key));
+            }
+            for (Map.Entry<Long, Long> tombstone : deleted.entrySet()) {
+                assertEquals((long) tombstone.getValue(), index.deletedAt(tombstone.getKey()));
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package fc.azure.cosmos.cfp.sink;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentLogTest {
+    //
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("segments");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void readsTheRecordsBackInOffsetOrder() throws IOException {
+        try (SegmentLog log = new SegmentLog(directory, 1024 * 1024, true)) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, append(log, "record-" + i));
+            }
+        }
+        try (SegmentLog.Reader reader = SegmentLog.openReader(directory, 4)) {
+            for (int i = 4; i < 10; i++) {
+                assertRecord(i, "record-" + i, reader.poll());
+            }
+            assertNull(reader.poll());
+        }
+    }
+
+    @Test
+    public void rollsSegmentsAndReadsAcrossThem() throws IOException {
+        try (SegmentLog log = new SegmentLog(directory, 100, false)) {
+            for (int i = 0; i < 20; i++) {
+                append(log, "record-" + i);
+            }
+        }
+        List<Long> segments = SegmentLog.segments(directory);
+        assertTrue(segments.size() + " segments", segments.size() > 1);
+        // Segments are named after their first offset
+        try (SegmentLog.Reader reader = SegmentLog.openReader(directory, segments.get(1))) {
+            assertEquals((long) segments.get(1), reader.poll().getOffset());
+        }
+        try (SegmentLog log = new SegmentLog(directory, 100, false)) {
+            assertEquals(20, log.getNextOffset());
+            assertEquals(20, append(log, "record-20"));
+        }
+        try (SegmentLog.Reader reader = SegmentLog.openReader(directory, 0)) {
+            for (int i = 0; i <= 20; i++) {
+                assertRecord(i, "record-" + i, reader.poll());
+            }
+            assertNull(reader.poll());
+        }
+    }
+
+    @Test
+    public void truncatesATornRecordOnRecovery() throws IOException {
+        try (SegmentLog log = new SegmentLog(directory, 1024 * 1024, true)) {
+            append(log, "record-0");
+            append(log, "record-1");
+        }
+        Path segment = SegmentLog.segmentPath(directory, 0);
+        long validLength = Files.size(segment);
+        // A crash in the middle of a write: the header of the next record made it, its payload did not
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer header = ByteBuffer.allocate(SegmentLog.HEADER_BYTES + 3);
+            header.putLong(2).putInt(100).putInt(0).put(new byte[]{'r', 'e', 'c'}).flip();
+            channel.write(header);
+        }
+        try (SegmentLog log = new SegmentLog(directory, 1024 * 1024, true)) {
+            assertEquals(validLength, Files.size(segment));
+            assertEquals(2, log.getNextOffset());
+            assertEquals(2, append(log, "record-2"));
+        }
+        try (SegmentLog.Reader reader = SegmentLog.openReader(directory, 0)) {
+            for (int i = 0; i < 3; i++) {
+                assertRecord(i, "record-" + i, reader.poll());
+            }
+            assertNull(reader.poll());
+        }
+    }
+
+    @Test
+    public void dropsARecordWithABadChecksumOnRecovery() throws IOException {
+        try (SegmentLog log = new SegmentLog(directory, 1024 * 1024, true)) {
+            append(log, "record-0");
+            append(log, "record-1");
+        }
+        Path segment = SegmentLog.segmentPath(directory, 0);
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'x'}), size - 1);
+        }
+        try (SegmentLog log = new SegmentLog(directory, 1024 * 1024, true)) {
+            assertEquals(size / 2, Files.size(segment));
+            assertEquals(1, log.getNextOffset());
+        }
+    }
+
+    @Test
+    public void aTailingReaderOnlySeesFlushedRecords() throws IOException {
+        try (SegmentLog log = new SegmentLog(directory, 1024 * 1024, false);
+             SegmentLog.Reader reader = SegmentLog.openReader(directory, 0)) {
+            append(log, "record-0");
+            assertRecord(0, "record-0", reader.poll());
+            log.append(bytes("record-1"), 0, bytes("record-1").length);
+            assertNull(reader.poll());
+            log.flush();
+            assertRecord(1, "record-1", reader.poll());
+        }
+    }
+
+    @Test
+    public void writesARecordLargerThanTheBuffer() throws IOException {
+        byte[] large = new byte[3 * 1024 * 1024];
+        Arrays.fill(large, (byte) 'x');
+        try (SegmentLog log = new SegmentLog(directory, 64L * 1024 * 1024, true)) {
+            append(log, "before");
+            assertEquals(1, log.append(large, 0, large.length));
+            log.flush();
+            append(log, "after");
+        }
+        try (SegmentLog.Reader reader = SegmentLog.openReader(directory, 0)) {
+            assertRecord(0, "before", reader.poll());
+            assertArrayEquals(large, reader.poll().getPayload());
+            assertRecord(2, "after", reader.poll());
+        }
+    }
+
+    private static long append(final SegmentLog log, final String payload) throws IOException {
+        byte[] bytes = bytes(payload);
+        long offset = log.append(bytes, 0, bytes.length);
+        log.flush();
+        return offset;
+    }
+
+    private static byte[] bytes(final String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void assertRecord(final long offset, final String payload, final SegmentLog.Record record) {
+        assertEquals(offset, record.getOffset());
+        assertEquals(payload, new String(record.getPayload(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,154 @@
+package fc.azure.cosmos.cfp.window;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WindowedAggregatorTest {
+    //
+    private final List<WindowResult> results = new ArrayList<>();
+
+    @Test
+    public void closesATumblingWindowOnceTheWatermarkPassedItsEnd() {
+        WindowedAggregator aggregator = count(Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ZERO);
+        aggregator.accept(docs(doc(1, "a"), doc(2, "a"), doc(5, "b")));
+        assertTrue(results.isEmpty());
+        //
+        aggregator.accept(docs(doc(12, "a")));
+        assertEquals(1, results.size());
+        WindowResult window = results.get(0);
+        assertEquals(Instant.ofEpochSecond(0), window.getStart());
+        assertEquals(Instant.ofEpochSecond(10), window.getEnd());
+        assertEquals(2, window.getEntries().size());
+        assertEquals(2, value(window, "a"), 0);
+        assertEquals(1, value(window, "b"), 0);
+    }
+
+    @Test
+    public void countsAChangeInEverySlidingWindowCoveringIt() {
+        WindowedAggregator aggregator = count(Duration.ofSeconds(20), Duration.ofSeconds(10), Duration.ZERO);
+        aggregator.accept(docs(doc(5, "a"), doc(15, "a")));
+        aggregator.accept(docs(doc(45, "a")));
+        // The panes of the gap between 20s and 40s are skipped at once
+        assertEquals(3, results.size());
+        assertWindow(results.get(0), -10, 10, 1);
+        assertWindow(results.get(1), 0, 20, 2);
+        assertWindow(results.get(2), 10, 30, 1);
+    }
+
+    @Test
+    public void dropsAChangeForWindowsAlreadyClosed() {
+        WindowedAggregator aggregator = count(Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ZERO);
+        aggregator.accept(docs(doc(1, "a")));
+        aggregator.accept(docs(doc(25, "a")));
+        aggregator.accept(docs(doc(3, "a")));
+        aggregator.accept(docs(doc(31, "a")));
+        //
+        assertEquals(2, results.size());
+        assertWindow(results.get(0), 0, 10, 1);
+        assertWindow(results.get(1), 20, 30, 1);
+        assertTrue(aggregator.toString(), aggregator.toString().contains("late=1"));
+    }
+
+    @Test
+    public void keepsAWindowOpenForTheAllowedLateness() {
+        WindowedAggregator aggregator = count(Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ofSeconds(5));
+        aggregator.accept(docs(doc(1, "a"), doc(12, "a")));
+        assertTrue(results.isEmpty());
+        aggregator.accept(docs(doc(3, "a")));
+        aggregator.accept(docs(doc(16, "a")));
+        assertEquals(1, results.size());
+        assertWindow(results.get(0), 0, 10, 2);
+    }
+
+    @Test
+    public void reportsTheTopKeysBySum() {
+        WindowedAggregator aggregator = new WindowedAggregator("sum", FieldPath.compile("key"), Aggregation.SUM,
+                FieldPath.compile("amount"), Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ZERO, 2,
+                results::add);
+        aggregator.accept(docs(doc(1, "a", 10), doc(2, "b", 30), doc(3, "c", 5), doc(4, "c", 15)));
+        aggregator.accept(docs(doc(12, "a", 1)));
+        //
+        List<WindowResult.Entry> entries = results.get(0).getEntries();
+        assertEquals(2, entries.size());
+        assertEquals("b", entries.get(0).getKey());
+        assertEquals(30, entries.get(0).getValue(), 0);
+        assertEquals("c", entries.get(1).getKey());
+        assertEquals(20, entries.get(1).getValue(), 0);
+        assertEquals(2, entries.get(1).getCount());
+    }
+
+    @Test
+    public void resumesTheOpenPanesFromASnapshot() throws IOException {
+        Path directory = Files.createTempDirectory("windows");
+        Path snapshot = directory.resolve("windows.snapshot");
+        try {
+            WindowedAggregator first = count(Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ZERO);
+            assertFalse(first.restore(snapshot));
+            first.accept(docs(doc(1, "a"), doc(2, "a")));
+            first.close();
+            //
+            WindowedAggregator other = new WindowedAggregator("other", FieldPath.compile("key"),
+                    Aggregation.COUNT, null, Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ZERO, 0,
+                    results::add);
+            assertFalse(other.restore(snapshot));
+            //
+            WindowedAggregator second = count(Duration.ofSeconds(10), Duration.ofSeconds(10), Duration.ZERO);
+            assertTrue(second.restore(snapshot));
+            second.accept(docs(doc(3, "a"), doc(12, "b")));
+            assertEquals(1, results.size());
+            assertWindow(results.get(0), 0, 10, 3);
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private WindowedAggregator count(final Duration size, final Duration slide, final Duration lateness) {
+        return new WindowedAggregator("count", FieldPath.compile("key"), Aggregation.COUNT, null, size, slide,
+                lateness, 0, results::add);
+    }
+
+    private static void assertWindow(final WindowResult window, final long startSecond, final long endSecond,
+                                     final double count) {
+        assertEquals(Instant.ofEpochSecond(startSecond), window.getStart());
+        assertEquals(Instant.ofEpochSecond(endSecond), window.getEnd());
+        assertEquals(count, value(window, "a"), 0);
+    }
+
+    private static double value(final WindowResult window, final String key) {
+        for (WindowResult.Entry entry : window.getEntries()) {
+            if (entry.getKey().equals(key)) {
+                return entry.getValue();
+            }
+        }
+        return 0;
+    }
+
+    private static List<JsonNode> docs(final JsonNode... docs) {
+        List<JsonNode> list = new ArrayList<>();
+        Collections.addAll(list, docs);
+        return list;
+    }
+
+    private static JsonNode doc(final long ts, final String key) {
+        return JsonNodeFactory.instance.objectNode().put("_ts", ts).put("key", key);
+    }
+
+    private static JsonNode doc(final long ts, final String key, final double amount) {
+        return JsonNodeFactory.instance.objectNode().put("_ts", ts).put("key", key).put("amount", amount);
+    }
+}
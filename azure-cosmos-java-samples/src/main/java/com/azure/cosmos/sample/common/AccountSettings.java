@@ -71,5 +71,11 @@ public class AccountSettings {
                                     System.getenv().get("AADBASEDAUTH")),
                             "false")));
 
+    // Open the connections to CONTAINER when the client is built, instead of on the first request
+    public static boolean WARMUP = Boolean.parseBoolean(
+            System.getProperty("WARMUP",
+                    StringUtils.defaultString(StringUtils.trimToNull(
+                                    System.getenv().get("WARMUP")),
+                            "false")));
 
 }
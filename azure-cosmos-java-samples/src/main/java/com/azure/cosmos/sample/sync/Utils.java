@@ -40,6 +40,7 @@ public class Utils {
 
     public static CosmosClient getClient() {
         //
+        long start = System.nanoTime();
         CosmosClient client = null;
         //
         //TODO make this lean
@@ -77,10 +78,31 @@ public class Utils {
                     //.gatewayMode()
                     .buildClient();
         }
+        System.out.println("Client built in " + (System.nanoTime() - start) / 1_000_000 + " ms");
         //
+        if (AccountSettings.WARMUP) {
+            warmUp(client, AccountSettings.DATABASE, AccountSettings.CONTAINER);
+        }
         return client;
     }
 
+    /**
+     * Open the connections to every partition of the container and fill the address caches, so the first
+     * request does not pay for them. A container that does not exist yet is skipped.
+     */
+    public static void warmUp(final CosmosClient client, final String databaseName, final String containerName) {
+        long start = System.nanoTime();
+        try {
+            client.getDatabase(databaseName).getContainer(containerName).openConnectionsAndInitCaches();
+            System.out.println("Warm-up of " + containerName + " completed in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (CosmosException e) {
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+            System.out.println("Skipping the warm-up, container " + containerName + " does not exist yet");
+        }
+    }
+
     public static CosmosAsyncDatabase createDatabaseIfNotExists(
             final CosmosAsyncClient client,
             final String databaseName) throws Exception {
@@ -1,6 +1,7 @@
 package com.azure.cosmos.migrationmonitor;
 
 import com.azure.cosmos.ConsistencyLevel;
+import fc.azure.cosmos.bootstrap.ClientSettings;
 
 public class Config {
 
@@ -14,6 +15,7 @@ public class Config {
     private String destinationKey;
     private long startTimeEpochMs;
     private long migrationStatusFreq;
+    private ClientSettings clientSettings = new ClientSettings();
 
     public String getMonitoredDatabase() {
         return monitoredDatabase;
@@ -94,4 +96,12 @@ public class Config {
     public long getStartTimeEpochMs() {
         return startTimeEpochMs;
     }
+
+    public ClientSettings getClientSettings() {
+        return clientSettings;
+    }
+
+    public void setClientSettings(ClientSettings clientSettings) {
+        this.clientSettings = clientSettings;
+    }
 }
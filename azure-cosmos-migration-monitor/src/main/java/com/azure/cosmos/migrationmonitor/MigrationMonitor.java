@@ -1,14 +1,19 @@
 package com.azure.cosmos.migrationmonitor;
 
-import com.azure.cosmos.CosmosClientBuilder;
 import com.azure.cosmos.CosmosException;
 import com.azure.cosmos.CosmosAsyncClient;
 import com.azure.cosmos.CosmosAsyncDatabase;
 import com.azure.cosmos.CosmosAsyncContainer;
 import com.azure.cosmos.implementation.Utils;
+import com.azure.cosmos.models.CosmosContainerProperties;
 import com.azure.cosmos.models.CosmosContainerRequestOptions;
 import com.azure.cosmos.models.CosmosContainerResponse;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import fc.azure.cosmos.bootstrap.ClientOptions;
+import fc.azure.cosmos.bootstrap.ClientSettings;
+import fc.azure.cosmos.bootstrap.ContainerSpec;
+import fc.azure.cosmos.bootstrap.CosmosClientFactory;
+import fc.azure.cosmos.bootstrap.StartupTimer;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.Option;
@@ -18,6 +23,9 @@ import org.apache.commons.cli.ParseException;
 import org.apache.commons.cli.Options;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
 import java.util.Date;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -46,10 +54,11 @@ public class MigrationMonitor {
     private long startTimeEpochMs = System.currentTimeMillis();
     private long lastMigrationActivityRecorded = System.currentTimeMillis();
     private ScheduledExecutorService scheduler;
+    private final StartupTimer startupTimer = StartupTimer.sinceJvmStart("MigrationMonitor");
 
     //
     public void close(final CosmosAsyncClient client) {
-        client.close();
+        CosmosClientFactory.close(client);
     }
 
     /**
@@ -88,6 +97,11 @@ public class MigrationMonitor {
          *  --destinationKey <arg>          Destination Cosmos Access key
          *  --startTimeEpochMs <arg>        Migration Start Time (milliseconds)
          *  --migrationStatusFreq <arg>     Migration Monitor status frequency in seconds
+         *  --connectionmode <arg>          direct or gateway (default: direct)
+         *  --maxconnections <arg>          Direct connections per replica endpoint (default: 130)
+         *  --maxrequests <arg>             Concurrent requests per direct connection (default: 30)
+         *  --gatewaypoolsize <arg>         Gateway connection pool size (default: 1000)
+         *  --warmup                        Open the connections to both containers before monitoring
          */
         Options commandLineOptions = new Options();
         //
@@ -101,6 +115,7 @@ public class MigrationMonitor {
         commandLineOptions.addOption(Option.builder().longOpt(Constants.DESTINATION_KEY).required(true).hasArg().desc("Destination Cosmos Access key").build());
         commandLineOptions.addOption(Option.builder().type(Long.TYPE).longOpt(Constants.MIGRATIONMONITORFREQUENCYSEC).required(true).hasArg().desc("Migration Monitor status frequency in seconds").build());
         commandLineOptions.addOption(Option.builder().longOpt(Constants.STARTTIMEEPOCHMS).required(true).hasArg().desc("Migration Start Time (milliseconds)").build());
+        ClientOptions.addTo(commandLineOptions);
         Option alpha = new Option("a", "alpha", false, "Activate feature alpha");
         //
         CommandLineParser parser = new DefaultParser();
@@ -129,6 +144,7 @@ public class MigrationMonitor {
         config.setDestinationKey(commandLine.getOptionValue(Constants.DESTINATION_KEY));
         config.setMigrationStatusFreq(Long.parseLong(commandLine.getOptionValue(Constants.MIGRATIONMONITORFREQUENCYSEC)));
         config.setStartTimeEpochMs(Long.parseLong(commandLine.getOptionValue(Constants.STARTTIMEEPOCHMS)));
+        config.setClientSettings(ClientOptions.apply(commandLine, new ClientSettings(null, null, userAgentSuffix)));
         //
         return config;
     }
@@ -139,14 +155,23 @@ public class MigrationMonitor {
         //  Create Cosmos client
         sourceCosmosClient = getCosmosClient(config.getMonitoredAccount(), config.getMonitoredKey());
         destCosmosClient = getCosmosClient(config.getDestinationAccount(), config.getDestinationKey());
+        startupTimer.mark("clients");
+        //
+        // Both accounts are checked in parallel, the databases need no call of their own
+        Mono.when(checkContainer(sourceCosmosClient, config.getMonitoredDatabase(), config.getMonitoredCollection()),
+                checkContainer(destCosmosClient, config.getDestinationDatabase(), config.getDestinationCollection()))
+                .block();
         //
-        sourceCosmosDb = getDatabase(sourceCosmosClient, config.getMonitoredDatabase());
-        destCosmosDb = getDatabase(destCosmosClient, config.getDestinationDatabase());
+        sourceCosmosDb = sourceCosmosClient.getDatabase(config.getMonitoredDatabase());
+        destCosmosDb = destCosmosClient.getDatabase(config.getDestinationDatabase());
         //
-        sourceCosmosContainer = getContainer(sourceCosmosClient, config.getMonitoredDatabase(),
-                config.getMonitoredCollection());
-        destCosmosContainer = getContainer(destCosmosClient, config.getDestinationDatabase(),
-                config.getDestinationCollection());
+        sourceCosmosContainer = sourceCosmosDb.getContainer(config.getMonitoredCollection());
+        destCosmosContainer = destCosmosDb.getContainer(config.getDestinationCollection());
+        startupTimer.mark("containers");
+        if (config.getClientSettings().isWarmUp()) {
+            CosmosClientFactory.warmUp(Arrays.asList(sourceCosmosContainer, destCosmosContainer)).block();
+            startupTimer.mark("warm-up");
+        }
     }
 
     public void triggerMigrationProgressTask() {
@@ -244,6 +269,7 @@ public class MigrationMonitor {
                     break;
                 }
             }
+            startupTimer.firstOperation();
         } catch (final CosmosException exception) {
             LOGGER.info("Error while fetching the document count " + exception.getMessage());
         }
@@ -255,45 +281,14 @@ public class MigrationMonitor {
         //
         LOGGER.info("Get Cosmos Client for " + endpoint);
         //
-        return new CosmosClientBuilder()
-                .endpoint(endpoint)
-                .key(key)
-                .userAgentSuffix(userAgentSuffix)
-                .contentResponseOnWriteEnabled(true)
-                .buildAsyncClient();
+        return CosmosClientFactory.getClient(config.getClientSettings().forAccount(endpoint, key));
     }
 
-    private CosmosAsyncDatabase getDatabase(final CosmosAsyncClient client,
-                                            final String database) throws Exception {
-        LOGGER.info("Get database " + database);
-        CosmosAsyncDatabase db = client.getDatabase(database);
-        if (db == null)
-            throw new Exception("Database " + database + " not found");
-        return client.getDatabase(database);
-    }
-
-    private CosmosAsyncContainer getContainer(final CosmosAsyncClient client,
-                                              final String database,
-                                              final String container) throws Exception {
+    private Mono<CosmosContainerProperties> checkContainer(final CosmosAsyncClient client,
+                                                           final String database,
+                                                           final String container) {
         LOGGER.info("Get container " + container + " for database " + database);
-        //
-        CosmosAsyncDatabase databaseLink = client.getDatabase(database);
-        CosmosAsyncContainer containerLink = databaseLink.getContainer(container);
-        //
-        try {
-            CosmosContainerResponse containerResponse = containerLink.read().block();
-        } catch (RuntimeException ex) {
-            if (ex instanceof CosmosException) {
-                CosmosException cosmosClientException = (CosmosException) ex;
-
-                if (cosmosClientException.getStatusCode() == 404) {
-                    throw new Exception("Container "+container+" for Database " + database + " not found", ex);
-                }
-            } else {
-                throw ex;
-            }
-        }
-        return containerLink;
+        return CosmosClientFactory.getMetadataCache(client).container(database, ContainerSpec.mustExist(container));
     }
 
 }
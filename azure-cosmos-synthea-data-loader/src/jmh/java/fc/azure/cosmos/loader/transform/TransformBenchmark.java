@@ -0,0 +1,140 @@
+package fc.azure.cosmos.loader.transform;
+
+import com.bazaarvoice.jolt.JsonUtils;
+import com.bazaarvoice.jolt.Shiftr;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fc.azure.cosmos.loader.Patient;
+import org.apache.commons.cli.*;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the Shiftr interpreter the loader used to run on every record against the compiled
+ * {@link PatientSpec}.
+ * <p>
+ * The records are read into memory in the setup, so only parsing and mapping are measured, and both paths are
+ * checked to produce the same patients before anything is measured. Every invocation maps the next record of
+ * the file, so the scores are per record; the GC profiler reports the allocation per record
+ * ({@code gc.alloc.rate.norm}).
+ * <p>
+ * Kept out of the loader jar: it is only compiled by the {@code jmh} profile, {@code mvn -Pjmh package}, into
+ * {@code target/cosmosdb-synthea-dataloader-jmh.jar}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TransformBenchmark {
+    //
+    private static final String FILE = "file";
+    private static final String WARMUP_ITERATIONS = "warmupiterations";
+    private static final String ITERATIONS = "iterations";
+    private static final String FORKS = "forks";
+    //
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    //
+    @Param("./output/fhir/Patient.ndjson")
+    public String file;
+    //
+    private List<String> records;
+    private Shiftr shiftr;
+    private PatientSpec spec;
+    private int next;
+
+    public static void main(String[] args) throws Exception {
+
+        /**
+         * Usage:
+         * --file <Patient.ndjson, default ./output/fhir/Patient.ndjson>
+         * --warmupiterations <unreported iterations of one second, default 5>
+         * --iterations <measured iterations of one second, default 10>
+         * --forks <JVMs the benchmark runs in, one after the other, default 1>
+         */
+        Options commandLineOptions = new Options();
+        //
+        commandLineOptions.addOption(Option.builder().longOpt(FILE).required(false).hasArg().desc("Patient.ndjson (default: ./output/fhir/Patient.ndjson)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(WARMUP_ITERATIONS).required(false).hasArg().desc("Unreported iterations of one second (default: 5)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(ITERATIONS).required(false).hasArg().desc("Measured iterations of one second (default: 10)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(FORKS).required(false).hasArg().desc("JVMs the benchmark runs in (default: 1)").build());
+        //
+        CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(commandLineOptions, args);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            new HelpFormatter().printHelp("Transform benchmark options ", commandLineOptions);
+            return;
+        }
+        new Runner(new OptionsBuilder()
+                .include(TransformBenchmark.class.getSimpleName())
+                .param(FILE, Paths.get(commandLine.getOptionValue(FILE, "./output/fhir/Patient.ndjson"))
+                        .toAbsolutePath().toString())
+                .warmupIterations(Integer.parseInt(commandLine.getOptionValue(WARMUP_ITERATIONS, "5")))
+                .measurementIterations(Integer.parseInt(commandLine.getOptionValue(ITERATIONS, "10")))
+                .forks(Integer.parseInt(commandLine.getOptionValue(FORKS, "1")))
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        records = Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8);
+        if (records.isEmpty()) {
+            throw new IllegalArgumentException(file + " has no records");
+        }
+        shiftr = new Shiftr(JsonUtils.classpathToObject(PatientReader.SPEC));
+        spec = PatientSpec.fromClasspath(PatientReader.SPEC);
+        //
+        int mismatches = 0;
+        for (String record : records) {
+            String interpreted = MAPPER.writeValueAsString(interpret(shiftr, record));
+            String compiled = MAPPER.writeValueAsString(spec.map(record));
+            if (!interpreted.equals(compiled)) {
+                if (mismatches++ == 0) {
+                    System.out.println("First mismatch\n interpreter: " + interpreted + "\n compiled:    " + compiled);
+                }
+            }
+        }
+        System.out.println(records.size() + " records, " + mismatches + " mapped differently");
+    }
+
+    @Benchmark
+    public Patient interpreter() {
+        return interpret(shiftr, nextRecord());
+    }
+
+    @Benchmark
+    public Patient compiled() throws IOException {
+        return spec.map(nextRecord());
+    }
+
+    private String nextRecord() {
+        String record = records.get(next);
+        next = next + 1 == records.size() ? 0 : next + 1;
+        return record;
+    }
+
+    /**
+     * The former per record path of DataLoaderApp.
+     */
+    private static Patient interpret(final Shiftr shiftr, final String record) {
+        Object transformed = shiftr.transform(JsonUtils.jsonToObject(record));
+        return JsonUtils.stringToType(JsonUtils.toJsonString(transformed), Patient.class);
+    }
+}
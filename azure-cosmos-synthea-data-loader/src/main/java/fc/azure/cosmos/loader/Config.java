@@ -1,6 +1,7 @@
 package fc.azure.cosmos.loader;
 
 import com.azure.cosmos.ConsistencyLevel;
+import fc.azure.cosmos.bootstrap.ClientSettings;
 
 public class Config {
 
@@ -10,6 +11,21 @@ public class Config {
     private String key;
     private ConsistencyLevel readConsistencyLevel;
     private String leaseContainer;
+    private int pipelineDepth = 2;
+    private int queueSize = 1000;
+    private double targetRequestChargePerSecond;
+    private double initialRequestCharge = 10;
+    private int maxRetries = 10;
+    private int maxBulkConcurrency = 5;
+    private String journal = "./loader-journal.json";
+    private int shardIndex;
+    private int shardCount = 1;
+    private String shardDirectory = "./loader-shards";
+    private String partitionKeyStrategy = "id";
+    private int partitionKeyBuckets = 100;
+    private String partitionKeyProperties = "address.state";
+    //
+    private ClientSettings clientSettings = new ClientSettings();
 
     public String getDatabase() {
         return database;
@@ -58,4 +74,116 @@ public class Config {
     public void setLeaseContainer(String leaseContainer) {
         this.leaseContainer = leaseContainer;
     }
+
+    public ClientSettings getClientSettings() {
+        return clientSettings;
+    }
+
+    public void setClientSettings(ClientSettings clientSettings) {
+        this.clientSettings = clientSettings;
+    }
+
+    public int getPipelineDepth() {
+        return pipelineDepth;
+    }
+
+    public void setPipelineDepth(int pipelineDepth) {
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public double getTargetRequestChargePerSecond() {
+        return targetRequestChargePerSecond;
+    }
+
+    public void setTargetRequestChargePerSecond(double targetRequestChargePerSecond) {
+        this.targetRequestChargePerSecond = targetRequestChargePerSecond;
+    }
+
+    public double getInitialRequestCharge() {
+        return initialRequestCharge;
+    }
+
+    public void setInitialRequestCharge(double initialRequestCharge) {
+        this.initialRequestCharge = initialRequestCharge;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public int getMaxBulkConcurrency() {
+        return maxBulkConcurrency;
+    }
+
+    public void setMaxBulkConcurrency(int maxBulkConcurrency) {
+        this.maxBulkConcurrency = maxBulkConcurrency;
+    }
+
+    public String getJournal() {
+        return journal;
+    }
+
+    public void setJournal(String journal) {
+        this.journal = journal;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public void setShardIndex(int shardIndex) {
+        this.shardIndex = shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    public String getShardDirectory() {
+        return shardDirectory;
+    }
+
+    public void setShardDirectory(String shardDirectory) {
+        this.shardDirectory = shardDirectory;
+    }
+
+    public String getPartitionKeyStrategy() {
+        return partitionKeyStrategy;
+    }
+
+    public void setPartitionKeyStrategy(String partitionKeyStrategy) {
+        this.partitionKeyStrategy = partitionKeyStrategy;
+    }
+
+    public int getPartitionKeyBuckets() {
+        return partitionKeyBuckets;
+    }
+
+    public void setPartitionKeyBuckets(int partitionKeyBuckets) {
+        this.partitionKeyBuckets = partitionKeyBuckets;
+    }
+
+    public String getPartitionKeyProperties() {
+        return partitionKeyProperties;
+    }
+
+    public void setPartitionKeyProperties(String partitionKeyProperties) {
+        this.partitionKeyProperties = partitionKeyProperties;
+    }
 }
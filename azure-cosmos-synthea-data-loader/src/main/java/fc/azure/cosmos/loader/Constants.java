@@ -14,5 +14,18 @@ public interface Constants {
     String CONSISTENCY_LEVEL_EVENTUAL = "EVENTUAL";
     String HOST = "host";
     String PREFIX = "prefix";
+    String PIPELINE_DEPTH = "pipelinedepth";
+    String QUEUE_SIZE = "queuesize";
+    String TARGET_RU = "targetru";
+    String INITIAL_CHARGE = "initialcharge";
+    String MAX_RETRIES = "maxretries";
+    String BULK_CONCURRENCY = "bulkconcurrency";
+    String JOURNAL = "journal";
+    String SHARD_INDEX = "shardindex";
+    String SHARD_COUNT = "shardcount";
+    String SHARD_DIRECTORY = "sharddirectory";
+    String PK_STRATEGY = "pkstrategy";
+    String PK_BUCKETS = "pkbuckets";
+    String PK_PROPERTIES = "pkproperties";
 
 }
@@ -7,57 +7,53 @@ import com.azure.cosmos.implementation.apachecommons.lang.RandomStringUtils;
 import com.azure.cosmos.models.CosmosBulkOperations;
 import com.azure.cosmos.models.CosmosItemOperation;
 import com.azure.cosmos.models.PartitionKey;
-import com.bazaarvoice.jolt.Shiftr;
+import fc.azure.cosmos.bootstrap.ClientOptions;
+import fc.azure.cosmos.bootstrap.ClientSettings;
+import fc.azure.cosmos.bootstrap.ContainerSpec;
+import fc.azure.cosmos.bootstrap.CosmosClientFactory;
+import fc.azure.cosmos.bootstrap.StartupTimer;
+import fc.azure.cosmos.loader.ingest.BatchResult;
+import fc.azure.cosmos.loader.ingest.IngestionController;
+import fc.azure.cosmos.loader.ingest.LoadJournal;
+import fc.azure.cosmos.loader.partition.PartitionKeyStrategies;
+import fc.azure.cosmos.loader.partition.PartitionKeyStrategy;
+import fc.azure.cosmos.loader.shard.ShardCoordinator;
+import fc.azure.cosmos.loader.transform.PatientReader;
 import org.apache.commons.cli.*;
 import org.mitre.synthea.helpers.Config;
 
 import java.io.*;
 import java.lang.reflect.Method;
-import java.math.BigInteger;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
-import com.bazaarvoice.jolt.JsonUtils;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 public class DataLoaderApp {
-    //
-    private static Shiftr shiftr = null;
     //
     public static String PATIENT_COUNT = "10000";
     public static long ITERATIONS = 10000;
     public static String SEQUENCE = "805691";
+    public static String PATIENT_FILE = "./output/fhir/Patient.ndjson";
+    public static Duration REPORT_INTERVAL = Duration.ofSeconds(10);
     //
     private fc.azure.cosmos.loader.Config appConfig;
     //
     private CosmosAsyncDatabase database;
     private CosmosAsyncContainer container;
     private CosmosAsyncClient client;
-
-    static {
-        //
-        String spec = null;
-        try {
-            spec = new BufferedReader(
-                    new InputStreamReader(DataLoaderApp.class.getResourceAsStream("/jolt/patientspec.json"),
-                            StandardCharsets.UTF_8))
-                    .lines()
-                    .collect(Collectors.joining("\n"));;
-            //URL url = DataLoaderApp.class.getResource("/jolt/patientspec.json");
-            //spec = new String(Files.readAllBytes(Paths.get(url.toURI())));
-        } catch (Exception exception) {
-            exception.printStackTrace();
-        }
-        //
-        shiftr = new Shiftr(JsonUtils.jsonToObject(spec));
-    }
+    private IngestionController ingestionController;
+    private LoadJournal journal;
+    private ShardCoordinator shardCoordinator;
+    private PartitionKeyStrategy partitionKeyStrategy;
+    private final StartupTimer startupTimer = StartupTimer.sinceJvmStart("DataLoaderApp");
 
     public static void main(final String... args) throws Exception {
         //
@@ -72,33 +68,18 @@ public class DataLoaderApp {
             //
             app.initialize();
             //
-            BigInteger counter = new BigInteger(SEQUENCE);
-            for (int i = 1; i <= ITERATIONS; i++) {
-                System.out.println("Started loading the batch #" + i + " with " + PATIENT_COUNT + " records");
-                //
-                //app.loadData();
-                //
-                System.out.println("Transform the patient data for the batch #" + i );
-                List<Patient> patients = app.transformPatient();
-                //
-                for (Patient patient : patients) {
-                    //patient.setId(UUID.randomUUID().toString());
-                    //patient.setPartitionKey("pid-" + counter.toString());
-                    patient.setId(counter.toString());
-                    patient.setPartitionKey("pid-" + counter.toString());
-                    patient.setFirstname(RandomStringUtils.randomAlphabetic(10));
-                    patient.setLastname(RandomStringUtils.randomAlphabetic(10));
-                    counter = counter.add(BigInteger.ONE);
-                }
-                System.out.println("Finished transformation of the patient data for the batch #" + i );
-                System.out.println("Start bulk load of the patient data for the batch #" + i );
-                //
-                app.bulkLoad(patients);
-                //
-                //app.deleteFolder();
-                //
-                System.out.println("Finished loading the batch #" + i + " with " + PATIENT_COUNT + " records");
-            }
+            // The reporter also writes the journal and the shard status, off the bulk response threads
+            Disposable reporter = Flux.interval(REPORT_INTERVAL, REPORT_INTERVAL, Schedulers.boundedElastic())
+                    .subscribe(tick -> app.report(false));
+            // Up to pipelineDepth batches in flight: batch N+1 is read and transformed while batch N is written
+            Flux.range(1, Math.toIntExact(ITERATIONS))
+                    .filter(app::owns)
+                    .flatMap(app::loadBatch, app.appConfig.getPipelineDepth(), 1)
+                    .doFinally(signal -> {
+                        reporter.dispose();
+                        app.report(true);
+                    })
+                    .blockLast();
         }
         //
         System.out.println("Stopping the data loader");
@@ -107,24 +88,152 @@ public class DataLoaderApp {
     }
 
     public void initialize() throws Exception {
-        client = CosmosUtil.getCosmosClient(appConfig, "DataLoaderFC");
-        database = CosmosUtil.createDatabaseIfNotExists(appConfig, client);
-        container = CosmosUtil.createContainerIfNotExists(appConfig, client, database);
+        ClientSettings settings = appConfig.getClientSettings();
+        settings.setEndpoint(appConfig.getEndpoint());
+        settings.setKey(appConfig.getKey());
+        settings.setUserAgentSuffix("DataLoaderFC");
+        settings.setConsistencyLevel(appConfig.getReadConsistencyLevel());
+        client = CosmosClientFactory.getClient(settings);
+        startupTimer.mark("client");
+        //
+        System.out.println("Create container " + appConfig.getContainer() + " if not exists.");
+        CosmosClientFactory.getMetadataCache(client)
+                .container(appConfig.getDatabase(), ContainerSpec.createIfNotExists(appConfig.getContainer(), "/partitionKey"))
+                .block();
+        database = client.getDatabase(appConfig.getDatabase());
+        container = database.getContainer(appConfig.getContainer());
+        partitionKeyStrategy = PartitionKeyStrategies.forName(appConfig.getPartitionKeyStrategy(),
+                appConfig.getPartitionKeyBuckets(), appConfig.getPartitionKeyProperties());
+        System.out.println("Checking container " + container.getId() + " completed!\n");
+        ingestionController = new IngestionController(container, appConfig.getTargetRequestChargePerSecond(),
+                appConfig.getInitialRequestCharge(), appConfig.getMaxRetries(), appConfig.getMaxBulkConcurrency())
+                .onStored(operation -> {
+                    startupTimer.firstOperation();
+                    journal.acknowledge(Long.parseLong(operation.<Patient>getItem().getId()));
+                });
+        startupTimer.mark("container");
+        //
+        long batchSize = countPatients();
+        if (appConfig.getShardCount() > 1) {
+            shardCoordinator = new ShardCoordinator(Paths.get(appConfig.getShardDirectory()),
+                    appConfig.getShardIndex(), appConfig.getShardCount()).claim();
+            batchSize = shardCoordinator.agreeBatchSize(Long.parseLong(SEQUENCE), batchSize);
+            System.out.println("Running shard " + appConfig.getShardIndex() + " of " + appConfig.getShardCount()
+                    + " with " + batchSize + " records per batch");
+        }
+        journal = LoadJournal.open(Paths.get(appConfig.getJournal()), Long.parseLong(SEQUENCE), batchSize,
+                appConfig.getShardIndex(), appConfig.getShardCount());
+        if (shardCoordinator != null && journal.getBatchSize() != batchSize) {
+            throw new IllegalStateException("Journal " + appConfig.getJournal() + " cuts batches of "
+                    + journal.getBatchSize() + " records, the shards agreed on " + batchSize);
+        }
+        System.out.println("Load journal " + appConfig.getJournal() + ": " + journal);
+        if (settings.isWarmUp()) {
+            CosmosClientFactory.warmUp(Collections.singletonList(container)).block();
+            startupTimer.mark("warm-up");
+        }
     }
 
 
-    public void bulkLoad(List<Patient> patients) throws Exception {
-        //
-        Flux<Patient> lstPatients = Mono.just(patients).flatMapMany(Flux::fromIterable);
-        //Flux<Patient> lstPatients = Flux.fromIterable(patients);
+    /**
+     * @return true when this loader writes the batch: always, unless the load is sharded.
+     */
+    public boolean owns(final int batch) {
+        return shardCoordinator == null || shardCoordinator.owns(batch);
+    }
+
+    /**
+     * Write the records acknowledged since the last report to the journal, print the progress of this loader
+     * and, when sharded, publish it and print the progress of all shards.
+     */
+    public void report(final boolean done) {
+        try {
+            journal.checkpoint();
+        } catch (IOException e) {
+            System.out.println("Cannot write the load journal: " + e.getMessage());
+        }
+        System.out.println((done ? "Loaded " : "Loading ") + ingestionController);
+        if (shardCoordinator == null) {
+            return;
+        }
+        try {
+            shardCoordinator.publish(ingestionController.getStoredOperations(),
+                    ingestionController.getTotalOperations(), ingestionController.getTotalRequestCharge(), done);
+            System.out.println("All shards: " + shardCoordinator.aggregate());
+        } catch (IOException e) {
+            System.out.println("Cannot publish the progress of the shard: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read, transform and write one batch. Nothing runs until subscribed.
+     * <p>
+     * The batch gets the ids of its range in the journal, so a restarted load skips the batches already loaded
+     * and the records already acknowledged at the start of the batch in progress.
+     * <p>
+     * Parsing runs on its own thread and fills a bounded queue of queueSize transformed patients, so the CPU
+     * bound transform stays ahead of the bulk writes without holding the file in memory. All batches read
+     * ./output/fhir, so loadData() needs an output folder per batch before it runs with a depth above 1.
+     */
+    public Mono<BatchResult> loadBatch(final int batch) {
+        if (journal.isComplete(batch)) {
+            System.out.println("Skipping the batch #" + batch + ", already loaded");
+            return Mono.empty();
+        }
+        long firstSequence = journal.firstSequence(batch);
+        long acknowledged = journal.getAcknowledged(batch);
+        long expected = journal.getBatchSize() - acknowledged;
+        AtomicLong index = new AtomicLong();
+        Flux<Patient> patients = Flux.defer(() -> {
+                    System.out.println("Started loading the batch #" + batch + " from sequence "
+                            + (firstSequence + acknowledged) + " with " + PATIENT_COUNT + " records");
+                    //
+                    //loadData();
+                    //
+                    return transformPatient();
+                })
+                .take(journal.getBatchSize())
+                .map(patient -> {
+                    patient.setId(String.valueOf(firstSequence + index.getAndIncrement()));
+                    return patient;
+                })
+                .filter(patient -> Long.parseLong(patient.getId()) >= firstSequence + acknowledged)
+                .subscribeOn(Schedulers.boundedElastic())
+                .publishOn(Schedulers.parallel(), appConfig.getQueueSize())
+                .map(patient -> {
+                    patient.setPartitionKey(partitionKeyStrategy.partitionKey(patient));
+                    patient.setFirstname(RandomStringUtils.randomAlphabetic(10));
+                    patient.setLastname(RandomStringUtils.randomAlphabetic(10));
+                    return patient;
+                });
+        return bulkLoad(String.valueOf(batch), patients)
+                .flatMap(result -> {
+                    //deleteFolder();
+                    //
+                    System.out.println("Finished loading the " + result);
+                    if (!result.isComplete(expected)) {
+                        return Mono.error(new IllegalStateException("Stopping at the incomplete " + result
+                                + ", " + expected + " records expected"));
+                    }
+                    return Mono.fromCallable(() -> {
+                        journal.complete(batch);
+                        return result;
+                    }).subscribeOn(Schedulers.boundedElastic());
+                });
+    }
+
+    /**
+     * Write the patients through the ingestion controller, which retries throttled and transient failures.
+     */
+    public Mono<BatchResult> bulkLoad(String batch, Flux<Patient> patients) {
         //
-        Flux<CosmosItemOperation> cosmosItemOperations = lstPatients.map(
+        Flux<CosmosItemOperation> cosmosItemOperations = patients.map(
                 patient -> {
                     //System.out.println("Patient Nae "+patient.getFirstname() + " Id "+patient.getId());
                     return CosmosBulkOperations.getCreateItemOperation(patient,
                             new PartitionKey(patient.getPartitionKey()));
                 });
-        container.executeBulkOperations(cosmosItemOperations).blockLast();
+        return ingestionController.load(batch, cosmosItemOperations);
     }
 
     public void deleteFolder() throws Exception {
@@ -138,26 +247,24 @@ public class DataLoaderApp {
         index.delete();
     }
 
-    public List<Patient> transformPatient() throws Exception {
-        //
-        List<Patient> patients = new ArrayList<>();
-        //
-        try (Stream<String> stream = Files.lines(Paths.get("./output/fhir/Patient.ndjson"))) {
-            //
-            stream.forEach(patient -> {
-                Object transformedOutput = shiftr.transform(JsonUtils.jsonToObject(patient));
-                Patient object = JsonUtils.stringToType(JsonUtils.toJsonString(transformedOutput), Patient.class);
-                /*System.out.println( JsonUtils.toJsonString( transformedOutput ) );
-                System.out.println("object "+object==null);
-                System.out.println("object "+object.getClass().getCanonicalName());*/
-                //System.out.println("Patient Name " + object.getFirstname());
-                patients.add(object);
-            });
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * The patients of the last Synthea run, parsed and mapped one record at a time as the bulk load pulls them.
+     * A file that cannot be read fails the batch, which must not be recorded as loaded.
+     */
+    public Flux<Patient> transformPatient() {
+        return PatientReader.read(Paths.get(PATIENT_FILE));
+    }
+
+    /**
+     * Records per batch of a new journal: the patients in the file, or PATIENT_COUNT before the first run.
+     */
+    private long countPatients() {
+        try (Stream<String> lines = Files.lines(Paths.get(PATIENT_FILE))) {
+            long count = lines.filter(line -> !line.trim().isEmpty()).count();
+            return count > 0 ? count : Long.parseLong(PATIENT_COUNT);
+        } catch (IOException | UncheckedIOException e) {
+            return Long.parseLong(PATIENT_COUNT);
         }
-        //
-        return patients;
     }
 
     public void loadData() throws Exception {
@@ -187,6 +294,24 @@ public class DataLoaderApp {
          * --database <database name>
          * --container <container name>
          * --key <access key>
+         * --connectionmode <direct|gateway>
+         * --maxconnections <direct connections per replica endpoint>
+         * --maxrequests <concurrent requests per direct connection>
+         * --gatewaypoolsize <gateway connection pool size>
+         * --warmup <open the connections to every partition of the container before loading>
+         * --pipelinedepth <batches read, transformed and written at the same time, default 2>
+         * --queuesize <transformed patients buffered ahead of the bulk writes per batch, default 1000>
+         * --targetru <RU/s the load stays under, default 0 for as fast as the container allows>
+         * --initialcharge <RU per document paced with --targetru until charges are observed, default 10>
+         * --maxretries <passes over the throttled and transient failures of a batch, default 10>
+         * --bulkconcurrency <highest micro batch concurrency, 1 to 5, default 5>
+         * --journal <load journal to resume from, default ./loader-journal.json, ./loader-journal-<shard index>.json when sharded>
+         * --shardindex <shard of this loader, 0 to shardcount - 1, default 0>
+         * --shardcount <loaders sharing the load, default 1>
+         * --sharddirectory <directory all shards see, to coordinate, default ./loader-shards>
+         * --pkstrategy <id|hashed|synthetic, default id for pid-<id>>
+         * --pkbuckets <hash buckets of the hashed and synthetic keys, default 100>
+         * --pkproperties <patient properties of the synthetic key, default address.state>
          *
          * Examples
          * --endpoint <cosmos account> --database demo --container <container name> --key <access key>
@@ -198,6 +323,20 @@ public class DataLoaderApp {
         commandLineOptions.addOption(Option.builder().longOpt(Constants.DATABASE).required(true).hasArg().desc("Database name").build());
         commandLineOptions.addOption(Option.builder().longOpt(Constants.CONTAINER).required(true).hasArg().desc("Container name").build());
         commandLineOptions.addOption(Option.builder().longOpt(Constants.KEY).required(true).hasArg().desc("Access key").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.PIPELINE_DEPTH).required(false).hasArg().desc("Batches in flight (default: 2)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.QUEUE_SIZE).required(false).hasArg().desc("Transformed patients buffered ahead of the bulk writes (default: 1000)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.TARGET_RU).required(false).hasArg().desc("RU/s to stay under (default: 0, unbounded)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.INITIAL_CHARGE).required(false).hasArg().desc("RU per document paced until charges are observed (default: 10)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.MAX_RETRIES).required(false).hasArg().desc("Retry passes per batch (default: 10)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.BULK_CONCURRENCY).required(false).hasArg().desc("Highest micro batch concurrency, 1 to 5 (default: 5)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.JOURNAL).required(false).hasArg().desc("Load journal (default: ./loader-journal.json)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.SHARD_INDEX).required(false).hasArg().desc("Shard of this loader (default: 0)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.SHARD_COUNT).required(false).hasArg().desc("Loaders sharing the load (default: 1)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.SHARD_DIRECTORY).required(false).hasArg().desc("Shard coordination directory (default: ./loader-shards)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.PK_STRATEGY).required(false).hasArg().desc("id, hashed or synthetic (default: id)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.PK_BUCKETS).required(false).hasArg().desc("Hash buckets of the hashed and synthetic keys (default: 100)").build());
+        commandLineOptions.addOption(Option.builder().longOpt(Constants.PK_PROPERTIES).required(false).hasArg().desc("Patient properties of the synthetic key (default: address.state)").build());
+        ClientOptions.addTo(commandLineOptions);
         //
         CommandLineParser parser = new DefaultParser();
         CommandLine commandLine = null;
@@ -219,6 +358,37 @@ public class DataLoaderApp {
         appConfig.setContainer(commandLine.getOptionValue(Constants.CONTAINER));
         appConfig.setDatabase(commandLine.getOptionValue(Constants.DATABASE));
         appConfig.setKey(commandLine.getOptionValue(Constants.KEY));
+        if (commandLine.hasOption(Constants.PIPELINE_DEPTH)) {
+            appConfig.setPipelineDepth(Math.max(1, Integer.parseInt(commandLine.getOptionValue(Constants.PIPELINE_DEPTH))));
+        }
+        if (commandLine.hasOption(Constants.QUEUE_SIZE)) {
+            appConfig.setQueueSize(Math.max(1, Integer.parseInt(commandLine.getOptionValue(Constants.QUEUE_SIZE))));
+        }
+        if (commandLine.hasOption(Constants.TARGET_RU)) {
+            appConfig.setTargetRequestChargePerSecond(Double.parseDouble(commandLine.getOptionValue(Constants.TARGET_RU)));
+        }
+        if (commandLine.hasOption(Constants.INITIAL_CHARGE)) {
+            appConfig.setInitialRequestCharge(Double.parseDouble(commandLine.getOptionValue(Constants.INITIAL_CHARGE)));
+        }
+        if (commandLine.hasOption(Constants.MAX_RETRIES)) {
+            appConfig.setMaxRetries(Integer.parseInt(commandLine.getOptionValue(Constants.MAX_RETRIES)));
+        }
+        if (commandLine.hasOption(Constants.BULK_CONCURRENCY)) {
+            appConfig.setMaxBulkConcurrency(Integer.parseInt(commandLine.getOptionValue(Constants.BULK_CONCURRENCY)));
+        }
+        appConfig.setPartitionKeyStrategy(commandLine.getOptionValue(Constants.PK_STRATEGY, appConfig.getPartitionKeyStrategy()));
+        if (commandLine.hasOption(Constants.PK_BUCKETS)) {
+            appConfig.setPartitionKeyBuckets(Integer.parseInt(commandLine.getOptionValue(Constants.PK_BUCKETS)));
+        }
+        appConfig.setPartitionKeyProperties(commandLine.getOptionValue(Constants.PK_PROPERTIES, appConfig.getPartitionKeyProperties()));
+        appConfig.setShardIndex(Integer.parseInt(commandLine.getOptionValue(Constants.SHARD_INDEX, "0")));
+        appConfig.setShardCount(Integer.parseInt(commandLine.getOptionValue(Constants.SHARD_COUNT, "1")));
+        appConfig.setShardDirectory(commandLine.getOptionValue(Constants.SHARD_DIRECTORY, appConfig.getShardDirectory()));
+        String journal = appConfig.getShardCount() > 1
+                ? "./loader-journal-" + appConfig.getShardIndex() + ".json"
+                : appConfig.getJournal();
+        appConfig.setJournal(commandLine.getOptionValue(Constants.JOURNAL, journal));
+        ClientOptions.apply(commandLine, appConfig.getClientSettings());
         //
         return appConfig;
     }
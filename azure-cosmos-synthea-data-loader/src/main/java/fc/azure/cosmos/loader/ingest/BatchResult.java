@@ -0,0 +1,115 @@
+package fc.azure.cosmos.loader.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Outcome of one batch loaded by the {@link IngestionController}. Thread safe.
+ * <p>
+ * Every operation of the batch ends up in exactly one of succeeded, conflicts (the item already existed) and
+ * failed; retries count the operations sent again, so one operation can be retried several times.
+ */
+public class BatchResult {
+    //
+    private final String batch;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final DoubleAdder requestCharge = new DoubleAdder();
+    private final AtomicReference<String> firstFailure = new AtomicReference<>();
+    private volatile long elapsedNanos = -1;
+
+    public BatchResult(final String batch) {
+        this.batch = batch;
+    }
+
+    void recordSuccess(final double charge) {
+        succeeded.incrementAndGet();
+        requestCharge.add(charge);
+    }
+
+    void recordConflict(final double charge) {
+        conflicts.incrementAndGet();
+        requestCharge.add(charge);
+    }
+
+    void recordRetry(final boolean throttle, final double charge) {
+        retried.incrementAndGet();
+        if (throttle) {
+            throttled.incrementAndGet();
+        }
+        requestCharge.add(charge);
+    }
+
+    void recordFailure(final long count, final String reason) {
+        failed.addAndGet(count);
+        firstFailure.compareAndSet(null, reason);
+    }
+
+    void complete() {
+        elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    public String getBatch() {
+        return batch;
+    }
+
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    public long getConflicts() {
+        return conflicts.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getRetried() {
+        return retried.get();
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    public double getRequestCharge() {
+        return requestCharge.sum();
+    }
+
+    public String getFirstFailure() {
+        return firstFailure.get();
+    }
+
+    /**
+     * @param expected operations the batch was meant to load.
+     * @return true when all of them are stored, whether written now or found already written: none failed and
+     * none is missing, as when the records ran out before the batch was full.
+     */
+    public boolean isComplete(final long expected) {
+        return failed.get() == 0 && succeeded.get() + conflicts.get() == expected;
+    }
+
+    public long getElapsedMs() {
+        long elapsed = elapsedNanos < 0 ? System.nanoTime() - startNanos : elapsedNanos;
+        return elapsed / 1_000_000;
+    }
+
+    public double getRequestChargePerSecond() {
+        return getRequestCharge() * 1000 / Math.max(1, getElapsedMs());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("batch %s: succeeded=%d, conflicts=%d, failed=%d, retried=%d (throttled=%d), "
+                        + "RU=%.0f (%.0f RU/s), %d ms%s",
+                batch, getSucceeded(), getConflicts(), getFailed(), getRetried(), getThrottled(),
+                getRequestCharge(), getRequestChargePerSecond(), getElapsedMs(),
+                getFirstFailure() == null ? "" : ", first failure: " + getFirstFailure());
+    }
+}
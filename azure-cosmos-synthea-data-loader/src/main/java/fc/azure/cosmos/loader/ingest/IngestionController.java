@@ -0,0 +1,309 @@
+package fc.azure.cosmos.loader.ingest;
+
+import com.azure.cosmos.CosmosAsyncContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosBulkExecutionOptions;
+import com.azure.cosmos.models.CosmosBulkItemResponse;
+import com.azure.cosmos.models.CosmosBulkOperationResponse;
+import com.azure.cosmos.models.CosmosItemOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Consumer;
+
+/**
+ * Runs bulk loads to completion at the highest rate the container sustains, within an optional RU/s target.
+ * <p>
+ * Every response is classified: written, conflict (the item already exists, which a create after a restart
+ * expects) or failed. Throttled (429), timed out (408), gone (410) and server (5xx) failures are retried with
+ * an exponential backoff that honours the retry-after of the service, until maxRetries passes are spent; what
+ * still fails is reported in the {@link BatchResult} instead of being dropped.
+ * <p>
+ * Between passes the micro batch concurrency and size follow an additive increase, multiplicative decrease
+ * rule: throttles halve the concurrency and shrink the micro batches, a clean pass below the target grows
+ * them. With a target, operations are also paced by their average observed charge so the load stays under it;
+ * until the first response reports a charge they are paced by a configured estimate, so the first micro batches
+ * are not sent all at once.
+ * The bulk executor takes its options per call, so tuning applies from the next pass or batch. Thread safe,
+ * one controller can serve batches running in parallel.
+ */
+public class IngestionController {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(IngestionController.class);
+    //
+    public static final double DEFAULT_INITIAL_REQUEST_CHARGE = 10;
+    //
+    private static final int MIN_MICRO_BATCH_SIZE = 10;
+    private static final int MAX_MICRO_BATCH_SIZE = 100;
+    private static final int MAX_CONCURRENCY_LIMIT = 5;
+    private static final Duration BASE_BACKOFF = Duration.ofMillis(100);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+    //
+    private final CosmosAsyncContainer container;
+    private final double targetRequestChargePerSecond;
+    private final double initialRequestCharge;
+    private final int maxRetries;
+    private final int maxConcurrency;
+    //
+    private int concurrency = 1;
+    private int microBatchSize = MAX_MICRO_BATCH_SIZE;
+    private long nextFreeNanos = System.nanoTime();
+    private final AtomicLong totalOperations = new AtomicLong();
+    private final AtomicLong storedOperations = new AtomicLong();
+    private final DoubleAdder totalRequestCharge = new DoubleAdder();
+    private final long startNanos = System.nanoTime();
+    private volatile Consumer<CosmosItemOperation> storedListener = operation -> { };
+
+    /**
+     * @param targetRequestChargePerSecond RU/s to stay under, 0 for as fast as the container allows.
+     * @param maxRetries                   passes over the retryable failures of a batch before giving up.
+     * @param maxConcurrency               highest micro batch concurrency, the bulk executor allows 1 to 5.
+     */
+    public IngestionController(final CosmosAsyncContainer container, final double targetRequestChargePerSecond,
+                               final int maxRetries, final int maxConcurrency) {
+        this(container, targetRequestChargePerSecond, DEFAULT_INITIAL_REQUEST_CHARGE, maxRetries, maxConcurrency);
+    }
+
+    /**
+     * @param targetRequestChargePerSecond RU/s to stay under, 0 for as fast as the container allows.
+     * @param initialRequestCharge         RU per operation paced with until a response reports its charge.
+     * @param maxRetries                   passes over the retryable failures of a batch before giving up.
+     * @param maxConcurrency               highest micro batch concurrency, the bulk executor allows 1 to 5.
+     */
+    public IngestionController(final CosmosAsyncContainer container, final double targetRequestChargePerSecond,
+                               final double initialRequestCharge, final int maxRetries, final int maxConcurrency) {
+        if (initialRequestCharge <= 0) {
+            throw new IllegalArgumentException("Initial request charge must be positive");
+        }
+        this.container = container;
+        this.targetRequestChargePerSecond = targetRequestChargePerSecond;
+        this.initialRequestCharge = initialRequestCharge;
+        this.maxRetries = maxRetries;
+        this.maxConcurrency = Math.max(1, Math.min(MAX_CONCURRENCY_LIMIT, maxConcurrency));
+    }
+
+    /**
+     * Called for every operation the service acknowledged, written now or found already written (conflict).
+     */
+    public IngestionController onStored(final Consumer<CosmosItemOperation> listener) {
+        this.storedListener = listener;
+        return this;
+    }
+
+    /**
+     * Load the operations, retrying what can be retried. Nothing runs until subscribed.
+     */
+    public Mono<BatchResult> load(final String batch, final Flux<CosmosItemOperation> operations) {
+        return Mono.defer(() -> {
+            BatchResult result = new BatchResult(batch);
+            return pass(result, operations, 0)
+                    .doOnSuccess(done -> {
+                        done.complete();
+                        if (done.getFailed() > 0) {
+                            LOGGER.error("Failures in {}", done);
+                        }
+                    });
+        });
+    }
+
+    private Mono<BatchResult> pass(final BatchResult result, final Flux<CosmosItemOperation> operations,
+                                   final int attempt) {
+        List<CosmosItemOperation> retries = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong retryAfterMs = new AtomicLong();
+        AtomicLong sent = new AtomicLong();
+        AtomicLong throttled = new AtomicLong();
+        DoubleAdder charge = new DoubleAdder();
+        long start = System.nanoTime();
+        //
+        return container.<Object>executeBulkOperations(paced(operations), options())
+                .doOnNext(response -> {
+                    sent.incrementAndGet();
+                    CosmosBulkItemResponse item = response.getResponse();
+                    double itemCharge = item != null ? item.getRequestCharge() : 0;
+                    charge.add(itemCharge);
+                    totalOperations.incrementAndGet();
+                    totalRequestCharge.add(itemCharge);
+                    int status = statusCode(response);
+                    if (item != null && item.isSuccessStatusCode()) {
+                        result.recordSuccess(itemCharge);
+                        storedOperations.incrementAndGet();
+                        storedListener.accept(response.getOperation());
+                    } else if (status == 409) {
+                        result.recordConflict(itemCharge);
+                        storedOperations.incrementAndGet();
+                        storedListener.accept(response.getOperation());
+                    } else if (isRetryable(status)) {
+                        boolean throttle = status == 429;
+                        if (throttle) {
+                            throttled.incrementAndGet();
+                        }
+                        result.recordRetry(throttle, itemCharge);
+                        retries.add(response.getOperation());
+                        Duration retryAfter = retryAfter(response);
+                        if (retryAfter != null) {
+                            retryAfterMs.accumulateAndGet(retryAfter.toMillis(), Math::max);
+                        }
+                    } else {
+                        result.recordFailure(1, reason(response, status));
+                    }
+                })
+                .then(Mono.defer(() -> {
+                    record(sent.get(), throttled.get(), charge.sum(), System.nanoTime() - start);
+                    if (retries.isEmpty()) {
+                        return Mono.just(result);
+                    }
+                    if (attempt >= maxRetries) {
+                        result.recordFailure(retries.size(), retries.size() + " operations still throttled or "
+                                + "failing transiently after " + maxRetries + " retries");
+                        return Mono.just(result);
+                    }
+                    Duration backoff = backoff(attempt, retryAfterMs.get());
+                    LOGGER.info("Retrying {} operations of batch {} in {} ms (attempt {})",
+                            retries.size(), result.getBatch(), backoff.toMillis(), attempt + 1);
+                    return Mono.delay(backoff)
+                            .then(Mono.defer(() -> pass(result, Flux.fromIterable(new ArrayList<>(retries)), attempt + 1)));
+                }));
+    }
+
+    /**
+     * Hold the operations back so the average charge they are expected to cost stays under the target.
+     */
+    private Flux<CosmosItemOperation> paced(final Flux<CosmosItemOperation> operations) {
+        if (targetRequestChargePerSecond <= 0) {
+            return operations;
+        }
+        return operations
+                .buffer(MAX_MICRO_BATCH_SIZE)
+                .concatMap(chunk -> Mono.delay(reserve(chunk.size())).thenReturn(chunk))
+                .flatMapIterable(chunk -> chunk);
+    }
+
+    private synchronized Duration reserve(final int count) {
+        long now = System.nanoTime();
+        nextFreeNanos = Math.max(nextFreeNanos, now);
+        long wait = nextFreeNanos - now;
+        nextFreeNanos += (long) (count * getEstimatedRequestCharge() / targetRequestChargePerSecond * 1e9);
+        return Duration.ofNanos(wait);
+    }
+
+    private synchronized CosmosBulkExecutionOptions options() {
+        return new CosmosBulkExecutionOptions()
+                .setMaxMicroBatchConcurrency(concurrency)
+                .setInitialMicroBatchSize(microBatchSize);
+    }
+
+    /**
+     * Tune the next pass from the outcome of this one.
+     */
+    private synchronized void record(final long sent, final long throttled, final double charge,
+                                     final long elapsedNanos) {
+        double ratePerSecond = charge * 1e9 / Math.max(1, elapsedNanos);
+        int previousConcurrency = concurrency;
+        int previousSize = microBatchSize;
+        if (throttled > 0) {
+            concurrency = Math.max(1, concurrency / 2);
+            microBatchSize = Math.max(MIN_MICRO_BATCH_SIZE, microBatchSize * 3 / 4);
+        } else if (targetRequestChargePerSecond <= 0 || ratePerSecond < targetRequestChargePerSecond * 0.9) {
+            concurrency = Math.min(maxConcurrency, concurrency + 1);
+            microBatchSize = Math.min(MAX_MICRO_BATCH_SIZE, microBatchSize + MIN_MICRO_BATCH_SIZE);
+        }
+        if (concurrency != previousConcurrency || microBatchSize != previousSize) {
+            LOGGER.info("Pass of {} operations, {} throttled, {} RU/s: concurrency {} -> {}, micro batch {} -> {}",
+                    sent, throttled, String.format("%.0f", ratePerSecond),
+                    previousConcurrency, concurrency, previousSize, microBatchSize);
+        }
+    }
+
+    private static Duration backoff(final int attempt, final long retryAfterMs) {
+        long exponential = BASE_BACKOFF.toMillis() << Math.min(attempt, 16);
+        return Duration.ofMillis(Math.min(MAX_BACKOFF.toMillis(), Math.max(exponential, retryAfterMs)));
+    }
+
+    private static int statusCode(final CosmosBulkOperationResponse<?> response) {
+        if (response.getResponse() != null) {
+            return response.getResponse().getStatusCode();
+        }
+        if (response.getException() instanceof CosmosException) {
+            return ((CosmosException) response.getException()).getStatusCode();
+        }
+        // No response at all, the request did not get through
+        return 0;
+    }
+
+    private static Duration retryAfter(final CosmosBulkOperationResponse<?> response) {
+        if (response.getResponse() != null) {
+            return response.getResponse().getRetryAfterDuration();
+        }
+        if (response.getException() instanceof CosmosException) {
+            return ((CosmosException) response.getException()).getRetryAfterDuration();
+        }
+        return null;
+    }
+
+    private static boolean isRetryable(final int status) {
+        return status == 0 || status == 408 || status == 410 || status == 429 || status >= 500;
+    }
+
+    private static String reason(final CosmosBulkOperationResponse<?> response, final int status) {
+        return response.getException() != null
+                ? response.getException().getMessage()
+                : "status " + status + " for item " + response.getOperation().getId();
+    }
+
+    /**
+     * @return the operations sent, every retry and failure included.
+     */
+    public long getTotalOperations() {
+        return totalOperations.get();
+    }
+
+    /**
+     * @return the operations the service acknowledged, written or found already written (conflict).
+     */
+    public long getStoredOperations() {
+        return storedOperations.get();
+    }
+
+    public double getTotalRequestCharge() {
+        return totalRequestCharge.sum();
+    }
+
+    public double getAverageRequestCharge() {
+        long count = totalOperations.get();
+        return count == 0 ? 0 : totalRequestCharge.sum() / count;
+    }
+
+    /**
+     * @return the charge an operation is expected to cost: the observed average, or the initial estimate before
+     * any response reported a charge.
+     */
+    public double getEstimatedRequestCharge() {
+        double average = getAverageRequestCharge();
+        return average > 0 ? average : initialRequestCharge;
+    }
+
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    public synchronized int getMicroBatchSize() {
+        return microBatchSize;
+    }
+
+    @Override
+    public String toString() {
+        double seconds = Math.max(1, System.nanoTime() - startNanos) / 1e9;
+        return String.format("%d stored in %d operations, %.0f RU (%.0f RU/s, %.1f RU per operation), "
+                        + "concurrency %d, micro batch %d",
+                storedOperations.get(), totalOperations.get(), totalRequestCharge.sum(), totalRequestCharge.sum() / seconds, getAverageRequestCharge(),
+                getConcurrency(), getMicroBatchSize());
+    }
+}
@@ -0,0 +1,270 @@
+package fc.azure.cosmos.loader.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Progress of a bulk load, kept in a local file so a restarted loader resumes where the last one stopped.
+ * <p>
+ * Batch {@code n} owns the sequence range {@code [sequence + (n - 1) * batchSize, sequence + n * batchSize)}.
+ * The journal records the completed batches and, for a batch in progress, how many of its leading records are
+ * acknowledged: stored by the service, whether written by this run or found already there. Records acknowledged
+ * out of order are only counted once everything before them is, so a restart never skips a missing record and
+ * at worst writes a few again, getting a conflict.
+ * <p>
+ * A sharded loader only runs the batches of its shard, every {@code shardCount}-th one. The completed batches
+ * are compacted along that stride: {@code completedThrough} is the last batch of the shard such that every batch
+ * of the shard up to it is loaded, the batches of other shards in between are not waited for.
+ * <p>
+ * Acknowledging a record only updates the journal in memory, it is called for every write. The journal is
+ * written when a batch completes and by {@link #checkpoint()}, which the loader calls periodically from a
+ * worker thread. Every flush writes the whole journal to a temporary file, forces it to disk and atomically
+ * moves it over the previous one, so a crash leaves either the old or the new journal; the journal is only
+ * locked while it is serialized, not while it is written. Thread safe.
+ */
+public class LoadJournal {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadJournal.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    //
+    private final Path file;
+    private final State state;
+    private final int shardIndex;
+    private final int shardCount;
+    private final Map<Integer, BitSet> outOfOrder = new HashMap<>();
+    // Serializes the writers of the file, so an older state never replaces a newer one
+    private final Object fileLock = new Object();
+    private boolean dirty;
+
+    private LoadJournal(final Path file, final State state, final int shardIndex, final int shardCount) {
+        this.file = file;
+        this.state = state;
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Open the journal of a load, or start one.
+     *
+     * @param batchSize records per batch of a new journal; an existing journal keeps its own.
+     */
+    public static LoadJournal open(final Path file, final long sequence, final long batchSize) throws IOException {
+        return open(file, sequence, batchSize, 0, 1);
+    }
+
+    /**
+     * Open the journal of a shard of a load, or start one.
+     *
+     * @param batchSize  records per batch of a new journal; an existing journal keeps its own.
+     * @param shardIndex shard of this loader, it runs the batches {@code b} with {@code (b - 1) % shardCount == shardIndex}.
+     * @param shardCount loaders sharing the load.
+     */
+    public static LoadJournal open(final Path file, final long sequence, final long batchSize,
+                                   final int shardIndex, final int shardCount) throws IOException {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Shard " + shardIndex + " of " + shardCount);
+        }
+        if (!Files.exists(file)) {
+            State state = new State();
+            state.setSequence(sequence);
+            state.setBatchSize(batchSize);
+            LoadJournal journal = new LoadJournal(file, state, shardIndex, shardCount);
+            journal.flush();
+            return journal;
+        }
+        State state = MAPPER.readValue(file.toFile(), State.class);
+        if (state.getSequence() != sequence) {
+            throw new IllegalStateException("Journal " + file + " is for a load starting at sequence "
+                    + state.getSequence() + ", not " + sequence);
+        }
+        LOGGER.info("Resuming from {}: batches 1 to {} and {} loaded, {} in progress", file,
+                state.getCompletedThrough(), state.getCompleted(), state.getAcknowledged());
+        LoadJournal journal = new LoadJournal(file, state, shardIndex, shardCount);
+        // A journal written before the stride was known may still hold a run of completed batches
+        journal.compact();
+        return journal;
+    }
+
+    public synchronized long getSequence() {
+        return state.getSequence();
+    }
+
+    public synchronized long getBatchSize() {
+        return state.getBatchSize();
+    }
+
+    public synchronized long firstSequence(final int batch) {
+        return state.getSequence() + (batch - 1) * state.getBatchSize();
+    }
+
+    public synchronized boolean isComplete(final int batch) {
+        return batch <= state.getCompletedThrough() || state.getCompleted().contains(batch);
+    }
+
+    /**
+     * @return the number of leading records of the batch already acknowledged.
+     */
+    public synchronized long getAcknowledged(final int batch) {
+        Long acknowledged = state.getAcknowledged().get(batch);
+        return acknowledged == null ? 0 : acknowledged;
+    }
+
+    /**
+     * Record a stored sequence, in memory only.
+     */
+    public synchronized void acknowledge(final long sequence) {
+        long offset = sequence - state.getSequence();
+        int batch = (int) (offset / state.getBatchSize()) + 1;
+        if (isComplete(batch)) {
+            return;
+        }
+        long index = offset % state.getBatchSize();
+        long leading = getAcknowledged(batch);
+        if (index < leading) {
+            return;
+        }
+        BitSet pending = outOfOrder.computeIfAbsent(batch, key -> new BitSet());
+        pending.set((int) (index - leading));
+        int advance = pending.nextClearBit(0);
+        if (advance > 0) {
+            state.getAcknowledged().put(batch, leading + advance);
+            outOfOrder.put(batch, pending.get(advance, Math.max(advance, pending.length())));
+            dirty = true;
+        }
+    }
+
+    /**
+     * Record a batch as fully loaded and write the journal.
+     */
+    public void complete(final int batch) throws IOException {
+        synchronized (this) {
+            state.getAcknowledged().remove(batch);
+            outOfOrder.remove(batch);
+            state.getCompleted().add(batch);
+            compact();
+        }
+        flush();
+    }
+
+    /**
+     * Keep the journal small: a run of completed batches of the shard is kept as its upper bound.
+     */
+    private synchronized void compact() {
+        int next = nextOwned(state.getCompletedThrough());
+        while (state.getCompleted().remove(next)) {
+            state.setCompletedThrough(next);
+            next = nextOwned(next);
+        }
+    }
+
+    /**
+     * @return the first batch of the shard after the given one.
+     */
+    private int nextOwned(final int batch) {
+        return batch + 1 + Math.floorMod(shardIndex - batch, shardCount);
+    }
+
+    /**
+     * Write the journal if records were acknowledged since it was last written.
+     */
+    public void checkpoint() throws IOException {
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+        }
+        flush();
+    }
+
+    public void flush() throws IOException {
+        synchronized (fileLock) {
+            byte[] snapshot;
+            synchronized (this) {
+                snapshot = MAPPER.writerWithDefaultPrettyPrinter().writeValueAsBytes(state);
+                dirty = false;
+            }
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return (shardCount > 1 ? "batches of shard " + shardIndex + " through " : "batches 1 to ")
+                + state.getCompletedThrough() + " and " + state.getCompleted()
+                + " loaded, in progress " + state.getAcknowledged();
+    }
+
+    /**
+     * The journal file.
+     */
+    public static class State {
+        private long sequence;
+        private long batchSize;
+        private int completedThrough;
+        private TreeSet<Integer> completed = new TreeSet<>();
+        private TreeMap<Integer, Long> acknowledged = new TreeMap<>();
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public void setSequence(long sequence) {
+            this.sequence = sequence;
+        }
+
+        public long getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(long batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getCompletedThrough() {
+            return completedThrough;
+        }
+
+        public void setCompletedThrough(int completedThrough) {
+            this.completedThrough = completedThrough;
+        }
+
+        public TreeSet<Integer> getCompleted() {
+            return completed;
+        }
+
+        public void setCompleted(TreeSet<Integer> completed) {
+            this.completed = completed;
+        }
+
+        public TreeMap<Integer, Long> getAcknowledged() {
+            return acknowledged;
+        }
+
+        public void setAcknowledged(TreeMap<Integer, Long> acknowledged) {
+            this.acknowledged = acknowledged;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package fc.azure.cosmos.loader.partition;
+
+import fc.azure.cosmos.loader.Address;
+import fc.azure.cosmos.loader.Patient;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The partition key strategies of the loader.
+ * <ul>
+ * <li>{@code id}: {@code pid-<id>}, one logical partition per patient;</li>
+ * <li>{@code hashed}: {@code bucket-<n>}, the id hashed into a fixed number of buckets, so the writes spread
+ * evenly and every bulk micro batch finds many operations for the same logical partition;</li>
+ * <li>{@code synthetic}: the values of some patient properties joined with {@code -}, for instance
+ * {@code address.state,gender}, followed by a hash bucket of the id when buckets are set, so a popular value
+ * does not become a hot partition.</li>
+ * </ul>
+ */
+public final class PartitionKeyStrategies {
+    //
+    public static final String ID = "id";
+    public static final String HASHED = "hashed";
+    public static final String SYNTHETIC = "synthetic";
+
+    private PartitionKeyStrategies() {
+    }
+
+    /**
+     * @param buckets    hash buckets of the hashed and synthetic strategies, 0 for none with synthetic keys.
+     * @param properties comma separated Patient properties of the synthetic strategy, {@code address.} for
+     *                   the address ones.
+     */
+    public static PartitionKeyStrategy forName(final String name, final int buckets, final String properties) {
+        if (ID.equalsIgnoreCase(name)) {
+            return patient -> "pid-" + patient.getId();
+        }
+        if (HASHED.equalsIgnoreCase(name)) {
+            if (buckets < 1) {
+                throw new IllegalArgumentException("The hashed partition key strategy needs at least one bucket");
+            }
+            return patient -> "bucket-" + bucket(patient, buckets);
+        }
+        if (SYNTHETIC.equalsIgnoreCase(name)) {
+            List<Method[]> getters = new ArrayList<>();
+            for (String property : properties.split(",")) {
+                getters.add(getters(property.trim()));
+            }
+            return patient -> {
+                StringBuilder key = new StringBuilder();
+                for (Method[] getter : getters) {
+                    if (key.length() > 0) {
+                        key.append('-');
+                    }
+                    key.append(value(patient, getter));
+                }
+                if (buckets > 0) {
+                    key.append('-').append(bucket(patient, buckets));
+                }
+                return key.toString();
+            };
+        }
+        throw new IllegalArgumentException("Unknown partition key strategy " + name
+                + ", expected " + ID + ", " + HASHED + " or " + SYNTHETIC);
+    }
+
+    private static int bucket(final Patient patient, final int buckets) {
+        // Spread the hash of sequential ids before the modulo
+        int hash = patient.getId().hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), buckets);
+    }
+
+    private static Method[] getters(final String property) {
+        String[] path = property.split("\\.");
+        if (path.length == 2 && !"address".equals(path[0]) || path.length > 2 || property.isEmpty()) {
+            throw new IllegalArgumentException("Unsupported synthetic key property " + property);
+        }
+        try {
+            if (path.length == 1) {
+                return new Method[]{Patient.class.getMethod(getter(path[0]))};
+            }
+            return new Method[]{Patient.class.getMethod("getAddress"), Address.class.getMethod(getter(path[1]))};
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Unknown synthetic key property " + property, e);
+        }
+    }
+
+    private static String getter(final String property) {
+        return "get" + Character.toUpperCase(property.charAt(0)) + property.substring(1);
+    }
+
+    private static String value(final Patient patient, final Method[] getters) {
+        try {
+            Object target = patient;
+            for (Method getter : getters) {
+                target = target == null ? null : getter.invoke(target);
+            }
+            return target == null ? "none" : target.toString();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot read a synthetic key property", e);
+        }
+    }
+}
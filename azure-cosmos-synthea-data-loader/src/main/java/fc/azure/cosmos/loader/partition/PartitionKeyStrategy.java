@@ -0,0 +1,14 @@
+package fc.azure.cosmos.loader.partition;
+
+import fc.azure.cosmos.loader.Patient;
+
+/**
+ * How the loader derives the partition key of a patient.
+ * <p>
+ * A strategy must give the same key to the same record on every run, or a resumed load would write a record
+ * again under another key instead of getting a conflict.
+ */
+public interface PartitionKeyStrategy {
+
+    String partitionKey(Patient patient);
+}
@@ -0,0 +1,215 @@
+package fc.azure.cosmos.loader.shard;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Coordinates loader processes that share a load, through files in a directory they all see.
+ * <p>
+ * Shard {@code i} of {@code n} owns the batches {@code b} with {@code (b - 1) % n == i}, and so the sequence
+ * ranges of those batches: the shards never write the same ids. The directory holds:
+ * <ul>
+ * <li>{@code load.json}, the sequence and batch size of the load, written once by the first shard so every
+ * shard cuts the same ranges;</li>
+ * <li>{@code shard-i.lock}, held while shard {@code i} runs, so a shard cannot be started twice;</li>
+ * <li>{@code shard-i.json}, the progress shard {@code i} last published, read by every shard to report the
+ * aggregate throughput.</li>
+ * </ul>
+ * The lock relies on the file locks of the operating system, which network file systems do not always honour.
+ */
+public class ShardCoordinator implements Closeable {
+    //
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardCoordinator.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // A shard that has not published for this long is not counted in the current rate
+    private static final long STALE_MS = 60_000;
+    //
+    private final Path directory;
+    private final int shardIndex;
+    private final int shardCount;
+    private final long startedAt = System.currentTimeMillis();
+    private FileChannel lockChannel;
+    private FileLock lock;
+    private long lastRecords;
+    private double lastRequestCharge;
+    private long lastPublishedAt = startedAt;
+
+    public ShardCoordinator(final Path directory, final int shardIndex, final int shardCount) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("Shard index " + shardIndex + " is not in 0.." + (shardCount - 1));
+        }
+        this.directory = directory;
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Take the shard for this process.
+     *
+     * @throws IllegalStateException when another process runs the shard.
+     */
+    public synchronized ShardCoordinator claim() throws IOException {
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve("shard-" + shardIndex + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Shard " + shardIndex + " of " + shardCount
+                    + " is already running against " + directory);
+        }
+        LOGGER.info("Claimed shard {} of {} in {}", shardIndex, shardCount, directory);
+        return this;
+    }
+
+    /**
+     * The batch size every shard uses: the one of the first shard to get here, which proposed its own.
+     */
+    public long agreeBatchSize(final long sequence, final long proposedBatchSize) throws IOException {
+        Path layout = directory.resolve("load.json");
+        ObjectNode proposal = MAPPER.createObjectNode()
+                .put("sequence", sequence)
+                .put("batchSize", proposedBatchSize)
+                .put("shardCount", shardCount);
+        Path temporary = directory.resolve("load.json." + shardIndex + ".tmp");
+        Files.write(temporary, MAPPER.writeValueAsBytes(proposal));
+        try {
+            // A link fails when the layout exists, so exactly one proposal wins and is never seen half written
+            Files.createLink(layout, temporary);
+        } catch (FileAlreadyExistsException e) {
+            // Another shard was first
+        } catch (UnsupportedOperationException e) {
+            try {
+                Files.write(layout, MAPPER.writeValueAsBytes(proposal), StandardOpenOption.CREATE_NEW);
+            } catch (FileAlreadyExistsException exists) {
+                // Another shard was first
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        JsonNode agreed = MAPPER.readTree(layout.toFile());
+        if (agreed.path("sequence").asLong() != sequence || agreed.path("shardCount").asInt() != shardCount) {
+            throw new IllegalStateException(layout + " is for a load from sequence " + agreed.path("sequence").asLong()
+                    + " over " + agreed.path("shardCount").asInt() + " shards, not " + sequence + " over " + shardCount);
+        }
+        return agreed.path("batchSize").asLong();
+    }
+
+    public boolean owns(final int batch) {
+        return (batch - 1) % shardCount == shardIndex;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Publish the progress of this shard, atomically replacing its previous status.
+     *
+     * @param records  records stored, written or found already written.
+     * @param attempts operations sent, retries and failures included.
+     */
+    public synchronized void publish(final long records, final long attempts, final double requestCharge,
+                                     final boolean done) throws IOException {
+        long now = System.currentTimeMillis();
+        double seconds = Math.max(1, now - lastPublishedAt) / 1000.0;
+        ShardStatus status = new ShardStatus();
+        status.setShardIndex(shardIndex);
+        status.setShardCount(shardCount);
+        status.setRecords(records);
+        status.setAttempts(attempts);
+        status.setRequestCharge(requestCharge);
+        status.setRecordsPerSecond((records - lastRecords) / seconds);
+        status.setRequestChargePerSecond((requestCharge - lastRequestCharge) / seconds);
+        status.setStartedAt(startedAt);
+        status.setUpdatedAt(now);
+        status.setDone(done);
+        lastRecords = records;
+        lastRequestCharge = requestCharge;
+        lastPublishedAt = now;
+        //
+        Path file = directory.resolve("shard-" + shardIndex + ".json");
+        Path temporary = directory.resolve("shard-" + shardIndex + ".json.tmp");
+        Files.write(temporary, MAPPER.writeValueAsBytes(status));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the last status of every shard that published one.
+     */
+    public List<ShardStatus> readAll() throws IOException {
+        List<ShardStatus> statuses = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "shard-*.json")) {
+            for (Path file : files) {
+                try {
+                    statuses.add(MAPPER.readValue(file.toFile(), ShardStatus.class));
+                } catch (IOException e) {
+                    LOGGER.warn("Skipping unreadable shard status {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * Throughput of the whole load, from the statuses the shards published.
+     */
+    public String aggregate() throws IOException {
+        long now = System.currentTimeMillis();
+        long records = 0;
+        long attempts = 0;
+        double requestCharge = 0;
+        double recordsPerSecond = 0;
+        double requestChargePerSecond = 0;
+        int reporting = 0;
+        int done = 0;
+        long firstStart = Long.MAX_VALUE;
+        for (ShardStatus status : readAll()) {
+            records += status.getRecords();
+            attempts += status.getAttempts();
+            requestCharge += status.getRequestCharge();
+            firstStart = Math.min(firstStart, status.getStartedAt());
+            if (status.isDone()) {
+                done++;
+            } else if (now - status.getUpdatedAt() <= STALE_MS) {
+                reporting++;
+                recordsPerSecond += status.getRecordsPerSecond();
+                requestChargePerSecond += status.getRequestChargePerSecond();
+            }
+        }
+        double overall = firstStart == Long.MAX_VALUE ? 0 : records * 1000.0 / Math.max(1, now - firstStart);
+        return String.format("%d of %d shards running, %d done: %d records (%.0f/s now, %.0f/s overall) "
+                        + "in %d operations, %.0f RU (%.0f RU/s now)",
+                reporting, shardCount, done, records, recordsPerSecond, overall, attempts, requestCharge,
+                requestChargePerSecond);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (lock != null) {
+            lock.release();
+            lockChannel.close();
+            lock = null;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package fc.azure.cosmos.loader.shard;
+
+/**
+ * What a loader shard last published about its progress.
+ */
+public class ShardStatus {
+    //
+    private int shardIndex;
+    private int shardCount;
+    // Records stored, written or found already written
+    private long records;
+    // Operations sent, retries and failures included
+    private long attempts;
+    private double requestCharge;
+    private double recordsPerSecond;
+    private double requestChargePerSecond;
+    private long startedAt;
+    private long updatedAt;
+    private boolean done;
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public void setShardIndex(int shardIndex) {
+        this.shardIndex = shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public void setRecords(long records) {
+        this.records = records;
+    }
+
+    public long getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(long attempts) {
+        this.attempts = attempts;
+    }
+
+    public double getRequestCharge() {
+        return requestCharge;
+    }
+
+    public void setRequestCharge(double requestCharge) {
+        this.requestCharge = requestCharge;
+    }
+
+    public double getRecordsPerSecond() {
+        return recordsPerSecond;
+    }
+
+    public void setRecordsPerSecond(double recordsPerSecond) {
+        this.recordsPerSecond = recordsPerSecond;
+    }
+
+    public double getRequestChargePerSecond() {
+        return requestChargePerSecond;
+    }
+
+    public void setRequestChargePerSecond(double requestChargePerSecond) {
+        this.requestChargePerSecond = requestChargePerSecond;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(long startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public void setDone(boolean done) {
+        this.done = done;
+    }
+}
@@ -0,0 +1,53 @@
+package fc.azure.cosmos.loader.transform;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import fc.azure.cosmos.loader.Patient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Streams the patients of a Synthea FHIR bulk export (Patient.ndjson).
+ * <p>
+ * A single streaming parser runs over the file and every record is mapped from its tokens by the compiled
+ * jolt/patientspec.json; there is no intermediate tree, Map or JSON string. Records are read as they are
+ * requested, so the file is never held in memory, and the file is closed when the Flux terminates or is
+ * cancelled.
+ */
+public final class PatientReader {
+    //
+    public static final String SPEC = "/jolt/patientspec.json";
+    //
+    private static final JsonFactory FACTORY = new JsonFactory();
+    private static final PatientSpec PATIENT_SPEC = PatientSpec.fromClasspath(SPEC);
+
+    private PatientReader() {
+    }
+
+    public static Flux<Patient> read(final Path file) {
+        return Flux.generate(
+                () -> FACTORY.createParser(file.toFile()),
+                (JsonParser parser, SynchronousSink<Patient> sink) -> {
+                    try {
+                        if (parser.nextToken() == null) {
+                            sink.complete();
+                        } else {
+                            sink.next(PATIENT_SPEC.map(parser));
+                        }
+                    } catch (IOException e) {
+                        sink.error(e);
+                    }
+                    return parser;
+                },
+                parser -> {
+                    try {
+                        parser.close();
+                    } catch (IOException e) {
+                        // Nothing left to read
+                    }
+                });
+    }
+}
@@ -0,0 +1,277 @@
+package fc.azure.cosmos.loader.transform;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fc.azure.cosmos.loader.Patient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A Jolt shift spec compiled into a path-access plan that maps parser tokens straight into {@link Patient} fields.
+ * <p>
+ * Compiling turns the spec into a tree of steps, one per input key, and binds every output path such as
+ * {@code address.city} once to method handles of its getters, setters and constructors. Mapping a record then
+ * walks the tokens of the streaming parser along that tree: subtrees the spec does not mention are skipped
+ * without being built, and matched values are set on the Patient, with no intermediate Map, List or JSON string.
+ * <p>
+ * Supported are literal keys, array indexes and {@code *}, which is all patientspec.json uses. A value matched
+ * more than once (by {@code *}) keeps the first match, where Shiftr would build a list the String field cannot
+ * hold. Floating point numbers keep the text Shiftr produced for them through a Double. Thread safe once built.
+ */
+public final class PatientSpec {
+    //
+    private static final JsonFactory FACTORY = new JsonFactory();
+    //
+    private final Step root;
+
+    private PatientSpec(final Step root) {
+        this.root = root;
+    }
+
+    public static PatientSpec fromClasspath(final String resource) {
+        try (InputStream in = PatientSpec.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Jolt spec " + resource + " not found on the classpath");
+            }
+            return compile(new ObjectMapper().readTree(in));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid Jolt spec " + resource, e);
+        }
+    }
+
+    public static PatientSpec compile(final JsonNode spec) {
+        return new PatientSpec(step(spec, ""));
+    }
+
+    /**
+     * Map one record from JSON text.
+     */
+    public Patient map(final String json) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            parser.nextToken();
+            return map(parser);
+        }
+    }
+
+    /**
+     * Map the record the parser is positioned on, leaving the parser on its last token.
+     */
+    public Patient map(final JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object but found " + parser.currentToken()
+                    + " at " + parser.getCurrentLocation());
+        }
+        Patient patient = new Patient();
+        walk(parser, root, patient);
+        return patient;
+    }
+
+    private static void walk(final JsonParser parser, final Step step, final Patient patient) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                Step child = step.field(parser.getCurrentName());
+                parser.nextToken();
+                if (child == null) {
+                    parser.skipChildren();
+                } else {
+                    walk(parser, child, patient);
+                }
+            }
+        } else if (token == JsonToken.START_ARRAY) {
+            int index = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                Step child = step.index(index++);
+                if (child == null) {
+                    parser.skipChildren();
+                } else {
+                    walk(parser, child, patient);
+                }
+            }
+        } else if (step.binding != null && token != JsonToken.VALUE_NULL) {
+            String value = token == JsonToken.VALUE_NUMBER_FLOAT
+                    ? String.valueOf(parser.getDoubleValue())
+                    : parser.getText();
+            step.binding.set(patient, value);
+        }
+    }
+
+    private static Step step(final JsonNode spec, final String path) {
+        Step step = new Step();
+        if (spec.isTextual()) {
+            step.binding = new Binding(spec.asText());
+            return step;
+        }
+        if (!spec.isObject()) {
+            throw new IllegalArgumentException("Unsupported Jolt spec value at '" + path + "': " + spec);
+        }
+        List<Step> indexed = new ArrayList<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = spec.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String key = field.getKey();
+            Step child = step(field.getValue(), path.isEmpty() ? key : path + '.' + key);
+            if ("*".equals(key)) {
+                step.any = child;
+            } else if (key.matches("\\d+")) {
+                int index = Integer.parseInt(key);
+                while (indexed.size() <= index) {
+                    indexed.add(null);
+                }
+                indexed.set(index, child);
+                // Shiftr also matches a numeric key against an object field of the same name
+                step.fields.put(key, child);
+            } else if (key.indexOf('*') >= 0 || key.indexOf('&') >= 0 || key.indexOf('@') >= 0
+                    || key.indexOf('$') >= 0 || key.indexOf('#') >= 0 || key.indexOf('|') >= 0) {
+                throw new IllegalArgumentException("Unsupported Jolt key '" + key + "' at '" + path + "'");
+            } else {
+                step.fields.put(key, child);
+            }
+        }
+        step.indexes = indexed.toArray(new Step[0]);
+        return step;
+    }
+
+    /**
+     * One input key of the spec: the steps below it, or the Patient property it is shifted to.
+     */
+    private static final class Step {
+        private final Map<String, Step> fields = new HashMap<>();
+        private Step[] indexes = new Step[0];
+        private Step any;
+        private Binding binding;
+
+        private Step field(final String name) {
+            Step child = fields.get(name);
+            return child != null ? child : any;
+        }
+
+        private Step index(final int index) {
+            Step child = index < indexes.length ? indexes[index] : null;
+            return child != null ? child : any;
+        }
+    }
+
+    /**
+     * A dotted output path resolved to the accessors of Patient and of the beans below it, composed once into a
+     * chain of method handles: setting a value costs no reflective call, no argument array and no lookup.
+     */
+    private static final class Binding {
+        private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+        private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+        private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+        private static final MethodType CONSTRUCTOR = MethodType.methodType(Object.class);
+        //
+        private final String path;
+        private final BiConsumer<Object, String> setter;
+
+        private Binding(final String path) {
+            this.path = path;
+            String[] properties = path.split("\\.");
+            Method[] getters = new Method[properties.length];
+            Method[] setters = new Method[properties.length];
+            Class<?> type = Patient.class;
+            for (int i = 0; i < properties.length; i++) {
+                String property = Character.toUpperCase(properties[i].charAt(0)) + properties[i].substring(1);
+                try {
+                    getters[i] = type.getMethod("get" + property);
+                    setters[i] = type.getMethod("set" + property, getters[i].getReturnType());
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalArgumentException("Output path '" + path + "' has no property "
+                            + properties[i] + " on " + type.getSimpleName(), e);
+                }
+                type = getters[i].getReturnType();
+            }
+            if (type != String.class) {
+                throw new IllegalArgumentException("Output path '" + path + "' is not a String property");
+            }
+            try {
+                int last = properties.length - 1;
+                BiConsumer<Object, String> chain = leaf(handle(getters[last]).asType(GETTER),
+                        handle(setters[last]).asType(SETTER));
+                for (int i = last - 1; i >= 0; i--) {
+                    chain = step(handle(getters[i]).asType(GETTER),
+                            handle(setters[i]).asType(SETTER),
+                            LOOKUP.unreflectConstructor(getters[i].getReturnType().getDeclaredConstructor())
+                                    .asType(CONSTRUCTOR),
+                            chain);
+                }
+                this.setter = chain;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Output path '" + path + "' is not accessible", e);
+            }
+        }
+
+        private static MethodHandle handle(final Method method) throws IllegalAccessException {
+            return LOOKUP.unreflect(method);
+        }
+
+        /**
+         * Set the String property unless an earlier match did.
+         */
+        private static BiConsumer<Object, String> leaf(final MethodHandle getter, final MethodHandle setter) {
+            return (target, value) -> {
+                try {
+                    if ((Object) getter.invokeExact(target) == null) {
+                        setter.invokeExact(target, (Object) value);
+                    }
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            };
+        }
+
+        /**
+         * Get the bean below, creating it when missing, and hand the value on.
+         */
+        private static BiConsumer<Object, String> step(final MethodHandle getter, final MethodHandle setter,
+                                                       final MethodHandle constructor,
+                                                       final BiConsumer<Object, String> next) {
+            return (target, value) -> {
+                Object bean;
+                try {
+                    bean = (Object) getter.invokeExact(target);
+                    if (bean == null) {
+                        bean = (Object) constructor.invokeExact();
+                        setter.invokeExact(target, bean);
+                    }
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+                next.accept(bean, value);
+            };
+        }
+
+        private static RuntimeException rethrow(final Throwable e) {
+            if (e instanceof RuntimeException) {
+                return (RuntimeException) e;
+            }
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+            return new IllegalStateException(e);
+        }
+
+        private void set(final Patient patient, final String value) {
+            try {
+                setter.accept(patient, value);
+            } catch (IllegalStateException e) {
+                throw new IllegalStateException("Cannot set " + path, e);
+            }
+        }
+    }
+}
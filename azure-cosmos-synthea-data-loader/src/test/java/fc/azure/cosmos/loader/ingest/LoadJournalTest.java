@@ -0,0 +1,121 @@
+package fc.azure.cosmos.loader.ingest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class LoadJournalTest {
+    //
+    private static final long SEQUENCE = 1000;
+    //
+    private Path directory;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        file = directory.resolve("loader-journal.json");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void countsOutOfOrderAcknowledgementsOnceTheGapIsFilled() throws IOException {
+        LoadJournal journal = LoadJournal.open(file, SEQUENCE, 10);
+        journal.acknowledge(SEQUENCE + 2);
+        journal.acknowledge(SEQUENCE + 1);
+        assertEquals(0, journal.getAcknowledged(1));
+        journal.acknowledge(SEQUENCE);
+        assertEquals(3, journal.getAcknowledged(1));
+        // A record written again after a restart is acknowledged twice
+        journal.acknowledge(SEQUENCE + 1);
+        journal.acknowledge(SEQUENCE + 4);
+        assertEquals(3, journal.getAcknowledged(1));
+        journal.acknowledge(SEQUENCE + 3);
+        assertEquals(5, journal.getAcknowledged(1));
+        // Batches are tracked separately
+        journal.acknowledge(SEQUENCE + 10);
+        assertEquals(1, journal.getAcknowledged(2));
+    }
+
+    @Test
+    public void resumesFromTheLeadingRecordsOnly() throws IOException {
+        LoadJournal journal = LoadJournal.open(file, SEQUENCE, 10);
+        journal.acknowledge(SEQUENCE);
+        journal.acknowledge(SEQUENCE + 1);
+        journal.acknowledge(SEQUENCE + 3);
+        journal.checkpoint();
+        // Record 2 was never stored, so record 3 is written again rather than skipped with it
+        LoadJournal resumed = LoadJournal.open(file, SEQUENCE, 10);
+        assertEquals(2, resumed.getAcknowledged(1));
+        assertEquals(SEQUENCE + 10, resumed.firstSequence(2));
+    }
+
+    @Test
+    public void keepsARunOfCompletedBatchesAsItsUpperBound() throws IOException {
+        LoadJournal journal = LoadJournal.open(file, SEQUENCE, 10);
+        journal.acknowledge(SEQUENCE + 20);
+        journal.complete(3);
+        journal.complete(1);
+        assertTrue(journal.isComplete(1));
+        assertFalse(journal.isComplete(2));
+        assertTrue(journal.isComplete(3));
+        assertEquals(0, journal.getAcknowledged(3));
+        journal.complete(2);
+        //
+        LoadJournal resumed = LoadJournal.open(file, SEQUENCE, 10);
+        assertTrue(resumed.isComplete(3));
+        assertFalse(resumed.isComplete(4));
+        assertTrue(resumed.toString(), resumed.toString().startsWith("batches 1 to 3 and [] loaded"));
+        // Late acknowledgements of a completed batch are ignored
+        resumed.acknowledge(SEQUENCE + 5);
+        assertEquals(0, resumed.getAcknowledged(1));
+    }
+
+    @Test
+    public void compactsAlongTheStrideOfItsShard() throws IOException {
+        LoadJournal journal = LoadJournal.open(file, SEQUENCE, 10, 1, 3);
+        journal.complete(5);
+        journal.complete(2);
+        journal.complete(8);
+        assertTrue(journal.toString(), journal.toString().startsWith("batches of shard 1 through 8 and [] loaded"));
+        assertFalse(journal.isComplete(11));
+    }
+
+    @Test
+    public void ignoresATemporaryFileLeftByACrash() throws IOException {
+        LoadJournal journal = LoadJournal.open(file, SEQUENCE, 10);
+        journal.complete(1);
+        Path temporary = directory.resolve("loader-journal.json.tmp");
+        Files.write(temporary, "{\"sequence\": 10".getBytes(StandardCharsets.UTF_8));
+        //
+        LoadJournal resumed = LoadJournal.open(file, SEQUENCE, 10);
+        assertTrue(resumed.isComplete(1));
+        resumed.complete(2);
+        assertTrue(LoadJournal.open(file, SEQUENCE, 10).isComplete(2));
+    }
+
+    @Test
+    public void keepsTheBatchSizeOfAnExistingJournal() throws IOException {
+        LoadJournal.open(file, SEQUENCE, 10).complete(1);
+        assertEquals(10, LoadJournal.open(file, SEQUENCE, 50).getBatchSize());
+        assertThrows(IllegalStateException.class, () -> LoadJournal.open(file, SEQUENCE + 1, 10));
+    }
+}